@@ -0,0 +1,141 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.bench;
+
+import io.permazen.kv.KeyRange;
+import io.permazen.kv.mvcc.Reads;
+import io.permazen.kv.mvcc.Writes;
+import io.permazen.util.ByteUtil;
+import io.permazen.util.ByteWriter;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for MVCC conflict checking via {@link Reads#isConflict Reads.isConflict()}, which is performed
+ * at commit time against every intervening transaction's {@link Writes}.
+ *
+ * <p>
+ * The {@link #perKeyLookup perKeyLookup()} benchmark performs the same check using an individual
+ * {@link Reads#contains(byte[]) contains()} lookup for each written key, for comparison.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConflictCheckBenchmark {
+
+    /**
+     * How the written keys are positioned relative to the read keys.
+     */
+    public enum Layout {
+
+        /**
+         * Reads and writes occupy separate, non-overlapping areas of the key space.
+         */
+        DISJOINT,
+
+        /**
+         * Writes fall between two areas of reads, all having distinct first key bytes.
+         */
+        SPLIT,
+
+        /**
+         * Writes are interleaved with reads under the same key prefix, but never conflict.
+         */
+        INTERLEAVED;
+    }
+
+    /**
+     * Number of single-key ranges in the read set.
+     */
+    @Param({ "100", "10000", "1000000" })
+    public int readSetSize;
+
+    /**
+     * Number of keys in the write set.
+     */
+    @Param({ "10", "1000", "100000" })
+    public int writeSetSize;
+
+    /**
+     * Key layout.
+     */
+    @Param({ "DISJOINT", "SPLIT", "INTERLEAVED" })
+    public Layout layout;
+
+    private Reads reads;
+    private Writes writes;
+
+    @Setup(Level.Trial)
+    public void setup() {
+
+        // Reads are single keys at even indexes; in SPLIT layout the second half is moved to a higher prefix
+        this.reads = new Reads();
+        for (int i = 0; i < this.readSetSize; i++) {
+            final int prefix = this.layout == Layout.SPLIT && i >= this.readSetSize / 2 ? 0x30 : 0x10;
+            this.reads.add(new KeyRange(ConflictCheckBenchmark.key(prefix, i * 2)));
+        }
+
+        // Writes are spread evenly over odd indexes
+        final Writes mutable = new Writes();
+        final byte[] value = new byte[8];
+        for (int i = 0; i < this.writeSetSize; i++) {
+            final int prefix = this.layout == Layout.INTERLEAVED ? 0x10 : 0x20;
+            final int index = (int)((long)i * this.readSetSize / this.writeSetSize) * 2 + 1;
+            mutable.getPuts().put(ConflictCheckBenchmark.key(prefix, index), value);
+        }
+        this.writes = mutable.compactSnapshot();
+        if (this.reads.isConflict(this.writes))
+            throw new RuntimeException("internal error");
+    }
+
+    /**
+     * Conflict check using {@link Reads#isConflict Reads.isConflict()}.
+     *
+     * @return conflict result (always false)
+     */
+    @Benchmark
+    public boolean isConflict() {
+        return this.reads.isConflict(this.writes);
+    }
+
+    /**
+     * Conflict check using an individual lookup for each written key.
+     *
+     * @return conflict result (always false)
+     */
+    @Benchmark
+    public boolean perKeyLookup() {
+        for (Map.Entry<byte[], byte[]> entry : this.writes.getPutPairs()) {
+            if (this.reads.contains(entry.getKey()))
+                return true;
+        }
+        return false;
+    }
+
+    private static byte[] key(int prefix, int index) {
+        final ByteWriter writer = new ByteWriter(5);
+        writer.writeByte(prefix);
+        ByteUtil.writeInt(writer, index);
+        return writer.getBytes();
+    }
+}
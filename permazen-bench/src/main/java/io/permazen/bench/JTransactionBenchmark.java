@@ -0,0 +1,279 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.bench;
+
+import io.permazen.CopyState;
+import io.permazen.JObject;
+import io.permazen.JTransaction;
+import io.permazen.ReferencePath;
+import io.permazen.SnapshotJTransaction;
+import io.permazen.ValidationMode;
+import io.permazen.bench.model.Department;
+import io.permazen.bench.model.Employee;
+import io.permazen.tuple.Tuple2;
+
+import java.util.Collections;
+import java.util.NavigableSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Per-operation benchmarks for the {@link JTransaction} object layer.
+ *
+ * <p>
+ * The read operations, {@link #copyTo copyTo()}, and {@link #validate validate()} are performed within a single
+ * transaction per measurement iteration that is rolled back at the end of the iteration, so the database contents
+ * do not drift. {@link #create create()} and {@link #deleteCascade deleteCascade()} are each performed within a new
+ * transaction that is rolled back after the invocation, so every invocation starts from the same unmodified data.
+ * {@link #commit commit()} creates and commits its own transaction. Transactions use {@link ValidationMode#AUTOMATIC}.
+ *
+ * <p>
+ * When launched via {@link Main}, the JMH GC profiler is enabled by default so that allocations per operation
+ * ({@code gc.alloc.rate.norm}) are reported alongside the timings.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JTransactionBenchmark {
+
+    /**
+     * Create a new, empty {@link Employee}.
+     *
+     * @param state transaction state
+     * @return new object
+     */
+    @Benchmark
+    public Employee create(WriteTxState state) {
+        return state.jtx.create(Employee.class);
+    }
+
+    /**
+     * Read a simple field of a random {@link Employee} via its generated getter method.
+     *
+     * @param state transaction state
+     * @return field value
+     */
+    @Benchmark
+    public String readSimpleField(TxState state) {
+        return state.randomEmployee().getName();
+    }
+
+    /**
+     * Iterate the employees having a random level via a simple index query.
+     *
+     * @param state transaction state
+     * @param blackhole blackhole
+     */
+    @Benchmark
+    public void queryIndex(TxState state, Blackhole blackhole) {
+        final Integer level = ThreadLocalRandom.current().nextInt(PermazenState.NUM_LEVELS);
+        final NavigableSet<Employee> employees = state.jtx.queryIndex(Employee.class, "level", Integer.class)
+          .asMap().get(level);
+        JTransactionBenchmark.consume(employees, blackhole);
+    }
+
+    /**
+     * Iterate the employees having a random department and level via a composite index query.
+     *
+     * @param state transaction state
+     * @param blackhole blackhole
+     */
+    @Benchmark
+    public void queryCompositeIndex(TxState state, Blackhole blackhole) {
+        final Tuple2<Department, Integer> key = new Tuple2<>(state.randomDepartment(),
+          ThreadLocalRandom.current().nextInt(PermazenState.NUM_LEVELS));
+        final NavigableSet<Employee> employees = state.jtx.queryCompositeIndex(Employee.class,
+          "departmentLevel", Department.class, Integer.class).asMap().get(key);
+        JTransactionBenchmark.consume(employees, blackhole);
+    }
+
+    /**
+     * Follow the reference path {@code manager.manager.department} from a random {@link Employee}.
+     *
+     * @param state transaction state
+     * @return objects found
+     */
+    @Benchmark
+    public NavigableSet<JObject> followReferencePath(TxState state) {
+        return state.jtx.followReferencePath(state.managersDepartment, Collections.singleton(state.randomEmployee()));
+    }
+
+    /**
+     * Create a {@link Department} with {@link WriteTxState#cascadeSize} employees, then delete it,
+     * which cascades to the employees.
+     *
+     * <p>
+     * The cost of creating the objects is included; compare with {@link #create create()}.
+     *
+     * @param state transaction state
+     * @return true if the department was deleted
+     */
+    @Benchmark
+    public boolean deleteCascade(WriteTxState state) {
+        final Department department = state.jtx.create(Department.class);
+        for (int i = 0; i < state.cascadeSize; i++)
+            state.jtx.create(Employee.class).setDepartment(department);
+        return department.delete();
+    }
+
+    /**
+     * Copy a random {@link Employee} into a {@link SnapshotJTransaction}.
+     *
+     * @param state transaction state
+     * @return copied object
+     */
+    @Benchmark
+    public JObject copyTo(TxState state) {
+        return state.randomEmployee().copyTo(state.snapshot, new CopyState());
+    }
+
+    /**
+     * Modify a random {@link Employee}, then {@linkplain JTransaction#validate validate} the transaction.
+     *
+     * @param state transaction state
+     */
+    @Benchmark
+    public void validate(TxState state) {
+        JTransactionBenchmark.modify(state.randomEmployee());
+        state.jtx.validate();
+    }
+
+    /**
+     * Create a transaction, modify one random {@link Employee}, and commit, which includes validation.
+     *
+     * @param db database state
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    public void commit(PermazenState db) {
+        final JTransaction jtx = db.getPermazen().createTransaction(false, ValidationMode.AUTOMATIC);
+        final int index = ThreadLocalRandom.current().nextInt(db.numEmployees);
+        JTransactionBenchmark.modify(jtx.get(db.getEmployee(index), Employee.class));
+        jtx.commit();
+    }
+
+    // Change an employee's name back and forth, so a validation check is triggered but the data does not drift
+    private static void modify(Employee employee) {
+        final String name = employee.getName();
+        employee.setName(Character.isLowerCase(name.charAt(0)) ? name.toUpperCase() : name.toLowerCase());
+    }
+
+    private static void consume(NavigableSet<Employee> employees, Blackhole blackhole) {
+        if (employees == null)
+            return;
+        for (Employee employee : employees)
+            blackhole.consume(employee);
+    }
+
+// AbstractTxState
+
+    /**
+     * Per-thread state holding an open transaction.
+     */
+    @State(Scope.Thread)
+    public abstract static class AbstractTxState {
+
+        PermazenState db;
+        JTransaction jtx;
+
+        void open(PermazenState db) {
+            this.db = db;
+            this.jtx = db.getPermazen().createTransaction(false, ValidationMode.AUTOMATIC);
+        }
+
+        void close() {
+            if (this.jtx != null) {
+                this.jtx.rollback();
+                this.jtx = null;
+            }
+        }
+
+        Employee randomEmployee() {
+            final int index = ThreadLocalRandom.current().nextInt(this.db.numEmployees);
+            return this.jtx.get(this.db.getEmployee(index), Employee.class);
+        }
+
+        Department randomDepartment() {
+            final int index = ThreadLocalRandom.current().nextInt(this.db.numDepartments);
+            return this.jtx.get(this.db.getDepartment(index), Department.class);
+        }
+    }
+
+// TxState
+
+    /**
+     * Per-thread state holding an open transaction that lasts for one measurement iteration.
+     */
+    @State(Scope.Thread)
+    public static class TxState extends AbstractTxState {
+
+        SnapshotJTransaction snapshot;
+        ReferencePath managersDepartment;
+
+        @Setup(Level.Iteration)
+        public void openTransaction(PermazenState db) {
+            this.open(db);
+            this.snapshot = this.jtx.createSnapshotTransaction(ValidationMode.MANUAL);
+            this.managersDepartment = db.getPermazen().parseReferencePath(Employee.class, "manager.manager.department", false);
+        }
+
+        @TearDown(Level.Iteration)
+        public void closeTransaction() {
+            if (this.snapshot != null) {
+                this.snapshot.close();
+                this.snapshot = null;
+            }
+            this.close();
+        }
+    }
+
+// WriteTxState
+
+    /**
+     * Per-thread state holding an open transaction that lasts for one benchmark method invocation.
+     *
+     * <p>
+     * Without this, repeated {@link JTransactionBenchmark#create create()} and
+     * {@link JTransactionBenchmark#deleteCascade deleteCascade()} invocations would operate on an ever-growing
+     * set of transaction writes.
+     */
+    @State(Scope.Thread)
+    public static class WriteTxState extends AbstractTxState {
+
+        /**
+         * Number of employees deleted along with their department by {@link JTransactionBenchmark#deleteCascade}.
+         */
+        @Param("10")
+        public int cascadeSize;
+
+        @Setup(Level.Invocation)
+        public void openTransaction(PermazenState db) {
+            this.open(db);
+        }
+
+        @TearDown(Level.Invocation)
+        public void closeTransaction() {
+            this.close();
+        }
+    }
+}
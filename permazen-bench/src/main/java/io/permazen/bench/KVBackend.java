@@ -0,0 +1,204 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.bench;
+
+import io.permazen.kv.KVDatabase;
+import io.permazen.kv.array.ArrayKVDatabase;
+import io.permazen.kv.array.AtomicArrayKVStore;
+import io.permazen.kv.leveldb.LevelDBAtomicKVStore;
+import io.permazen.kv.leveldb.LevelDBKVDatabase;
+import io.permazen.kv.lmdb.ByteArrayLMDBKVDatabase;
+import io.permazen.kv.mvstore.MVStoreAtomicKVStore;
+import io.permazen.kv.mvstore.MVStoreKVDatabase;
+import io.permazen.kv.mvstore.MVStoreKVImplementation;
+import io.permazen.kv.raft.RaftKVDatabase;
+import io.permazen.kv.raft.RaftKVTransaction;
+import io.permazen.kv.rocksdb.RocksDBAtomicKVStore;
+import io.permazen.kv.rocksdb.RocksDBKVDatabase;
+import io.permazen.kv.simple.SimpleKVDatabase;
+import io.permazen.kv.sqlite.SQLiteKVDatabase;
+import io.permazen.kv.util.NavigableMapKVStore;
+import io.permazen.kv.xodus.XodusKVDatabase;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+
+import org.dellroad.stuff.net.TCPNetwork;
+
+/**
+ * The {@link KVDatabase} implementations that can be benchmarked.
+ *
+ * <p>
+ * Each instance is configured the same way as in the corresponding {@code KVDatabaseTest} subclass,
+ * with all persistent state stored under a caller-supplied temporary directory.
+ */
+public enum KVBackend {
+
+    /**
+     * {@link SimpleKVDatabase} over an in-memory {@link NavigableMapKVStore}.
+     */
+    SIMPLE {
+        @Override
+        public KVDatabase createKVDatabase(File dir) {
+            return new SimpleKVDatabase(new NavigableMapKVStore(), 250, 5000);
+        }
+    },
+
+    /**
+     * {@link ArrayKVDatabase} over an {@link AtomicArrayKVStore}.
+     */
+    ARRAY {
+        @Override
+        public KVDatabase createKVDatabase(File dir) {
+            final AtomicArrayKVStore kvstore = new AtomicArrayKVStore();
+            kvstore.setDirectory(dir);
+            final ArrayKVDatabase kvdb = new ArrayKVDatabase();
+            kvdb.setKVStore(kvstore);
+            return kvdb;
+        }
+    },
+
+    /**
+     * {@link LevelDBKVDatabase}.
+     */
+    LEVELDB {
+        @Override
+        public KVDatabase createKVDatabase(File dir) {
+            final LevelDBAtomicKVStore kvstore = new LevelDBAtomicKVStore();
+            kvstore.setDirectory(dir);
+            kvstore.setCreateIfMissing(true);
+            final LevelDBKVDatabase kvdb = new LevelDBKVDatabase();
+            kvdb.setKVStore(kvstore);
+            return kvdb;
+        }
+    },
+
+    /**
+     * {@link RocksDBKVDatabase}.
+     */
+    ROCKSDB {
+        @Override
+        public KVDatabase createKVDatabase(File dir) {
+            final RocksDBAtomicKVStore kvstore = new RocksDBAtomicKVStore();
+            kvstore.setDirectory(dir);
+            final RocksDBKVDatabase kvdb = new RocksDBKVDatabase();
+            kvdb.setKVStore(kvstore);
+            return kvdb;
+        }
+    },
+
+    /**
+     * {@link ByteArrayLMDBKVDatabase}.
+     */
+    LMDB {
+        @Override
+        public KVDatabase createKVDatabase(File dir) {
+            final ByteArrayLMDBKVDatabase kvdb = new ByteArrayLMDBKVDatabase();
+            kvdb.setDirectory(dir);
+            return kvdb;
+        }
+    },
+
+    /**
+     * {@link MVStoreKVDatabase}.
+     */
+    MVSTORE {
+        @Override
+        public KVDatabase createKVDatabase(File dir) {
+            final MVStoreKVImplementation.Config config = new MVStoreKVImplementation.Config();
+            config.setFile(new File(dir, "kvstore.mvstore"));
+            final MVStoreKVDatabase kvdb = new MVStoreKVDatabase();
+            kvdb.setKVStore(config.configure(new MVStoreAtomicKVStore()));
+            return kvdb;
+        }
+    },
+
+    /**
+     * {@link XodusKVDatabase}.
+     */
+    XODUS {
+        @Override
+        public KVDatabase createKVDatabase(File dir) {
+            final XodusKVDatabase kvdb = new XodusKVDatabase();
+            kvdb.setDirectory(dir);
+            return kvdb;
+        }
+    },
+
+    /**
+     * {@link SQLiteKVDatabase}.
+     */
+    SQLITE {
+        @Override
+        public KVDatabase createKVDatabase(File dir) {
+            final SQLiteKVDatabase kvdb = new SQLiteKVDatabase();
+            kvdb.setDatabaseFile(new File(dir, "kvstore.sqlite3"));
+            kvdb.setExclusiveLocking(true);
+            return kvdb;
+        }
+    },
+
+    /**
+     * Single node, in-process {@link RaftKVDatabase} over an {@link AtomicArrayKVStore}, listening on a loopback port.
+     */
+    RAFT {
+        @Override
+        public KVDatabase createKVDatabase(File dir) throws IOException {
+            final File kvdir = new File(dir, "kvstore");
+            if (!kvdir.mkdir())
+                throw new IOException("error creating directory `" + kvdir + "'");
+            final AtomicArrayKVStore kvstore = new AtomicArrayKVStore();
+            kvstore.setDirectory(kvdir);
+            final InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), KVBackend.findFreePort());
+            final TCPNetwork network = new TCPNetwork(RaftKVDatabase.DEFAULT_TCP_PORT);
+            network.setListenAddress(address);
+            final RaftKVDatabase raft = new RaftKVDatabase();
+            raft.setKVStore(kvstore);
+            raft.setLogDirectory(dir);
+            raft.setNetwork(network);
+            raft.setIdentity(address.getHostString() + ":" + address.getPort());      // identity doubles as address
+            raft.setMaxTransactionDuration(Integer.MAX_VALUE);
+            return raft;
+        }
+
+        @Override
+        public void initialize(KVDatabase kvdb) {
+            final RaftKVDatabase raft = (RaftKVDatabase)kvdb;
+            final RaftKVTransaction tx = raft.createTransaction();
+            tx.configChange(raft.getIdentity(), raft.getIdentity());
+            tx.commit();
+        }
+    };
+
+    /**
+     * Create a new, unstarted {@link KVDatabase} of this type.
+     *
+     * @param dir empty temporary directory for persistent state
+     * @return unstarted database
+     * @throws IOException if an I/O error occurs
+     */
+    public abstract KVDatabase createKVDatabase(File dir) throws IOException;
+
+    /**
+     * Perform any one-time initialization required after the given database has been {@linkplain KVDatabase#start started}.
+     *
+     * <p>
+     * The implementation in {@link KVBackend} does nothing.
+     *
+     * @param kvdb started database previously returned by {@link #createKVDatabase createKVDatabase()}
+     */
+    public void initialize(KVDatabase kvdb) {
+    }
+
+    private static int findFreePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,162 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.bench;
+
+import io.permazen.kv.KVDatabase;
+import io.permazen.kv.test.KVTestSupport;
+import io.permazen.test.TestSupport;
+import io.permazen.util.ByteUtil;
+import io.permazen.util.ByteWriter;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * JMH state containing a started {@link KVDatabase} preloaded with {@link #numKeys} key/value pairs.
+ *
+ * <p>
+ * Data keys are a {@link #DATA_PREFIX} byte followed by a big-endian 32-bit index, so keys sort in index order.
+ * A single counter is stored under {@link #COUNTER_KEY}.
+ *
+ * <p>
+ * This class reuses the {@link KVTestSupport} machinery (temporary directories, retry loops, random data)
+ * used by the key/value unit tests.
+ */
+@State(Scope.Benchmark)
+public class KVDatabaseState extends KVTestSupport {
+
+    /**
+     * Prefix byte for all data keys.
+     */
+    public static final int DATA_PREFIX = 0x10;
+
+    /**
+     * Key under which the benchmark counter is stored.
+     */
+    public static final byte[] COUNTER_KEY = new byte[] { (byte)0x20 };
+
+    private static final int LOAD_BATCH_SIZE = 1000;
+
+    /**
+     * The key/value implementation being benchmarked.
+     */
+    @Param({ "SIMPLE", "ARRAY", "LEVELDB", "ROCKSDB", "LMDB", "MVSTORE", "XODUS", "SQLITE", "RAFT" })
+    public KVBackend backend;
+
+    /**
+     * Number of key/value pairs to preload.
+     */
+    @Param("10000")
+    public int numKeys;
+
+    /**
+     * Length of each preloaded value.
+     */
+    @Param("64")
+    public int valueLength;
+
+    private KVDatabase kvdb;
+    private File dir;
+    private byte[][] keys;
+    private byte[] value;
+
+    @Setup(Level.Trial)
+    public void setupDatabase() throws IOException {
+        this.random = TestSupport.getRandom(System.getProperty("randomSeed"));
+        this.dir = this.createTempDirectory();
+        this.kvdb = this.backend.createKVDatabase(this.dir);
+        this.kvdb.start();
+        this.backend.initialize(this.kvdb);
+        this.keys = new byte[this.numKeys + 1][];
+        for (int i = 0; i < this.keys.length; i++)
+            this.keys[i] = KVDatabaseState.key(i);
+        this.value = new byte[this.valueLength];
+        this.random.nextBytes(this.value);
+        for (int i = 0; i < this.numKeys; i += LOAD_BATCH_SIZE) {
+            final int min = i;
+            final int max = Math.min(i + LOAD_BATCH_SIZE, this.numKeys);
+            this.tryNtimes(this.kvdb, kvt -> {
+                for (int j = min; j < max; j++)
+                    kvt.put(this.keys[j], this.value);
+                if (min == 0)
+                    kvt.put(COUNTER_KEY, kvt.encodeCounter(0));
+            });
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void teardownDatabase() throws IOException {
+        if (this.kvdb != null) {
+            this.kvdb.stop();
+            this.kvdb = null;
+        }
+        if (this.dir != null) {
+            this.deleteDirectoryHierarchy(this.dir);
+            this.dir = null;
+        }
+    }
+
+    /**
+     * Get the database.
+     *
+     * @return started database
+     */
+    public KVDatabase getKVDatabase() {
+        return this.kvdb;
+    }
+
+    /**
+     * Get the data key having the given index.
+     *
+     * <p>
+     * Indexes from zero to {@link #numKeys} (inclusive) are supported; the last one is not preloaded
+     * and can be used as an upper bound. The caller must not modify the returned array.
+     *
+     * @param index key index
+     * @return encoded key
+     * @throws ArrayIndexOutOfBoundsException if {@code index} is out of range
+     */
+    public byte[] getKey(int index) {
+        return this.keys[index];
+    }
+
+    /**
+     * Get the value stored under every preloaded key.
+     *
+     * <p>
+     * The caller must not modify the returned array.
+     *
+     * @return preloaded value
+     */
+    public byte[] getValue() {
+        return this.value;
+    }
+
+    /**
+     * Build the data key having the given index.
+     *
+     * @param index key index
+     * @return encoded key
+     */
+    public static byte[] key(int index) {
+        final ByteWriter writer = new ByteWriter(5);
+        writer.writeByte(DATA_PREFIX);
+        ByteUtil.writeInt(writer, index);
+        return writer.getBytes();
+    }
+
+    @Override
+    protected int getNumTries() {
+        return 10;
+    }
+}
@@ -0,0 +1,208 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.bench;
+
+import io.permazen.kv.KVPair;
+import io.permazen.kv.KVTransaction;
+import io.permazen.util.CloseableIterator;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Per-operation benchmarks for the {@link io.permazen.kv.KVStore} methods of each {@link KVBackend}.
+ *
+ * <p>
+ * The read operations and {@link #adjustCounter adjustCounter()} are performed within a single transaction per measurement
+ * iteration that is rolled back at the end of the iteration, so the database contents do not drift. The other write
+ * operations are each performed within a new transaction that is rolled back after the invocation, so every invocation
+ * sees the same unmodified data. {@link #commit commit()} creates and commits its own transaction.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KVStoreBenchmark {
+
+    /**
+     * Point lookup of a random existing key.
+     *
+     * @param state transaction state
+     * @return value found
+     */
+    @Benchmark
+    public byte[] get(TxState state) {
+        return state.tx.get(state.db.getKey(state.randomIndex(0)));
+    }
+
+    /**
+     * Forward scan of {@link AbstractTxState#scanLength} consecutive keys starting at a random key.
+     *
+     * @param state transaction state
+     * @param blackhole blackhole
+     */
+    @Benchmark
+    public void getRangeForward(TxState state, Blackhole blackhole) {
+        this.scan(state, false, blackhole);
+    }
+
+    /**
+     * Reverse scan of {@link AbstractTxState#scanLength} consecutive keys ending at a random key.
+     *
+     * @param state transaction state
+     * @param blackhole blackhole
+     */
+    @Benchmark
+    public void getRangeReverse(TxState state, Blackhole blackhole) {
+        this.scan(state, true, blackhole);
+    }
+
+    /**
+     * Overwrite a random existing key.
+     *
+     * @param state transaction state
+     */
+    @Benchmark
+    public void put(WriteTxState state) {
+        state.tx.put(state.db.getKey(state.randomIndex(0)), state.db.getValue());
+    }
+
+    /**
+     * Remove a range of {@link AbstractTxState#scanLength} consecutive keys starting at a random key.
+     *
+     * @param state transaction state
+     */
+    @Benchmark
+    public void removeRange(WriteTxState state) {
+        final int index = state.randomIndex(state.scanLength);
+        state.tx.removeRange(state.db.getKey(index), state.db.getKey(index + state.scanLength));
+    }
+
+    /**
+     * Increment the benchmark counter.
+     *
+     * @param state transaction state
+     */
+    @Benchmark
+    public void adjustCounter(TxState state) {
+        state.tx.adjustCounter(KVDatabaseState.COUNTER_KEY, 1);
+    }
+
+    /**
+     * Create a transaction, overwrite one random key, and commit.
+     *
+     * @param db database state
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    public void commit(KVDatabaseState db) {
+        final KVTransaction tx = db.getKVDatabase().createTransaction();
+        tx.put(db.getKey(ThreadLocalRandom.current().nextInt(db.numKeys)), db.getValue());
+        tx.commit();
+    }
+
+    private void scan(AbstractTxState state, boolean reverse, Blackhole blackhole) {
+        final int index = state.randomIndex(state.scanLength);
+        try (CloseableIterator<KVPair> i = state.tx.getRange(
+          state.db.getKey(index), state.db.getKey(index + state.scanLength), reverse)) {
+            while (i.hasNext())
+                blackhole.consume(i.next());
+        }
+    }
+
+// AbstractTxState
+
+    /**
+     * Per-thread state holding an open transaction.
+     */
+    @State(Scope.Thread)
+    public abstract static class AbstractTxState {
+
+        /**
+         * Number of keys scanned or removed by the range benchmarks.
+         */
+        @Param("100")
+        public int scanLength;
+
+        KVDatabaseState db;
+        KVTransaction tx;
+
+        void open(KVDatabaseState db) {
+            this.db = db;
+            this.tx = db.getKVDatabase().createTransaction();
+        }
+
+        void close() {
+            if (this.tx != null) {
+                this.tx.rollback();
+                this.tx = null;
+            }
+        }
+
+        // Get random key index leaving room for a range of the given length
+        int randomIndex(int length) {
+            return ThreadLocalRandom.current().nextInt(Math.max(this.db.numKeys - length, 1));
+        }
+    }
+
+// TxState
+
+    /**
+     * Per-thread state holding an open transaction that lasts for one measurement iteration.
+     */
+    @State(Scope.Thread)
+    public static class TxState extends AbstractTxState {
+
+        @Setup(Level.Iteration)
+        public void openTransaction(KVDatabaseState db) {
+            this.open(db);
+        }
+
+        @TearDown(Level.Iteration)
+        public void closeTransaction() {
+            this.close();
+        }
+    }
+
+// WriteTxState
+
+    /**
+     * Per-thread state holding an open transaction that lasts for one benchmark method invocation.
+     *
+     * <p>
+     * Without this, repeated {@link KVStoreBenchmark#removeRange removeRange()} invocations would mostly remove keys that are already gone,
+     * and {@link KVStoreBenchmark#put put()} invocations would operate on an ever-growing set of transaction writes.
+     */
+    @State(Scope.Thread)
+    public static class WriteTxState extends AbstractTxState {
+
+        @Setup(Level.Invocation)
+        public void openTransaction(KVDatabaseState db) {
+            this.open(db);
+        }
+
+        @TearDown(Level.Invocation)
+        public void closeTransaction() {
+            this.close();
+        }
+    }
+}
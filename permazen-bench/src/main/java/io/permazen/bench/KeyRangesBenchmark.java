@@ -0,0 +1,126 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.bench;
+
+import io.permazen.kv.KeyRange;
+import io.permazen.kv.KeyRanges;
+import io.permazen.util.ByteUtil;
+import io.permazen.util.ByteWriter;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for {@link KeyRanges} used as a {@link io.permazen.kv.KeyFilter}, comparing mutable instances
+ * with frozen instances created by {@link KeyRanges#immutableSnapshot}.
+ *
+ * <p>
+ * Ranges are spread over {@link #numPrefixes} distinct first key bytes, and probe keys are chosen at random,
+ * so roughly half of them are contained.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class KeyRangesBenchmark {
+
+    private static final int NUM_PROBES = 1024;
+
+    /**
+     * Number of ranges.
+     */
+    @Param({ "10", "1000", "100000" })
+    public int numRanges;
+
+    /**
+     * Number of distinct first key bytes.
+     */
+    @Param({ "1", "64" })
+    public int numPrefixes;
+
+    private KeyRanges mutable;
+    private KeyRanges frozen;
+    private byte[][] probes;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        this.mutable = new KeyRanges();
+        for (int i = 0; i < this.numRanges; i++)
+            this.mutable.add(new KeyRange(this.key(i * 2), this.key(i * 2 + 1)));
+        this.frozen = this.mutable.immutableSnapshot();
+        this.probes = new byte[NUM_PROBES][];
+        for (int i = 0; i < NUM_PROBES; i++)
+            this.probes[i] = this.key(ThreadLocalRandom.current().nextInt(this.numRanges * 2));
+    }
+
+    /**
+     * {@link KeyRanges#contains(byte[])} on a mutable instance.
+     *
+     * @return lookup result
+     */
+    @Benchmark
+    public boolean containsMutable() {
+        return this.mutable.contains(this.nextProbe());
+    }
+
+    /**
+     * {@link KeyRanges#contains(byte[])} on a frozen instance.
+     *
+     * @return lookup result
+     */
+    @Benchmark
+    public boolean containsFrozen() {
+        return this.frozen.contains(this.nextProbe());
+    }
+
+    /**
+     * {@link KeyRanges#seekHigher} on a mutable instance.
+     *
+     * @return seek result
+     */
+    @Benchmark
+    public byte[] seekHigherMutable() {
+        return this.mutable.seekHigher(this.nextProbe());
+    }
+
+    /**
+     * {@link KeyRanges#seekHigher} on a frozen instance.
+     *
+     * @return seek result
+     */
+    @Benchmark
+    public byte[] seekHigherFrozen() {
+        return this.frozen.seekHigher(this.nextProbe());
+    }
+
+    private byte[] nextProbe() {
+        return this.probes[this.next++ & (NUM_PROBES - 1)];
+    }
+
+    // Distribute indexes round-robin over the first byte prefixes, preserving order within each prefix
+    private byte[] key(int index) {
+        final ByteWriter writer = new ByteWriter(5);
+        writer.writeByte(0x10 + (index / 2) % this.numPrefixes);
+        ByteUtil.writeInt(writer, index);
+        return writer.getBytes();
+    }
+}
@@ -0,0 +1,126 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.bench;
+
+import io.permazen.kv.mvcc.LockManager;
+import io.permazen.kv.mvcc.LockOwner;
+import io.permazen.util.ByteUtil;
+import io.permazen.util.ByteWriter;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link LockManager} throughput when several threads lock many small, non-overlapping key ranges.
+ *
+ * <p>
+ * Each operation acquires {@link #locksPerOwner} write locks on behalf of a new owner and then releases them all.
+ * Each thread locks keys in its own region of the key space, so no lock ever conflicts. In addition, a background
+ * population of {@link #heldLocks} read locks is held for the whole trial, so each lock request must search a
+ * non-trivial lock table. The {@link #stripes} parameter compares a single monitor against a striped lock table.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class LockManagerBenchmark {
+
+    /**
+     * Number of lock table stripes; zero means use a single monitor object.
+     */
+    @Param({ "0", "16" })
+    public int stripes;
+
+    /**
+     * Number of read locks held in the background.
+     */
+    @Param({ "0", "10000" })
+    public int heldLocks;
+
+    /**
+     * Number of locks acquired per owner.
+     */
+    @Param("8")
+    public int locksPerOwner;
+
+    private final AtomicInteger nextRegion = new AtomicInteger();
+    private final LockOwner background = new LockOwner();
+
+    private LockManager lockManager;
+
+    @Setup(Level.Trial)
+    public void setup() throws InterruptedException {
+        this.lockManager = this.stripes == 0 ? new LockManager(new Object()) : new LockManager(this.stripes);
+        for (int i = 0; i < this.heldLocks; i++) {
+            final byte[] key = LockManagerBenchmark.key(i % 256, 0x7fffffff - i);
+            this.lockManager.lock(this.background, key, ByteUtil.getNextKey(key), false, 0);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        this.lockManager.release(this.background);
+    }
+
+    /**
+     * Acquire and release {@link #locksPerOwner} write locks in this thread's region of the key space.
+     *
+     * @param region per-thread state
+     * @throws InterruptedException if interrupted
+     */
+    @Benchmark
+    public void lockAndRelease(Region region) throws InterruptedException {
+        final LockOwner owner = new LockOwner();
+        for (int i = 0; i < this.locksPerOwner; i++) {
+            final byte[] minKey = LockManagerBenchmark.key(region.prefix, ThreadLocalRandom.current().nextInt(1 << 20));
+            if (this.lockManager.lock(owner, minKey, ByteUtil.getNextKey(minKey), true, 0) != LockManager.LockResult.SUCCESS)
+                throw new RuntimeException("lock failed");
+        }
+        this.lockManager.release(owner);
+    }
+
+    private static byte[] key(int prefix, int index) {
+        final ByteWriter writer = new ByteWriter(5);
+        writer.writeByte(prefix);
+        ByteUtil.writeInt(writer, index);
+        return writer.getBytes();
+    }
+
+// Region
+
+    /**
+     * Per-thread state assigning each thread its own first key byte.
+     */
+    @State(Scope.Thread)
+    public static class Region {
+
+        int prefix;
+
+        @Setup(Level.Trial)
+        public void setup(LockManagerBenchmark benchmark) {
+            this.prefix = (benchmark.nextRegion.getAndIncrement() * 37) & 0xff;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Benchmark launcher.
+ *
+ * <p>
+ * Accepts the same command line flags as {@link org.openjdk.jmh.Main}, but defaults to writing machine-readable
+ * JSON results to {@code permazen-bench-VERSION.json} in the current directory, so that results from different
+ * releases can be archived and compared. Also, unless some other profiler is requested via {@code -prof}, the
+ * {@linkplain GCProfiler GC profiler} is enabled so that allocations per operation are reported.
+ */
+public final class Main {
+
+    private Main() {
+    }
+
+    /**
+     * Run benchmarks.
+     *
+     * @param args JMH command line arguments
+     * @throws Exception if an error occurs
+     */
+    public static void main(String[] args) throws Exception {
+
+        // Parse command line
+        final CommandLineOptions cmdline;
+        try {
+            cmdline = new CommandLineOptions(args);
+        } catch (CommandLineOptionException e) {
+            System.err.println("Error parsing command line: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+
+        // Handle informational flags
+        if (cmdline.shouldHelp() || cmdline.shouldList() || cmdline.shouldListWithParams()
+          || cmdline.shouldListProfilers() || cmdline.shouldListResultFormats()) {
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+
+        // Default to JSON output
+        final ChainedOptionsBuilder options = new OptionsBuilder().parent(cmdline);
+        if (!cmdline.getResultFormat().hasValue()) {
+            options.resultFormat(ResultFormatType.JSON);
+            if (!cmdline.getResult().hasValue())
+                options.result(Main.getDefaultResultFile());
+        }
+
+        // Default to reporting allocations
+        if (cmdline.getProfilers().isEmpty())
+            options.addProfiler(GCProfiler.class);
+
+        // Run benchmarks
+        new Runner(options.build()).run();
+    }
+
+    private static String getDefaultResultFile() {
+        final String version = Main.class.getPackage().getImplementationVersion();
+        return "permazen-bench" + (version != null ? "-" + version : "") + ".json";
+    }
+}
@@ -0,0 +1,115 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.bench;
+
+import io.permazen.kv.KVTransaction;
+
+import java.util.ArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures commit throughput as the number of other open transactions grows.
+ *
+ * <p>
+ * Each commit writes one random key in the upper half of the preloaded key range, while {@link OpenState#openTransactions}
+ * idle transactions, each having read one key in the lower half, remain open. The idle transactions never conflict.
+ * This is mainly interesting for the {@link io.permazen.kv.mvcc.SnapshotKVDatabase}-based backends, e.g., run with
+ * {@code -p backend=ARRAY,LEVELDB,ROCKSDB,MVSTORE}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OpenTransactionsBenchmark {
+
+    /**
+     * Create a transaction, overwrite one random key, and commit, from a single thread.
+     *
+     * @param state benchmark state
+     */
+    @Benchmark
+    public void commit(OpenState state) {
+        state.commit();
+    }
+
+    /**
+     * Create a transaction, overwrite one random key, and commit, from several threads concurrently.
+     *
+     * @param state benchmark state
+     */
+    @Benchmark
+    @Threads(4)
+    public void concurrentCommit(OpenState state) {
+        state.commit();
+    }
+
+// OpenState
+
+    /**
+     * State holding the idle open transactions.
+     */
+    @State(Scope.Benchmark)
+    public static class OpenState {
+
+        /**
+         * Number of idle open transactions.
+         */
+        @Param({ "0", "10", "100", "1000" })
+        public int openTransactions;
+
+        private final ArrayList<KVTransaction> idle = new ArrayList<>();
+
+        private KVDatabaseState db;
+
+        @Setup(Level.Trial)
+        public void openTransactions(KVDatabaseState db) {
+            this.db = db;
+            final int half = Math.max(db.numKeys / 2, 1);
+            for (int i = 0; i < this.openTransactions; i++) {
+                final KVTransaction tx = db.getKVDatabase().createTransaction();
+                tx.get(db.getKey(i % half));
+                this.idle.add(tx);
+            }
+        }
+
+        // Access the idle transactions between iterations, so they don't hold on to ever older data
+        @Setup(Level.Iteration)
+        public void touchTransactions() {
+            for (int i = 0; i < this.idle.size(); i++)
+                this.idle.get(i).get(this.db.getKey(i % Math.max(this.db.numKeys / 2, 1)));
+        }
+
+        @TearDown(Level.Trial)
+        public void closeTransactions() {
+            this.idle.forEach(KVTransaction::rollback);
+            this.idle.clear();
+        }
+
+        void commit() {
+            final int half = this.db.numKeys / 2;
+            final KVTransaction tx = this.db.getKVDatabase().createTransaction();
+            tx.put(this.db.getKey(half + ThreadLocalRandom.current().nextInt(this.db.numKeys - half)), this.db.getValue());
+            tx.commit();
+        }
+    }
+}
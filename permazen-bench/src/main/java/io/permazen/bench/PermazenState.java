@@ -0,0 +1,171 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.bench;
+
+import io.permazen.JTransaction;
+import io.permazen.Permazen;
+import io.permazen.PermazenFactory;
+import io.permazen.ValidationMode;
+import io.permazen.bench.model.Department;
+import io.permazen.bench.model.Employee;
+import io.permazen.core.Database;
+import io.permazen.core.ObjId;
+import io.permazen.kv.KVDatabase;
+import io.permazen.test.TestSupport;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * JMH state containing a {@link Permazen} instance preloaded with {@link #numDepartments} {@link Department}s
+ * and {@link #numEmployees} {@link Employee}s.
+ *
+ * <p>
+ * Employee number {@code i} belongs to department {@code i % numDepartments}, has level
+ * {@code (i / numDepartments) % NUM_LEVELS}, and reports to employee {@code i / FAN_OUT} (except for employee zero),
+ * so every (department, level) pair matches only a handful of employees and manager chains are logarithmic in length.
+ */
+@State(Scope.Benchmark)
+public class PermazenState extends TestSupport {
+
+    /**
+     * Number of distinct employee levels.
+     */
+    public static final int NUM_LEVELS = 10;
+
+    /**
+     * Number of direct reports per manager.
+     */
+    public static final int FAN_OUT = 10;
+
+    static final String[] SKILLS = { "java", "sql", "ops", "design", "sales", "support", "legal", "finance" };
+
+    private static final int LOAD_BATCH_SIZE = 100;
+
+    /**
+     * The key/value implementation underlying the database.
+     */
+    @Param({ "SIMPLE", "ARRAY" })
+    public KVBackend backend;
+
+    /**
+     * Number of departments to preload.
+     */
+    @Param("100")
+    public int numDepartments;
+
+    /**
+     * Number of employees to preload.
+     */
+    @Param("10000")
+    public int numEmployees;
+
+    private KVDatabase kvdb;
+    private File dir;
+    private Permazen jdb;
+    private ObjId[] departments;
+    private ObjId[] employees;
+
+    @Setup(Level.Trial)
+    public void setupDatabase() throws IOException {
+        this.random = TestSupport.getRandom(System.getProperty("randomSeed"));
+        this.dir = this.createTempDirectory();
+        this.kvdb = this.backend.createKVDatabase(this.dir);
+        this.kvdb.start();
+        this.backend.initialize(this.kvdb);
+        this.jdb = new PermazenFactory()
+          .setDatabase(new Database(this.kvdb))
+          .setSchemaVersion(1)
+          .setModelClasses(Department.class, Employee.class)
+          .newPermazen();
+        this.departments = new ObjId[this.numDepartments];
+        this.employees = new ObjId[this.numEmployees];
+
+        // Create departments
+        JTransaction jtx = this.jdb.createTransaction(true, ValidationMode.AUTOMATIC);
+        for (int i = 0; i < this.numDepartments; i++) {
+            final Department department = jtx.create(Department.class);
+            department.setName("department" + i);
+            this.departments[i] = department.getObjId();
+        }
+        jtx.commit();
+
+        // Create employees in batches
+        for (int i = 0; i < this.numEmployees; i += LOAD_BATCH_SIZE) {
+            jtx = this.jdb.createTransaction(true, ValidationMode.AUTOMATIC);
+            final int max = Math.min(i + LOAD_BATCH_SIZE, this.numEmployees);
+            for (int j = i; j < max; j++) {
+                final Employee employee = jtx.create(Employee.class);
+                this.populate(jtx, employee, j);
+                this.employees[j] = employee.getObjId();
+            }
+            jtx.commit();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void teardownDatabase() throws IOException {
+        if (this.kvdb != null) {
+            this.kvdb.stop();
+            this.kvdb = null;
+        }
+        if (this.dir != null) {
+            this.deleteDirectoryHierarchy(this.dir);
+            this.dir = null;
+        }
+    }
+
+    /**
+     * Get the database.
+     *
+     * @return database
+     */
+    public Permazen getPermazen() {
+        return this.jdb;
+    }
+
+    /**
+     * Get the ID of the department having the given index.
+     *
+     * @param index department index
+     * @return department ID
+     * @throws ArrayIndexOutOfBoundsException if {@code index} is out of range
+     */
+    public ObjId getDepartment(int index) {
+        return this.departments[index];
+    }
+
+    /**
+     * Get the ID of the employee having the given index.
+     *
+     * @param index employee index
+     * @return employee ID
+     * @throws ArrayIndexOutOfBoundsException if {@code index} is out of range
+     */
+    public ObjId getEmployee(int index) {
+        return this.employees[index];
+    }
+
+    // Initialize employee #index; the manager, if any, must already exist
+    private void populate(JTransaction jtx, Employee employee, int index) {
+        employee.setName("employee" + index);
+        employee.setLevel((index / this.numDepartments) % NUM_LEVELS);
+        employee.setDepartment(jtx.get(this.departments[index % this.numDepartments], Department.class));
+        if (index > 0)
+            employee.setManager(jtx.get(this.employees[index / FAN_OUT], Employee.class));
+        for (int i = 0; i < 3; i++)
+            employee.getSkills().add(SKILLS[(index + i) % SKILLS.length]);
+        employee.getRatings().put("quality", index % 5);
+        employee.getRatings().put("speed", (index / 5) % 5);
+    }
+}
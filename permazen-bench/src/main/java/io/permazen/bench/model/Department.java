@@ -0,0 +1,32 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.bench.model;
+
+import io.permazen.JObject;
+import io.permazen.annotation.JField;
+import io.permazen.annotation.PermazenType;
+
+import javax.validation.constraints.NotNull;
+
+/**
+ * A department containing {@link Employee}s.
+ *
+ * <p>
+ * Deleting a department deletes all of its employees.
+ */
+@PermazenType
+public abstract class Department implements JObject {
+
+    @JField(indexed = true)
+    @NotNull
+    public abstract String getName();
+    public abstract void setName(String name);
+
+    @Override
+    public String toString() {
+        return "Department[" + this.getName() + "]";
+    }
+}
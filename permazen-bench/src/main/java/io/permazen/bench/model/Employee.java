@@ -0,0 +1,55 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.bench.model;
+
+import io.permazen.JObject;
+import io.permazen.annotation.JCompositeIndex;
+import io.permazen.annotation.JField;
+import io.permazen.annotation.JListField;
+import io.permazen.annotation.PermazenType;
+import io.permazen.core.DeleteAction;
+
+import java.util.List;
+import java.util.NavigableMap;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+/**
+ * An employee belonging to a {@link Department} and optionally reporting to a manager.
+ */
+@PermazenType
+@JCompositeIndex(name = "departmentLevel", fields = { "department", "level" })
+public abstract class Employee implements JObject {
+
+    @JField(indexed = true)
+    @NotNull
+    public abstract String getName();
+    public abstract void setName(String name);
+
+    @JField(indexed = true)
+    @Min(0)
+    public abstract int getLevel();
+    public abstract void setLevel(int level);
+
+    @JField(onDelete = DeleteAction.DELETE)
+    public abstract Department getDepartment();
+    public abstract void setDepartment(Department department);
+
+    @JField(onDelete = DeleteAction.UNREFERENCE)
+    public abstract Employee getManager();
+    public abstract void setManager(Employee manager);
+
+    @JListField(element = @JField(indexed = true))
+    public abstract List<String> getSkills();
+
+    public abstract NavigableMap<String, Integer> getRatings();
+
+    @Override
+    public String toString() {
+        return "Employee[" + this.getName() + "]";
+    }
+}
@@ -0,0 +1,15 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+/**
+ * Java model classes used by the object layer benchmarks.
+ *
+ * <p>
+ * The model exercises simple indexed fields, a composite index, references with delete cascades,
+ * an indexed list field, a map field, and JSR 303 validation constraints.
+ *
+ * @see io.permazen.bench.JTransactionBenchmark
+ */
+package io.permazen.bench.model;
@@ -0,0 +1,23 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+/**
+ * <a href="https://openjdk.java.net/projects/code-tools/jmh/">JMH</a> benchmarks for Permazen.
+ *
+ * <p>
+ * {@link io.permazen.bench.KVStoreBenchmark} measures the individual {@link io.permazen.kv.KVStore} operations of
+ * each key/value implementation, while {@link io.permazen.bench.JTransactionBenchmark} measures the Java object layer
+ * using the model in {@link io.permazen.bench.model}.
+ *
+ * <p>
+ * Build with {@code mvn package} and then run {@code java -jar permazen-bench/target/benchmarks.jar}.
+ * Any JMH command line flags may be given; for example, {@code -p backend=ARRAY,ROCKSDB} restricts
+ * which key/value implementations are measured. Unless an explicit {@code -rf} result format is given,
+ * results are written in JSON format to {@code permazen-bench-VERSION.json} so they can be compared across releases.
+ * Unless some other {@code -prof} profiler is given, allocations per operation are reported via the JMH GC profiler.
+ *
+ * @see io.permazen.bench.Main
+ */
+package io.permazen.bench;
@@ -89,41 +89,8 @@ public class DecodeKeyCommand extends AbstractKVCommand {
             return "Empty byte array";
 
         // Get info
-        final Schemas schemas = tx.getSchemas();
-        final HashMap<Integer, SchemaItem> storageIdMap = new HashMap<>();
         final HashMap<Integer, ComplexField<?>> parentMap = new HashMap<>();
-        for (Schema schema : schemas.getVersions().values()) {
-            for (ObjType objType : schema.getObjTypes().values()) {
-                storageIdMap.put(objType.getStorageId(), objType);
-                for (CompositeIndex index : objType.getCompositeIndexes().values())
-                    storageIdMap.put(index.getStorageId(), index);
-                for (Field<?> field0 : objType.getFields().values()) {
-                    field0.visit(new FieldSwitchAdapter<Void>() {
-
-                        @Override
-                        public <T> Void caseSimpleField(SimpleField<T> field) {
-                            if (field.isIndexed())
-                                storageIdMap.put(field.getStorageId(), field);
-                            return null;
-                        }
-
-                        @Override
-                        public <T> Void caseComplexField(ComplexField<T> field) {
-                            for (SimpleField<?> subField : field.getSubFields()) {
-                                parentMap.put(subField.getStorageId(), field);
-                                this.caseSimpleField(subField);
-                            }
-                            return null;
-                        }
-
-                        @Override
-                        protected <T> Void caseField(Field<T> field) {
-                            return null;
-                        }
-                    });
-                }
-            }
-        }
+        final Map<Integer, SchemaItem> storageIdMap = DecodeKeyCommand.getStorageIdMap(tx.getSchemas(), parentMap);
 
         // Decode
         final ByteReader reader = new ByteReader(key);
@@ -292,6 +259,52 @@ public class DecodeKeyCommand extends AbstractKVCommand {
         return decodes.toString();
     }
 
+    /**
+     * Build a map from storage ID to the {@link SchemaItem} whose keys start with that storage ID,
+     * i.e., object types, composite indexes, and indexed simple fields.
+     *
+     * @param schemas database schemas
+     * @param parentMap if not null, map from sub-field storage ID to parent complex field will be populated here
+     * @return storage ID map
+     */
+    static Map<Integer, SchemaItem> getStorageIdMap(Schemas schemas, Map<Integer, ComplexField<?>> parentMap) {
+        final HashMap<Integer, SchemaItem> storageIdMap = new HashMap<>();
+        for (Schema schema : schemas.getVersions().values()) {
+            for (ObjType objType : schema.getObjTypes().values()) {
+                storageIdMap.put(objType.getStorageId(), objType);
+                for (CompositeIndex index : objType.getCompositeIndexes().values())
+                    storageIdMap.put(index.getStorageId(), index);
+                for (Field<?> field0 : objType.getFields().values()) {
+                    field0.visit(new FieldSwitchAdapter<Void>() {
+
+                        @Override
+                        public <T> Void caseSimpleField(SimpleField<T> field) {
+                            if (field.isIndexed())
+                                storageIdMap.put(field.getStorageId(), field);
+                            return null;
+                        }
+
+                        @Override
+                        public <T> Void caseComplexField(ComplexField<T> field) {
+                            for (SimpleField<?> subField : field.getSubFields()) {
+                                if (parentMap != null)
+                                    parentMap.put(subField.getStorageId(), field);
+                                this.caseSimpleField(subField);
+                            }
+                            return null;
+                        }
+
+                        @Override
+                        protected <T> Void caseField(Field<T> field) {
+                            return null;
+                        }
+                    });
+                }
+            }
+        }
+        return storageIdMap;
+    }
+
     private static class DecodeKeyAction implements CliSession.Action, Session.RetryableAction {
 
         private final List<byte[]> bytesList;
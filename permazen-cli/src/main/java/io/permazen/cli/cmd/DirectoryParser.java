@@ -0,0 +1,30 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.cli.cmd;
+
+import io.permazen.parse.ParseException;
+import io.permazen.util.ParseContext;
+
+import java.io.File;
+
+class DirectoryParser extends AbstractFileParser {
+
+    private final boolean mustExist;
+
+    DirectoryParser(boolean mustExist) {
+        this.mustExist = mustExist;
+    }
+
+    @Override
+    protected boolean validateFile(File file, boolean complete) {
+        return file.isDirectory() || (!this.mustExist && !file.exists() && !complete);
+    }
+
+    @Override
+    protected ParseException createParseException(ParseContext ctx, File file) {
+        return new ParseException(ctx, "invalid directory `" + file + "'");
+    }
+}
@@ -0,0 +1,119 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.cli.cmd;
+
+import io.permazen.Session;
+import io.permazen.SessionMode;
+import io.permazen.cli.CliSession;
+import io.permazen.core.CompositeIndex;
+import io.permazen.core.SchemaItem;
+import io.permazen.kv.KVDatabase;
+import io.permazen.kv.mvcc.ConflictHotspot;
+import io.permazen.kv.mvcc.ConflictProfiler;
+import io.permazen.kv.mvcc.ConflictProfilingKVDatabase;
+import io.permazen.util.ParseContext;
+
+import java.io.PrintWriter;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+
+public class KVConflictsCommand extends AbstractKVCommand {
+
+    private static final int DEFAULT_LIMIT = 20;
+
+    public KVConflictsCommand() {
+        super("kv-conflicts -R:reset limit:int?");
+    }
+
+    @Override
+    public String getHelpSummary() {
+        return "Shows the keys and key prefixes causing the most transaction conflicts";
+    }
+
+    @Override
+    public String getHelpDetail() {
+        return "Displays the hottest conflicting keys and storage ID key prefixes recorded by the key/value database's"
+          + " conflict profiler, sorted by decaying score. If `limit' is given, at most that many of each are shown"
+          + " (default " + DEFAULT_LIMIT + "). If the `-R' flag is given, the profiler is reset afterward. The key/value"
+          + " database must have a conflict profiler configured.";
+    }
+
+    @Override
+    public EnumSet<SessionMode> getSessionModes() {
+        return EnumSet.allOf(SessionMode.class);
+    }
+
+    @Override
+    public CliSession.Action getAction(CliSession session, ParseContext ctx, boolean complete, Map<String, Object> params) {
+        final Integer limit = (Integer)params.get("limit");
+        return new ConflictsAction(limit != null ? limit : DEFAULT_LIMIT, params.containsKey("reset"));
+    }
+
+    private static class ConflictsAction implements CliSession.Action, Session.TransactionalAction {
+
+        private final int limit;
+        private final boolean reset;
+
+        ConflictsAction(int limit, boolean reset) {
+            this.limit = limit;
+            this.reset = reset;
+        }
+
+        @Override
+        public void run(CliSession session) throws Exception {
+
+            // Find profiler
+            final KVDatabase db = session.getKVDatabase();
+            final ConflictProfiler profiler = db instanceof ConflictProfilingKVDatabase ?
+              ((ConflictProfilingKVDatabase)db).getConflictProfiler() : null;
+            if (profiler == null)
+                throw new Exception("key/value database has no conflict profiler configured");
+
+            // Get storage ID descriptions, if any
+            final Map<Integer, SchemaItem> storageIdMap = session.getMode().hasCoreAPI() ?
+              DecodeKeyCommand.getStorageIdMap(session.getTransaction().getSchemas(), null) : Collections.emptyMap();
+
+            // Print results
+            final PrintWriter writer = session.getWriter();
+            writer.println(String.format("Conflicts: %d read/write, %d read/remove, %d read/adjust",
+              profiler.getReadWriteConflicts(), profiler.getReadRemoveConflicts(), profiler.getReadAdjustConflicts()));
+            this.print(writer, "Top key prefixes", profiler.getTopPrefixes(this.limit), storageIdMap);
+            this.print(writer, "Top keys", profiler.getTopKeys(this.limit), storageIdMap);
+
+            // Reset
+            if (this.reset)
+                profiler.reset();
+        }
+
+        private void print(PrintWriter writer, String title,
+          List<ConflictHotspot> hotspots, Map<Integer, SchemaItem> storageIdMap) {
+            writer.println();
+            writer.println(title + ":");
+            if (hotspots.isEmpty()) {
+                writer.println("  None");
+                return;
+            }
+            writer.println(String.format("  %10s %10s  %-32s %s", "Score", "Count", "Key", "Storage ID"));
+            for (ConflictHotspot hotspot : hotspots) {
+                writer.println(String.format("  %10.2f %10d  %-32s %s", hotspot.getScore(), hotspot.getCount(),
+                  hotspot.getKey(), this.describe(hotspot.getStorageId(), storageIdMap)));
+            }
+        }
+
+        private String describe(int storageId, Map<Integer, SchemaItem> storageIdMap) {
+            if (storageId == -1)
+                return "";
+            final SchemaItem item = storageIdMap.get(storageId);
+            if (item == null)
+                return "#" + storageId;
+            if (item instanceof CompositeIndex)
+                return "#" + storageId + " composite index \"" + item.getName() + "\"";
+            return "#" + storageId + " " + item;
+        }
+    }
+}
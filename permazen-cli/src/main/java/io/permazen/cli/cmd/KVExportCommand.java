@@ -0,0 +1,121 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.cli.cmd;
+
+import io.permazen.Session;
+import io.permazen.SessionMode;
+import io.permazen.cli.CliSession;
+import io.permazen.kv.CloseableKVStore;
+import io.permazen.kv.KVDatabase;
+import io.permazen.kv.KVTransaction;
+import io.permazen.kv.util.CloseableForwardingKVStore;
+import io.permazen.kv.util.ParallelSerializer;
+import io.permazen.parse.Parser;
+import io.permazen.util.ParseContext;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.zip.Deflater;
+
+public class KVExportCommand extends AbstractCommand {
+
+    public KVExportCommand() {
+        super("kvexport -z:compress -w:weak -t:threads:int directory:dir");
+    }
+
+    @Override
+    public String getHelpSummary() {
+        return "Exports key/value pairs in parallel to a directory of binary chunk files";
+    }
+
+    @Override
+    public String getHelpDetail() {
+        return "Writes all key/value pairs to binary chunk files in the specified directory, which will be created if"
+          + " necessary but must not already contain chunk files. The key space is split at storage ID boundaries"
+          + " (large ranges are split further) and each range is scanned by a separate thread from its own snapshot of"
+          + " the transaction. If the key/value store does not support transaction snapshots, each range is scanned from"
+          + " its own read-only transaction instead, so the export is not a point-in-time copy if the database is being"
+          + " modified concurrently. Data can be read back in later via `kvimport'."
+          + "\n\nThe `-z' flag enables compression.\n"
+          + "The `-t' flag specifies the maximum number of threads (default is the number of available processors).\n"
+          + "If the `-w' flag is given, for certain key/value stores a weaker consistency level is used for"
+          + " the tranasction to reduce the chance of conflicts.";
+    }
+
+    @Override
+    public EnumSet<SessionMode> getSessionModes() {
+        return EnumSet.allOf(SessionMode.class);
+    }
+
+    @Override
+    protected Parser<?> getParser(String typeName) {
+        return "dir".equals(typeName) ? new DirectoryParser(false) : super.getParser(typeName);
+    }
+
+    @Override
+    public CliSession.Action getAction(CliSession session, ParseContext ctx, boolean complete, Map<String, Object> params) {
+        final File dir = (File)params.get("directory");
+        final boolean compress = params.containsKey("compress");
+        final boolean weak = params.containsKey("weak");
+        final Integer threads = (Integer)params.get("threads");
+        if (threads != null && threads <= 0)
+            throw new IllegalArgumentException("invalid number of threads " + threads);
+        return new ExportAction(dir, compress, weak, threads);
+    }
+
+    private static class ExportAction implements CliSession.Action, Session.RetryableAction, Session.HasTransactionOptions {
+
+        private final File dir;
+        private final boolean compress;
+        private final boolean weak;
+        private final Integer threads;
+
+        ExportAction(File dir, boolean compress, boolean weak, Integer threads) {
+            this.dir = dir;
+            this.compress = compress;
+            this.weak = weak;
+            this.threads = threads;
+        }
+
+        @Override
+        public void run(CliSession session) throws Exception {
+            final KVTransaction kvt = session.getKVTransaction();
+            final ParallelSerializer serializer = new ParallelSerializer(kvt);
+            serializer.setViewSupplier(this.getViewSupplier(session.getKVDatabase(), kvt));
+            if (this.compress)
+                serializer.setCompressionLevel(Deflater.BEST_SPEED);
+            if (this.threads != null)
+                serializer.setParallelism(this.threads);
+            final long count = serializer.write(this.dir);
+            session.getWriter().println("Wrote " + count + " key/value pairs to `" + this.dir + "'");
+        }
+
+        // Scan each range from its own transaction snapshot if supported, otherwise its own read-only transaction
+        private Supplier<CloseableKVStore> getViewSupplier(KVDatabase kvdb, KVTransaction kvt) {
+            try {
+                kvt.mutableSnapshot().close();
+                return kvt::mutableSnapshot;
+            } catch (UnsupportedOperationException e) {
+                // fall through
+            }
+            final Map<String, ?> options = this.getTransactionOptions();
+            return () -> {
+                final KVTransaction tx = options != null ? kvdb.createTransaction(options) : kvdb.createTransaction();
+                tx.setReadOnly(true);
+                return new CloseableForwardingKVStore(tx, tx::rollback);
+            };
+        }
+
+        // Use EVENTUAL_COMMITTED consistency for Raft key/value stores to avoid retries
+        @Override
+        public Map<String, ?> getTransactionOptions() {
+            return this.weak ? Collections.singletonMap("consistency", "EVENTUAL") : null;
+        }
+    }
+}
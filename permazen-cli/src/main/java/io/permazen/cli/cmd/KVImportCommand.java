@@ -0,0 +1,83 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.cli.cmd;
+
+import io.permazen.Session;
+import io.permazen.SessionMode;
+import io.permazen.cli.CliSession;
+import io.permazen.kv.KVTransaction;
+import io.permazen.kv.util.ParallelSerializer;
+import io.permazen.parse.Parser;
+import io.permazen.util.ParseContext;
+
+import java.io.File;
+import java.util.EnumSet;
+import java.util.Map;
+
+public class KVImportCommand extends AbstractKVCommand {
+
+    public KVImportCommand() {
+        super("kvimport -R:reset -t:threads:int directory:dir");
+    }
+
+    @Override
+    public String getHelpSummary() {
+        return "Imports key/value pairs in parallel from a directory of binary chunk files";
+    }
+
+    @Override
+    public String getHelpDetail() {
+        return "Imports key/value pairs from the binary chunk files in the specified directory created previously via"
+          + " `kvexport'; each chunk file is read by a separate thread. All key/value pairs are written within the current"
+          + " transaction, so the import is atomic. Does NOT remove any key/value pairs"
+          + " already in the database unless the `-R' flag is given, in which case the database is completely wiped first."
+          + "\n\nThe `-t' flag specifies the maximum number of threads (default is the number of available processors)."
+          + "\n\nWARNING: this command can corrupt a Permazen database.";
+    }
+
+    @Override
+    protected Parser<?> getParser(String typeName) {
+        return "dir".equals(typeName) ? new DirectoryParser(true) : super.getParser(typeName);
+    }
+
+    @Override
+    public EnumSet<SessionMode> getSessionModes() {
+        return EnumSet.of(SessionMode.KEY_VALUE);
+    }
+
+    @Override
+    public CliSession.Action getAction(CliSession session, ParseContext ctx, boolean complete, Map<String, Object> params) {
+        final Integer threads = (Integer)params.get("threads");
+        if (threads != null && threads <= 0)
+            throw new IllegalArgumentException("invalid number of threads " + threads);
+        return new ImportAction(params.containsKey("reset"), threads, (File)params.get("directory"));
+    }
+
+    private static class ImportAction implements CliSession.Action, Session.RetryableAction {
+
+        private final boolean reset;
+        private final Integer threads;
+        private final File dir;
+
+        ImportAction(boolean reset, Integer threads, File dir) {
+            this.reset = reset;
+            this.threads = threads;
+            this.dir = dir;
+        }
+
+        @Override
+        public void run(CliSession session) throws Exception {
+            final KVTransaction kvt = session.getKVTransaction();
+            if (this.reset)
+                kvt.removeRange(null, null);
+            final ParallelSerializer serializer = new ParallelSerializer(kvt);
+            if (this.threads != null)
+                serializer.setParallelism(this.threads);
+            final long count = serializer.read(this.dir);
+            session.getWriter().println("Read " + count + " key/value pairs from `" + this.dir + "'");
+        }
+    }
+}
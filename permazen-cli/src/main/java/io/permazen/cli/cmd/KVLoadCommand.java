@@ -9,6 +9,7 @@ import io.permazen.Session;
 import io.permazen.SessionMode;
 import io.permazen.cli.CliSession;
 import io.permazen.kv.KVTransaction;
+import io.permazen.kv.util.BinarySerializer;
 import io.permazen.kv.util.XMLSerializer;
 import io.permazen.parse.Parser;
 import io.permazen.util.ParseContext;
@@ -27,12 +28,13 @@ public class KVLoadCommand extends AbstractKVCommand {
 
     @Override
     public String getHelpSummary() {
-        return "Load key/value pairs from an XML file";
+        return "Load key/value pairs from an XML or binary file";
     }
 
     @Override
     public String getHelpDetail() {
-        return "Imports key/value pairs from an XML file created previously via `kvsave'. Does NOT remove any key/value pairs"
+        return "Imports key/value pairs from an XML or binary file created previously via `kvsave'; the file format"
+          + " is detected automatically. Does NOT remove any key/value pairs"
           + "already in the database unless the `-R' flag is given, in which case the database is completely wiped first."
           + "\n\nWARNING: this command can corrupt a Permazen database.";
     }
@@ -67,9 +69,10 @@ public class KVLoadCommand extends AbstractKVCommand {
             final KVTransaction kvt = session.getKVTransaction();
             if (this.reset)
                 kvt.removeRange(null, null);
-            final int count;
+            final long count;
             try (BufferedInputStream input = new BufferedInputStream(new FileInputStream(this.file))) {
-                count = new XMLSerializer(kvt).read(input);
+                count = BinarySerializer.isBinaryFormat(input) ?
+                  new BinarySerializer(kvt).read(input) : new XMLSerializer(kvt).read(input);
             }
             session.getWriter().println("Read " + count + " key/value pairs from `" + this.file + "'");
         }
@@ -13,6 +13,7 @@ import io.permazen.core.Database;
 import io.permazen.core.InvalidSchemaException;
 import io.permazen.core.Layout;
 import io.permazen.core.ObjId;
+import io.permazen.kv.KVCursor;
 import io.permazen.kv.KVPair;
 import io.permazen.kv.KVStore;
 import io.permazen.kv.KeyRange;
@@ -448,22 +449,22 @@ public class Jsck {
             final Index index = info.getIndexes().get(storageId);
             final String rangeDescription = "the key range of " + index;
             info.info("checking " + rangeDescription);
-            try (CloseableIterator<KVPair> i = kv.getRange(index.getKeyRange())) {
-                while (i.hasNext()) {
-                    final KVPair pair = i.next();
+            final KeyRange keyRange = index.getKeyRange();
+            try (KVCursor cursor = kv.getRangeView(keyRange.getMin(), keyRange.getMax(), false)) {
+                while (cursor.next()) {
 
-                    // Validate index entry
-                    final ByteReader reader = new ByteReader(pair.getKey());
+                    // Validate index entry; index entries are numerous, so decode directly from the cursor's key
+                    final ByteReader reader = cursor.getKey().newReader();
                     try {
                         index.validateIndexEntry(info, reader);
                     } catch (IllegalArgumentException e) {
-                        info.handle(new InvalidKey(pair).setDetail(index, e.getMessage()));
+                        info.handle(new InvalidKey(cursor.toKVPair()).setDetail(index, e.getMessage()));
                         continue;
                     }
 
                     // Validate value, which should be empty
-                    if (pair.getValue().length > 0)
-                        info.handle(new InvalidValue(pair, ByteUtil.EMPTY).setDetail(index, "value should be empty"));
+                    if (cursor.getValue().getLength() > 0)
+                        info.handle(new InvalidValue(cursor.toKVPair(), ByteUtil.EMPTY).setDetail(index, "value should be empty"));
                 }
             }
         }
@@ -0,0 +1,163 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.kv.array;
+
+import com.google.common.base.Preconditions;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * A blocked bloom filter over the keys in an {@link ArrayKVStore}.
+ *
+ * <p>
+ * The filter allows most lookups of keys that don't exist to be answered without searching the index and key data.
+ * All of the bits tested for any one key lie in the same 64 byte block, so each lookup touches at most one page
+ * of the filter data. See the package documentation for the file format.
+ *
+ * <p>
+ * Instances are thread safe.
+ */
+class ArrayKVFilter {
+
+    static final int BLOCK_SIZE = 64;
+
+    private static final int MAX_HASHES = 32;
+
+    // Note: for thread safety, perform only absolute gets
+    private final ByteBuffer data;
+    private final int numHashes;
+    private final int numBlocks;
+
+    /**
+     * Constructor.
+     *
+     * @param data filter data written by a {@link ArrayKVWriter}
+     * @throws IllegalArgumentException if {@code data} is null or invalid
+     */
+    ArrayKVFilter(ByteBuffer data) {
+        Preconditions.checkArgument(data != null, "null data");
+        Preconditions.checkArgument(data.capacity() >= 4 + BLOCK_SIZE
+          && (data.capacity() - 4) % BLOCK_SIZE == 0, "invalid filter size");
+        this.data = data.duplicate();
+        this.data.limit(this.data.capacity());
+        this.numHashes = this.data.getInt(0);
+        Preconditions.checkArgument(this.numHashes > 0 && this.numHashes <= MAX_HASHES, "invalid filter hash count");
+        this.numBlocks = (this.data.capacity() - 4) / BLOCK_SIZE;
+    }
+
+    /**
+     * Determine whether the given key might be present.
+     *
+     * @param key key
+     * @return false if {@code key} is definitely not present, true if it might be
+     */
+    public boolean mightContain(byte[] key) {
+        final long hash = ArrayKVFilter.hash(key);
+        final int offset = 4 + ArrayKVFilter.block(hash, this.numBlocks) * BLOCK_SIZE;
+        int bits = ArrayKVFilter.firstBit(hash);
+        final int step = ArrayKVFilter.bitStep(hash);
+        for (int i = 0; i < this.numHashes; i++) {
+            final int bit = bits >>> 23;                                        // 0 ... 511
+            if ((this.data.get(offset + (bit >>> 3)) & (1 << (bit & 7))) == 0)
+                return false;
+            bits += step;
+        }
+        return true;
+    }
+
+// Internal methods
+
+    // 64-bit FNV-1a followed by the MurmurHash3 finalizer
+    static long hash(byte[] key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static int block(long hash, int numBlocks) {
+        return (int)(((hash >>> 32) * numBlocks) >>> 32);
+    }
+
+    private static int firstBit(long hash) {
+        return (int)hash;
+    }
+
+    private static int bitStep(long hash) {
+        return (int)((hash * 0x9e3779b97f4a7c15L) >>> 32) | 1;
+    }
+
+// Builder
+
+    /**
+     * Builds {@link ArrayKVFilter} data.
+     */
+    static class Builder {
+
+        private final int numHashes;
+        private final byte[] blocks;
+        private final int numBlocks;
+
+        /**
+         * Constructor.
+         *
+         * @param expectedKeys expected number of keys; more keys may be added, but that increases the false positive rate
+         * @param bitsPerKey number of filter bits per key
+         * @throws IllegalArgumentException if {@code expectedKeys} is negative or {@code bitsPerKey} is not positive
+         */
+        Builder(int expectedKeys, int bitsPerKey) {
+            Preconditions.checkArgument(expectedKeys >= 0, "expectedKeys < 0");
+            Preconditions.checkArgument(bitsPerKey > 0, "bitsPerKey <= 0");
+            this.numHashes = Math.min(Math.max((int)Math.round(bitsPerKey * Math.log(2)), 1), MAX_HASHES);
+            final long bits = (long)expectedKeys * bitsPerKey;
+            final long blockBits = BLOCK_SIZE * 8;
+            final long blockCount = Math.max((bits + blockBits - 1) / blockBits, 1);
+            Preconditions.checkArgument(blockCount <= (Integer.MAX_VALUE - 4) / BLOCK_SIZE, "filter is too large");
+            this.numBlocks = (int)blockCount;
+            this.blocks = new byte[this.numBlocks * BLOCK_SIZE];
+        }
+
+        /**
+         * Add a key.
+         *
+         * @param key key
+         */
+        public void add(byte[] key) {
+            final long hash = ArrayKVFilter.hash(key);
+            final int offset = ArrayKVFilter.block(hash, this.numBlocks) * BLOCK_SIZE;
+            int bits = ArrayKVFilter.firstBit(hash);
+            final int step = ArrayKVFilter.bitStep(hash);
+            for (int i = 0; i < this.numHashes; i++) {
+                final int bit = bits >>> 23;
+                this.blocks[offset + (bit >>> 3)] |= (byte)(1 << (bit & 7));
+                bits += step;
+            }
+        }
+
+        /**
+         * Write out the filter data.
+         *
+         * @param output destination
+         * @throws IOException if an I/O error occurs
+         */
+        public void writeTo(OutputStream output) throws IOException {
+            final DataOutputStream data = new DataOutputStream(output);
+            data.writeInt(this.numHashes);
+            data.write(this.blocks);
+            data.flush();
+        }
+    }
+}
@@ -8,6 +8,7 @@ package io.permazen.kv.array;
 import com.google.common.base.Preconditions;
 
 import io.permazen.kv.KVPair;
+import io.permazen.util.ByteSlice;
 import io.permazen.util.ByteUtil;
 
 import java.nio.ByteBuffer;
@@ -16,15 +17,28 @@ import java.nio.ByteBuffer;
  * Performs searches into an {@link ArrayKVStore}.
  *
  * <p>
+ * To avoid random accesses into the (possibly memory-mapped) index and key data, instances keep a sparse in-heap index
+ * containing every {@value #SPARSE_INTERVAL}th key, which is built on construction. A search first binary searches the
+ * sparse index, then finishes with a binary search confined to the corresponding block of {@value #SPARSE_INTERVAL}
+ * entries, which occupies a small contiguous region of the index and key data.
+ *
+ * <p>
  * Instances are thread safe.
  */
 class ArrayKVFinder {
 
+    /**
+     * Number of index entries between keys in the sparse index. Must be a multiple of 32, so that every sampled key
+     * is a (non-prefix-compressed) base key.
+     */
+    static final int SPARSE_INTERVAL = 256;
+
     // Note: for thread safety, perform only absolute gets
     private final ByteBuffer indx;
     private final ByteBuffer keys;
     private final ByteBuffer vals;
     private final int size;
+    private final byte[][] sparseKeys;
 
     ArrayKVFinder(ByteBuffer indx, ByteBuffer keys, ByteBuffer vals) {
         Preconditions.checkArgument(indx.capacity() % 8 == 0, "index size is not a multiple of 8");
@@ -35,6 +49,11 @@ class ArrayKVFinder {
         this.keys.limit(this.keys.capacity());
         this.vals.limit(this.vals.capacity());
         this.size = this.indx.capacity() / 8;
+
+        // Build sparse index
+        this.sparseKeys = new byte[(this.size + SPARSE_INTERVAL - 1) / SPARSE_INTERVAL][];
+        for (int i = 0; i < this.sparseKeys.length; i++)
+            this.sparseKeys[i] = this.readKey(i * SPARSE_INTERVAL);
     }
 
     /**
@@ -44,9 +63,23 @@ class ArrayKVFinder {
      */
     public int find(byte[] searchKey) {
 
-        // Initialize bounds using cached prefix
-        int min = 0;
-        int max = this.size;
+        // Find the last sparse index key <= search key
+        int sparseMin = 0;
+        int sparseMax = this.sparseKeys.length;
+        while (sparseMin < sparseMax) {
+            final int mid = (sparseMin + sparseMax) >>> 1;
+            final int diff = ByteUtil.compare(searchKey, this.sparseKeys[mid]);
+            if (diff == 0)
+                return mid * SPARSE_INTERVAL;
+            if (diff < 0)
+                sparseMax = mid;
+            else
+                sparseMin = mid + 1;
+        }
+
+        // Initialize bounds to the corresponding block
+        int min = sparseMin > 0 ? (sparseMin - 1) * SPARSE_INTERVAL + 1 : 0;
+        int max = sparseMin < this.sparseKeys.length ? sparseMin * SPARSE_INTERVAL : this.size;
 
         // Perform binary search for key, starting at the point where we diverged from the previous search key
         byte[] prevMin = null;
@@ -120,6 +153,58 @@ class ArrayKVFinder {
         return this.get(this.keys, suffixOffset, key, prefixLen, suffixLen);
     }
 
+    /**
+     * Read the key at the specified index into the given slice.
+     *
+     * <p>
+     * The key is copied into the slice's current array, starting at offset zero, if the array is large enough;
+     * otherwise, a new array of exactly the key's length is allocated.
+     *
+     * @return {@code slice}
+     */
+    public ByteSlice readKey(int index, ByteSlice slice) {
+
+        // Sanity check
+        Preconditions.checkArgument(index >= 0, "index < 0");
+        Preconditions.checkArgument(index < this.size, "index >= size");
+
+        // If this is a base key, read absolute offset and fetch data normally
+        final int baseIndex = index & ~0x1f;
+        final int baseKeyOffset = this.indx.getInt(baseIndex * 8);
+        if (index == baseIndex) {
+            final int length = (index + 1) < this.size ?
+              this.indx.getInt((index + 1) * 8) & 0x00ffffff : this.keys.capacity() - baseKeyOffset;
+            final byte[] key = this.buffer(slice, length);
+            this.get(this.keys, baseKeyOffset, key, 0, length);
+            return slice.set(key, 0, length);
+        }
+
+        // Read the base key absolute offset, then encoded key prefix length and relative suffix offset
+        final int encodedValue = this.indx.getInt(index * 8);
+        final int prefixLen = encodedValue >>> 24;
+        final int suffixOffset = baseKeyOffset + (encodedValue & 0x00ffffff);
+
+        // Calculate the start of the following key in order to determine this key's suffix length
+        final int nextIndex = index + 1;
+        int nextOffset;
+        if (nextIndex < this.size) {
+            nextOffset = this.indx.getInt(nextIndex * 8);
+            if ((nextIndex & 0x1f) != 0)
+                nextOffset = baseKeyOffset + (nextOffset & 0x00ffffff);
+        } else
+            nextOffset = this.keys.capacity();
+        final int suffixLen = nextOffset - suffixOffset;
+
+        // Fetch the key in two parts, prefix then suffix
+        final int length = prefixLen + suffixLen;
+        final byte[] key = this.buffer(slice, length);
+        if (prefixLen > 0)
+            this.get(this.keys, baseKeyOffset, key, 0, prefixLen);
+        assert suffixLen > 0;
+        this.get(this.keys, suffixOffset, key, prefixLen, suffixLen);
+        return slice.set(key, 0, length);
+    }
+
     /**
      * Read the value at the specified index.
      */
@@ -132,6 +217,56 @@ class ArrayKVFinder {
         return this.get(this.vals, dataOffset, new byte[length], 0, length);
     }
 
+    /**
+     * Read the value at the specified index into the given slice.
+     *
+     * <p>
+     * If the value buffer is backed by an accessible array, the slice is pointed directly into that array and no copy is made.
+     * Otherwise, the value is copied as described for {@link #readKey(int, ByteSlice)}.
+     *
+     * @return {@code slice}
+     */
+    public ByteSlice readValue(int index, ByteSlice slice) {
+        Preconditions.checkArgument(index >= 0, "index < 0");
+        Preconditions.checkArgument(index < this.size, "index >= size");
+        final int dataOffset = this.indx.getInt(index * 8 + 4);
+        final int nextOffset = (index + 1) < this.size ? this.indx.getInt((index + 1) * 8 + 4) : this.vals.capacity();
+        final int length = nextOffset - dataOffset;
+        if (this.vals.hasArray())
+            return slice.set(this.vals.array(), this.vals.arrayOffset() + dataOffset, length);
+        final byte[] value = this.buffer(slice, length);
+        this.get(this.vals, dataOffset, value, 0, length);
+        return slice.set(value, 0, length);
+    }
+
+    /**
+     * Get the offset of the stored (i.e., prefix-compressed) key data for the specified index.
+     *
+     * <p>
+     * An {@code index} equal to the number of keys is allowed and returns the total size of the key data.
+     */
+    public int getKeyOffset(int index) {
+        Preconditions.checkArgument(index >= 0, "index < 0");
+        Preconditions.checkArgument(index <= this.size, "index > size");
+        if (index == this.size)
+            return this.keys.capacity();
+        final int baseIndex = index & ~0x1f;
+        final int baseKeyOffset = this.indx.getInt(baseIndex * 8);
+        return index == baseIndex ? baseKeyOffset : baseKeyOffset + (this.indx.getInt(index * 8) & 0x00ffffff);
+    }
+
+    /**
+     * Get the offset of the value data for the specified index.
+     *
+     * <p>
+     * An {@code index} equal to the number of keys is allowed and returns the total size of the value data.
+     */
+    public int getValueOffset(int index) {
+        Preconditions.checkArgument(index >= 0, "index < 0");
+        Preconditions.checkArgument(index <= this.size, "index > size");
+        return index < this.size ? this.indx.getInt(index * 8 + 4) : this.vals.capacity();
+    }
+
     /**
      * Read the key/value pair at the specified index.
      */
@@ -139,6 +274,12 @@ class ArrayKVFinder {
         return new KVPair(this.readKey(index), this.readValue(index));
     }
 
+    // Get an array with room for the given number of bytes, reusing the slice's current array if possible
+    private byte[] buffer(ByteSlice slice, int length) {
+        final byte[] buf = slice.getArray();
+        return buf.length >= length ? buf : new byte[length];
+    }
+
     // Perform a bulk get() that doesn't modify the buffer
     protected byte[] get(ByteBuffer buf, int position, byte[] dest, int off, int len) {
         if (buf.hasArray())
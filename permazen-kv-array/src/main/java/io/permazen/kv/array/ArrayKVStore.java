@@ -9,11 +9,18 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.UnmodifiableIterator;
 
 import io.permazen.kv.AbstractKVStore;
+import io.permazen.kv.KVCursor;
 import io.permazen.kv.KVPair;
+import io.permazen.kv.KeyRange;
+import io.permazen.kv.SizeEstimate;
+import io.permazen.kv.SizeEstimatingKVStore;
+import io.permazen.util.ByteSlice;
 import io.permazen.util.ByteUtil;
 import io.permazen.util.CloseableIterator;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.NoSuchElementException;
 
 /**
@@ -25,15 +32,25 @@ import java.util.NoSuchElementException;
  *
  * <p>
  * Instances are optimized for minimal memory overhead and queries using keys sharing a prefix with the previously
- * queried key. Key data is prefix-compressed.
+ * queried key. Key data is prefix-compressed. A sparse in-heap index containing one key for every 256 entries
+ * is built on construction; it confines each search to a small contiguous region of the index and key data.
+ *
+ * <p>
+ * An optional fourth {@link ByteBuffer} may contain a bloom filter over the keys, also created using {@link ArrayKVWriter},
+ * which allows {@link #get get()} to answer most lookups of keys that don't exist without searching the index and key data.
+ *
+ * <p>
+ * Size estimates are exact and are computed from the index in logarithmic time; byte counts reflect the stored
+ * (i.e., prefix-compressed) size of the key data.
  *
  * <p>
  * Key and value data must not exceed 2GB (each separately).
  */
-public class ArrayKVStore extends AbstractKVStore {
+public class ArrayKVStore extends AbstractKVStore implements SizeEstimatingKVStore {
 
     private final int size;
     private final ArrayKVFinder finder;
+    private final ArrayKVFilter filter;
 
     /**
      * Constructor.
@@ -45,16 +62,43 @@ public class ArrayKVStore extends AbstractKVStore {
      * @throws IllegalArgumentException if {@code indx} size is not a correct multiple
      */
     public ArrayKVStore(ByteBuffer indx, ByteBuffer keys, ByteBuffer vals) {
+        this(indx, keys, vals, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param indx buffer containing index data written by a {@link ArrayKVWriter}
+     * @param keys buffer containing key data written by a {@link ArrayKVWriter}
+     * @param vals buffer containing value data written by a {@link ArrayKVWriter}
+     * @param filter buffer containing bloom filter data written by a {@link ArrayKVWriter}, or null for none
+     * @throws IllegalArgumentException if {@code indx}, {@code keys}, or {@code vals} is null
+     * @throws IllegalArgumentException if {@code indx} size is not a correct multiple
+     * @throws IllegalArgumentException if {@code filter} is invalid
+     */
+    public ArrayKVStore(ByteBuffer indx, ByteBuffer keys, ByteBuffer vals, ByteBuffer filter) {
         Preconditions.checkArgument(indx != null, "null indx");
         Preconditions.checkArgument(keys != null, "null keys");
         Preconditions.checkArgument(vals != null, "null vals");
         Preconditions.checkArgument(indx.capacity() % 8 == 0, "index size is not a multiple of 8");
         this.size = indx.capacity() / 8;
         this.finder = new ArrayKVFinder(indx, keys, vals);
+        this.filter = filter != null ? new ArrayKVFilter(filter) : null;
+    }
+
+    /**
+     * Get the number of key/value pairs in this instance.
+     *
+     * @return number of key/value pairs
+     */
+    public int size() {
+        return this.size;
     }
 
     @Override
     public byte[] get(byte[] key) {
+        if (this.filter != null && !this.filter.mightContain(key))
+            return null;
         final int index = this.finder.find(key);
         if (index < 0)
             return null;
@@ -63,11 +107,7 @@ public class ArrayKVStore extends AbstractKVStore {
 
     @Override
     public KVPair getAtLeast(byte[] minKey, byte[] maxKey) {
-        int index;
-        if (minKey == null || minKey.length == 0)
-            index = 0;
-        else if ((index = this.finder.find(minKey)) < 0)
-            index = ~index;
+        final int index = this.findMinIndex(minKey);
         if (index == this.size)
             return null;
         final KVPair pair = this.finder.readKV(index);
@@ -77,11 +117,7 @@ public class ArrayKVStore extends AbstractKVStore {
 
     @Override
     public KVPair getAtMost(byte[] maxKey, byte[] minKey) {
-        int index;
-        if (maxKey == null)
-            index = this.size;
-        else if ((index = this.finder.find(maxKey)) < 0)
-            index = ~index;
+        final int index = this.findMaxIndex(maxKey);
         if (index == 0)
             return null;
         final KVPair pair = this.finder.readKV(index - 1);
@@ -91,24 +127,20 @@ public class ArrayKVStore extends AbstractKVStore {
 
     @Override
     public CloseableIterator<KVPair> getRange(byte[] minKey, byte[] maxKey, final boolean reverse) {
+        return new RangeIter(this.findMinIndex(minKey), this.findMaxIndex(maxKey), reverse);
+    }
 
-        // Find min index
-        int index;
-        if (minKey == null || minKey.length == 0)
-            index = 0;
-        else if ((index = this.finder.find(minKey)) < 0)
-            index = ~index;
-        final int minIndex = index;
-
-        // Find max index
-        if (maxKey == null)
-            index = this.size;
-        else if ((index = this.finder.find(maxKey)) < 0)
-            index = ~index;
-        final int maxIndex = index;
-
-        // Return iterator over array indexes
-        return new RangeIter(minIndex, maxIndex, reverse);
+    /**
+     * Iterate the key/value pairs in the specified range using a cursor that avoids per-pair allocation.
+     *
+     * <p>
+     * The returned cursor reuses a single key array, growing it as needed to hold the longest key seen so far.
+     * If the value buffer is backed by an accessible array, values are returned as slices of that array
+     * without copying; otherwise, a single value array is likewise reused.
+     */
+    @Override
+    public KVCursor getRangeView(byte[] minKey, byte[] maxKey, boolean reverse) {
+        return new RangeCursor(this.findMinIndex(minKey), this.findMaxIndex(maxKey), reverse);
     }
 
     @Override
@@ -126,6 +158,70 @@ public class ArrayKVStore extends AbstractKVStore {
         throw new UnsupportedOperationException();
     }
 
+// SizeEstimatingKVStore
+
+    @Override
+    public SizeEstimate estimateSize(KeyRange range) {
+        Preconditions.checkArgument(range != null, "null range");
+        final int minIndex = this.findMinIndex(range.getMin());
+        final int maxIndex = Math.max(this.findMaxIndex(range.getMax()), minIndex);
+        return new SizeEstimate(maxIndex - minIndex, this.offset(maxIndex) - this.offset(minIndex));
+    }
+
+    @Override
+    public List<byte[]> getSplitKeys(KeyRange range, int count) {
+        Preconditions.checkArgument(range != null, "null range");
+        Preconditions.checkArgument(count >= 0, "count < 0");
+        final int minIndex = this.findMinIndex(range.getMin());
+        final int maxIndex = Math.max(this.findMaxIndex(range.getMax()), minIndex);
+        final long base = this.offset(minIndex);
+        final long total = this.offset(maxIndex) - base;
+        final ArrayList<byte[]> splitKeys = new ArrayList<>(Math.min(count, maxIndex - minIndex));
+        int prevIndex = minIndex;
+        for (int i = 1; i <= count; i++) {
+
+            // Binary search for the first index at or beyond the target offset
+            final long target = base + total * i / (count + 1);
+            int lo = prevIndex + 1;
+            int hi = maxIndex;
+            while (lo < hi) {
+                final int mid = (lo + hi) >>> 1;
+                if (this.offset(mid) < target)
+                    lo = mid + 1;
+                else
+                    hi = mid;
+            }
+            if (lo >= maxIndex)
+                break;
+            splitKeys.add(this.finder.readKey(lo));
+            prevIndex = lo;
+        }
+        return splitKeys;
+    }
+
+    // Get the combined offset of key and value data at the given index
+    private long offset(int index) {
+        return (long)this.finder.getKeyOffset(index) + this.finder.getValueOffset(index);
+    }
+
+    private int findMinIndex(byte[] minKey) {
+        int index;
+        if (minKey == null || minKey.length == 0)
+            index = 0;
+        else if ((index = this.finder.find(minKey)) < 0)
+            index = ~index;
+        return index;
+    }
+
+    private int findMaxIndex(byte[] maxKey) {
+        int index;
+        if (maxKey == null)
+            index = this.size;
+        else if ((index = this.finder.find(maxKey)) < 0)
+            index = ~index;
+        return index;
+    }
+
 // RangeIter
 
     private class RangeIter extends UnmodifiableIterator<KVPair> implements CloseableIterator<KVPair> {
@@ -157,5 +253,56 @@ public class ArrayKVStore extends AbstractKVStore {
         public void close() {
         }
     }
-}
 
+// RangeCursor
+
+    private class RangeCursor implements KVCursor {
+
+        private final ByteSlice key = new ByteSlice();
+        private final ByteSlice value = new ByteSlice();
+        private final int limit;
+        private final boolean reverse;
+
+        private int index;
+        private boolean positioned;
+        private boolean closed;
+
+        RangeCursor(int minIndex, int maxIndex, boolean reverse) {
+            this.index = reverse ? maxIndex : minIndex;
+            this.limit = reverse ? minIndex : maxIndex;
+            this.reverse = reverse;
+        }
+
+        @Override
+        public boolean next() {
+            Preconditions.checkState(!this.closed, "closed");
+            if (this.reverse ? this.index <= this.limit : this.index >= this.limit) {
+                this.positioned = false;
+                return false;
+            }
+            final int next = this.reverse ? --this.index : this.index++;
+            ArrayKVStore.this.finder.readKey(next, this.key);
+            ArrayKVStore.this.finder.readValue(next, this.value);
+            this.positioned = true;
+            return true;
+        }
+
+        @Override
+        public ByteSlice getKey() {
+            Preconditions.checkState(this.positioned, "not positioned on a key/value pair");
+            return this.key;
+        }
+
+        @Override
+        public ByteSlice getValue() {
+            Preconditions.checkState(this.positioned, "not positioned on a key/value pair");
+            return this.value;
+        }
+
+        @Override
+        public void close() {
+            this.closed = true;
+            this.positioned = false;
+        }
+    }
+}
@@ -25,6 +25,10 @@ import java.util.Map;
  * Writes {@link ArrayKVStore} index, key, and value data, given a sorted sequence of key/value pairs.
  *
  * <p>
+ * Optionally, a bloom filter over the keys may also be written, allowing {@link ArrayKVStore#get ArrayKVStore.get()}
+ * to answer most lookups of keys that don't exist without searching the index and key data.
+ *
+ * <p>
  * Key and value data must not exceed 2GB (each separately).
  */
 public class ArrayKVWriter implements Closeable {
@@ -39,6 +43,8 @@ public class ArrayKVWriter implements Closeable {
     private final BufferedOutputStream indxOutput;
     private final BufferedOutputStream keysOutput;
     private final BufferedOutputStream valsOutput;
+    private final OutputStream filterOutput;
+    private final ArrayKVFilter.Builder filterBuilder;
 
     private int keysLength;
     private int valsLength;
@@ -47,6 +53,7 @@ public class ArrayKVWriter implements Closeable {
     private byte[] prevKey;
     private byte[] baseKey;
     private int baseKeyOffset;
+    private boolean filterWritten;
     private boolean closed;
 
     /**
@@ -57,12 +64,36 @@ public class ArrayKVWriter implements Closeable {
      * @param valsOutput value data file output
      */
     public ArrayKVWriter(OutputStream indxOutput, OutputStream keysOutput, OutputStream valsOutput) {
+        this(indxOutput, keysOutput, valsOutput, null, 0, 0);
+    }
+
+    /**
+     * Constructor for writing a bloom filter in addition to the index, key, and value data.
+     *
+     * <p>
+     * The filter is sized for {@code expectedKeys} keys; writing more keys than that is allowed but increases the
+     * filter's false positive rate. The filter data is written by the first invocation of {@link #flush} or {@link #close},
+     * after which no more key/value pairs may be written.
+     *
+     * @param indxOutput index file output
+     * @param keysOutput key data file output
+     * @param valsOutput value data file output
+     * @param filterOutput bloom filter file output, or null for none
+     * @param expectedKeys expected number of keys, used to size the filter (ignored if {@code filterOutput} is null)
+     * @param bitsPerKey number of filter bits per key (ignored if {@code filterOutput} is null)
+     * @throws IllegalArgumentException if {@code filterOutput} is not null and {@code expectedKeys} is negative
+     *  or {@code bitsPerKey} is not positive
+     */
+    public ArrayKVWriter(OutputStream indxOutput, OutputStream keysOutput, OutputStream valsOutput,
+      OutputStream filterOutput, int expectedKeys, int bitsPerKey) {
         Preconditions.checkArgument(indxOutput != null, "null indxOutput");
         Preconditions.checkArgument(keysOutput != null, "null keysOutput");
         Preconditions.checkArgument(valsOutput != null, "null valsOutput");
         this.indxOutput = new BufferedOutputStream(indxOutput, BUFFER_SIZE);
         this.keysOutput = new BufferedOutputStream(keysOutput, BUFFER_SIZE);
         this.valsOutput = new BufferedOutputStream(valsOutput, BUFFER_SIZE);
+        this.filterOutput = filterOutput;
+        this.filterBuilder = filterOutput != null ? new ArrayKVFilter.Builder(expectedKeys, bitsPerKey) : null;
     }
 
     /**
@@ -100,6 +131,7 @@ public class ArrayKVWriter implements Closeable {
      * @throws IllegalArgumentException if {@code key} is out of order (i.e., not strictly greater then the previous key)
      * @throws IllegalArgumentException if {@code key} or {@code val} is null
      * @throws IllegalStateException if either the key or data file would grow larger than 2<sup>31</sup>-1 bytes
+     * @throws IllegalStateException if the bloom filter has already been written
      * @throws IOException if an I/O error occurrs
      */
     public void writeKV(byte[] key, byte[] val) throws IOException {
@@ -107,6 +139,7 @@ public class ArrayKVWriter implements Closeable {
         // Sanity checks
         Preconditions.checkArgument(key != null, "null key");
         Preconditions.checkArgument(val != null, "null value");
+        Preconditions.checkState(!this.filterWritten, "filter already written");
         Preconditions.checkArgument(this.prevKey == null || ByteUtil.compare(key, this.prevKey) > 0, "key <= previous key");
         Preconditions.checkState((this.nextIndex * 8) + 8 > 0, "too much index data");
         Preconditions.checkState(this.keysLength == 0 || this.keysLength + key.length > 0, "too much key data");
@@ -150,6 +183,10 @@ public class ArrayKVWriter implements Closeable {
         this.valsOutput.write(val);
         this.valsLength += val.length;
 
+        // Update filter
+        if (this.filterBuilder != null)
+            this.filterBuilder.add(key);
+
         // Update state
         this.prevKey = this.cloneOrCopy(this.prevKey, key);
         this.nextIndex++;
@@ -301,18 +338,21 @@ public class ArrayKVWriter implements Closeable {
     }
 
     /**
-     * Flush all three outputs.
+     * Flush all outputs, first writing out the bloom filter (if any) if not already written.
      *
      * @throws IOException if an I/O error occurrs
      */
     public void flush() throws IOException {
+        this.writeFilter();
         this.indxOutput.flush();
         this.keysOutput.flush();
         this.valsOutput.flush();
+        if (this.filterOutput != null)
+            this.filterOutput.flush();
     }
 
     /**
-     * Close all three outputs.
+     * Close all outputs, first writing out the bloom filter (if any) if not already written.
      *
      * @throws IOException if an I/O error occurrs
      */
@@ -320,10 +360,20 @@ public class ArrayKVWriter implements Closeable {
     public void close() throws IOException {
         if (this.closed)
             return;
+        this.writeFilter();
         this.closed = true;
         this.indxOutput.close();
         this.keysOutput.close();
         this.valsOutput.close();
+        if (this.filterOutput != null)
+            this.filterOutput.close();
+    }
+
+    private void writeFilter() throws IOException {
+        if (this.filterBuilder == null || this.filterWritten)
+            return;
+        this.filterBuilder.writeTo(this.filterOutput);
+        this.filterWritten = true;
     }
 
     // Copy array if we have to, otherwise just overwrite the previous copy if the array length hasn't chagned
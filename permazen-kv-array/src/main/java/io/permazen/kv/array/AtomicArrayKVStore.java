@@ -14,6 +14,8 @@ import io.permazen.kv.KVPair;
 import io.permazen.kv.KVStore;
 import io.permazen.kv.KeyRange;
 import io.permazen.kv.KeyRanges;
+import io.permazen.kv.SizeEstimate;
+import io.permazen.kv.SizeEstimatingKVStore;
 import io.permazen.kv.mvcc.AtomicKVStore;
 import io.permazen.kv.mvcc.MutableView;
 import io.permazen.kv.mvcc.Mutations;
@@ -22,6 +24,7 @@ import io.permazen.kv.util.CloseableForwardingKVStore;
 import io.permazen.util.ByteUtil;
 import io.permazen.util.CloseableIterator;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.Closeable;
 import java.io.File;
@@ -41,9 +44,11 @@ import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.NavigableMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
@@ -51,6 +56,7 @@ import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
@@ -69,9 +75,9 @@ import org.slf4j.LoggerFactory;
  * It is optimized for relatively infrequent writes.
  *
  * <p>
- * A (read-only) {@link ArrayKVStore} is the basis for the database; the array files are mapped into memory. As mutations are
- * applied, they are added to an in-memory change set, and appended to a mutation log file for persistence. On restart,
- * the mutation log file (if any) is read to reconstruct the in-memory change set.
+ * One or more (read-only) {@link ArrayKVStore} levels are the basis for the database; the array files are mapped into memory.
+ * As mutations are applied, they are added to an in-memory change set, and appended to a mutation log file for persistence.
+ * On restart, the mutation log file (if any) is read to reconstruct the in-memory change set.
  *
  * <p>
  * <b>Compaction</b>
@@ -99,6 +105,31 @@ import org.slf4j.LoggerFactory;
  * by the in-memory change set.
  *
  * <p>
+ * <b>Levels</b>
+ *
+ * <p>
+ * To keep the cost of compaction proportional to the volume of changes rather than the size of the database, the array
+ * files are organized into levels. The bottom level contains key/value pairs only; each level above it contains
+ * key/value pairs plus the key ranges removed from the levels below it. Reads merge all levels, newer levels taking precedence.
+ *
+ * <p>
+ * Each compaction writes the outstanding changes into a new top level, first merging in any existing levels that are not
+ * at least {@linkplain #setCompactSizeRatio compaction size ratio} times larger than the data merged so far, as well as
+ * any levels necessary to stay within the {@linkplain #setCompactMaxLevels maximum number of levels}. As a result, level
+ * sizes grow geometrically, and most compactions only rewrite the small upper levels. Removed key ranges are discarded
+ * once merged into the bottom level. Configuring a maximum of one level causes every compaction to rewrite the entire
+ * database.
+ *
+ * <p>
+ * <b>Bloom Filters</b>
+ *
+ * <p>
+ * By default, compaction also writes a bloom filter over the keys in each level, so that lookups of keys that
+ * don't exist in a level usually don't need to touch that level's index and key data. This matters most when
+ * the array files are larger than available memory, or when there are many levels. See
+ * {@link #setBloomFilterBitsPerKey setBloomFilterBitsPerKey()}.
+ *
+ * <p>
  * <b>Hot Backups</b>
  *
  * <p>
@@ -114,10 +145,14 @@ import org.slf4j.LoggerFactory;
  * <p>
  * Instances may be stopped and (re)started multiple times.
  *
+ * <p>
+ * {@linkplain #estimateSize Size estimates} are computed from the index of each level, plus any uncompacted
+ * puts; removals and overwritten values are ignored. {@linkplain #getSplitKeys Split keys} are based on the bottom level only.
+ *
  * @see <a href="https://en.wikipedia.org/wiki/Write-ahead_logging">Write-ahead logging</a>
  */
 @ThreadSafe
-public class AtomicArrayKVStore extends AbstractKVStore implements AtomicKVStore {
+public class AtomicArrayKVStore extends AbstractKVStore implements AtomicKVStore, SizeEstimatingKVStore {
 
     /**
      * Default compaction maximum delay in seconds ({@value #DEFAULT_COMPACTION_MAX_DELAY} seconds).
@@ -134,6 +169,21 @@ public class AtomicArrayKVStore extends AbstractKVStore implements AtomicKVStore
      */
     public static final int DEFAULT_COMPACTION_HIGH_WATER = 1024 * 1024 * 1024;
 
+    /**
+     * Default compaction size ratio between adjacent levels ({@value #DEFAULT_COMPACTION_SIZE_RATIO}).
+     */
+    public static final int DEFAULT_COMPACTION_SIZE_RATIO = 10;
+
+    /**
+     * Default compaction maximum number of levels ({@value #DEFAULT_COMPACTION_MAX_LEVELS}).
+     */
+    public static final int DEFAULT_COMPACTION_MAX_LEVELS = 8;
+
+    /**
+     * Default number of bloom filter bits per key ({@value #DEFAULT_BLOOM_FILTER_BITS_PER_KEY}).
+     */
+    public static final int DEFAULT_BLOOM_FILTER_BITS_PER_KEY = 10;
+
     private static final int MIN_MMAP_LENGTH = 1024 * 1024;
 
     private static final String GENERATION_FILE_NAME = "gen";
@@ -141,6 +191,8 @@ public class AtomicArrayKVStore extends AbstractKVStore implements AtomicKVStore
     private static final String INDX_FILE_NAME_BASE = "indx.";
     private static final String KEYS_FILE_NAME_BASE = "keys.";
     private static final String VALS_FILE_NAME_BASE = "vals.";
+    private static final String RMVS_FILE_NAME_BASE = "rmvs.";
+    private static final String FLTR_FILE_NAME_BASE = "fltr.";
     private static final String MODS_FILE_NAME_BASE = "mods.";
 
     private final Logger log = LoggerFactory.getLogger(this.getClass());
@@ -162,6 +214,12 @@ public class AtomicArrayKVStore extends AbstractKVStore implements AtomicKVStore
     private int compactLowWater = DEFAULT_COMPACTION_LOW_WATER;
     @GuardedBy("lock")
     private int compactHighWater = DEFAULT_COMPACTION_HIGH_WATER;
+    @GuardedBy("lock")
+    private int compactSizeRatio = DEFAULT_COMPACTION_SIZE_RATIO;
+    @GuardedBy("lock")
+    private int compactMaxLevels = DEFAULT_COMPACTION_MAX_LEVELS;
+    @GuardedBy("lock")
+    private int bloomFilterBitsPerKey = DEFAULT_BLOOM_FILTER_BITS_PER_KEY;
 
     // Runtime state
     @GuardedBy("lock")
@@ -175,12 +233,6 @@ public class AtomicArrayKVStore extends AbstractKVStore implements AtomicKVStore
     @GuardedBy("lock")
     private FileChannel lockFileChannel;
     @GuardedBy("lock")
-    private File indxFile;
-    @GuardedBy("lock")
-    private File keysFile;
-    @GuardedBy("lock")
-    private File valsFile;
-    @GuardedBy("lock")
     private File modsFile;
     @GuardedBy("lock")
     private FileOutputStream modsFileOutput;
@@ -191,13 +243,9 @@ public class AtomicArrayKVStore extends AbstractKVStore implements AtomicKVStore
     @GuardedBy("lock")
     private long modsFileSyncPoint;
     @GuardedBy("lock")
-    private ByteBuffer indx;
-    @GuardedBy("lock")
-    private ByteBuffer keys;
-    @GuardedBy("lock")
-    private ByteBuffer vals;
+    private List<Level> levels;                                         // bottom level first
     @GuardedBy("lock")
-    private ArrayKVStore kvstore;
+    private KVStore kvstore;                                            // view of all levels
     @GuardedBy("lock")
     private MutableView mods;
     @GuardedBy("lock")
@@ -329,6 +377,90 @@ public class AtomicArrayKVStore extends AbstractKVStore implements AtomicKVStore
         }
     }
 
+    /**
+     * Configure the compaction size ratio between adjacent levels.
+     *
+     * <p>
+     * When compacting, existing levels are merged into the new top level, starting with the topmost level, until reaching
+     * a level whose size is at least this many times the total size of the data being merged.
+     *
+     * @param compactSizeRatio compaction size ratio
+     * @throws IllegalArgumentException if {@code compactSizeRatio} is less than one
+     * @throws IllegalStateException if this instance is already {@link #start}ed
+     */
+    public void setCompactSizeRatio(int compactSizeRatio) {
+        Preconditions.checkArgument(compactSizeRatio >= 1, "invalid value");
+        this.writeLock.lock();
+        try {
+            Preconditions.checkState(this.kvstore == null, "already started");
+            this.compactSizeRatio = compactSizeRatio;
+        } finally {
+            this.writeLock.unlock();
+        }
+    }
+
+    /**
+     * Configure the maximum number of levels.
+     *
+     * <p>
+     * More levels reduce the amount of data rewritten by each compaction, at the cost of slower reads.
+     * Setting this to one causes every compaction to rewrite the entire database.
+     *
+     * @param compactMaxLevels maximum number of levels
+     * @throws IllegalArgumentException if {@code compactMaxLevels} is less than one
+     * @throws IllegalStateException if this instance is already {@link #start}ed
+     */
+    public void setCompactMaxLevels(int compactMaxLevels) {
+        Preconditions.checkArgument(compactMaxLevels >= 1, "invalid value");
+        this.writeLock.lock();
+        try {
+            Preconditions.checkState(this.kvstore == null, "already started");
+            this.compactMaxLevels = compactMaxLevels;
+        } finally {
+            this.writeLock.unlock();
+        }
+    }
+
+    /**
+     * Configure the number of bloom filter bits per key.
+     *
+     * <p>
+     * This determines the size of the bloom filter written with each new level; ten bits per key gives a false positive
+     * rate of about one percent. Set to zero to disable writing bloom filters. Existing bloom filters are always used.
+     *
+     * @param bloomFilterBitsPerKey bloom filter bits per key, or zero for no bloom filters
+     * @throws IllegalArgumentException if {@code bloomFilterBitsPerKey} is negative
+     * @throws IllegalStateException if this instance is already {@link #start}ed
+     */
+    public void setBloomFilterBitsPerKey(int bloomFilterBitsPerKey) {
+        Preconditions.checkArgument(bloomFilterBitsPerKey >= 0, "negative value");
+        this.writeLock.lock();
+        try {
+            Preconditions.checkState(this.kvstore == null, "already started");
+            this.bloomFilterBitsPerKey = bloomFilterBitsPerKey;
+        } finally {
+            this.writeLock.unlock();
+        }
+    }
+
+    /**
+     * Get the sizes of the current levels.
+     *
+     * @return the size in bytes of each level's files, bottom level first
+     * @throws IllegalStateException if this instance is not started
+     */
+    public List<Long> getLevelSizes() {
+        this.readLock.lock();
+        try {
+            Preconditions.checkState(this.kvstore != null, "not started");
+            return this.levels.stream()
+              .map(level -> level.bytes)
+              .collect(Collectors.toList());
+        } finally {
+            this.readLock.unlock();
+        }
+    }
+
     /**
      * Get the total number of milliseconds spent in artificial delays caused by waiting for compaction.
      *
@@ -367,17 +499,12 @@ public class AtomicArrayKVStore extends AbstractKVStore implements AtomicKVStore
             assert this.generationFile == null;
             assert this.lockFile == null;
             assert this.lockFileChannel == null;
-            assert this.indxFile == null;
-            assert this.keysFile == null;
-            assert this.valsFile == null;
             assert this.modsFile == null;
             assert this.modsFileOutput == null;
             assert this.directoryChannel == null;
             assert this.modsFileLength == 0;
             assert this.modsFileSyncPoint == 0;
-            assert this.indx == null;
-            assert this.keys == null;
-            assert this.vals == null;
+            assert this.levels == null;
             assert this.kvstore == null;
             assert this.mods == null;
             assert this.modsWritesSnapshot == null;
@@ -436,14 +563,16 @@ public class AtomicArrayKVStore extends AbstractKVStore implements AtomicKVStore
             this.generationFile = new File(this.directory, GENERATION_FILE_NAME);
             if (!this.generationFile.exists()) {
 
-                // Verify no index, keys, or values file exists
+                // Verify no index, keys, values, or removes file exists
                 try (DirectoryStream<Path> paths = Files.newDirectoryStream(this.directory.toPath())) {
                     for (Path path : paths) {
                         final File file = path.toFile();
                         final String name = file.getName();
                         if (name.startsWith(INDX_FILE_NAME_BASE)
                           || name.startsWith(KEYS_FILE_NAME_BASE)
-                          || name.startsWith(VALS_FILE_NAME_BASE)) {
+                          || name.startsWith(VALS_FILE_NAME_BASE)
+                          || name.startsWith(RMVS_FILE_NAME_BASE)
+                          || name.startsWith(FLTR_FILE_NAME_BASE)) {
                             throw new ArrayKVException("database file inconsistency: found "
                               + name + " but not " + GENERATION_FILE_NAME + " in " + this.directory);
                         }
@@ -474,7 +603,9 @@ public class AtomicArrayKVStore extends AbstractKVStore implements AtomicKVStore
                     this.directoryChannel.force(false);
             }
 
-            // Read current generation number
+            // Read current generation number and level generations (bottom level first); if there is no second line,
+            // then there is a single level having the current generation number
+            final List<Long> levelGenerations = new ArrayList<>();
             try (LineNumberReader reader = new LineNumberReader(
               new InputStreamReader(new FileInputStream(this.generationFile), "UTF-8"))) {
                 final String line = reader.readLine();
@@ -483,19 +614,33 @@ public class AtomicArrayKVStore extends AbstractKVStore implements AtomicKVStore
                 this.generation = Long.parseLong(line.trim(), 10);
                 if (this.generation < 0)
                     throw new ArrayKVException("read negative generation number from " + this.generationFile);
-            } catch (Exception e) {
+                final String levelsLine = reader.readLine();
+                if (levelsLine != null && !levelsLine.trim().isEmpty()) {
+                    for (String levelGeneration : levelsLine.trim().split("\\s+")) {
+                        final long value = Long.parseLong(levelGeneration, 10);
+                        if (value < 0 || value > this.generation)
+                            throw new ArrayKVException("read invalid level generation number from " + this.generationFile);
+                        levelGenerations.add(value);
+                    }
+                } else
+                    levelGenerations.add(this.generation);
+            } catch (IOException | NumberFormatException e) {
                 throw new ArrayKVException("error reading generation file", e);
             }
 
-            // Set corresponding filenames
-            this.indxFile = new File(this.directory, INDX_FILE_NAME_BASE + this.generation);
-            this.keysFile = new File(this.directory, KEYS_FILE_NAME_BASE + this.generation);
-            this.valsFile = new File(this.directory, VALS_FILE_NAME_BASE + this.generation);
+            // Open levels
+            final ArrayList<Level> levelList = new ArrayList<>(levelGenerations.size());
+            for (int i = 0; i < levelGenerations.size(); i++)
+                levelList.add(new Level(this.directory, levelGenerations.get(i), i == 0));
+            this.levels = Collections.unmodifiableList(levelList);
+
+            // Set corresponding mods filename
             this.modsFile = new File(this.directory, MODS_FILE_NAME_BASE + this.generation);
 
             // Scan directory for unexpected files
-            final List<File> expectedFiles = Arrays.asList(this.lockFile, this.generationFile,
-              this.indxFile, this.keysFile, this.valsFile, this.modsFile);
+            final List<File> expectedFiles = new ArrayList<>(Arrays.asList(this.lockFile, this.generationFile, this.modsFile));
+            for (Level level : this.levels)
+                expectedFiles.addAll(level.getFiles());
             try (DirectoryStream<Path> paths = Files.newDirectoryStream(this.directory.toPath())) {
                 for (Path path : paths) {
                     final File file = path.toFile();
@@ -504,19 +649,8 @@ public class AtomicArrayKVStore extends AbstractKVStore implements AtomicKVStore
                 }
             }
 
-            // Create buffers that wrap the index, keys, and values files
-            try (FileInputStream input = new FileInputStream(this.indxFile)) {
-                this.indx = AtomicArrayKVStore.getBuffer(this.indxFile, input.getChannel());
-            }
-            try (FileInputStream input = new FileInputStream(this.keysFile)) {
-                this.keys = AtomicArrayKVStore.getBuffer(this.keysFile, input.getChannel());
-            }
-            try (FileInputStream input = new FileInputStream(this.valsFile)) {
-                this.vals = AtomicArrayKVStore.getBuffer(this.valsFile, input.getChannel());
-            }
-
             // Set up underlying k/v store and uncompacted modifications
-            this.kvstore = new ArrayKVStore(this.indx, this.keys, this.vals);
+            this.kvstore = AtomicArrayKVStore.buildView(this.levels, 0);
             this.mods = new MutableView(this.kvstore, null, new Writes());
 
             // Setup modifications file
@@ -636,17 +770,12 @@ public class AtomicArrayKVStore extends AbstractKVStore implements AtomicKVStore
         this.generationFile = null;
         this.lockFile = null;
         this.lockFileChannel = null;
-        this.indxFile = null;
-        this.keysFile = null;
-        this.valsFile = null;
         this.modsFile = null;
         this.modsFileOutput = null;
         this.directoryChannel = null;
         this.modsFileLength = 0;
         this.modsFileSyncPoint = 0;
-        this.indx = null;
-        this.keys = null;
-        this.vals = null;
+        this.levels = null;
         this.kvstore = null;
         this.mods = null;
         this.modsWritesSnapshot = null;
@@ -948,6 +1077,50 @@ public class AtomicArrayKVStore extends AbstractKVStore implements AtomicKVStore
         }
     }
 
+// SizeEstimatingKVStore
+
+    @Override
+    public SizeEstimate estimateSize(KeyRange range) {
+        Preconditions.checkArgument(range != null, "null range");
+        this.readLock.lock();
+        try {
+            Preconditions.checkState(this.kvstore != null, "closed");
+            SizeEstimate estimate = AtomicArrayKVStore.estimatePuts(this.mods, range);
+            for (Level level : this.levels)
+                estimate = estimate.plus(level.kvstore.estimateSize(range));
+            if (this.mods.getKVStore() instanceof MutableView)                                 // we are compacting
+                estimate = estimate.plus(AtomicArrayKVStore.estimatePuts((MutableView)this.mods.getKVStore(), range));
+            return estimate;
+        } finally {
+            this.readLock.unlock();
+        }
+    }
+
+    @Override
+    public List<byte[]> getSplitKeys(KeyRange range, int count) {
+        this.readLock.lock();
+        try {
+            Preconditions.checkState(this.kvstore != null, "closed");
+            return this.levels.get(0).kvstore.getSplitKeys(range, count);
+        } finally {
+            this.readLock.unlock();
+        }
+    }
+
+    private static SizeEstimate estimatePuts(MutableView view, KeyRange range) {
+        synchronized (view) {
+            final NavigableMap<byte[], byte[]> puts = view.getWrites().getPuts();
+            final NavigableMap<byte[], byte[]> rangePuts = range.getMax() != null ?
+              puts.subMap(range.getMin(), true, range.getMax(), false) : puts.tailMap(range.getMin(), true);
+            if (rangePuts.isEmpty())
+                return SizeEstimate.EMPTY;
+            long bytes = 0;
+            for (Map.Entry<byte[], byte[]> entry : rangePuts.entrySet())
+                bytes += entry.getKey().length + entry.getValue().length;
+            return new SizeEstimate(rangePuts.size(), bytes);
+        }
+    }
+
 // Hot Copy
 
     /**
@@ -993,6 +1166,7 @@ public class AtomicArrayKVStore extends AbstractKVStore implements AtomicKVStore
         }
 
         // Increment hot copy counter - this prevents compaction from removing files while we're copying them
+        final List<Level> levelsToCopy;
         this.writeLock.lock();
         try {
 
@@ -1001,6 +1175,7 @@ public class AtomicArrayKVStore extends AbstractKVStore implements AtomicKVStore
 
             // Bump counter
             this.hotCopiesInProgress++;
+            levelsToCopy = this.levels;
         } finally {
             this.writeLock.unlock();
         }
@@ -1009,13 +1184,15 @@ public class AtomicArrayKVStore extends AbstractKVStore implements AtomicKVStore
             // Logit
             this.log.debug("started hot copy into " + target);
 
-            // Copy index, keys, and values files using hard links (if possible) as these files are read-only
-            final ArrayList<File> regularCopyFiles = new ArrayList<>(5);
-            for (File file : new File[] { this.indxFile, this.keysFile, this.valsFile }) {
-                try {
-                    Files.createLink(dir.resolve(file.getName()), file.toPath());
-                } catch (IOException | UnsupportedOperationException e) {
-                    regularCopyFiles.add(file);                      // fall back to normal copy
+            // Copy each level's files using hard links (if possible) as these files are read-only
+            final ArrayList<File> regularCopyFiles = new ArrayList<>();
+            for (Level level : levelsToCopy) {
+                for (File file : level.getFiles()) {
+                    try {
+                        Files.createLink(dir.resolve(file.getName()), file.toPath());
+                    } catch (IOException | UnsupportedOperationException e) {
+                        regularCopyFiles.add(file);                  // fall back to normal copy
+                    }
                 }
             }
 
@@ -1182,6 +1359,11 @@ public class AtomicArrayKVStore extends AbstractKVStore implements AtomicKVStore
 
             // Snapshot (and wrap) pending modifications, and mark log file position
             final Writes writesToCompact;
+            final MutableView compactingMods;
+            final List<Level> oldLevels;
+            final int sizeRatio;
+            final int maxLevels;
+            final int bitsPerKey;
             final long previousModsFileLength;
             final long previousModsFileSyncPoint;
             this.writeLock.lock();
@@ -1222,6 +1404,11 @@ public class AtomicArrayKVStore extends AbstractKVStore implements AtomicKVStore
                 }
 
                 // Allow new modifications to be added by other threads while we are compacting the old modifications
+                compactingMods = this.mods;
+                oldLevels = this.levels;
+                sizeRatio = this.compactSizeRatio;
+                maxLevels = this.compactMaxLevels;
+                bitsPerKey = this.bloomFilterBitsPerKey;
                 this.mods = new MutableView(this.mods, null, new Writes());
                 this.modsWritesSnapshot = null;
                 previousModsFileLength = this.modsFileLength;
@@ -1229,9 +1416,34 @@ public class AtomicArrayKVStore extends AbstractKVStore implements AtomicKVStore
             } finally {
                 this.writeLock.unlock();
             }
+
+            // Decide which existing levels to merge with the uncompacted modifications, starting from the top
+            int mergeStart = oldLevels.size();
+            long mergeBytes = AtomicArrayKVStore.estimateBytes(writesToCompact);
+            while (mergeStart > 0) {
+                final Level below = oldLevels.get(mergeStart - 1);
+                if (mergeStart < maxLevels && below.bytes / sizeRatio >= mergeBytes)
+                    break;
+                mergeBytes += below.bytes;
+                mergeStart--;
+            }
             if (this.log.isDebugEnabled()) {
                 this.log.debug("starting compaction for generation " + this.generation + " -> " + (this.generation + 1)
-                  + " with mods file length " + previousModsFileLength);
+                  + " with mods file length " + previousModsFileLength + ", merging "
+                  + (oldLevels.size() - mergeStart) + "/" + oldLevels.size() + " levels");
+            }
+
+            // Unless merging into the bottom level, counter adjustments must be resolved against all levels
+            Writes mutationsToCompact = writesToCompact;
+            if (mergeStart > 0 && !writesToCompact.getAdjusts().isEmpty()) {
+                final Writes resolvedWrites = writesToCompact.clone();
+                resolvedWrites.getAdjusts().clear();
+                for (byte[] key : writesToCompact.getAdjusts().keySet()) {
+                    final byte[] value = compactingMods.get(key);
+                    if (value != null)
+                        resolvedWrites.getPuts().put(key, value);
+                }
+                mutationsToCompact = resolvedWrites;
             }
 
             // Create the next generation
@@ -1239,28 +1451,42 @@ public class AtomicArrayKVStore extends AbstractKVStore implements AtomicKVStore
             final File newIndxFile = new File(this.directory, INDX_FILE_NAME_BASE + newGeneration);
             final File newKeysFile = new File(this.directory, KEYS_FILE_NAME_BASE + newGeneration);
             final File newValsFile = new File(this.directory, VALS_FILE_NAME_BASE + newGeneration);
+            final File newRmvsFile = new File(this.directory, RMVS_FILE_NAME_BASE + newGeneration);
+            final File newFltrFile = new File(this.directory, FLTR_FILE_NAME_BASE + newGeneration);
             final File newModsFile = new File(this.directory, MODS_FILE_NAME_BASE + newGeneration);
-            ByteBuffer newIndx = null;
-            ByteBuffer newKeys = null;
-            ByteBuffer newVals = null;
+            Level newLevel = null;
             FileOutputStream newModsFileOutput = null;
             boolean success = false;
             try {
 
-                // Merge existing compacted key/value data with uncompacted modifications
+                // Size the bloom filter, if any, using an upper bound on the number of keys
+                long expectedKeys = 0;
+                if (bitsPerKey > 0) {
+                    for (Level level : oldLevels.subList(mergeStart, oldLevels.size()))
+                        expectedKeys += level.kvstore.size();
+                    expectedKeys += mutationsToCompact.getPuts().size() + mutationsToCompact.getAdjusts().size();
+                }
+
+                // Merge the chosen levels' key/value data with uncompacted modifications
                 try (
                   final FileOutputStream indxOutput = new FileOutputStream(newIndxFile);
                   final FileOutputStream keysOutput = new FileOutputStream(newKeysFile);
                   final FileOutputStream valsOutput = new FileOutputStream(newValsFile);
-                  final ArrayKVWriter arrayWriter = new ArrayKVWriter(indxOutput, keysOutput, valsOutput)) {
+                  final FileOutputStream fltrOutput = bitsPerKey > 0 ? new FileOutputStream(newFltrFile) : null;
+                  final ArrayKVWriter arrayWriter = new ArrayKVWriter(indxOutput, keysOutput, valsOutput,
+                    fltrOutput, (int)Math.min(expectedKeys, Integer.MAX_VALUE), bitsPerKey)) {
 
                     // Write out merged key/value pairs
-                    try (CloseableIterator<KVPair> i = this.kvstore.getRange(null, null)) {
-                        arrayWriter.writeMerged(this.kvstore, i, writesToCompact);
+                    try (CloseableIterator<KVPair> i = mergeStart < oldLevels.size() ?
+                      AtomicArrayKVStore.buildView(oldLevels, mergeStart).getRange(null, null) :
+                      CloseableIterator.wrap(Collections.emptyIterator())) {
+                        arrayWriter.writeMerged(compactingMods, i, mutationsToCompact);
                     }
 
                     // Sync file data
                     arrayWriter.flush();
+                    if (fltrOutput != null)
+                        fltrOutput.getChannel().force(false);
                     valsOutput.getChannel().force(false);
                     keysOutput.getChannel().force(false);
                     indxOutput.getChannel().force(false);
@@ -1269,17 +1495,23 @@ public class AtomicArrayKVStore extends AbstractKVStore implements AtomicKVStore
                 assert newKeysFile.exists();
                 assert newValsFile.exists();
 
-                // Create byte buffers from new files
-                try (FileInputStream input = new FileInputStream(newIndxFile)) {
-                    newIndx = AtomicArrayKVStore.getBuffer(newIndxFile, input.getChannel());
-                }
-                try (FileInputStream input = new FileInputStream(newKeysFile)) {
-                    newKeys = AtomicArrayKVStore.getBuffer(newKeysFile, input.getChannel());
-                }
-                try (FileInputStream input = new FileInputStream(newValsFile)) {
-                    newVals = AtomicArrayKVStore.getBuffer(newValsFile, input.getChannel());
+                // Unless merging into the bottom level, write out the merged levels' removals
+                if (mergeStart > 0) {
+                    final KeyRanges removes = writesToCompact.getRemoves().clone();
+                    for (Level level : oldLevels.subList(mergeStart, oldLevels.size()))
+                        removes.add(level.removes);
+                    try (FileOutputStream rmvsOutput = new FileOutputStream(newRmvsFile)) {
+                        final BufferedOutputStream buf = new BufferedOutputStream(rmvsOutput);
+                        removes.serialize(buf);
+                        buf.flush();
+                        rmvsOutput.getChannel().force(false);
+                    }
+                    assert newRmvsFile.exists();
                 }
 
+                // Open the new level
+                newLevel = new Level(this.directory, newGeneration, mergeStart == 0);
+
                 // Create new, empty mods file
                 newModsFileOutput = new FileOutputStream(newModsFile, true);
                 assert newModsFile.exists();
@@ -1350,12 +1582,19 @@ public class AtomicArrayKVStore extends AbstractKVStore implements AtomicKVStore
                             }
                         }
 
+                        // Replace the merged levels with the new level
+                        final ArrayList<Level> newLevelList = new ArrayList<>(oldLevels.subList(0, mergeStart));
+                        newLevelList.add(newLevel);
+                        final String levelsLine = newLevelList.stream()
+                          .map(level -> String.valueOf(level.generation))
+                          .collect(Collectors.joining(" "));
+
                         // Atomically update new generation file contents, except on Windows where that's impossible
                         final FileOutputStream genOutput = !this.suckyOS ?
                           new AtomicUpdateFileOutputStream(this.generationFile) : new FileOutputStream(this.generationFile);
                         boolean genSuccess = false;
                         try {
-                            genOutput.write((newGeneration + "\n").getBytes(StandardCharsets.UTF_8));
+                            genOutput.write((newGeneration + "\n" + levelsLine + "\n").getBytes(StandardCharsets.UTF_8));
                             genOutput.flush();
                             genOutput.getChannel().force(false);
                             genSuccess = true;
@@ -1370,26 +1609,19 @@ public class AtomicArrayKVStore extends AbstractKVStore implements AtomicKVStore
                         success = true;
 
                         // Remember old info so we can clean it up
-                        final File oldIndxFile = this.indxFile;
-                        final File oldKeysFile = this.keysFile;
-                        final File oldValsFile = this.valsFile;
+                        final List<Level> mergedLevels = oldLevels.subList(mergeStart, oldLevels.size());
                         final File oldModsFile = this.modsFile;
                         final FileOutputStream oldModsFileOutput = this.modsFileOutput;
 
                         // Change to the new generation
                         this.generation = newGeneration;
-                        this.indx = newIndx;
-                        this.keys = newKeys;
-                        this.vals = newVals;
-                        this.indxFile = newIndxFile;
-                        this.keysFile = newKeysFile;
-                        this.valsFile = newValsFile;
+                        this.levels = Collections.unmodifiableList(newLevelList);
                         this.modsFile = newModsFile;
                         this.modsFileOutput = newModsFileOutput;
                         newModsFileOutput = null;
                         this.modsFileLength = newModsFileLength;
                         this.modsFileSyncPoint = newModsFileSyncPoint;
-                        this.kvstore = new ArrayKVStore(this.indx, this.keys, this.vals);
+                        this.kvstore = AtomicArrayKVStore.buildView(this.levels, 0);
                         this.mods = new MutableView(this.kvstore, null, this.mods.getWrites());
                         this.modsWritesSnapshot = null;
                         if (additionalModsLength == 0)
@@ -1412,9 +1644,10 @@ public class AtomicArrayKVStore extends AbstractKVStore implements AtomicKVStore
                         this.closeIgnoreException(oldModsFileOutput);
 
                         // Delete old files
-                        this.deleteWarnException(oldIndxFile);
-                        this.deleteWarnException(oldKeysFile);
-                        this.deleteWarnException(oldValsFile);
+                        for (Level level : mergedLevels) {
+                            for (File file : level.getFiles())
+                                this.deleteWarnException(file);
+                        }
                         this.deleteWarnException(oldModsFile);
                     }
                 } finally {
@@ -1445,6 +1678,10 @@ public class AtomicArrayKVStore extends AbstractKVStore implements AtomicKVStore
                             this.deleteWarnException(newIndxFile);
                             this.deleteWarnException(newKeysFile);
                             this.deleteWarnException(newValsFile);
+                            if (newRmvsFile.exists())
+                                this.deleteWarnException(newRmvsFile);
+                            if (newFltrFile.exists())
+                                this.deleteWarnException(newFltrFile);
                         }
                     } finally {
                         this.writeLock.unlock();
@@ -1650,5 +1887,89 @@ public class AtomicArrayKVStore extends AbstractKVStore implements AtomicKVStore
           fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, length) :
           ByteBuffer.wrap(Files.readAllBytes(file.toPath())).asReadOnlyBuffer();
     }
+
+    // Build a view of the given levels, ignoring any removals in the lowest level
+    private static KVStore buildView(List<Level> levels, int start) {
+        KVStore view = levels.get(start).kvstore;
+        for (Level level : levels.subList(start + 1, levels.size()))
+            view = new LevelKVStore(view, level.kvstore, level.removes);
+        return view;
+    }
+
+    // Estimate the number of bytes the given writes will occupy once compacted
+    private static long estimateBytes(Writes writes) {
+        long bytes = 0;
+        for (Map.Entry<byte[], byte[]> entry : writes.getPuts().entrySet())
+            bytes += entry.getKey().length + entry.getValue().length + 8;
+        for (byte[] key : writes.getAdjusts().keySet())
+            bytes += key.length + 16;
+        return bytes;
+    }
+
+// Level
+
+    private static final class Level {
+
+        final long generation;
+        final File indxFile;
+        final File keysFile;
+        final File valsFile;
+        final File rmvsFile;                                            // null for the bottom level
+        final File fltrFile;                                            // null if there is no bloom filter
+        final ArrayKVStore kvstore;
+        final KeyRanges removes;                                        // null for the bottom level
+        final long bytes;
+
+        Level(File directory, long generation, boolean bottom) throws IOException {
+            this.generation = generation;
+            this.indxFile = new File(directory, INDX_FILE_NAME_BASE + generation);
+            this.keysFile = new File(directory, KEYS_FILE_NAME_BASE + generation);
+            this.valsFile = new File(directory, VALS_FILE_NAME_BASE + generation);
+            this.rmvsFile = !bottom ? new File(directory, RMVS_FILE_NAME_BASE + generation) : null;
+            final File filterFile = new File(directory, FLTR_FILE_NAME_BASE + generation);
+            this.fltrFile = filterFile.exists() ? filterFile : null;
+
+            // Create buffers that wrap the index, keys, values, and bloom filter files
+            final ByteBuffer indx;
+            final ByteBuffer keys;
+            final ByteBuffer vals;
+            ByteBuffer fltr = null;
+            try (FileInputStream input = new FileInputStream(this.indxFile)) {
+                indx = AtomicArrayKVStore.getBuffer(this.indxFile, input.getChannel());
+            }
+            try (FileInputStream input = new FileInputStream(this.keysFile)) {
+                keys = AtomicArrayKVStore.getBuffer(this.keysFile, input.getChannel());
+            }
+            try (FileInputStream input = new FileInputStream(this.valsFile)) {
+                vals = AtomicArrayKVStore.getBuffer(this.valsFile, input.getChannel());
+            }
+            if (this.fltrFile != null) {
+                try (FileInputStream input = new FileInputStream(this.fltrFile)) {
+                    fltr = AtomicArrayKVStore.getBuffer(this.fltrFile, input.getChannel());
+                }
+            }
+            this.kvstore = new ArrayKVStore(indx, keys, vals, fltr);
+            long totalBytes = (long)indx.capacity() + keys.capacity() + vals.capacity();
+
+            // Read removals
+            if (this.rmvsFile != null) {
+                try (BufferedInputStream input = new BufferedInputStream(new FileInputStream(this.rmvsFile))) {
+                    this.removes = new KeyRanges(input, true);
+                }
+                totalBytes += this.rmvsFile.length();
+            } else
+                this.removes = null;
+            this.bytes = totalBytes;
+        }
+
+        List<File> getFiles() {
+            final ArrayList<File> files = new ArrayList<>(Arrays.asList(this.indxFile, this.keysFile, this.valsFile));
+            if (this.rmvsFile != null)
+                files.add(this.rmvsFile);
+            if (this.fltrFile != null)
+                files.add(this.fltrFile);
+            return files;
+        }
+    }
 }
 
@@ -0,0 +1,207 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.kv.array;
+
+import com.google.common.base.Preconditions;
+
+import io.permazen.kv.AbstractKVStore;
+import io.permazen.kv.KVPair;
+import io.permazen.kv.KVStore;
+import io.permazen.kv.KeyRange;
+import io.permazen.kv.KeyRanges;
+import io.permazen.util.ByteUtil;
+import io.permazen.util.CloseableIterator;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Read-only {@link KVStore} view of one level of a leveled {@link AtomicArrayKVStore} layered on top of the levels below it.
+ *
+ * <p>
+ * Each level contains key/value pairs and the key ranges removed from the levels below it. Key/value pairs in the level
+ * take precedence; otherwise, keys not in any removed range are read from the lower levels.
+ *
+ * <p>
+ * Instances are thread safe if the underlying {@link KVStore}s are.
+ */
+class LevelKVStore extends AbstractKVStore {
+
+    private final KVStore lower;
+    private final KVStore puts;
+    private final KeyRanges removes;
+
+    /**
+     * Constructor.
+     *
+     * @param lower view of the lower levels
+     * @param puts key/value pairs in this level
+     * @param removes key ranges removed from the lower levels by this level; must be immutable
+     * @throws IllegalArgumentException if any parameter is null
+     */
+    LevelKVStore(KVStore lower, KVStore puts, KeyRanges removes) {
+        Preconditions.checkArgument(lower != null, "null lower");
+        Preconditions.checkArgument(puts != null, "null puts");
+        Preconditions.checkArgument(removes != null, "null removes");
+        this.lower = lower;
+        this.puts = puts;
+        this.removes = removes;
+    }
+
+// KVStore
+
+    @Override
+    public byte[] get(byte[] key) {
+        final byte[] value = this.puts.get(key);
+        if (value != null)
+            return value;
+        return !this.removes.contains(key) ? this.lower.get(key) : null;
+    }
+
+    @Override
+    public CloseableIterator<KVPair> getRange(byte[] minKey, byte[] maxKey, boolean reverse) {
+        return new RangeIterator(minKey, maxKey, reverse);
+    }
+
+    @Override
+    public void remove(byte[] key) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void removeRange(byte[] minKey, byte[] maxKey) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void adjustCounter(byte[] key, long amount) {
+        throw new UnsupportedOperationException();
+    }
+
+// RangeIterator
+
+    /**
+     * Merges the key/value pairs in this level with those in the lower levels that have not been removed.
+     */
+    private class RangeIterator implements CloseableIterator<KVPair> {
+
+        private final byte[] minKey;
+        private final byte[] maxKey;
+        private final boolean reverse;
+        private final CloseableIterator<KVPair> putIterator;
+
+        private CloseableIterator<KVPair> lowerIterator;        // null if exhausted
+        private KVPair nextPut;
+        private KVPair nextLower;
+        private KVPair next;
+        private boolean done;
+
+        RangeIterator(byte[] minKey, byte[] maxKey, boolean reverse) {
+            this.minKey = minKey;
+            this.maxKey = maxKey;
+            this.reverse = reverse;
+            this.putIterator = LevelKVStore.this.puts.getRange(minKey, maxKey, reverse);
+            this.lowerIterator = LevelKVStore.this.lower.getRange(minKey, maxKey, reverse);
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (this.next != null)
+                return true;
+            if (this.done)
+                return false;
+            if ((this.next = this.advance()) == null) {
+                this.close();
+                this.done = true;
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public KVPair next() {
+            if (!this.hasNext())
+                throw new NoSuchElementException();
+            final KVPair pair = this.next;
+            this.next = null;
+            return pair;
+        }
+
+        @Override
+        public void close() {
+            this.putIterator.close();
+            if (this.lowerIterator != null) {
+                this.lowerIterator.close();
+                this.lowerIterator = null;
+            }
+        }
+
+        private KVPair advance() {
+
+            // Fill in the next pair from each side
+            if (this.nextPut == null && this.putIterator.hasNext())
+                this.nextPut = this.putIterator.next();
+            if (this.nextLower == null)
+                this.nextLower = this.nextLower();
+
+            // Return whichever comes first; if they have the same key, the pair in this level wins
+            if (this.nextPut == null && this.nextLower == null)
+                return null;
+            final KVPair pair;
+            if (this.nextLower == null)
+                pair = this.nextPut;
+            else if (this.nextPut == null)
+                pair = this.nextLower;
+            else {
+                final int diff = this.reverse ?
+                  ByteUtil.compare(this.nextLower.getKey(), this.nextPut.getKey()) :
+                  ByteUtil.compare(this.nextPut.getKey(), this.nextLower.getKey());
+                if (diff == 0)
+                    this.nextLower = null;
+                pair = diff <= 0 ? this.nextPut : this.nextLower;
+            }
+            if (pair == this.nextPut)
+                this.nextPut = null;
+            else
+                this.nextLower = null;
+            return pair;
+        }
+
+        // Get the next pair from the lower levels that is not removed by this level
+        private KVPair nextLower() {
+            while (this.lowerIterator != null) {
+                if (!this.lowerIterator.hasNext()) {
+                    this.lowerIterator.close();
+                    this.lowerIterator = null;
+                    break;
+                }
+                final KVPair pair = this.lowerIterator.next();
+                final byte[] key = pair.getKey();
+                if (!LevelKVStore.this.removes.contains(key))
+                    return pair;
+
+                // If the removed range is a single key, just keep going
+                final KeyRange range = LevelKVStore.this.removes.findKey(key)[0];
+                final byte[] rangeMin = range.getMin();
+                final byte[] rangeMax = range.getMax();
+                if (rangeMax != null && Arrays.equals(rangeMax, ByteUtil.getNextKey(rangeMin)))
+                    continue;
+
+                // Skip over the removed range by restarting the lower iteration on the other side of it
+                this.lowerIterator.close();
+                this.lowerIterator = null;
+                if (this.reverse) {
+                    if (this.minKey == null || ByteUtil.compare(rangeMin, this.minKey) > 0)
+                        this.lowerIterator = LevelKVStore.this.lower.getRange(this.minKey, rangeMin, true);
+                } else {
+                    if (rangeMax != null && (this.maxKey == null || ByteUtil.compare(rangeMax, this.maxKey) < 0))
+                        this.lowerIterator = LevelKVStore.this.lower.getRange(rangeMax, this.maxKey, false);
+                }
+            }
+            return null;
+        }
+    }
+}
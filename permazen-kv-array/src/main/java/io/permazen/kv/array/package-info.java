@@ -31,5 +31,11 @@
  * <p>
  * For all index entries, the second 32-bit value is the absolute offset of the value in the values file.
  * The end of the value is the starting offset of the next value (or end of file).
+ *
+ * <p>
+ * There may also be an optional fourth file containing a blocked bloom filter over the keys. The filter file contains
+ * a big endian 32-bit hash count <i>k</i>, followed by one or more 64 byte blocks. Each key is hashed to 64 bits using
+ * FNV-1a followed by the MurmurHash3 64-bit finalizer; the high 32 bits select a block, and <i>k</i> bits within that
+ * block are derived from the low 32 bits using double hashing (see {@code ArrayKVFilter} for details).
  */
 package io.permazen.kv.array;
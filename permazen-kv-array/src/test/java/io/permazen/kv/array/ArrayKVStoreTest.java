@@ -7,7 +7,9 @@ package io.permazen.kv.array;
 
 import com.google.common.collect.Lists;
 
+import io.permazen.kv.KVCursor;
 import io.permazen.kv.KVPair;
+import io.permazen.kv.KeyRange;
 import io.permazen.kv.mvcc.AtomicKVStore;
 import io.permazen.kv.test.AtomicKVStoreTest;
 import io.permazen.kv.util.NavigableMapKVStore;
@@ -16,8 +18,12 @@ import io.permazen.util.ByteUtil;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
 
 import org.testng.Assert;
 import org.testng.annotations.Test;
@@ -78,6 +84,10 @@ public class ArrayKVStoreTest extends AtomicKVStoreTest {
               ByteBuffer.wrap(indxOutput.toByteArray()),
               ByteBuffer.wrap(keysOutput.toByteArray()),
               ByteBuffer.wrap(valsOutput.toByteArray()));
+            final ArrayKVStore directKVStore = new ArrayKVStore(
+              this.direct(indxOutput.toByteArray()),
+              this.direct(keysOutput.toByteArray()),
+              this.direct(valsOutput.toByteArray()));
 
             // Debug
             //this.log.info("INDX:" + this.format(indxOutput.toByteArray()));
@@ -106,11 +116,91 @@ public class ArrayKVStoreTest extends AtomicKVStoreTest {
                     final boolean reverse = this.random.nextBoolean();
                     this.verify(kvstore.getRange(minKey, maxKey, reverse),
                       reference.getRange(minKey, maxKey, reverse));
+                    this.verify(kvstore.getRangeView(minKey, maxKey, reverse),
+                      reference.getRange(minKey, maxKey, reverse));
+                    this.verify(directKVStore.getRangeView(minKey, maxKey, reverse),
+                      reference.getRange(minKey, maxKey, reverse));
+                    this.verifySize(kvstore, minKey, maxKey, reference);
                 }
             }
         }
     }
 
+    @Test
+    private void testSparseIndex() throws Exception {
+
+        // Build a KVStore spanning many sparse index blocks
+        final TreeSet<byte[]> keySet = new TreeSet<>(ByteUtil.COMPARATOR);
+        while (keySet.size() < ArrayKVFinder.SPARSE_INTERVAL * 20 + 17)
+            keySet.add(this.randomKey(6));
+        final ArrayList<byte[]> keyList = new ArrayList<>(keySet);
+        final ByteArrayOutputStream indxOutput = new ByteArrayOutputStream();
+        final ByteArrayOutputStream keysOutput = new ByteArrayOutputStream();
+        final ByteArrayOutputStream valsOutput = new ByteArrayOutputStream();
+        try (ArrayKVWriter writer = new ArrayKVWriter(indxOutput, keysOutput, valsOutput)) {
+            for (byte[] key : keyList)
+                writer.writeKV(key, ByteUtil.EMPTY);
+        }
+        final ArrayKVFinder finder = new ArrayKVFinder(ByteBuffer.wrap(indxOutput.toByteArray()),
+          ByteBuffer.wrap(keysOutput.toByteArray()), ByteBuffer.wrap(valsOutput.toByteArray()));
+
+        // Verify searches for existing keys, including those in the sparse index, and random keys
+        for (int i = 0; i < keyList.size(); i++)
+            Assert.assertEquals(finder.find(keyList.get(i)), i);
+        for (int i = 0; i < 5000; i++) {
+            final byte[] key = this.randomKey(6);
+            Assert.assertEquals(finder.find(key), Collections.binarySearch(keyList, key, ByteUtil.COMPARATOR));
+        }
+        Assert.assertEquals(finder.find(ByteUtil.EMPTY), keySet.first().length == 0 ? 0 : ~0);
+    }
+
+    @Test
+    private void testBloomFilter() throws Exception {
+
+        // Build a KVStore with a bloom filter
+        final int numKeys = 10000;
+        final ByteArrayOutputStream indxOutput = new ByteArrayOutputStream();
+        final ByteArrayOutputStream keysOutput = new ByteArrayOutputStream();
+        final ByteArrayOutputStream valsOutput = new ByteArrayOutputStream();
+        final ByteArrayOutputStream fltrOutput = new ByteArrayOutputStream();
+        try (ArrayKVWriter writer = new ArrayKVWriter(indxOutput, keysOutput, valsOutput, fltrOutput, numKeys, 10)) {
+            for (int i = 0; i < numKeys; i++)
+                writer.writeKV(ByteUtil.parse(String.format("%08x", i * 2)), new byte[] { (byte)i });
+            writer.flush();
+            try {
+                writer.writeKV(ByteUtil.parse("ffffffff"), ByteUtil.EMPTY);
+                assert false;
+            } catch (IllegalStateException e) {
+                // expected
+            }
+        }
+        final ArrayKVStore kvstore = new ArrayKVStore(ByteBuffer.wrap(indxOutput.toByteArray()),
+          ByteBuffer.wrap(keysOutput.toByteArray()), ByteBuffer.wrap(valsOutput.toByteArray()),
+          this.direct(fltrOutput.toByteArray()));
+        final ArrayKVFilter filter = new ArrayKVFilter(ByteBuffer.wrap(fltrOutput.toByteArray()));
+
+        // Verify no false negatives, and a reasonable false positive rate
+        int falsePositives = 0;
+        for (int i = 0; i < numKeys; i++) {
+            final byte[] key = ByteUtil.parse(String.format("%08x", i * 2));
+            Assert.assertTrue(filter.mightContain(key));
+            Assert.assertEquals(kvstore.get(key), new byte[] { (byte)i });
+            final byte[] missingKey = ByteUtil.parse(String.format("%08x", i * 2 + 1));
+            if (filter.mightContain(missingKey))
+                falsePositives++;
+            Assert.assertNull(kvstore.get(missingKey));
+        }
+        Assert.assertTrue(falsePositives < numKeys / 50, "too many false positives: " + falsePositives);
+
+        // Verify an empty filter rejects everything
+        final ByteArrayOutputStream emptyOutput = new ByteArrayOutputStream();
+        new ArrayKVWriter(new ByteArrayOutputStream(), new ByteArrayOutputStream(), new ByteArrayOutputStream(),
+          emptyOutput, 0, 10).close();
+        final ArrayKVFilter emptyFilter = new ArrayKVFilter(ByteBuffer.wrap(emptyOutput.toByteArray()));
+        for (int i = 0; i < 100; i++)
+            Assert.assertFalse(emptyFilter.mightContain(this.randomKey(5)));
+    }
+
     @Override
     protected void compact(AtomicKVStore kvstore) throws Exception {
         ((AtomicArrayKVStore)kvstore).scheduleCompaction();
@@ -136,6 +226,38 @@ public class ArrayKVStoreTest extends AtomicKVStoreTest {
         Assert.assertEquals(Lists.newArrayList(actual), Lists.newArrayList(expected));
     }
 
+    private void verify(KVCursor actual, Iterator<KVPair> expected) {
+        final ArrayList<KVPair> list = new ArrayList<>();
+        try (KVCursor cursor = actual) {
+            while (cursor.next())
+                list.add(cursor.toKVPair());
+            Assert.assertFalse(cursor.next());
+        }
+        Assert.assertEquals(list, Lists.newArrayList(expected));
+    }
+
+    private void verifySize(ArrayKVStore kvstore, byte[] minKey, byte[] maxKey, NavigableMapKVStore reference) {
+        final KeyRange range = new KeyRange(minKey != null ? minKey : ByteUtil.EMPTY, maxKey);
+        final List<KVPair> pairs = Lists.newArrayList(reference.getRange(minKey, maxKey, false));
+        Assert.assertEquals(kvstore.estimateSize(range).getKeys(), pairs.size());
+        final List<byte[]> splitKeys = kvstore.getSplitKeys(range, 3);
+        Assert.assertTrue(splitKeys.size() <= Math.min(3, Math.max(pairs.size() - 1, 0)));
+        byte[] prev = range.getMin();
+        for (byte[] splitKey : splitKeys) {
+            Assert.assertTrue(ByteUtil.compare(splitKey, prev) > 0);
+            Assert.assertTrue(range.contains(splitKey));
+            Assert.assertNotNull(reference.get(splitKey));
+            prev = splitKey;
+        }
+    }
+
+    private ByteBuffer direct(byte[] data) {
+        final ByteBuffer buf = ByteBuffer.allocateDirect(data.length);
+        buf.put(data);
+        buf.flip();
+        return buf;
+    }
+
     private byte[] randomKey(int maxKeyLen) {
         final byte[] key = new byte[this.random.nextInt(maxKeyLen + 1)];
         this.random.nextBytes(key);
@@ -0,0 +1,146 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.kv.array;
+
+import io.permazen.kv.KVTransactionException;
+import io.permazen.kv.RetryTransactionException;
+import io.permazen.kv.mvcc.Mutations;
+import io.permazen.test.TestSupport;
+import io.permazen.util.ByteUtil;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class GroupCommitTest extends TestSupport {
+
+    private static final int NUM_THREADS = 10;
+    private static final int NUM_COMMITS = 20;
+
+    @Test
+    private void testGroupCommit() throws Exception {
+        final CountingKVStore kvstore = new CountingKVStore();
+        kvstore.setDirectory(this.createTempDirectory());
+        final ArrayKVDatabase kvdb = new ArrayKVDatabase();
+        kvdb.setKVStore(kvstore);
+        kvdb.setGroupCommit(true);
+        kvdb.start();
+        try {
+
+            // Commit lots of small transactions concurrently
+            final ArrayList<Thread> threads = new ArrayList<>();
+            final AtomicInteger failures = new AtomicInteger();
+            for (int i = 0; i < NUM_THREADS; i++) {
+                final int id = i;
+                threads.add(new Thread(() -> {
+                    try {
+                        for (int j = 0; j < NUM_COMMITS; j++) {
+
+                            // Write our key
+                            ArrayKVTransaction tx = kvdb.createTransaction();
+                            tx.put(new byte[] { (byte)id, (byte)j }, new byte[] { (byte)j });
+                            tx.commit();
+
+                            // Our committed write must be immediately visible
+                            tx = kvdb.createTransaction();
+                            Assert.assertEquals(tx.get(new byte[] { (byte)id, (byte)j }), new byte[] { (byte)j });
+                            tx.commit();
+                        }
+                    } catch (Throwable t) {
+                        GroupCommitTest.this.log.error("thread " + id + " failed", t);
+                        failures.incrementAndGet();
+                    }
+                }));
+            }
+            threads.forEach(Thread::start);
+            for (Thread thread : threads)
+                thread.join();
+            Assert.assertEquals(failures.get(), 0);
+
+            // Multiple commits should have been combined into a single durable write
+            this.log.info("{} commits required {} durable writes", NUM_THREADS * NUM_COMMITS, kvstore.syncs.get());
+            Assert.assertTrue(kvstore.syncs.get() < NUM_THREADS * NUM_COMMITS);
+
+            // Verify all data made it
+            for (int i = 0; i < NUM_THREADS; i++) {
+                for (int j = 0; j < NUM_COMMITS; j++)
+                    Assert.assertEquals(kvstore.get(new byte[] { (byte)i, (byte)j }), new byte[] { (byte)j });
+            }
+        } finally {
+            kvdb.stop();
+        }
+    }
+
+    @Test
+    private void testGroupCommitFailure() throws Exception {
+        final CountingKVStore kvstore = new CountingKVStore();
+        kvstore.setDirectory(this.createTempDirectory());
+        final ArrayKVDatabase kvdb = new ArrayKVDatabase();
+        kvdb.setKVStore(kvstore);
+        kvdb.setGroupCommit(true);
+        kvdb.start();
+        try {
+            final byte[] key = new byte[] { (byte)0x10 };
+
+            // Open a transaction that will be invalidated by the failure
+            final ArrayKVTransaction other = kvdb.createTransaction();
+
+            // Fail the durable write
+            kvstore.fail.set(true);
+            final ArrayKVTransaction tx = kvdb.createTransaction();
+            tx.put(key, ByteUtil.EMPTY);
+            try {
+                tx.commit();
+                assert false : "expected exception";
+            } catch (KVTransactionException e) {
+                Assert.assertFalse(e instanceof RetryTransactionException);
+                this.log.info("got expected {}", e.toString());
+            }
+            try {
+                other.get(key);
+                assert false : "expected exception";
+            } catch (RetryTransactionException e) {
+                this.log.info("got expected {}", e.toString());
+            }
+            other.rollback();
+
+            // The failed write must not be visible
+            final ArrayKVTransaction tx2 = kvdb.createTransaction();
+            Assert.assertNull(tx2.get(key));
+            tx2.put(key, key);
+            tx2.commit();
+            Assert.assertEquals(kvstore.get(key), key);
+        } finally {
+            kvdb.stop();
+        }
+    }
+
+// CountingKVStore
+
+    private static class CountingKVStore extends AtomicArrayKVStore {
+
+        final AtomicInteger syncs = new AtomicInteger();
+        final AtomicBoolean fail = new AtomicBoolean();
+
+        @Override
+        public void mutate(Mutations mutations, boolean sync) {
+            if (sync) {
+                this.syncs.incrementAndGet();
+                if (this.fail.compareAndSet(true, false))
+                    throw new RuntimeException("simulated failure");
+                try {
+                    Thread.sleep(10);                                   // simulate an expensive disk sync
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            super.mutate(mutations, sync);
+        }
+    }
+}
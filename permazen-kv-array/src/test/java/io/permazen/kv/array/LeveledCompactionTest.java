@@ -0,0 +1,181 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.kv.array;
+
+import io.permazen.kv.KVPair;
+import io.permazen.test.TestSupport;
+import io.permazen.util.ByteUtil;
+import io.permazen.util.CloseableIterator;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class LeveledCompactionTest extends TestSupport {
+
+    private static final int MAX_LEVELS = 4;
+    private static final int NUM_COUNTERS = 8;
+
+    @Test
+    private void testLeveledCompaction() throws Exception {
+
+        // Create persistent k/v store
+        final File dir = this.createTempDirectory();
+        AtomicArrayKVStore kv = this.createKVStore(dir);
+        kv.start();
+
+        // Populate it
+        final TreeMap<byte[], byte[]> expected = new TreeMap<>(ByteUtil.COMPARATOR);
+        for (int i = 0; i < 500; i++)
+            this.put(kv, expected, this.randomKey(), this.randomBytes(0, 20, false));
+        for (int i = 0; i < NUM_COUNTERS; i++)
+            this.put(kv, expected, new byte[] { (byte)0xff, (byte)i }, kv.encodeCounter(i * 1000));
+        kv.scheduleCompaction().get();
+        this.verify(kv, expected);
+        Assert.assertEquals(kv.getLevelSizes().size(), 1);
+
+        // Apply lots of small changes, compacting after each batch
+        int maxLevels = 0;
+        for (int round = 0; round < 40; round++) {
+            for (int i = 0; i < 30; i++) {
+                final int choice = this.random.nextInt(10);
+                if (choice < 5)
+                    this.put(kv, expected, this.randomKey(), this.randomBytes(0, 20, false));
+                else if (choice < 7) {
+                    final byte[] key = this.randomKey();
+                    kv.remove(key);
+                    expected.remove(key);
+                } else if (choice < 8) {
+                    byte[] min = this.randomKey();
+                    byte[] max = this.randomKey();
+                    if (ByteUtil.compare(min, max) > 0) {
+                        final byte[] temp = min;
+                        min = max;
+                        max = temp;
+                    }
+                    kv.removeRange(min, max);
+                    expected.subMap(min, max).clear();
+                } else {
+                    final byte[] key = new byte[] { (byte)0xff, (byte)this.random.nextInt(NUM_COUNTERS) };
+                    final long amount = this.random.nextInt(100) - 50;
+                    kv.adjustCounter(key, amount);
+                    final byte[] value = expected.get(key);
+                    if (value != null)
+                        expected.put(key, kv.encodeCounter(kv.decodeCounter(value) + amount));
+                }
+            }
+            kv.scheduleCompaction().get();
+            this.verify(kv, expected);
+            final int numLevels = kv.getLevelSizes().size();
+            Assert.assertTrue(numLevels <= MAX_LEVELS, "too many levels: " + numLevels);
+            maxLevels = Math.max(maxLevels, numLevels);
+        }
+        Assert.assertTrue(maxLevels > 1, "no levels were created");
+
+        // Leave some uncompacted changes, then restart and verify
+        this.put(kv, expected, this.randomKey(), this.randomBytes(0, 20, false));
+        kv.remove(expected.firstKey());
+        expected.remove(expected.firstKey());
+        final List<Long> levelSizes = kv.getLevelSizes();
+        kv.stop();
+        kv = this.createKVStore(dir);
+        kv.start();
+        Assert.assertEquals(kv.getLevelSizes(), levelSizes);
+        this.verify(kv, expected);
+
+        // Verify hot copy
+        final File backupDir = this.createTempDirectory();
+        kv.hotCopy(backupDir);
+        kv.stop();
+        this.deleteDirectoryHierarchy(dir);
+        kv = this.createKVStore(backupDir);
+        kv.start();
+        this.verify(kv, expected);
+
+        // Verify a full compaction
+        kv.stop();
+        kv = this.createKVStore(backupDir);
+        kv.setCompactMaxLevels(1);
+        kv.start();
+        this.put(kv, expected, this.randomKey(), this.randomBytes(0, 20, false));
+        kv.scheduleCompaction().get();
+        Assert.assertEquals(kv.getLevelSizes().size(), 1);
+        this.verify(kv, expected);
+        kv.stop();
+        this.deleteDirectoryHierarchy(backupDir);
+    }
+
+    private AtomicArrayKVStore createKVStore(File dir) {
+        final AtomicArrayKVStore kv = new AtomicArrayKVStore();
+        kv.setDirectory(dir);
+        kv.setCompactSizeRatio(4);
+        kv.setCompactMaxLevels(MAX_LEVELS);
+        return kv;
+    }
+
+    private byte[] randomKey() {
+        final byte[] key = new byte[1 + this.random.nextInt(2)];
+        for (int i = 0; i < key.length; i++)
+            key[i] = (byte)this.random.nextInt(32);
+        return key;
+    }
+
+    private void put(AtomicArrayKVStore kv, TreeMap<byte[], byte[]> expected, byte[] key, byte[] value) {
+        kv.put(key, value);
+        expected.put(key, value);
+    }
+
+    private void verify(AtomicArrayKVStore kv, TreeMap<byte[], byte[]> expected) {
+        this.verifyRange(kv, expected, null, null);
+        for (int i = 0; i < 20; i++) {
+            final byte[] key = this.randomKey();
+            Assert.assertEquals(kv.get(key), expected.get(key));
+            final Map.Entry<byte[], byte[]> ceiling = expected.ceilingEntry(key);
+            final KVPair atLeast = kv.getAtLeast(key, null);
+            Assert.assertEquals(atLeast != null ? atLeast.getKey() : null, ceiling != null ? ceiling.getKey() : null);
+            final Map.Entry<byte[], byte[]> lower = expected.lowerEntry(key);
+            final KVPair atMost = kv.getAtMost(key, null);
+            Assert.assertEquals(atMost != null ? atMost.getKey() : null, lower != null ? lower.getKey() : null);
+            final byte[] max = this.randomKey();
+            if (ByteUtil.compare(key, max) < 0)
+                this.verifyRange(kv, expected, key, max);
+        }
+    }
+
+    private void verifyRange(AtomicArrayKVStore kv, TreeMap<byte[], byte[]> expected, byte[] min, byte[] max) {
+        NavigableMap<byte[], byte[]> map = expected;
+        if (min != null)
+            map = map.tailMap(min, true);
+        if (max != null)
+            map = map.headMap(max, false);
+        Assert.assertEquals(this.read(kv, min, max, false), this.toStrings(map));
+        Assert.assertEquals(this.read(kv, min, max, true), this.toStrings(map.descendingMap()));
+    }
+
+    private List<String> read(AtomicArrayKVStore kv, byte[] min, byte[] max, boolean reverse) {
+        final ArrayList<String> list = new ArrayList<>();
+        try (CloseableIterator<KVPair> i = kv.getRange(min, max, reverse)) {
+            while (i.hasNext()) {
+                final KVPair pair = i.next();
+                list.add(ByteUtil.toString(pair.getKey()) + "=" + ByteUtil.toString(pair.getValue()));
+            }
+        }
+        return list;
+    }
+
+    private List<String> toStrings(Map<byte[], byte[]> map) {
+        final ArrayList<String> list = new ArrayList<>();
+        for (Map.Entry<byte[], byte[]> entry : map.entrySet())
+            list.add(ByteUtil.toString(entry.getKey()) + "=" + ByteUtil.toString(entry.getValue()));
+        return list;
+    }
+}
@@ -0,0 +1,144 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.kv.array;
+
+import io.permazen.kv.RetryTransactionException;
+import io.permazen.kv.mvcc.ConflictHotspot;
+import io.permazen.kv.mvcc.ConflictProfiler;
+import io.permazen.kv.mvcc.ReadWriteConflict;
+import io.permazen.kv.mvcc.TransactionConflictException;
+import io.permazen.test.TestSupport;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class SnapshotRebaseTest extends TestSupport {
+
+    private static final byte[] KEY1 = new byte[] { (byte)0x10 };
+    private static final byte[] KEY2 = new byte[] { (byte)0x20 };
+    private static final byte[] VAL1 = new byte[] { (byte)0xee };
+    private static final byte[] VAL2 = new byte[] { (byte)0xff };
+
+    @Test
+    private void testLazyRebase() throws Exception {
+        final AtomicArrayKVStore kvstore = new AtomicArrayKVStore();
+        kvstore.setDirectory(this.createTempDirectory());
+        final ArrayKVDatabase kvdb = new ArrayKVDatabase();
+        kvdb.setKVStore(kvstore);
+        final ConflictProfiler profiler = new ConflictProfiler();
+        kvdb.setConflictProfiler(profiler);
+        kvdb.start();
+        try {
+
+            // Open some transactions; "reader" reads KEY1, "other" reads KEY2
+            final ArrayKVTransaction reader = kvdb.createTransaction();
+            final ArrayKVTransaction other = kvdb.createTransaction();
+            final ArrayKVTransaction idle = kvdb.createTransaction();
+            Assert.assertNull(reader.get(KEY1));
+            Assert.assertNull(other.get(KEY2));
+            Assert.assertEquals(reader.getBaseVersion(), 0);
+
+            // Commit a bunch of writes to KEY2
+            for (int i = 0; i < 10; i++) {
+                final ArrayKVTransaction writer = kvdb.createTransaction();
+                writer.put(KEY2, VAL2);
+                writer.commit();
+            }
+            Assert.assertEquals(kvdb.getCurrentVersion(), 10);
+
+            // Non-conflicting transaction is rebased on next access and sees the new data
+            Assert.assertEquals(reader.getBaseVersion(), 0);
+            Assert.assertEquals(reader.get(KEY2), VAL2);
+            Assert.assertEquals(reader.getBaseVersion(), 10);
+            reader.put(KEY1, VAL1);
+            reader.commit();
+            Assert.assertEquals(reader.getCommitVersion(), 11);
+
+            // Conflicting transaction fails on next access
+            try {
+                other.get(KEY1);
+                assert false : "expected exception";
+            } catch (TransactionConflictException e) {
+                this.log.info("got expected {}", e.toString());
+                Assert.assertEquals(e.getConflict(), new ReadWriteConflict(KEY2));
+            }
+            other.rollback();
+
+            // Conflict was profiled
+            Assert.assertEquals(profiler.getReadWriteConflicts(), 1);
+            final List<ConflictHotspot> keys = profiler.getTopKeys(10);
+            Assert.assertEquals(keys.size(), 1);
+            Assert.assertEquals(keys.get(0).getKeyBytes(), KEY2);
+            Assert.assertEquals(keys.get(0).getStorageId(), 0x20);
+
+            // Never-accessed transaction can still commit
+            idle.commit();
+
+            // Lots of open non-conflicting transactions
+            final ArrayList<ArrayKVTransaction> txs = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                final ArrayKVTransaction tx = kvdb.createTransaction();
+                tx.get(new byte[] { (byte)i });
+                txs.add(tx);
+            }
+            for (int i = 0; i < 100; i++) {
+                final ArrayKVTransaction tx = txs.get(i);
+                tx.put(new byte[] { (byte)(i + 100) }, VAL1);
+                tx.commit();
+            }
+            Assert.assertEquals(kvdb.getCurrentVersion(), 111);
+        } finally {
+            kvdb.stop();
+        }
+    }
+
+    @Test
+    private void testMaxCommitLag() throws Exception {
+        final AtomicArrayKVStore kvstore = new AtomicArrayKVStore();
+        kvstore.setDirectory(this.createTempDirectory());
+        final ArrayKVDatabase kvdb = new ArrayKVDatabase();
+        kvdb.setKVStore(kvstore);
+        kvdb.setMaxCommitLag(5);
+        kvdb.start();
+        try {
+
+            // "active" is accessed periodically, "idle" is never accessed again
+            final ArrayKVTransaction active = kvdb.createTransaction();
+            final ArrayKVTransaction idle = kvdb.createTransaction();
+            Assert.assertNull(active.get(KEY1));
+            Assert.assertNull(idle.get(KEY1));
+
+            // Commit lots of writes to KEY2
+            for (int i = 0; i < 20; i++) {
+                final ArrayKVTransaction writer = kvdb.createTransaction();
+                writer.put(KEY2, new byte[] { (byte)i });
+                writer.commit();
+                if (i % 3 == 0)
+                    Assert.assertNull(active.get(KEY1));                    // rebases without conflict
+                Assert.assertTrue(kvdb.getCurrentVersion() - active.getBaseVersion() <= 5);
+            }
+
+            // Idle transaction fell too far behind and was failed, releasing the history it was pinning
+            try {
+                idle.get(KEY1);
+                assert false : "expected exception";
+            } catch (RetryTransactionException e) {
+                this.log.info("got expected {}", e.toString());
+            }
+            idle.rollback();
+
+            // Active transaction kept up and can commit
+            active.put(KEY1, VAL1);
+            active.commit();
+            Assert.assertEquals(active.getCommitVersion(), 21);
+        } finally {
+            kvdb.stop();
+        }
+    }
+}
@@ -17,6 +17,14 @@ public abstract class AbstractCachingConfig implements CachingConfig {
     long maxTotalBytes = DEFAULT_MAX_TOTAL_BYTES;
     double waitFactor = DEFAULT_WAIT_FACTOR;
     boolean readAhead = DEFAULT_READ_AHEAD;
+    long maxPointBytes = DEFAULT_MAX_POINT_BYTES;
+    EvictionPolicy.Factory evictionPolicyFactory = DEFAULT_EVICTION_POLICY_FACTORY;
+    boolean writeThrough = DEFAULT_WRITE_THROUGH;
+
+    // Statistics
+    long hits;
+    long misses;
+    long evictions;
 
     /**
      * Constructor.
@@ -78,4 +86,62 @@ public abstract class AbstractCachingConfig implements CachingConfig {
     public synchronized void setReadAhead(boolean readAhead) {
         this.readAhead = readAhead;
     }
+
+    @Override
+    public synchronized long getMaxPointBytes() {
+        return this.maxPointBytes;
+    }
+
+    @Override
+    public synchronized void setMaxPointBytes(long maxPointBytes) {
+        Preconditions.checkArgument(maxPointBytes >= 0, "maxPointBytes < 0");
+        this.maxPointBytes = maxPointBytes;
+    }
+
+    @Override
+    public synchronized EvictionPolicy.Factory getEvictionPolicyFactory() {
+        return this.evictionPolicyFactory;
+    }
+
+    @Override
+    public synchronized void setEvictionPolicyFactory(EvictionPolicy.Factory evictionPolicyFactory) {
+        Preconditions.checkArgument(evictionPolicyFactory != null, "null evictionPolicyFactory");
+        this.evictionPolicyFactory = evictionPolicyFactory;
+    }
+
+    @Override
+    public synchronized boolean isWriteThrough() {
+        return this.writeThrough;
+    }
+
+    @Override
+    public synchronized void setWriteThrough(boolean writeThrough) {
+        this.writeThrough = writeThrough;
+    }
+
+    @Override
+    public synchronized long getHits() {
+        return this.hits;
+    }
+
+    @Override
+    public synchronized long getMisses() {
+        return this.misses;
+    }
+
+    @Override
+    public synchronized long getEvictions() {
+        return this.evictions;
+    }
+
+    /**
+     * Add the statistics from the given instance to this instance's statistics.
+     *
+     * @param stats source of statistics
+     */
+    synchronized void addStatistics(CachingConfig stats) {
+        this.hits += stats.getHits();
+        this.misses += stats.getMisses();
+        this.evictions += stats.getEvictions();
+    }
 }
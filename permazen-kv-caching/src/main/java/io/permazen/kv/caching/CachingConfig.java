@@ -49,6 +49,27 @@ public interface CachingConfig {
      */
     boolean DEFAULT_READ_AHEAD = true;
 
+    /**
+     * Default maximum total number of bytes to cache in the point cache ({@value #DEFAULT_MAX_POINT_BYTES}).
+     *
+     * @see #getMaxPointBytes
+     */
+    long DEFAULT_MAX_POINT_BYTES = 4 * 1024 * 1024;
+
+    /**
+     * Default eviction policy factory, which creates {@link TinyLFUEvictionPolicy}'s.
+     *
+     * @see #getEvictionPolicyFactory
+     */
+    EvictionPolicy.Factory DEFAULT_EVICTION_POLICY_FACTORY = TinyLFUEvictionPolicy::new;
+
+    /**
+     * Default for whether write-through mode is enabled.
+     *
+     * @see #isWriteThrough
+     */
+    boolean DEFAULT_WRITE_THROUGH = false;
+
     /**
      * Get the maximum number of bytes to cache in a single contiguous range of key/value pairs.
      *
@@ -161,6 +182,109 @@ public interface CachingConfig {
      */
     void setReadAhead(boolean readAhead);
 
+    /**
+     * Get the maximum total number of bytes to cache in the point cache.
+     *
+     * <p>
+     * The point cache holds the results of individual key lookups, including keys found to be absent, that are
+     * part of a random access pattern and therefore not worth loading as a range. Zero means the point cache is disabled.
+     *
+     * <p>
+     * Default is {@value #DEFAULT_MAX_POINT_BYTES}.
+     *
+     * @return maximum point cache bytes
+     */
+    long getMaxPointBytes();
+
+    /**
+     * Configure the maximum total number of bytes to cache in the point cache.
+     *
+     * <p>
+     * Default is {@value #DEFAULT_MAX_POINT_BYTES}.
+     *
+     * @param maxPointBytes maximum point cache bytes, or zero to disable the point cache
+     * @throws IllegalArgumentException if {@code maxPointBytes < 0}
+     */
+    void setMaxPointBytes(long maxPointBytes);
+
+    /**
+     * Get the factory for the {@link EvictionPolicy} that decides which cached ranges to discard
+     * when the configured limits are exceeded.
+     *
+     * <p>
+     * Default is {@link #DEFAULT_EVICTION_POLICY_FACTORY}.
+     *
+     * @return eviction policy factory
+     */
+    EvictionPolicy.Factory getEvictionPolicyFactory();
+
+    /**
+     * Configure the factory for the {@link EvictionPolicy} that decides which cached ranges to discard
+     * when the configured limits are exceeded.
+     *
+     * <p>
+     * Default is {@link #DEFAULT_EVICTION_POLICY_FACTORY}.
+     *
+     * @param evictionPolicyFactory eviction policy factory
+     * @throws IllegalArgumentException if {@code evictionPolicyFactory} is null
+     */
+    void setEvictionPolicyFactory(EvictionPolicy.Factory evictionPolicyFactory);
+
+    /**
+     * Get whether this instance is configured for write-through mode.
+     *
+     * <p>
+     * In write-through mode, mutations are forwarded immediately to the underlying key/value store and also applied
+     * to the cached data, so that reading back modified keys does not require another round trip. Otherwise,
+     * the underlying key/value store is treated as read-only.
+     *
+     * <p>
+     * Default is {@value #DEFAULT_WRITE_THROUGH}.
+     *
+     * @return true if write-through mode is enabled, otherwise false
+     */
+    boolean isWriteThrough();
+
+    /**
+     * Configure whether write-through mode is enabled.
+     *
+     * <p>
+     * Default is {@value #DEFAULT_WRITE_THROUGH}.
+     *
+     * @param writeThrough true to enable write-through mode, false to disable
+     */
+    void setWriteThrough(boolean writeThrough);
+
+    /**
+     * Get the number of queries answered entirely from the cache.
+     *
+     * <p>
+     * This is a statistic, not a configuration parameter, and is not copied by {@link #copyCachingConfigTo}.
+     *
+     * @return number of cache hits
+     */
+    long getHits();
+
+    /**
+     * Get the number of queries that required a read from the underlying key/value store.
+     *
+     * <p>
+     * This is a statistic, not a configuration parameter, and is not copied by {@link #copyCachingConfigTo}.
+     *
+     * @return number of cache misses
+     */
+    long getMisses();
+
+    /**
+     * Get the number of cached ranges discarded because the configured limits were exceeded.
+     *
+     * <p>
+     * This is a statistic, not a configuration parameter, and is not copied by {@link #copyCachingConfigTo}.
+     *
+     * @return number of cache evictions
+     */
+    long getEvictions();
+
     /**
      * Copy config parameters.
      *
@@ -173,5 +297,8 @@ public interface CachingConfig {
         dest.setMaxTotalBytes(this.getMaxTotalBytes());
         dest.setMaxRanges(this.getMaxRanges());
         dest.setReadAhead(this.isReadAhead());
+        dest.setMaxPointBytes(this.getMaxPointBytes());
+        dest.setEvictionPolicyFactory(this.getEvictionPolicyFactory());
+        dest.setWriteThrough(this.isWriteThrough());
     }
 }
@@ -36,6 +36,21 @@ import javax.annotation.PreDestroy;
  * within any given transaction. A corollary is that transactions must be fully isolated from each other.
  * Enabling assertions on this package may detect some violations of this assumption.
  *
+ * <p><b>Write-Through Mode</b></p>
+ *
+ * <p>
+ * By default, transactions collect mutations in memory and apply them to the inner transaction on commit.
+ * In {@linkplain #setWriteThrough write-through mode}, mutations are instead forwarded to the inner transaction
+ * immediately and also applied to the transaction's cached data; see {@link CachingKVStore}.
+ *
+ * <p><b>Shared Cache</b></p>
+ *
+ * <p>
+ * Optionally, instances may also maintain a {@link SharedKVCache} of the key/value ranges loaded by committed transactions,
+ * so that new transactions don't start with a cold cache. This is disabled by default because it requires that all
+ * modifications to the underlying {@link KVDatabase} be made through this instance; see
+ * {@link #setSharedCacheMaxBytes setSharedCacheMaxBytes()}.
+ *
  * @see CachingKVStore
  */
 public class CachingKVDatabase extends AbstractCachingConfig implements KVDatabase {
@@ -62,10 +77,12 @@ public class CachingKVDatabase extends AbstractCachingConfig implements KVDataba
     private int threadPoolSize = DEFAULT_THREAD_POOL_SIZE;
     private long initialRttEstimate = TimeUnit.MILLISECONDS.toNanos(DEFAULT_INITIAL_RTT_ESTIMATE_MILLIS);
     private ExecutorService executor;
+    private long sharedCacheMaxBytes;
 
     private boolean started;
     private boolean privateExecutor;
     private MovingAverage rtt;
+    private SharedKVCache sharedCache;
 
     /**
      * Default constructor.
@@ -200,6 +217,47 @@ public class CachingKVDatabase extends AbstractCachingConfig implements KVDataba
         this.threadPoolSize = threadPoolSize;
     }
 
+    /**
+     * Get the maximum size of the shared cache.
+     *
+     * @return maximum total number of bytes in the {@link SharedKVCache}, or zero if the shared cache is disabled
+     */
+    public synchronized long getSharedCacheMaxBytes() {
+        return this.sharedCacheMaxBytes;
+    }
+
+    /**
+     * Configure the maximum size of the shared cache, or disable it.
+     *
+     * <p>
+     * When enabled, key/value ranges loaded by committed transactions are kept in a {@link SharedKVCache} and made
+     * available to subsequent transactions. Cached ranges are invalidated by the commits of this instance's transactions,
+     * so <b>the shared cache must only be enabled if all modifications to the underlying {@link KVDatabase} are made
+     * through this instance</b>.
+     *
+     * <p>
+     * Default is zero, i.e., disabled.
+     *
+     * @param sharedCacheMaxBytes maximum total number of bytes in the {@link SharedKVCache}, or zero to disable
+     * @throws IllegalStateException if this instance is already started
+     * @throws IllegalArgumentException if {@code sharedCacheMaxBytes < 0}
+     */
+    public synchronized void setSharedCacheMaxBytes(long sharedCacheMaxBytes) {
+        Preconditions.checkArgument(sharedCacheMaxBytes >= 0, "sharedCacheMaxBytes < 0");
+        Preconditions.checkState(!this.started, "already started");
+        this.sharedCacheMaxBytes = sharedCacheMaxBytes;
+    }
+
+    /**
+     * Get the shared cache, if any.
+     *
+     * @return shared cache, or null if this instance is not started or the shared cache is disabled
+     * @see #setSharedCacheMaxBytes
+     */
+    public synchronized SharedKVCache getSharedKVCache() {
+        return this.sharedCache;
+    }
+
 // Lifecycle
 
     @Override
@@ -217,6 +275,7 @@ public class CachingKVDatabase extends AbstractCachingConfig implements KVDataba
             });
         }
         this.rtt = new MovingAverage(RTT_ESTIMATE_DECAY_FACTOR, this.initialRttEstimate);
+        this.sharedCache = this.sharedCacheMaxBytes > 0 ? new SharedKVCache(this.sharedCacheMaxBytes) : null;
         try {
             this.inner.start();
             this.started = true;
@@ -241,6 +300,7 @@ public class CachingKVDatabase extends AbstractCachingConfig implements KVDataba
                 this.executor.shutdown();
             this.executor = null;
         }
+        this.sharedCache = null;
         this.inner.stop();
     }
 
@@ -258,7 +318,22 @@ public class CachingKVDatabase extends AbstractCachingConfig implements KVDataba
 
     protected synchronized CachingKVTransaction createTransaction(Supplier<? extends KVTransaction> innerTxCreator) {
         Preconditions.checkState(this.started, "not started");
-        return new CachingKVTransaction(this, innerTxCreator.get(), this.executor, (long)this.rtt.get());
+
+        // Register with the shared cache before the inner transaction (and its snapshot) is created, so that any commit
+        // that finishes in between is treated as possibly invisible to the new transaction
+        if (this.sharedCache == null)
+            return new CachingKVTransaction(this, innerTxCreator.get(), this.executor, (long)this.rtt.get(), null, 0);
+        final long startSeq = this.sharedCache.openTransaction();
+        boolean success = false;
+        try {
+            final CachingKVTransaction tx = new CachingKVTransaction(this,
+              innerTxCreator.get(), this.executor, (long)this.rtt.get(), this.sharedCache, startSeq);
+            success = true;
+            return tx;
+        } finally {
+            if (!success)
+                this.sharedCache.closeTransaction(startSeq);
+        }
     }
 
 // RTT estimate
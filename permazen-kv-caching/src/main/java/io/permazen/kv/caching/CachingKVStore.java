@@ -13,6 +13,7 @@ import io.permazen.kv.KVPair;
 import io.permazen.kv.KVPairIterator;
 import io.permazen.kv.KVStore;
 import io.permazen.kv.KeyRange;
+import io.permazen.kv.mvcc.Mutations;
 import io.permazen.kv.util.CloseableForwardingKVStore;
 import io.permazen.util.ByteUtil;
 import io.permazen.util.CloseableIterator;
@@ -21,17 +22,21 @@ import io.permazen.util.MovingAverage;
 import java.io.Closeable;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.SortedSet;
+import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -64,19 +69,47 @@ import org.slf4j.LoggerFactory;
  * key/value pairs yet to arrive), instances will sometimes speculatively delay creating a new task. This decision
  * is based on an ongoing estimation of round-trip time, and the uncompleted background query's data arrival rate.
  *
+ * <p><b>Point Lookups</b></p>
+ *
+ * <p>
+ * Loading a range for every {@link #get get()} is wasteful when keys are being looked up at random, e.g., objects
+ * fetched by ID, because each lookup creates a tiny range and any read-ahead goes unused. Instances therefore track
+ * the access pattern of {@link #get get()} calls within each region of the key space (as determined by a short key
+ * prefix). Lookups that are part of an ascending sequence are handled using ranges as described above, while other
+ * lookups are forwarded directly to {@link KVStore#get KVStore.get()}, and their results, including absent keys, are kept
+ * in a separate {@linkplain #setMaxPointBytes bounded point cache}. The results of {@link #getMany getMany()} lookups
+ * are also added to the point cache.
+ *
+ * <p><b>Write-Through Mode</b></p>
+ *
+ * <p>
+ * By default, instances treat the underlying {@link KVStore} as read-only, and attempts to modify it result in an
+ * {@link UnsupportedOperationException}. In {@linkplain #setWriteThrough write-through mode}, mutations are instead
+ * forwarded to the underlying {@link KVStore} and also applied to the cached data: after {@link #put put()},
+ * {@link #remove remove()}, or {@link #removeRange removeRange()}, the affected key range is known to contain exactly
+ * the new key/value pair, or nothing (i.e., a tombstone), so reading it back is answered from the cache. After
+ * {@link #adjustCounter adjustCounter()}, a cached counter value is updated in place; if the resulting value can't
+ * be determined, the key is dropped from the cache instead. Any background range loads that could return data
+ * predating a mutation are stopped. Mutations are forwarded to the underlying {@link KVStore} without holding
+ * the lock that guards the cache, so slow writes don't block reads answered from the cache; background range loads
+ * pause while a mutation is in progress, and mutations are serialized among themselves, so the cache reflects them
+ * in the same order as the underlying {@link KVStore}.
+ *
  * <p><b>Configuration</b></p>
  *
  * <p>
  * Instances are configured with limits on {@linkplain #setMaxRanges the maximum number of contiguous key/value ranges},
  * {@linkplain #setMaxRangeBytes the maximum amount of data to preload into a single contiguous key/value range},
  * and {@linkplain #setMaxTotalBytes the maximum total amount of data to cache}. Once these limits are exceeded,
- * stored ranges are discarded on a least-recently-used basis.
+ * stored ranges are discarded as chosen by the configured {@linkplain #setEvictionPolicyFactory eviction policy}.
+ * The default policy, {@link TinyLFUEvictionPolicy}, is scan resistant: a range loaded by a large one-off scan
+ * will not displace smaller ranges that are in frequent use.
  *
  * <p><b>Consistency Assumptions</b></p>
  *
  * <p>
- * This class assumes the underlying key/value store is read-only and unchanging, so that cached values are always
- * up-to-date. Attempts to modify the key/value store will result in an {@link UnsupportedOperationException}.
+ * This class assumes the underlying key/value store is unchanging, except through this instance in write-through mode,
+ * so that cached values are always up-to-date.
  *
  * <p>
  * <b>Warning:</b> this class assumes that the underlying {@link KVStore} provides fully consistent
@@ -192,18 +225,28 @@ public class CachingKVStore extends CloseableForwardingKVStore implements Cachin
 
     private static final double RTT_DECAY_FACTOR = 0.025;
 
+    private static final int REGION_PREFIX_LENGTH = 2;                      // key prefix length that defines a "region"
+    private static final int NUM_REGIONS = 256;                             // must be a power of two
+    private static final int MIN_SEQUENTIAL_SCORE = 2;
+    private static final int MAX_ACCESS_SCORE = 4;
+    private static final int POINT_OVERHEAD = 64;                           // estimated per-entry overhead in point cache
+
     private static final int INITIAL_ARRAY_CAPACITY = 32;
     private static final float ARRAY_GROWTH_FACTOR = 1.5f;
 
-    private static final Comparator<KVRange> SORT_BY_MIN
-      = Comparator.nullsLast(Comparator.comparing(KVRange::getMin, ByteUtil.COMPARATOR));
+    private static final Comparator<KVRange> SORT_BY_MIN                    // null min (reverse load from infinity) sorts last
+      = Comparator.comparing(KVRange::getMin, Comparator.nullsLast(ByteUtil.COMPARATOR));
 
     private final Logger log = LoggerFactory.getLogger(this.getClass());
 
     private final MovingAverage rtt;                                            // estimation of time to load first key in range
     private final ExecutorService executor;                                     // executor for async loading tasks
     private final TreeSet<KVRange> ranges = new TreeSet<>(SORT_BY_MIN);         // ranges ordered by key range minimum
-    private final RingEntry<KVRange> lru = new RingEntry<>(null);               // ranges ordered by recency (MRU first, LRU last)
+    private final HashSet<Loader> activeLoaders = new HashSet<>();              // loaders currently associated with a range
+    private final ReentrantReadWriteLock scanLock = new ReentrantReadWriteLock();   // loader reads vs. write-through mutations
+    private final TreeMap<byte[], Point> points = new TreeMap<>(ByteUtil.COMPARATOR);  // point cache
+    private final RingEntry<Point> pointLru = new RingEntry<>(null);            // points ordered by recency (MRU first, LRU last)
+    private final AccessPattern[] regions = new AccessPattern[NUM_REGIONS];     // get() access patterns by key space region
 
     // CachingConfig
     private int maxRanges = DEFAULT_MAX_RANGES;
@@ -211,8 +254,20 @@ public class CachingKVStore extends CloseableForwardingKVStore implements Cachin
     private long maxTotalBytes = DEFAULT_MAX_TOTAL_BYTES;
     private boolean readAhead = DEFAULT_READ_AHEAD;
     private double waitFactor = DEFAULT_WAIT_FACTOR;
+    private long maxPointBytes = DEFAULT_MAX_POINT_BYTES;
+    private EvictionPolicy.Factory evictionPolicyFactory = DEFAULT_EVICTION_POLICY_FACTORY;
+    private boolean writeThrough = DEFAULT_WRITE_THROUGH;
 
+    // Statistics
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    private EvictionPolicy<KVRange> evictionPolicy = this.evictionPolicyFactory.createEvictionPolicy();
+    private KVRange lastAccessed;                                               // most recently accessed range
     private long totalBytes;
+    private long pointBytes;
+    private long modCount;                                                      // incremented with each mutation
     private KVException error;
 
 // Constructors
@@ -308,12 +363,199 @@ public class CachingKVStore extends CloseableForwardingKVStore implements Cachin
         this.readAhead = readAhead;
     }
 
+    @Override
+    public synchronized long getMaxPointBytes() {
+        return this.maxPointBytes;
+    }
+
+    @Override
+    public synchronized void setMaxPointBytes(long maxPointBytes) {
+        Preconditions.checkArgument(maxPointBytes >= 0, "maxPointBytes < 0");
+        this.maxPointBytes = maxPointBytes;
+        this.scrubPoints();
+    }
+
+    @Override
+    public synchronized EvictionPolicy.Factory getEvictionPolicyFactory() {
+        return this.evictionPolicyFactory;
+    }
+
+    /**
+     * Configure the factory for the {@link EvictionPolicy} that decides which cached ranges to discard
+     * when the configured limits are exceeded.
+     *
+     * <p>
+     * Any ranges already cached are handed over to a newly created policy.
+     *
+     * @param evictionPolicyFactory eviction policy factory
+     * @throws IllegalArgumentException if {@code evictionPolicyFactory} is null
+     */
+    @Override
+    public synchronized void setEvictionPolicyFactory(EvictionPolicy.Factory evictionPolicyFactory) {
+        Preconditions.checkArgument(evictionPolicyFactory != null, "null evictionPolicyFactory");
+        if (evictionPolicyFactory == this.evictionPolicyFactory)
+            return;
+        final EvictionPolicy<KVRange> newPolicy = evictionPolicyFactory.createEvictionPolicy();
+        Preconditions.checkArgument(newPolicy != null, "factory returned null policy");
+        for (KVRange range : this.ranges)
+            newPolicy.add(range, this.hash(range), range.getTotalBytes());
+        this.evictionPolicyFactory = evictionPolicyFactory;
+        this.evictionPolicy = newPolicy;
+        this.lastAccessed = null;
+    }
+
+    @Override
+    public synchronized boolean isWriteThrough() {
+        return this.writeThrough;
+    }
+
+    @Override
+    public synchronized void setWriteThrough(boolean writeThrough) {
+        this.writeThrough = writeThrough;
+    }
+
+    @Override
+    public synchronized long getHits() {
+        return this.hits;
+    }
+
+    @Override
+    public synchronized long getMisses() {
+        return this.misses;
+    }
+
+    @Override
+    public synchronized long getEvictions() {
+        return this.evictions;
+    }
+
 // KVStore
 
     @Override
     public byte[] get(byte[] key) {
-        final KVPair pair = this.getAtLeast(key, ByteUtil.getNextKey(key));
-        return pair != null ? pair.getValue() : null;
+
+        // Check cached ranges and point cache, and decide how to load the key if not found
+        final boolean randomAccess;
+        final long startModCount;
+        synchronized (this) {
+
+            // Check for error
+            if (this.error != null)
+                this.error.rethrow();
+
+            // Search ranges
+            final KVRange range = this.last(this.ranges.headSet(this.key(key), true));
+            if (range != null && KeyRange.compare(key, range.getMax()) < 0) {
+                final KVPair pair = range.getAtLeast(key);
+                this.touch(range);                                                          // keep range fresh
+                this.hits++;
+                this.scrub();
+                return pair != null && Arrays.equals(pair.getKey(), key) ? pair.getValue() : null;
+            }
+
+            // Search point cache
+            final Point point = this.points.get(key);
+            if (point != null) {
+                if (this.log.isTraceEnabled())
+                    this.trace("get: key={} found in point cache", ByteUtil.toString(key));
+                point.getLruEntry().attachAfter(this.pointLru);                             // keep point fresh
+                this.hits++;
+                return point.getValue() != null ? point.getValue().clone() : null;
+            }
+
+            // Random or sequential?
+            randomAccess = this.maxPointBytes > 0 && this.isRandomAccess(key, range);
+            startModCount = this.modCount;
+        }
+
+        // For sequential access, load a range
+        if (!randomAccess) {
+            final KVPair pair = this.getAtLeast(key, ByteUtil.getNextKey(key));
+            return pair != null ? pair.getValue() : null;
+        }
+
+        // For random access, look up the individual key
+        if (this.log.isTraceEnabled())
+            this.trace("get: key={} random access => point lookup", ByteUtil.toString(key));
+        final byte[] value = this.delegate().get(key);
+        synchronized (this) {
+            if (this.modCount == startModCount)                                                  // else value may be stale
+                this.addPoint(key, value);
+            this.misses++;
+        }
+        return value != null ? value.clone() : null;
+    }
+
+    /**
+     * Get the values associated with multiple keys.
+     *
+     * <p>
+     * The implementation in {@link CachingKVStore} answers keys contained in a range that is already cached directly,
+     * or in the point cache, directly, and looks up all of the remaining keys with a single {@link KVStore#getMany getMany()}
+     * invocation on the underlying {@link KVStore}. Keys looked up in this way do not start any new background range loads;
+     * instead, their results are added to the point cache.
+     */
+    @Override
+    public List<byte[]> getMany(List<byte[]> keys) {
+        Preconditions.checkArgument(keys != null, "null keys");
+
+        // Answer what we can from cached ranges; gather the rest
+        final int numKeys = keys.size();
+        final ArrayList<byte[]> values = new ArrayList<>(numKeys);
+        final ArrayList<byte[]> missKeys = new ArrayList<>(numKeys);
+        final int[] missIndexes = new int[numKeys];
+        final long startModCount;
+        synchronized (this) {
+
+            // Check for error
+            if (this.error != null)
+                this.error.rethrow();
+            startModCount = this.modCount;
+
+            // Search ranges
+            for (int i = 0; i < numKeys; i++) {
+                final byte[] key = keys.get(i);
+                final KVRange range = this.last(this.ranges.headSet(this.key(key), true));
+                if (range != null && KeyRange.compare(key, range.getMax()) < 0) {
+                    final KVPair pair = range.getAtLeast(key);
+                    values.add(pair != null && Arrays.equals(pair.getKey(), key) ? pair.getValue() : null);
+                    this.touch(range);                                                      // keep range fresh
+                    this.hits++;
+                    continue;
+                }
+
+                // Search point cache
+                final Point point = this.points.get(key);
+                if (point != null) {
+                    values.add(point.getValue() != null ? point.getValue().clone() : null);
+                    point.getLruEntry().attachAfter(this.pointLru);                         // keep point fresh
+                    this.hits++;
+                    continue;
+                }
+                values.add(null);
+                missIndexes[missKeys.size()] = i;
+                missKeys.add(key);
+            }
+            this.scrub();
+        }
+        if (this.log.isTraceEnabled())
+            this.trace("getMany: found {}/{} keys in cache", numKeys - missKeys.size(), numKeys);
+        if (missKeys.isEmpty())
+            return values;
+
+        // Look up misses in the underlying k/v store in one batch
+        final List<byte[]> missValues = this.delegate().getMany(missKeys);
+        assert missValues.size() == missKeys.size();
+        synchronized (this) {
+            this.misses += missKeys.size();
+            for (int i = 0; i < missKeys.size(); i++) {
+                final byte[] value = missValues.get(i);
+                if (this.modCount == startModCount)                                              // else value may be stale
+                    this.addPoint(missKeys.get(i), value);
+                values.set(missIndexes[i], value != null ? value.clone() : null);
+            }
+        }
+        return values;
     }
 
     @Override
@@ -341,19 +583,147 @@ public class CachingKVStore extends CloseableForwardingKVStore implements Cachin
         return this.find(maxKey, minKey, true);
     }
 
+    /**
+     * Put a key/value pair.
+     *
+     * @throws UnsupportedOperationException if this instance is not in {@linkplain #setWriteThrough write-through mode}
+     */
     @Override
     public void put(byte[] key, byte[] value) {
-        throw new UnsupportedOperationException();
+        Preconditions.checkArgument(key != null, "null key");
+        Preconditions.checkArgument(value != null, "null value");
+        this.scanLock.writeLock().lock();
+        try {
+            synchronized (this) {
+                this.checkWritable();
+            }
+            this.delegate().put(key, value);
+            if (this.log.isTraceEnabled())
+                this.trace("put: key={} value={}", ByteUtil.toString(key), ByteUtil.toString(value));
+            synchronized (this) {
+                this.learn(key, ByteUtil.getNextKey(key), key.clone(), value.clone());
+            }
+        } finally {
+            this.scanLock.writeLock().unlock();
+        }
     }
 
+    /**
+     * Remove a key/value pair.
+     *
+     * @throws UnsupportedOperationException if this instance is not in {@linkplain #setWriteThrough write-through mode}
+     */
     @Override
     public void remove(byte[] key) {
-        throw new UnsupportedOperationException();
+        Preconditions.checkArgument(key != null, "null key");
+        this.scanLock.writeLock().lock();
+        try {
+            synchronized (this) {
+                this.checkWritable();
+            }
+            this.delegate().remove(key);
+            if (this.log.isTraceEnabled())
+                this.trace("remove: key={}", ByteUtil.toString(key));
+            synchronized (this) {
+                this.learn(key, ByteUtil.getNextKey(key), null, null);
+            }
+        } finally {
+            this.scanLock.writeLock().unlock();
+        }
     }
 
+    /**
+     * Remove a range of key/value pairs.
+     *
+     * @throws UnsupportedOperationException if this instance is not in {@linkplain #setWriteThrough write-through mode}
+     */
     @Override
     public void removeRange(byte[] minKey, byte[] maxKey) {
-        throw new UnsupportedOperationException();
+        if (minKey == null)
+            minKey = ByteUtil.EMPTY;
+        Preconditions.checkArgument(KeyRange.compare(minKey, maxKey) <= 0, "minKey > maxKey");
+        this.scanLock.writeLock().lock();
+        try {
+            synchronized (this) {
+                this.checkWritable();
+            }
+            this.delegate().removeRange(minKey, maxKey);
+            if (this.log.isTraceEnabled())
+                this.trace("removeRange: min={} max={}", ByteUtil.toString(minKey), ByteUtil.toString(maxKey));
+            if (KeyRange.compare(minKey, maxKey) < 0) {
+                synchronized (this) {
+                    this.learn(minKey, maxKey, null, null);
+                }
+            }
+        } finally {
+            this.scanLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adjust a counter.
+     *
+     * <p>
+     * If the counter's current value is cached, the cached value is updated; otherwise, the key is dropped from the cache.
+     *
+     * @throws UnsupportedOperationException if this instance is not in {@linkplain #setWriteThrough write-through mode}
+     */
+    @Override
+    public void adjustCounter(byte[] key, long amount) {
+        Preconditions.checkArgument(key != null, "null key");
+        this.scanLock.writeLock().lock();
+        try {
+
+            // Compute the new counter value from the cached value, if possible; while we hold the write lock,
+            // neither other mutations nor loaders can change the cached value before we update it below
+            byte[] value = null;
+            synchronized (this) {
+                this.checkWritable();
+                final KVRange range = this.last(this.ranges.headSet(this.key(key), true));
+                if (range != null && KeyRange.compare(key, range.getMax()) < 0) {
+                    final KVPair pair = range.getAtLeast(key);
+                    if (pair != null && Arrays.equals(pair.getKey(), key)) {
+                        try {
+                            value = this.delegate().encodeCounter(this.delegate().decodeCounter(pair.getValue()) + amount);
+                        } catch (IllegalArgumentException e) {
+                            // not a valid counter value - resulting value is undefined
+                        }
+                    }
+                }
+            }
+
+            // Adjust counter
+            this.delegate().adjustCounter(key, amount);
+            if (this.log.isTraceEnabled())
+                this.trace("adjustCounter: key={} amount={}", ByteUtil.toString(key), amount);
+
+            // Update cache
+            final byte[] nextKey = ByteUtil.getNextKey(key);
+            synchronized (this) {
+                if (value != null)
+                    this.learn(key, nextKey, key.clone(), value);
+                else
+                    this.forget(key, nextKey);
+            }
+        } finally {
+            this.scanLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Apply a set of mutations.
+     *
+     * @throws UnsupportedOperationException if this instance is not in {@linkplain #setWriteThrough write-through mode}
+     */
+    @Override
+    public void apply(Mutations mutations) {
+        Preconditions.checkArgument(mutations != null, "null mutations");
+        for (KeyRange remove : mutations.getRemoveRanges())
+            this.removeRange(remove.getMin(), remove.getMax());
+        for (Map.Entry<byte[], byte[]> entry : mutations.getPutPairs())
+            this.put(entry.getKey(), entry.getValue());
+        for (Map.Entry<byte[], Long> entry : mutations.getAdjustPairs())
+            this.adjustCounter(entry.getKey(), entry.getValue());
     }
 
 // Closeable
@@ -375,6 +745,9 @@ public class CachingKVStore extends CloseableForwardingKVStore implements Cachin
             for (KVRange range : this.ranges)
                 this.discard(range, false);
             this.ranges.clear();
+            this.points.clear();
+            this.pointLru.detach();
+            this.pointBytes = 0;
         }
         super.close();
     }
@@ -390,6 +763,26 @@ public class CachingKVStore extends CloseableForwardingKVStore implements Cachin
         return this.rtt.get();
     }
 
+    /**
+     * Copy the currently cached ranges, for adding to a {@link SharedKVCache}.
+     *
+     * <p>
+     * The returned ranges share key and value arrays with this instance, which are never modified.
+     *
+     * @return non-empty cached ranges
+     */
+    synchronized List<SharedKVCache.Range> copyRanges() {
+        final ArrayList<SharedKVCache.Range> list = new ArrayList<>(this.ranges.size());
+        for (KVRange range : this.ranges) {
+            if (range.isPrimordial())
+                continue;
+            list.add(new SharedKVCache.Range(range.getMin(), range.getMax(),
+              Arrays.copyOfRange(range.keys, range.minIndex, range.maxIndex),
+              Arrays.copyOfRange(range.vals, range.minIndex, range.maxIndex), range.getTotalBytes()));
+        }
+        return list;
+    }
+
 // Internal methods
 
     private KVPair find(byte[] start, final byte[] limit, final boolean reverse) {
@@ -409,6 +802,7 @@ public class CachingKVStore extends CloseableForwardingKVStore implements Cachin
         // Loop until we have an answer
         long lastLoopTime = System.nanoTime();
         boolean interrupted = false;
+        boolean waited = false;
         while (true) {
             Future<?> future;
             synchronized (this) {
@@ -436,8 +830,8 @@ public class CachingKVStore extends CloseableForwardingKVStore implements Cachin
                 // We may have to do an extra step in the reverse case because ranges are sorted by minimum, not maximum.
                 KVRange range = this.last(start != null ? this.ranges.headSet(this.key(start), true) : this.ranges);
                 if (reverse && range != null) {
-                    if (KeyRange.compare(range.getMax(), start) < 0 && start != null) {
-                        range = this.first(this.ranges.tailSet(this.key(start), true));
+                    if (KeyRange.compare(range.getMax(), start) < 0) {
+                        range = start != null ? this.first(this.ranges.tailSet(this.key(start), true)) : null;
                         assert range == null || KeyRange.compare(range.getMax(), start) >= 0;
                     }
                 }
@@ -489,6 +883,13 @@ public class CachingKVStore extends CloseableForwardingKVStore implements Cachin
 
                             // Keep range fresh
                             this.touch(range);
+                            if (waited)
+                                this.misses++;
+                            else
+                                this.hits++;
+
+                            // Background loaders may have pushed us over our limits
+                            this.scrub();
                             return pair;
                         }
 
@@ -567,8 +968,7 @@ public class CachingKVStore extends CloseableForwardingKVStore implements Cachin
                 // Create a new range if necessary
                 if (range == null) {
                     range = new KVRange(start);
-                    this.ranges.add(range);
-                    range.getLruEntry().attachAfter(this.lru);
+                    this.addRange(range);
                     if (this.log.isTraceEnabled()) {
                         this.trace("find: start={} limit={} created new {}",
                           ByteUtil.toString(start), ByteUtil.toString(limit), range);
@@ -618,6 +1018,7 @@ public class CachingKVStore extends CloseableForwardingKVStore implements Cachin
             }
 
             // Wait for loader to report progress, then try again
+            waited = true;
             try {
                 future.get();
                 if (this.log.isTraceEnabled())
@@ -649,28 +1050,260 @@ public class CachingKVStore extends CloseableForwardingKVStore implements Cachin
         }
     }
 
-    // Move range back to the front of the LRU list
+    // Notify eviction policy of an access to range; repeated accesses to the same range (e.g., a scan) count only once
     private void touch(KVRange range) {
         assert Thread.holdsLock(this);
-        assert range.getLruEntry().isAttached();
         assert this.ranges.contains(range) : "range " + range + " not found in " + this.ranges;
+        if (range == this.lastAccessed)
+            return;
         if (this.log.isTraceEnabled())
             this.trace("touch: renew range={}", range);
-        range.getLruEntry().attachAfter(this.lru);
+        this.evictionPolicy.access(range);
+        this.lastAccessed = range;
     }
 
-    // Remove old ranges until we are underneath our total byte limit
+    // Add a new range
+    private void addRange(KVRange range) {
+        assert Thread.holdsLock(this);
+        final boolean added = this.ranges.add(range);
+        assert added;
+        this.evictionPolicy.add(range, this.hash(range), range.getTotalBytes());
+        this.totalBytes += range.getTotalBytes();
+        this.lastAccessed = range;
+    }
+
+    // Account for a change in the size of a range; we're already locked, but this keeps all eviction policy access synchronized
+    private synchronized void resized(KVRange range, long delta) {
+        this.totalBytes += delta;
+        this.evictionPolicy.resize(range, range.getTotalBytes());
+    }
+
+    // Evict ranges chosen by the eviction policy until we are within our range count and total byte limits
     private void scrub() {
         assert Thread.holdsLock(this);
-        while (this.totalBytes > this.maxTotalBytes) {
+        while (this.totalBytes > this.maxTotalBytes || this.ranges.size() > this.maxRanges) {
 
-            // Get the least recently used range
-            final KVRange range = this.lru.prev().getOwner();
-            if (range == null)                                          // LRU ring is empty
+            // Ask eviction policy for a victim
+            final KVRange range = this.evictionPolicy.victim(this.maxTotalBytes);
+            if (range == null)                                          // there are no ranges
                 break;
 
             // Discard it
+            if (this.log.isTraceEnabled())
+                this.trace("scrub: evicting range={} policy={}", range, this.evictionPolicy);
             this.discard(range, true);
+            this.evictions++;
+        }
+    }
+
+    // Get the eviction policy hash value for a range, which identifies the region of the key space where it was created
+    private int hash(KVRange range) {
+        return Arrays.hashCode(range.getMin());
+    }
+
+    private void checkWritable() {
+        assert Thread.holdsLock(this);
+        if (!this.writeThrough)
+            throw new UnsupportedOperationException("not in write-through mode");
+        if (this.error != null)
+            this.error.rethrow();
+    }
+
+    // Record that the key range [min, max) now contains exactly the given key/value pair, or nothing if key is null
+    private void learn(byte[] min, byte[] max, byte[] key, byte[] val) {
+        assert Thread.holdsLock(this);
+        assert min != null;
+        assert KeyRange.compare(min, max) < 0;
+        assert key == null || (KeyRange.compare(key, min) >= 0 && KeyRange.compare(key, max) < 0);
+        this.prepareMutation(min, max);
+
+        // If the range is contained within an existing range, just update that range
+        final KVRange range = this.last(this.ranges.headSet(this.key(min), true));
+        if (range != null && !range.isPrimordial() && KeyRange.compare(max, range.getMax()) <= 0) {
+            range.replace(min, max, key, val);
+            assert this.sanityCheck();
+            return;
+        }
+
+        // Find all ranges that overlap or abut the range; we will replace them with a single merged range.
+        // Because ranges are non-overlapping, only the range below min can reach it, so start the search there.
+        final ArrayList<KVRange> affected = new ArrayList<>();
+        final KVRange below = this.ranges.lower(this.key(min));
+        for (KVRange next : below != null ? this.ranges.tailSet(below, true) : this.ranges) {
+            if (KeyRange.compare(next.getMin(), max) > 0)
+                break;
+            if (KeyRange.compare(next.getMax(), min) >= 0)
+                affected.add(next);
+        }
+
+        // Build merged range, keeping pairs outside of [min, max) plus the given pair
+        byte[] newMin = min;
+        byte[] newMax = max;
+        final ArrayList<byte[]> newKeys = new ArrayList<>();
+        final ArrayList<byte[]> newVals = new ArrayList<>();
+        long newTotalBytes = 0;
+        boolean addedKey = key == null;
+        for (KVRange next : affected) {
+            if (next.isPrimordial())
+                continue;
+            if (KeyRange.compare(next.getMin(), newMin) < 0)
+                newMin = next.getMin();
+            if (KeyRange.compare(next.getMax(), newMax) > 0)
+                newMax = next.getMax();
+            for (int i = next.minIndex; i < next.maxIndex; i++) {
+                final byte[] nextKey = next.keys[i];
+                if (KeyRange.compare(nextKey, min) >= 0) {
+                    if (KeyRange.compare(nextKey, max) < 0)
+                        continue;
+                    if (!addedKey) {
+                        newKeys.add(key);
+                        newVals.add(val);
+                        newTotalBytes += key.length + val.length;
+                        addedKey = true;
+                    }
+                }
+                newKeys.add(nextKey);
+                newVals.add(next.vals[i]);
+                newTotalBytes += nextKey.length + next.vals[i].length;
+            }
+        }
+        if (!addedKey) {
+            newKeys.add(key);
+            newVals.add(val);
+            newTotalBytes += key.length + val.length;
+        }
+        final int size = newKeys.size();
+        final byte[][] keys = new byte[(int)(size * ARRAY_GROWTH_FACTOR) + 30][];
+        final byte[][] vals = new byte[keys.length][];
+        final int minIndex = (keys.length - size) / 2;
+        for (int i = 0; i < size; i++) {
+            keys[minIndex + i] = newKeys.get(i);
+            vals[minIndex + i] = newVals.get(i);
+        }
+        final KVRange mergedRange = new KVRange(newMin, newMax, keys, vals, minIndex, minIndex + size, newTotalBytes);
+        if (this.log.isTraceEnabled())
+            this.trace("learn: replacing {} with {}", affected, mergedRange);
+
+        // Replace affected ranges
+        for (KVRange next : affected)
+            this.discard(next, true);
+        this.addRange(mergedRange);
+        this.scrub();
+        assert this.sanityCheck();
+    }
+
+    // Drop the key range [min, max) from the cache because its contents are unknown
+    private void forget(byte[] min, byte[] max) {
+        assert Thread.holdsLock(this);
+        assert min != null && max != null;
+        this.prepareMutation(min, max);
+
+        // Find containing range, if any
+        final KVRange range = this.last(this.ranges.headSet(this.key(min), true));
+        if (range == null || range.isPrimordial() || KeyRange.compare(min, range.getMax()) >= 0)
+            return;
+        assert KeyRange.compare(max, range.getMax()) <= 0;
+
+        // Split the range into the parts before and after [min, max), omitting any empty parts
+        final int lo = range.indexOf(min);
+        final int hi = range.indexOf(max);
+        final KVRange before = KeyRange.compare(range.getMin(), min) < 0 ?
+          range.copy(range.getMin(), min, range.minIndex, lo) : null;
+        final KVRange after = KeyRange.compare(max, range.getMax()) < 0 ?
+          range.copy(max, range.getMax(), hi, range.maxIndex) : null;
+        if (this.log.isTraceEnabled())
+            this.trace("forget: replacing {} with {} and {}", range, before, after);
+        this.discard(range, true);
+        if (before != null)
+            this.addRange(before);
+        if (after != null)
+            this.addRange(after);
+        assert this.sanityCheck();
+    }
+
+    // Prepare for a mutation in the key range [min, max) by stopping loaders and discarding points that may be stale
+    private void prepareMutation(byte[] min, byte[] max) {
+        assert Thread.holdsLock(this);
+        this.modCount++;
+
+        // Stop any loaders whose pending query intersects [min, max). A loader's limit may extend past other ranges,
+        // so we check all active loaders, rather than searching the ranges near [min, max).
+        for (Loader loader : new ArrayList<>(this.activeLoaders)) {
+            final KVRange range = loader.range;
+            final boolean reverse = loader.reverse;
+            final byte[] loadMin = reverse ? loader.limit : range.getMax();
+            final byte[] loadMax = reverse ? range.getMin() : loader.limit;
+            if (KeyRange.compare(loadMin, max) >= 0 || KeyRange.compare(min, loadMax) >= 0)
+                continue;
+            if (this.log.isTraceEnabled())
+                this.trace("stopping {} due to mutation", loader);
+            range.stopLoader(reverse);
+
+            // A primordial range without any loader must be discarded
+            if (range.isPrimordial() && range.getLoader(false) == null && range.getLoader(true) == null)
+                this.discard(range, true);
+        }
+
+        // Discard points
+        for (Iterator<Point> i = (max != null ? this.points.subMap(min, max) : this.points.tailMap(min)).values().iterator();
+          i.hasNext(); ) {
+            final Point point = i.next();
+            point.getLruEntry().detach();
+            this.pointBytes -= point.getBytes();
+            i.remove();
+        }
+    }
+
+    // Update the get() access pattern in the key's region and determine whether this is a random access
+    private boolean isRandomAccess(byte[] key, KVRange range) {
+        assert Thread.holdsLock(this);
+
+        // If a range below is already loading in our direction, join it
+        if (range != null && range.getLoader(false) != null)
+            return false;
+
+        // Find region
+        int hash = 0;
+        for (int i = 0; i < Math.min(key.length, REGION_PREFIX_LENGTH); i++)
+            hash = hash * 31 + (key[i] & 0xff);
+        final int index = hash & (NUM_REGIONS - 1);
+        AccessPattern pattern = this.regions[index];
+        if (pattern == null)
+            pattern = this.regions[index] = new AccessPattern();
+
+        // Update access pattern
+        final boolean random = pattern.update(key);
+        if (this.log.isTraceEnabled())
+            this.trace("get: key={} region={} pattern={}", ByteUtil.toString(key), index, pattern);
+        return random;
+    }
+
+    // Add key/value pair to the point cache; value may be null if key is absent
+    private void addPoint(byte[] key, byte[] value) {
+        assert Thread.holdsLock(this);
+        if (this.maxPointBytes == 0 || this.error != null)
+            return;
+        final Point point = new Point(key.clone(), value != null ? value.clone() : null);
+        final Point previous = this.points.put(point.getKey(), point);
+        if (previous != null) {
+            previous.getLruEntry().detach();
+            this.pointBytes -= previous.getBytes();
+        }
+        point.getLruEntry().attachAfter(this.pointLru);
+        this.pointBytes += point.getBytes();
+        this.scrubPoints();
+    }
+
+    // Remove least recently used points until we are underneath our point byte limit
+    private void scrubPoints() {
+        assert Thread.holdsLock(this);
+        while (this.pointBytes > this.maxPointBytes) {
+            final Point point = this.pointLru.prev().getOwner();
+            if (point == null)                                          // LRU ring is empty
+                break;
+            point.getLruEntry().detach();
+            this.points.remove(point.getKey());
+            this.pointBytes -= point.getBytes();
         }
     }
 
@@ -680,7 +1313,9 @@ public class CachingKVStore extends CloseableForwardingKVStore implements Cachin
             this.trace("discarding range={} age={}ms", range, (System.nanoTime() - range.getCreationTime()) / 1000000L);
         range.stopLoader(false);
         range.stopLoader(true);
-        range.getLruEntry().detach();
+        this.evictionPolicy.remove(range);
+        if (range == this.lastAccessed)
+            this.lastAccessed = null;
         this.totalBytes -= range.getTotalBytes();
         if (removeFromRanges) {
             final boolean removed = this.ranges.remove(range);
@@ -701,12 +1336,9 @@ public class CachingKVStore extends CloseableForwardingKVStore implements Cachin
             assert prev == null || KeyRange.compare(prev.max, next.min) < 0 : "range overlap : " + this.ranges;
             prev = next;
         }
-        final ArrayList<KVRange> rangesList = new ArrayList<>(this.ranges);
-        final ArrayList<KVRange> lruList = new ArrayList<>(this.ranges.size());
-        for (RingEntry<KVRange> entry = this.lru.next(); entry.getOwner() != null; entry = entry.next())
-            lruList.add(entry.getOwner());
-        Collections.sort(lruList, SORT_BY_MIN);
-        assert lruList.equals(rangesList) : "lru=" + lruList + ", ranges=" + rangesList;
+        assert this.evictionPolicy.size() == this.ranges.size() : "policy=" + this.evictionPolicy + ", ranges=" + this.ranges;
+        for (Loader loader : this.activeLoaders)
+            assert loader.range.getLoader(loader.reverse) == loader && this.ranges.contains(loader.range);
         return true;
     }
 
@@ -745,6 +1377,66 @@ public class CachingKVStore extends CloseableForwardingKVStore implements Cachin
         }
     }
 
+// AccessPattern
+
+    // Tracks whether get()'s in some region of the key space are ascending (sequential) or not (random)
+    private static final class AccessPattern {
+
+        private byte[] lastKey;
+        private int score;                              // positive means ascending
+
+        /**
+         * Record an access and determine whether the access pattern looks random.
+         */
+        boolean update(byte[] key) {
+            if (this.lastKey != null) {
+                final int diff = ByteUtil.compare(key, this.lastKey);
+                if (diff > 0)
+                    this.score = Math.min(this.score + 1, MAX_ACCESS_SCORE);
+                else if (diff < 0)
+                    this.score = Math.max(this.score - 2, -MAX_ACCESS_SCORE);
+            }
+            this.lastKey = key;
+            return this.score < MIN_SEQUENTIAL_SCORE;
+        }
+
+        @Override
+        public String toString() {
+            return "AccessPattern[lastKey=" + ByteUtil.toString(this.lastKey) + ",score=" + this.score + "]";
+        }
+    }
+
+// Point
+
+    // A point cache entry
+    private static final class Point {
+
+        private final RingEntry<Point> lruEntry = new RingEntry<>(this);
+        private final byte[] key;
+        private final byte[] value;                     // null means key is absent
+
+        Point(byte[] key, byte[] value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        public byte[] getKey() {
+            return this.key;
+        }
+
+        public byte[] getValue() {
+            return this.value;
+        }
+
+        public long getBytes() {
+            return this.key.length + (this.value != null ? this.value.length : 0) + POINT_OVERHEAD;
+        }
+
+        public RingEntry<Point> getLruEntry() {
+            return this.lruEntry;
+        }
+    }
+
 // Loader
 
     private class Loader implements Runnable {
@@ -774,10 +1466,10 @@ public class CachingKVStore extends CloseableForwardingKVStore implements Cachin
             assert reverse ?
               KeyRange.compare(limit, this.start) < 0 :
               KeyRange.compare(limit, this.start) > 0;
+            this.limit = limit;                                     // must be set before this task is submitted
             this.future = new CompletableFuture<>();
             this.taskFuture = CachingKVStore.this.executor.submit(this);
             this.range.setLoader(this.reverse, this);
-            this.limit = limit;
         }
 
         /**
@@ -849,10 +1541,17 @@ public class CachingKVStore extends CloseableForwardingKVStore implements Cachin
                 }
 
                 // Get iterator, load key/value pairs, then close iterator
-                try (CloseableIterator<KVPair> iterator = this.reverse ?
-                  CachingKVStore.super.getRange(this.limit, this.start, true) :
-                  CachingKVStore.super.getRange(this.start, this.limit, false)) {
-                    this.load(iterator);
+                final CloseableIterator<KVPair> iterator;
+                CachingKVStore.this.scanLock.readLock().lock();
+                try {
+                    iterator = this.reverse ?
+                      CachingKVStore.super.getRange(this.limit, this.start, true) :
+                      CachingKVStore.super.getRange(this.start, this.limit, false);
+                } finally {
+                    CachingKVStore.this.scanLock.readLock().unlock();
+                }
+                try (CloseableIterator<KVPair> i = iterator) {
+                    this.load(i);
                 }
             } catch (Throwable t) {
                 if (this.log.isTraceEnabled())
@@ -881,8 +1580,15 @@ public class CachingKVStore extends CloseableForwardingKVStore implements Cachin
             double lastKeySpaceValue = 0;
             while (true) {
 
-                // Read next key/value pair
-                final KVPair pair = iterator.hasNext() ? iterator.next() : null;
+                // Read next key/value pair; holding the read lock ensures we don't see a write-through mutation
+                // until it has also been applied to the cache (and we have been stopped, if affected)
+                final KVPair pair;
+                CachingKVStore.this.scanLock.readLock().lock();
+                try {
+                    pair = iterator.hasNext() ? iterator.next() : null;
+                } finally {
+                    CachingKVStore.this.scanLock.readLock().unlock();
+                }
                 byte[] key = pair != null ? pair.getKey() : null;
                 byte[] val = pair != null ? pair.getValue() : null;
                 if (key != null) {
@@ -935,7 +1641,7 @@ public class CachingKVStore extends CloseableForwardingKVStore implements Cachin
                     for (Iterator<KVRange> i = CachingKVStore.this.ranges.tailSet(
                       CachingKVStore.this.key(extentMin), true).iterator(); i.hasNext(); ) {
                         final KVRange contained = i.next();
-                        assert ByteUtil.compare(contained.getMin(), extentMin) >= 0;
+                        assert KeyRange.compare(contained.getMin(), extentMin) >= 0;
 
                         // Is range completely contained within our extent?
                         if (KeyRange.compare(contained.getMax(), extentMax) > 0)
@@ -1051,8 +1757,7 @@ public class CachingKVStore extends CloseableForwardingKVStore implements Cachin
                                     this.trace("result of merge: {}", mergedRange);
                                 CachingKVStore.this.discard(neighbor, true);
                                 CachingKVStore.this.discard(this.range, true);
-                                CachingKVStore.this.ranges.add(mergedRange);
-                                mergedRange.getLruEntry().attachAfter(CachingKVStore.this.lru);
+                                CachingKVStore.this.addRange(mergedRange);
                                 assert mergedRange.sanityCheck();
                             }
                             assert CachingKVStore.this.sanityCheck();
@@ -1060,7 +1765,7 @@ public class CachingKVStore extends CloseableForwardingKVStore implements Cachin
                     } else if (!reverse && extentMax != null) {
                         final KVRange neighbor
                           = this.first(CachingKVStore.this.ranges.tailSet(CachingKVStore.this.key(extentMax), true));
-                        if (neighbor != null && ByteUtil.compare(neighbor.getMin(), extentMax) == 0) {
+                        if (neighbor != null && KeyRange.compare(neighbor.getMin(), extentMax) == 0) {
                             if (neighbor.isPrimordial()) {
                                 assert neighbor.isEmpty();
                                 if (this.log.isTraceEnabled())
@@ -1074,8 +1779,7 @@ public class CachingKVStore extends CloseableForwardingKVStore implements Cachin
                                     this.trace("result of merge: {}", mergedRange);
                                 CachingKVStore.this.discard(this.range, true);
                                 CachingKVStore.this.discard(neighbor, true);
-                                CachingKVStore.this.ranges.add(mergedRange);
-                                mergedRange.getLruEntry().attachAfter(CachingKVStore.this.lru);
+                                CachingKVStore.this.addRange(mergedRange);
                                 assert mergedRange.sanityCheck();
                             }
                             assert CachingKVStore.this.sanityCheck();
@@ -1143,7 +1847,6 @@ public class CachingKVStore extends CloseableForwardingKVStore implements Cachin
     private class KVRange {
 
         private final long creationTime = System.nanoTime();
-        private final RingEntry<KVRange> lruEntry = new RingEntry<>(this);
         private final Loader[] loaders = new Loader[2];                 // 0 = forward, 1 = reverse
 
         private byte[] min;
@@ -1183,7 +1886,7 @@ public class CachingKVStore extends CloseableForwardingKVStore implements Cachin
         public void setMin(byte[] min) {
             assert Thread.holdsLock(CachingKVStore.this);
             assert min != null;
-            assert ByteUtil.compare(min, this.min) <= 0;                // KVRanges can only get bigger, not smaller
+            assert KeyRange.compare(min, this.min) <= 0;                // KVRanges can only get bigger, not smaller
             this.min = min;
         }
 
@@ -1226,7 +1929,12 @@ public class CachingKVStore extends CloseableForwardingKVStore implements Cachin
         }
         public void setLoader(boolean reverse, Loader loader) {
             assert Thread.holdsLock(CachingKVStore.this);
-            assert this.loaders[reverse ? 1 : 0] == null || this.loaders[reverse ? 1 : 0].isStopped();
+            final Loader previous = this.loaders[reverse ? 1 : 0];
+            assert previous == null || previous.isStopped();
+            if (previous != null)
+                CachingKVStore.this.activeLoaders.remove(previous);
+            if (loader != null)
+                CachingKVStore.this.activeLoaders.add(loader);
             this.loaders[reverse ? 1 : 0] = loader;
         }
         public void stopLoader(boolean reverse) {
@@ -1302,14 +2010,6 @@ public class CachingKVStore extends CloseableForwardingKVStore implements Cachin
             return this.creationTime;
         }
 
-        /**
-         * Get LRU list entry.
-         */
-        public RingEntry<KVRange> getLruEntry() {
-            assert Thread.holdsLock(CachingKVStore.this);
-            return this.lruEntry;
-        }
-
         public CachingKVStore getKVStore() {
             return CachingKVStore.this;
         }
@@ -1321,11 +2021,11 @@ public class CachingKVStore extends CloseableForwardingKVStore implements Cachin
 
             // Sanity check
             assert Thread.holdsLock(CachingKVStore.this);
-            assert !this.getKeyRange().contains(key);
+            assert KeyRange.compare(key, this.min) < 0 || KeyRange.compare(key, this.max) >= 0;
             assert key != null && val != null;
 
             // Add key/value pair
-            if (ByteUtil.compare(key, this.min) < 0) {
+            if (KeyRange.compare(key, this.min) < 0) {
                 if (this.minIndex == 0)
                     this.growArrays();
                 assert this.minIndex > 0;
@@ -1342,6 +2042,77 @@ public class CachingKVStore extends CloseableForwardingKVStore implements Cachin
                 this.maxIndex++;
             }
             this.totalBytes += key.length + val.length;
+            CachingKVStore.this.resized(this, key.length + val.length);
+        }
+
+        /**
+         * Replace the key/value pairs in the given portion of this range with the given key/value pair, if any.
+         */
+        public void replace(byte[] min, byte[] max, byte[] key, byte[] val) {
+
+            // Sanity check
+            assert Thread.holdsLock(CachingKVStore.this);
+            assert KeyRange.compare(min, this.min) >= 0 && KeyRange.compare(max, this.max) <= 0;
+            assert key == null || (KeyRange.compare(key, min) >= 0 && KeyRange.compare(key, max) < 0);
+
+            // Find the pairs to be replaced
+            int lo = this.indexOf(min);
+            int hi = this.indexOf(max);
+            final int delta = (key != null ? 1 : 0) - (hi - lo);
+            long bytes = key != null ? key.length + val.length : 0;
+            for (int i = lo; i < hi; i++)
+                bytes -= this.keys[i].length + this.vals[i].length;
+
+            // Make room or close the gap
+            if (delta > 0 && this.maxIndex == this.keys.length) {
+                final int oldMinIndex = this.minIndex;
+                this.growArrays();
+                lo += this.minIndex - oldMinIndex;
+                hi += this.minIndex - oldMinIndex;
+            }
+            if (delta != 0) {
+                System.arraycopy(this.keys, hi, this.keys, hi + delta, this.maxIndex - hi);
+                System.arraycopy(this.vals, hi, this.vals, hi + delta, this.maxIndex - hi);
+                if (delta < 0) {
+                    Arrays.fill(this.keys, this.maxIndex + delta, this.maxIndex, null);
+                    Arrays.fill(this.vals, this.maxIndex + delta, this.maxIndex, null);
+                }
+                this.maxIndex += delta;
+            }
+            if (key != null) {
+                this.keys[lo] = key;
+                this.vals[lo] = val;
+            }
+
+            // Update sizes
+            this.totalBytes += bytes;
+            CachingKVStore.this.resized(this, bytes);
+            assert this.sanityCheck();
+        }
+
+        /**
+         * Create a new {@link KVRange} containing a portion of this range.
+         */
+        public KVRange copy(byte[] min, byte[] max, int fromIndex, int toIndex) {
+            assert Thread.holdsLock(CachingKVStore.this);
+            final int size = toIndex - fromIndex;
+            final byte[][] newKeys = new byte[(int)(size * ARRAY_GROWTH_FACTOR) + 30][];
+            final byte[][] newVals = new byte[newKeys.length][];
+            final int newMinIndex = (newKeys.length - size) / 2;
+            System.arraycopy(this.keys, fromIndex, newKeys, newMinIndex, size);
+            System.arraycopy(this.vals, fromIndex, newVals, newMinIndex, size);
+            long newTotalBytes = 0;
+            for (int i = fromIndex; i < toIndex; i++)
+                newTotalBytes += this.keys[i].length + this.vals[i].length;
+            return new KVRange(min, max, newKeys, newVals, newMinIndex, newMinIndex + size, newTotalBytes);
+        }
+
+        // Get the index of the first key >= the given key, where null means infinity
+        private int indexOf(byte[] key) {
+            if (key == null)
+                return this.maxIndex;
+            final int index = Arrays.binarySearch(this.keys, this.minIndex, this.maxIndex, key, ByteUtil.COMPARATOR);
+            return index >= 0 ? index : ~index;
         }
 
         /**
@@ -1439,7 +2210,6 @@ public class CachingKVStore extends CloseableForwardingKVStore implements Cachin
             assert Thread.holdsLock(CachingKVStore.this);
             assert this.sanityCheckInternal();
             assert CachingKVStore.this.ranges.contains(this) : this + " not in " + CachingKVStore.this.ranges;
-            assert this.lruEntry.isAttached() : this + " not in LRU";
             return true;
         }
 
@@ -1470,7 +2240,6 @@ public class CachingKVStore extends CloseableForwardingKVStore implements Cachin
             this.vals = null;
             this.minIndex = -1;
             this.maxIndex = -1;
-            this.totalBytes = -1;
             this.lastKnownRangesIndex = -1;
             return true;
         }
@@ -5,14 +5,22 @@
 
 package io.permazen.kv.caching;
 
+import com.google.common.base.Preconditions;
+
 import io.permazen.kv.CloseableKVStore;
 import io.permazen.kv.KVPair;
+import io.permazen.kv.KVStore;
 import io.permazen.kv.KVTransaction;
+import io.permazen.kv.KeyRange;
 import io.permazen.kv.mvcc.MutableView;
 import io.permazen.kv.mvcc.Mutations;
 import io.permazen.kv.mvcc.Writes;
+import io.permazen.kv.util.ForwardingKVStore;
+import io.permazen.util.ByteUtil;
 import io.permazen.util.CloseableIterator;
 
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 
@@ -22,8 +30,9 @@ import java.util.concurrent.Future;
  * <p>
  * Instances create the following "stack":
  * <ul>
- *  <li>A {@link MutableView} to collect any mutations</li>
+ *  <li>A {@link MutableView} to collect any mutations, unless {@linkplain #isWriteThrough write-through mode} is enabled</li>
  *  <li>A {@link CachingKVStore} to cache transaction data</li>
+ *  <li>If the database has a {@link SharedKVCache}, a view that answers queries from it where possible</li>
  *  <li>The underlying {@link KVTransaction}</li>
  * </ul>
  */
@@ -35,7 +44,7 @@ public class CachingKVTransaction extends AbstractCachingConfig implements KVTra
     protected final CachingKVDatabase kvdb;
 
     /**
-     * The {@link MutableView} that accumulates any mutations.
+     * The {@link MutableView} that accumulates any mutations, or null in write-through mode.
      */
     protected final MutableView view;
 
@@ -49,13 +58,29 @@ public class CachingKVTransaction extends AbstractCachingConfig implements KVTra
      */
     protected final KVTransaction inner;
 
-    CachingKVTransaction(CachingKVDatabase kvdb, KVTransaction inner, ExecutorService executor, long rttEstimate) {
+    private final SharedKVCacheView sharedCacheView;
+    private final WriteRecorder writeRecorder;                  // records mutations in write-through mode with shared cache
+    private final KVStore kvstore;                              // where we send queries and mutations
+
+    private boolean statisticsRecorded;
+
+    CachingKVTransaction(CachingKVDatabase kvdb, KVTransaction inner,
+      ExecutorService executor, long rttEstimate, SharedKVCache sharedCache, long startSeq) {
         this.kvdb = kvdb;
         this.inner = inner;
-        this.cachingKV = new CachingKVStore(inner, executor, rttEstimate);
+        this.sharedCacheView = sharedCache != null ? new SharedKVCacheView(inner, sharedCache, startSeq) : null;
+        this.cachingKV = new CachingKVStore(this.sharedCacheView != null ? this.sharedCacheView : inner, executor, rttEstimate);
         this.kvdb.copyCachingConfigTo(this.cachingKV);
-        this.view = new MutableView(this.cachingKV);
-        this.view.disableReadTracking();
+        if (this.cachingKV.isWriteThrough()) {
+            this.view = null;
+            this.writeRecorder = this.sharedCacheView != null ? new WriteRecorder(this.cachingKV) : null;
+            this.kvstore = this.writeRecorder != null ? this.writeRecorder : this.cachingKV;
+        } else {
+            this.view = new MutableView(this.cachingKV);
+            this.view.disableReadTracking();
+            this.writeRecorder = null;
+            this.kvstore = this.view;
+        }
     }
 
     /**
@@ -76,70 +101,116 @@ public class CachingKVTransaction extends AbstractCachingConfig implements KVTra
         return this.cachingKV;
     }
 
+// CachingConfig
+
+    /**
+     * Get the number of queries in this transaction answered entirely from the cache.
+     *
+     * <p>
+     * The implementation in {@link CachingKVTransaction} returns the value from the {@link CachingKVStore}.
+     */
+    @Override
+    public long getHits() {
+        return this.cachingKV.getHits();
+    }
+
+    /**
+     * Get the number of queries in this transaction that required a read from the underlying transaction.
+     *
+     * <p>
+     * The implementation in {@link CachingKVTransaction} returns the value from the {@link CachingKVStore}.
+     */
+    @Override
+    public long getMisses() {
+        return this.cachingKV.getMisses();
+    }
+
+    /**
+     * Get the number of cached ranges discarded in this transaction because the configured limits were exceeded.
+     *
+     * <p>
+     * The implementation in {@link CachingKVTransaction} returns the value from the {@link CachingKVStore}.
+     */
+    @Override
+    public long getEvictions() {
+        return this.cachingKV.getEvictions();
+    }
+
 // Closeable
 
     @Override
     public void close() {
         this.kvdb.updateRttEstimate(this.cachingKV.getRttEstimate());
+        this.recordStatistics();
         this.cachingKV.close();
-        this.inner.rollback();
+        try {
+            this.inner.rollback();
+        } finally {
+            if (this.sharedCacheView != null)
+                this.sharedCacheView.close();
+        }
     }
 
 // KVStore
 
     @Override
     public byte[] get(byte[] key) {
-        return this.view.get(key);
+        return this.kvstore.get(key);
+    }
+
+    @Override
+    public List<byte[]> getMany(List<byte[]> keys) {
+        return this.kvstore.getMany(keys);
     }
 
     @Override
     public KVPair getAtLeast(byte[] minKey, byte[] maxKey) {
-        return this.view.getAtLeast(minKey, maxKey);
+        return this.kvstore.getAtLeast(minKey, maxKey);
     }
 
     @Override
     public KVPair getAtMost(byte[] maxKey, byte[] minKey) {
-        return this.view.getAtMost(maxKey, minKey);
+        return this.kvstore.getAtMost(maxKey, minKey);
     }
 
     @Override
     public CloseableIterator<KVPair> getRange(byte[] minKey, byte[] maxKey, boolean reverse) {
-        return this.view.getRange(minKey, maxKey, reverse);
+        return this.kvstore.getRange(minKey, maxKey, reverse);
     }
 
     @Override
     public void put(byte[] key, byte[] value) {
-        this.view.put(key, value);
+        this.kvstore.put(key, value);
     }
 
     @Override
     public void remove(byte[] key) {
-        this.view.remove(key);
+        this.kvstore.remove(key);
     }
 
     @Override
     public void removeRange(byte[] minKey, byte[] maxKey) {
-        this.view.removeRange(minKey, maxKey);
+        this.kvstore.removeRange(minKey, maxKey);
     }
 
     @Override
     public void adjustCounter(byte[] key, long amount) {
-        this.view.adjustCounter(key, amount);
+        this.kvstore.adjustCounter(key, amount);
     }
 
     @Override
     public byte[] encodeCounter(long value) {
-        return this.view.encodeCounter(value);
+        return this.kvstore.encodeCounter(value);
     }
 
     @Override
     public long decodeCounter(byte[] bytes) {
-        return this.view.decodeCounter(bytes);
+        return this.kvstore.decodeCounter(bytes);
     }
 
     @Override
     public void apply(Mutations mutations) {
-        this.view.apply(mutations);
+        this.kvstore.apply(mutations);
     }
 
 // KVTransaction
@@ -169,26 +240,64 @@ public class CachingKVTransaction extends AbstractCachingConfig implements KVTra
         return this.inner.watchKey(key);
     }
 
+    @Override
+    public Future<Void> watchRange(KeyRange range) {
+        return this.inner.watchRange(range);
+    }
+
     @Override
     public void commit() {
 
         // Grab transaction reads & writes, set to immutable
         final Writes writes;
-        synchronized (this.view) {
-            writes = this.view.getWrites();
-            this.view.setReadOnly();
+        final List<SharedKVCache.Range> loadedRanges;
+        synchronized (this.kvstore) {
+            if (this.view != null) {
+                writes = this.view.getWrites();
+                this.view.setReadOnly();
+            } else
+                writes = this.writeRecorder != null ? this.writeRecorder.getWrites() : null;
+            loadedRanges = this.sharedCacheView != null ? this.cachingKV.copyRanges() : null;
             this.cachingKV.close();                 // this tells background read-ahead threads to ignore subsequent exceptions
         }
 
         // Apply writes and commit tx
         try {
-            this.applyWritesBeforeCommitIfNotReadOnly(writes);
-            this.inner.commit();
+            if (this.sharedCacheView != null)
+                this.commitWithSharedCache(writes, loadedRanges);
+            else {
+                if (this.view != null)
+                    this.applyWritesBeforeCommitIfNotReadOnly(writes);
+                this.inner.commit();
+            }
         } finally {
             this.close();
         }
     }
 
+    // Add our statistics to the database totals (only once)
+    private synchronized void recordStatistics() {
+        if (this.statisticsRecorded)
+            return;
+        this.kvdb.addStatistics(this);
+        this.statisticsRecorded = true;
+    }
+
+    // Commit while keeping the shared cache up to date, then share the ranges we loaded
+    private void commitWithSharedCache(Writes writes, List<SharedKVCache.Range> loadedRanges) {
+        final SharedKVCache sharedCache = this.sharedCacheView.getSharedKVCache();
+        final long startSeq = this.sharedCacheView.getStartSeq();
+        final long commitSeq = sharedCache.beginCommit(this, startSeq, this.sharedCacheView.getCacheReads(), writes);
+        try {
+            if (this.view != null)
+                this.applyWritesBeforeCommitIfNotReadOnly(writes);
+            this.inner.commit();
+            sharedCache.add(startSeq, loadedRanges);
+        } finally {
+            sharedCache.endCommit(commitSeq);
+        }
+    }
+
     @Override
     public void rollback() {
         try {
@@ -218,4 +327,61 @@ public class CachingKVTransaction extends AbstractCachingConfig implements KVTra
         if (!this.inner.isReadOnly())
             writes.applyTo(this.inner);
     }
+
+// WriteRecorder
+
+    // Forwards to the CachingKVStore in write-through mode, recording the keys mutated for the shared cache
+    private static final class WriteRecorder extends ForwardingKVStore {
+
+        private final KVStore kvstore;
+        private final Writes writes = new Writes();
+
+        WriteRecorder(KVStore kvstore) {
+            this.kvstore = kvstore;
+        }
+
+        synchronized Writes getWrites() {
+            return this.writes.clone();
+        }
+
+        @Override
+        protected KVStore delegate() {
+            return this.kvstore;
+        }
+
+        @Override
+        public synchronized void put(byte[] key, byte[] value) {
+            super.put(key, value);
+            this.writes.getPuts().put(key.clone(), value.clone());
+        }
+
+        @Override
+        public synchronized void remove(byte[] key) {
+            super.remove(key);
+            this.writes.getRemoves().add(new KeyRange(key));
+        }
+
+        @Override
+        public synchronized void removeRange(byte[] minKey, byte[] maxKey) {
+            super.removeRange(minKey, maxKey);
+            this.writes.getRemoves().add(new KeyRange(minKey != null ? minKey : ByteUtil.EMPTY, maxKey));
+        }
+
+        @Override
+        public synchronized void adjustCounter(byte[] key, long amount) {
+            super.adjustCounter(key, amount);
+            this.writes.getAdjusts().merge(key.clone(), amount, Long::sum);
+        }
+
+        @Override
+        public void apply(Mutations mutations) {
+            Preconditions.checkArgument(mutations != null, "null mutations");
+            for (KeyRange remove : mutations.getRemoveRanges())
+                this.removeRange(remove.getMin(), remove.getMax());
+            for (Map.Entry<byte[], byte[]> entry : mutations.getPutPairs())
+                this.put(entry.getKey(), entry.getValue());
+            for (Map.Entry<byte[], Long> entry : mutations.getAdjustPairs())
+                this.adjustCounter(entry.getKey(), entry.getValue());
+        }
+    }
 }
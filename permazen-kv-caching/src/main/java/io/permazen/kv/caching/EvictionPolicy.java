@@ -0,0 +1,91 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.kv.caching;
+
+/**
+ * A policy that decides which entries to discard from a size-limited cache.
+ *
+ * <p>
+ * Instances are notified as entries are added to, accessed in, resized in, and removed from the cache. Whenever
+ * the cache exceeds its limits, it repeatedly asks for a {@linkplain #victim victim} and removes it until it is back
+ * within its limits. Entries are identified by object identity; in addition, each entry has a hash value identifying
+ * the part of the key space that it caches, which allows policies to recognize the "same" entry after it has been
+ * evicted and loaded again.
+ *
+ * <p>
+ * Instances are used by a single cache and need not be thread safe; the cache provides its own locking.
+ *
+ * @param <T> cache entry type
+ * @see CachingConfig#setEvictionPolicyFactory
+ */
+public interface EvictionPolicy<T> {
+
+    /**
+     * Notify this instance that a new entry has been added to the cache.
+     *
+     * @param entry the new entry
+     * @param hash entry hash value
+     * @param bytes the size of the entry
+     */
+    void add(T entry, int hash, long bytes);
+
+    /**
+     * Notify this instance that an entry has been accessed.
+     *
+     * @param entry the entry accessed
+     */
+    void access(T entry);
+
+    /**
+     * Notify this instance that an entry's size has changed.
+     *
+     * @param entry the entry
+     * @param bytes the new size of the entry
+     */
+    void resize(T entry, long bytes);
+
+    /**
+     * Notify this instance that an entry has been removed from the cache, whether or not due to eviction.
+     *
+     * @param entry the entry removed
+     */
+    void remove(T entry);
+
+    /**
+     * Choose the next entry to evict.
+     *
+     * <p>
+     * This method does not remove the returned entry; the cache will do that and then invoke {@link #remove remove()}.
+     *
+     * @param maxBytes the cache's configured maximum total size
+     * @return entry to evict, or null if there are no entries
+     */
+    T victim(long maxBytes);
+
+    /**
+     * Get the number of entries currently known to this instance.
+     *
+     * @return number of entries
+     */
+    int size();
+
+// Factory
+
+    /**
+     * Creates {@link EvictionPolicy} instances, one per cache.
+     */
+    @FunctionalInterface
+    interface Factory {
+
+        /**
+         * Create a new {@link EvictionPolicy}.
+         *
+         * @param <T> cache entry type
+         * @return new eviction policy
+         */
+        <T> EvictionPolicy<T> createEvictionPolicy();
+    }
+}
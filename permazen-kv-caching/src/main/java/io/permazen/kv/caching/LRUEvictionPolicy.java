@@ -0,0 +1,74 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.kv.caching;
+
+import com.google.common.base.Preconditions;
+
+import java.util.IdentityHashMap;
+
+/**
+ * An {@link EvictionPolicy} that evicts the least recently used entry.
+ *
+ * <p>
+ * This policy is simple and cheap, but a single large scan can flush the entire working set.
+ *
+ * @param <T> cache entry type
+ * @see TinyLFUEvictionPolicy
+ */
+public class LRUEvictionPolicy<T> implements EvictionPolicy<T> {
+
+    private final IdentityHashMap<T, RingEntry<T>> entries = new IdentityHashMap<>();
+    private final RingEntry<T> lru = new RingEntry<>(null);                 // entries ordered by recency (MRU first, LRU last)
+
+    @Override
+    public void add(T entry, int hash, long bytes) {
+        Preconditions.checkArgument(entry != null, "null entry");
+        Preconditions.checkArgument(!this.entries.containsKey(entry), "duplicate entry");
+        final RingEntry<T> ringEntry = new RingEntry<>(entry);
+        this.entries.put(entry, ringEntry);
+        ringEntry.attachAfter(this.lru);
+    }
+
+    @Override
+    public void access(T entry) {
+        this.getRingEntry(entry).attachAfter(this.lru);
+    }
+
+    @Override
+    public void resize(T entry, long bytes) {
+        this.getRingEntry(entry);
+    }
+
+    @Override
+    public void remove(T entry) {
+        final RingEntry<T> ringEntry = this.entries.remove(entry);
+        if (ringEntry != null)
+            ringEntry.detach();
+    }
+
+    @Override
+    public T victim(long maxBytes) {
+        return this.lru.prev().getOwner();
+    }
+
+    @Override
+    public int size() {
+        return this.entries.size();
+    }
+
+    private RingEntry<T> getRingEntry(T entry) {
+        final RingEntry<T> ringEntry = this.entries.get(entry);
+        Preconditions.checkArgument(ringEntry != null, "unknown entry");
+        return ringEntry;
+    }
+
+// Object
+
+    @Override
+    public String toString() {
+        return this.getClass().getSimpleName() + "[size=" + this.entries.size() + "]";
+    }
+}
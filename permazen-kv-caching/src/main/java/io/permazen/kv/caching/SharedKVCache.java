@@ -0,0 +1,479 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.kv.caching;
+
+import com.google.common.base.Preconditions;
+
+import io.permazen.kv.KVTransaction;
+import io.permazen.kv.KeyRange;
+import io.permazen.kv.KeyRanges;
+import io.permazen.kv.RetryTransactionException;
+import io.permazen.kv.mvcc.Reads;
+import io.permazen.kv.mvcc.Writes;
+import io.permazen.util.ByteUtil;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * A cache of key/value ranges that is shared by all of the transactions of a {@link CachingKVDatabase}.
+ *
+ * <p>
+ * Normally each {@link CachingKVTransaction} starts with an empty {@link CachingKVStore}, so every transaction must
+ * re-fetch the same frequently used ranges. When a shared cache is {@linkplain CachingKVDatabase#setSharedCacheMaxBytes
+ * configured}, the ranges of key/value pairs that a transaction has loaded are added to it when that transaction commits,
+ * and later transactions read from it before going to the underlying {@link io.permazen.kv.KVDatabase}.
+ *
+ * <p><b>Versioning</b></p>
+ *
+ * <p>
+ * Each commit is assigned a sequence number when it begins, and any cached ranges that it modifies are discarded at
+ * that time. Each cached range is tagged with a sequence number as of which its contents are known to be current,
+ * and a transaction only uses cached ranges that were already current when it started. The ranges a transaction reads
+ * from this cache are recorded; on commit, the transaction fails with a {@link RetryTransactionException} if any commit
+ * that began after the transaction started has modified one of them, or if a commit in progress has read from this cache
+ * a range that the transaction is modifying. As with optimistic locking, a transaction that reads from this cache may
+ * observe inconsistent data before it attempts to commit.
+ *
+ * <p><b>Consistency Assumptions</b></p>
+ *
+ * <p>
+ * <b>Warning:</b> cached ranges are invalidated based on the commits seen by the associated {@link CachingKVDatabase},
+ * so this class assumes that all modifications to the underlying {@link io.permazen.kv.KVDatabase} are made through
+ * that {@link CachingKVDatabase}. Modifications made in any other way, e.g., by other processes, will not be noticed.
+ *
+ * <p>
+ * Instances are thread safe.
+ *
+ * @see CachingKVDatabase#setSharedCacheMaxBytes
+ */
+public class SharedKVCache {
+
+    private final TreeMap<byte[], Range> ranges = new TreeMap<>(ByteUtil.COMPARATOR);      // ranges ordered by minimum
+    private final RingEntry<Range> lru = new RingEntry<>(null);                     // ranges ordered by recency (MRU first)
+    private final ArrayDeque<Commit> commits = new ArrayDeque<>();                  // commits open transactions may conflict with
+    private final TreeMap<Long, Integer> openTransactions = new TreeMap<>();        // start sequence number -> count
+    private final long maxBytes;
+
+    private long nextSeq;
+    private long totalBytes;
+    private long hits;
+    private long misses;
+
+    /**
+     * Constructor.
+     *
+     * @param maxBytes maximum total number of bytes of key/value data to cache
+     * @throws IllegalArgumentException if {@code maxBytes <= 0}
+     */
+    public SharedKVCache(long maxBytes) {
+        Preconditions.checkArgument(maxBytes > 0, "maxBytes <= 0");
+        this.maxBytes = maxBytes;
+    }
+
+// Accessors
+
+    /**
+     * Get the maximum total number of bytes of key/value data to cache.
+     *
+     * @return maximum cached bytes
+     */
+    public long getMaxBytes() {
+        return this.maxBytes;
+    }
+
+    /**
+     * Get the total number of bytes of key/value data currently cached.
+     *
+     * @return cached bytes
+     */
+    public synchronized long getTotalBytes() {
+        return this.totalBytes;
+    }
+
+    /**
+     * Get the number of contiguous key ranges currently cached.
+     *
+     * @return number of cached ranges
+     */
+    public synchronized int getNumRanges() {
+        return this.ranges.size();
+    }
+
+    /**
+     * Get the number of lookups that were answered by this cache.
+     *
+     * @return number of cache hits
+     */
+    public synchronized long getHits() {
+        return this.hits;
+    }
+
+    /**
+     * Get the number of lookups that could not be answered by this cache.
+     *
+     * @return number of cache misses
+     */
+    public synchronized long getMisses() {
+        return this.misses;
+    }
+
+    /**
+     * Discard all cached ranges.
+     */
+    public synchronized void clear() {
+        for (Range range : this.ranges.values())
+            this.discard(range, false);
+        this.ranges.clear();
+        assert this.totalBytes == 0;
+    }
+
+// Transactions
+
+    /**
+     * Register the start of a new transaction.
+     *
+     * @return the transaction's start sequence number
+     */
+    synchronized long openTransaction() {
+
+        // Any commits still in progress may or may not be visible to the new transaction
+        long startSeq = this.nextSeq;
+        for (Commit commit : this.commits) {
+            if (!commit.finished) {
+                startSeq = commit.seq;
+                break;
+            }
+        }
+        this.openTransactions.merge(startSeq, 1, Integer::sum);
+        return startSeq;
+    }
+
+    /**
+     * Register the end of a transaction.
+     *
+     * @param startSeq the transaction's start sequence number
+     */
+    synchronized void closeTransaction(long startSeq) {
+        final Integer count = this.openTransactions.get(startSeq);
+        assert count != null;
+        if (count == 1)
+            this.openTransactions.remove(startSeq);
+        else
+            this.openTransactions.put(startSeq, count - 1);
+        this.pruneCommits();
+    }
+
+    /**
+     * Register the start of a commit.
+     *
+     * <p>
+     * Cached ranges modified by {@code writes} are discarded.
+     *
+     * @param tx the committing transaction
+     * @param startSeq the transaction's start sequence number
+     * @param cacheReads the ranges the transaction read from this cache, or null if none
+     * @param writes the transaction's mutations
+     * @return the commit's sequence number, or -1 if {@code writes} is empty
+     * @throws RetryTransactionException if there is a conflict involving data read from this cache
+     */
+    synchronized long beginCommit(KVTransaction tx, long startSeq, Reads cacheReads, Writes writes) {
+
+        // Check for conflicts
+        for (Commit commit : this.commits) {
+            if (cacheReads != null && commit.seq >= startSeq && cacheReads.isConflict(commit.writes))
+                throw new RetryTransactionException(tx, "data read from the shared cache was modified by a concurrent commit");
+            if (!commit.finished && commit.cacheReads != null && commit.cacheReads.isConflict(writes))
+                throw new RetryTransactionException(tx, "data read from the shared cache by a concurrent commit was modified");
+        }
+
+        // Anything to do?
+        if (writes.isEmpty())
+            return -1;
+
+        // Register commit and invalidate modified ranges
+        final Commit commit = new Commit(this.nextSeq++, writes, cacheReads);
+        this.commits.add(commit);
+        for (KeyRange remove : writes.getRemoves())
+            this.invalidate(remove.getMin(), remove.getMax());
+        for (byte[] key : writes.getPuts().keySet())
+            this.invalidate(key, ByteUtil.getNextKey(key));
+        for (byte[] key : writes.getAdjusts().keySet())
+            this.invalidate(key, ByteUtil.getNextKey(key));
+        return commit.seq;
+    }
+
+    /**
+     * Register the end of a commit, whether successful or not.
+     *
+     * @param seq commit sequence number returned by {@link #beginCommit beginCommit()}
+     */
+    synchronized void endCommit(long seq) {
+        if (seq == -1)
+            return;
+        for (Commit commit : this.commits) {
+            if (commit.seq == seq) {
+                commit.finished = true;
+                break;
+            }
+        }
+        this.pruneCommits();
+    }
+
+    // Forget about commits that are finished and visible to every open transaction
+    private void pruneCommits() {
+        assert Thread.holdsLock(this);
+        final long minStartSeq = !this.openTransactions.isEmpty() ? this.openTransactions.firstKey() : this.nextSeq;
+        while (!this.commits.isEmpty()) {
+            final Commit commit = this.commits.peekFirst();
+            if (!commit.finished || commit.seq >= minStartSeq)
+                break;
+            this.commits.removeFirst();
+        }
+    }
+
+// Lookups
+
+    /**
+     * Find a cached range usable by a transaction that contains the key/value pairs at or just before the given key.
+     *
+     * <p>
+     * In the forward direction, the returned range contains {@code key}. In the reverse direction, the returned range
+     * contains the keys just below {@code key}, i.e., its minimum is strictly less than {@code key} and its maximum
+     * is greater than or equal to {@code key}.
+     *
+     * @param key search key; may be null (meaning infinity) only if {@code reverse} is true
+     * @param reverse search direction
+     * @param startSeq the transaction's start sequence number
+     * @return usable cached range, or null if none
+     */
+    synchronized Range find(byte[] key, boolean reverse, long startSeq) {
+        final Map.Entry<byte[], Range> entry = key == null ? this.ranges.lastEntry() :
+          reverse ? this.ranges.lowerEntry(key) : this.ranges.floorEntry(key);
+        final Range range = entry != null ? entry.getValue() : null;
+        if (range == null
+          || range.seq > startSeq
+          || (reverse ? KeyRange.compare(key, range.max) > 0 : KeyRange.compare(key, range.max) >= 0)) {
+            this.misses++;
+            return null;
+        }
+        this.hits++;
+        range.lruEntry.attachAfter(this.lru);
+        return range;
+    }
+
+    /**
+     * Find the nearest edge of a cached range usable by a transaction that starts after the given key.
+     *
+     * <p>
+     * In the forward direction, this returns the minimum of the first usable range whose minimum is greater than
+     * {@code key}. In the reverse direction, this returns the maximum of the last usable range whose maximum is less
+     * than {@code key}. In either case, if no such range exists before {@code limit} is reached, {@code limit} is returned.
+     *
+     * @param key search key; may be null (meaning infinity) only if {@code reverse} is true
+     * @param limit search limit
+     * @param reverse search direction
+     * @param startSeq the transaction's start sequence number
+     * @return nearest usable range edge, or {@code limit}
+     */
+    synchronized byte[] findNextEdge(byte[] key, byte[] limit, boolean reverse, long startSeq) {
+        if (reverse) {
+            final NavigableMap<byte[], Range> below = key != null ? this.ranges.headMap(key, false) : this.ranges;
+            for (Range range : below.descendingMap().values()) {
+                if (KeyRange.compare(range.max, limit) <= 0)
+                    break;
+                if (range.seq <= startSeq && KeyRange.compare(range.max, key) < 0)
+                    return range.max;
+            }
+        } else {
+            for (Range range : this.ranges.tailMap(key, false).values()) {
+                if (KeyRange.compare(range.min, limit) >= 0)
+                    break;
+                if (range.seq <= startSeq)
+                    return range.min;
+            }
+        }
+        return limit;
+    }
+
+// Updates
+
+    /**
+     * Add ranges loaded by a transaction.
+     *
+     * <p>
+     * Ranges that have been modified by any commit that began after the transaction started are ignored.
+     *
+     * @param startSeq the transaction's start sequence number
+     * @param newRanges ranges loaded by the transaction
+     */
+    synchronized void add(long startSeq, List<Range> newRanges) {
+        final KeyRanges modified = this.getModifiedSince(startSeq);
+        for (Range range : newRanges) {
+
+            // Check size and modifications
+            if (range.bytes > this.maxBytes || (modified != null && modified.intersects(new KeyRange(range.min, range.max))))
+                continue;
+
+            // If some existing range contains the new range, just keep it fresh
+            final Map.Entry<byte[], Range> floor = this.ranges.floorEntry(range.min);
+            if (floor != null) {
+                final Range existing = floor.getValue();
+                if (KeyRange.compare(existing.max, range.max) >= 0) {
+                    existing.lruEntry.attachAfter(this.lru);
+                    continue;
+                }
+            }
+
+            // Discard any ranges that overlap the new range, and add it
+            this.invalidate(range.min, range.max);
+            range.seq = startSeq;
+            this.ranges.put(range.min, range);
+            range.lruEntry.attachAfter(this.lru);
+            this.totalBytes += range.bytes;
+        }
+
+        // Remove least recently used ranges until we are underneath our byte limit
+        while (this.totalBytes > this.maxBytes) {
+            final Range range = this.lru.prev().getOwner();
+            if (range == null)
+                break;
+            this.discard(range, true);
+        }
+    }
+
+    // Get the union of the keys modified by all commits that began at or after startSeq, or null if there are none
+    private KeyRanges getModifiedSince(long startSeq) {
+        assert Thread.holdsLock(this);
+        KeyRanges modified = null;
+        for (Commit commit : this.commits) {
+            if (commit.seq < startSeq)
+                continue;
+            if (modified == null)
+                modified = KeyRanges.empty();
+            modified.add(commit.writes.getRemoves());
+            for (byte[] key : commit.writes.getPuts().keySet())
+                modified.add(new KeyRange(key));
+            for (byte[] key : commit.writes.getAdjusts().keySet())
+                modified.add(new KeyRange(key));
+        }
+        return modified;
+    }
+
+    // Discard any ranges that overlap the given range
+    private void invalidate(byte[] min, byte[] max) {
+        assert Thread.holdsLock(this);
+        final Map.Entry<byte[], Range> lower = this.ranges.lowerEntry(min);
+        if (lower != null && KeyRange.compare(lower.getValue().max, min) > 0)
+            this.discard(lower.getValue(), true);
+        final NavigableMap<byte[], Range> overlaps = max != null ?
+          this.ranges.subMap(min, true, max, false) : this.ranges.tailMap(min, true);
+        for (Iterator<Range> i = overlaps.values().iterator(); i.hasNext(); ) {
+            this.discard(i.next(), false);
+            i.remove();
+        }
+    }
+
+    private void discard(Range range, boolean removeFromRanges) {
+        assert Thread.holdsLock(this);
+        range.lruEntry.detach();
+        this.totalBytes -= range.bytes;
+        if (removeFromRanges) {
+            final Range removed = this.ranges.remove(range.min);
+            assert removed == range;
+        }
+    }
+
+// Range
+
+    /**
+     * A contiguous range of keys with all of the key/value pairs it contains.
+     *
+     * <p>
+     * Instances are immutable once added to a {@link SharedKVCache}, except for their bookkeeping fields.
+     */
+    static final class Range {
+
+        final byte[] min;
+        final byte[] max;
+        final byte[][] keys;
+        final byte[][] vals;
+        final long bytes;
+        final RingEntry<Range> lruEntry = new RingEntry<>(this);
+
+        long seq;
+
+        /**
+         * Constructor.
+         *
+         * @param min minimum key (inclusive)
+         * @param max maximum key (exclusive), or null for infinity
+         * @param keys sorted keys within the range; must not be modified
+         * @param vals corresponding values; must not be modified
+         * @param bytes total number of key and value bytes
+         */
+        Range(byte[] min, byte[] max, byte[][] keys, byte[][] vals, long bytes) {
+            assert min != null;
+            assert KeyRange.compare(min, max) < 0;
+            assert keys.length == vals.length;
+            this.min = min;
+            this.max = max;
+            this.keys = keys;
+            this.vals = vals;
+            this.bytes = bytes;
+        }
+
+        /**
+         * Get the index of the first key greater than or equal to the given key.
+         */
+        int ceiling(byte[] key) {
+            final int index = Arrays.binarySearch(this.keys, key, ByteUtil.COMPARATOR);
+            return index >= 0 ? index : ~index;
+        }
+
+        /**
+         * Get the index of the last key strictly less than the given key, which may be null for infinity.
+         */
+        int lower(byte[] key) {
+            if (key == null)
+                return this.keys.length - 1;
+            final int index = Arrays.binarySearch(this.keys, key, ByteUtil.COMPARATOR);
+            return (index >= 0 ? index : ~index) - 1;
+        }
+
+        @Override
+        public String toString() {
+            return "Range"
+              + "[min=" + ByteUtil.toString(this.min)
+              + ",max=" + ByteUtil.toString(this.max)
+              + ",size=" + this.keys.length
+              + ",seq=" + this.seq
+              + "]";
+        }
+    }
+
+// Commit
+
+    private static final class Commit {
+
+        final long seq;
+        final Writes writes;
+        final Reads cacheReads;
+
+        boolean finished;
+
+        Commit(long seq, Writes writes, Reads cacheReads) {
+            this.seq = seq;
+            this.writes = writes;
+            this.cacheReads = cacheReads;
+        }
+    }
+}
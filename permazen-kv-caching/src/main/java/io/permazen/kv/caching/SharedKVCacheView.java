@@ -0,0 +1,340 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.kv.caching;
+
+import com.google.common.base.Preconditions;
+
+import io.permazen.kv.KVCursor;
+import io.permazen.kv.KVPair;
+import io.permazen.kv.KVStore;
+import io.permazen.kv.KeyRange;
+import io.permazen.kv.mvcc.Mutations;
+import io.permazen.kv.mvcc.Reads;
+import io.permazen.kv.util.ForwardingKVStore;
+import io.permazen.kv.util.IteratorKVCursor;
+import io.permazen.util.ByteUtil;
+import io.permazen.util.CloseableIterator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Read-only view of a transaction's {@link KVStore} that answers queries from a {@link SharedKVCache} where possible.
+ *
+ * <p>
+ * Queries for keys covered by cached ranges usable by the transaction are answered from the cache, and the
+ * corresponding key ranges are recorded; the remainder of each query is forwarded to the underlying {@link KVStore}.
+ * Once the transaction has been modified through this instance (i.e., in write-through mode), the shared cache
+ * no longer reflects the transaction's view of the data, so all subsequent queries are forwarded.
+ * Instances are thread safe.
+ */
+class SharedKVCacheView extends ForwardingKVStore {
+
+    private final KVStore kvstore;
+    private final SharedKVCache cache;
+    private final long startSeq;
+    private final Reads cacheReads = new Reads();
+
+    private boolean closed;
+    private volatile boolean modified;
+
+    /**
+     * Constructor.
+     *
+     * <p>
+     * The transaction must have been registered via {@link SharedKVCache#openTransaction} before {@code kvstore} was
+     * created; {@link #close} must be invoked when the transaction is done.
+     *
+     * @param kvstore the transaction's underlying {@link KVStore}
+     * @param cache shared cache
+     * @param startSeq start sequence number returned by {@link SharedKVCache#openTransaction}
+     */
+    SharedKVCacheView(KVStore kvstore, SharedKVCache cache, long startSeq) {
+        assert kvstore != null;
+        assert cache != null;
+        this.kvstore = kvstore;
+        this.cache = cache;
+        this.startSeq = startSeq;
+    }
+
+    /**
+     * Get the associated {@link SharedKVCache}.
+     */
+    SharedKVCache getSharedKVCache() {
+        return this.cache;
+    }
+
+    /**
+     * Get the transaction's start sequence number.
+     */
+    long getStartSeq() {
+        return this.startSeq;
+    }
+
+    /**
+     * Get the key ranges read so far from the shared cache.
+     *
+     * @return ranges read from the shared cache, or null if none
+     */
+    Reads getCacheReads() {
+        synchronized (this.cacheReads) {
+            return !this.cacheReads.isEmpty() ? this.cacheReads.clone() : null;
+        }
+    }
+
+    /**
+     * Unregister the transaction from the shared cache.
+     *
+     * <p>
+     * If this instance is already closed, nothing happens.
+     */
+    synchronized void close() {
+        if (this.closed)
+            return;
+        this.cache.closeTransaction(this.startSeq);
+        this.closed = true;
+    }
+
+    private void recordCacheRead(byte[] min, byte[] max) {
+        synchronized (this.cacheReads) {
+            this.cacheReads.add(new KeyRange(min, max));
+        }
+    }
+
+// ForwardingKVStore
+
+    @Override
+    protected KVStore delegate() {
+        return this.kvstore;
+    }
+
+// KVStore
+
+    @Override
+    public byte[] get(byte[] key) {
+        if (this.modified)
+            return this.kvstore.get(key);
+        final SharedKVCache.Range range = this.cache.find(key, false, this.startSeq);
+        if (range == null)
+            return this.kvstore.get(key);
+        this.recordCacheRead(key, ByteUtil.getNextKey(key));
+        final int index = Arrays.binarySearch(range.keys, key, ByteUtil.COMPARATOR);
+        return index >= 0 ? range.vals[index].clone() : null;
+    }
+
+    @Override
+    public List<byte[]> getMany(List<byte[]> keys) {
+        Preconditions.checkArgument(keys != null, "null keys");
+        if (this.modified)
+            return this.kvstore.getMany(keys);
+
+        // Answer what we can from the shared cache; gather the rest
+        final int numKeys = keys.size();
+        final ArrayList<byte[]> values = new ArrayList<>(numKeys);
+        final ArrayList<byte[]> missKeys = new ArrayList<>(numKeys);
+        final int[] missIndexes = new int[numKeys];
+        for (int i = 0; i < numKeys; i++) {
+            final byte[] key = keys.get(i);
+            final SharedKVCache.Range range = this.cache.find(key, false, this.startSeq);
+            if (range != null) {
+                this.recordCacheRead(key, ByteUtil.getNextKey(key));
+                final int index = Arrays.binarySearch(range.keys, key, ByteUtil.COMPARATOR);
+                values.add(index >= 0 ? range.vals[index].clone() : null);
+                continue;
+            }
+            values.add(null);
+            missIndexes[missKeys.size()] = i;
+            missKeys.add(key);
+        }
+        if (missKeys.isEmpty())
+            return values;
+
+        // Look up misses in the underlying k/v store in one batch
+        final List<byte[]> missValues = this.kvstore.getMany(missKeys);
+        assert missValues.size() == missKeys.size();
+        for (int i = 0; i < missKeys.size(); i++)
+            values.set(missIndexes[i], missValues.get(i));
+        return values;
+    }
+
+    @Override
+    public KVPair getAtLeast(byte[] minKey, byte[] maxKey) {
+        try (CloseableIterator<KVPair> i = this.getRange(minKey, maxKey, false)) {
+            return i.hasNext() ? i.next() : null;
+        }
+    }
+
+    @Override
+    public KVPair getAtMost(byte[] maxKey, byte[] minKey) {
+        try (CloseableIterator<KVPair> i = this.getRange(minKey, maxKey, true)) {
+            return i.hasNext() ? i.next() : null;
+        }
+    }
+
+    @Override
+    public CloseableIterator<KVPair> getRange(byte[] minKey, byte[] maxKey, boolean reverse) {
+        if (this.modified)
+            return this.kvstore.getRange(minKey, maxKey, reverse);
+        if (minKey == null)
+            minKey = ByteUtil.EMPTY;
+        return new SegmentIterator(minKey, maxKey, reverse);
+    }
+
+    @Override
+    public KVCursor getRangeView(byte[] minKey, byte[] maxKey, boolean reverse) {
+        if (this.modified)
+            return this.kvstore.getRangeView(minKey, maxKey, reverse);
+        return new IteratorKVCursor(this.getRange(minKey, maxKey, reverse));
+    }
+
+    @Override
+    public void put(byte[] key, byte[] value) {
+        this.modified = true;
+        this.kvstore.put(key, value);
+    }
+
+    @Override
+    public void remove(byte[] key) {
+        this.modified = true;
+        this.kvstore.remove(key);
+    }
+
+    @Override
+    public void removeRange(byte[] minKey, byte[] maxKey) {
+        this.modified = true;
+        this.kvstore.removeRange(minKey, maxKey);
+    }
+
+    @Override
+    public void adjustCounter(byte[] key, long amount) {
+        this.modified = true;
+        this.kvstore.adjustCounter(key, amount);
+    }
+
+    @Override
+    public void apply(Mutations mutations) {
+        this.modified = true;
+        this.kvstore.apply(mutations);
+    }
+
+// SegmentIterator
+
+    /**
+     * Iterates a key range by alternating between segments answered from the shared cache
+     * and segments answered by the underlying {@link KVStore}.
+     */
+    private class SegmentIterator implements CloseableIterator<KVPair> {
+
+        private final byte[] minKey;
+        private final byte[] maxKey;
+        private final boolean reverse;
+
+        private byte[] position;                            // start of the next segment (if forward) or end (if reverse)
+        private SharedKVCache.Range range;                  // current cached segment, if any
+        private int index;                                  // next index in current cached segment
+        private CloseableIterator<KVPair> iterator;         // current underlying segment, if any
+        private byte[] segmentEnd;                          // end of current segment
+        private KVPair next;
+        private boolean done;
+
+        SegmentIterator(byte[] minKey, byte[] maxKey, boolean reverse) {
+            this.minKey = minKey;
+            this.maxKey = maxKey;
+            this.reverse = reverse;
+            this.position = reverse ? maxKey : minKey;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (this.next != null)
+                return true;
+            if (this.done)
+                return false;
+            if ((this.next = this.advance()) == null) {
+                this.close();
+                this.done = true;
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public KVPair next() {
+            if (!this.hasNext())
+                throw new NoSuchElementException();
+            final KVPair pair = this.next;
+            this.next = null;
+            return pair;
+        }
+
+        @Override
+        public void close() {
+            if (this.iterator != null) {
+                this.iterator.close();
+                this.iterator = null;
+            }
+        }
+
+        private KVPair advance() {
+            while (true) {
+
+                // Continue current cached segment
+                if (this.range != null) {
+                    if (this.reverse ?
+                      this.index >= 0 && ByteUtil.compare(this.range.keys[this.index], this.segmentEnd) >= 0 :
+                      this.index < this.range.keys.length && KeyRange.compare(this.range.keys[this.index], this.segmentEnd) < 0) {
+                        final int i = this.reverse ? this.index-- : this.index++;
+                        return new KVPair(this.range.keys[i].clone(), this.range.vals[i].clone());
+                    }
+                    this.range = null;
+                    this.position = this.segmentEnd;
+                }
+
+                // Continue current underlying segment
+                if (this.iterator != null) {
+                    if (this.iterator.hasNext())
+                        return this.iterator.next();
+                    this.iterator.close();
+                    this.iterator = null;
+                    this.position = this.segmentEnd;
+                }
+
+                // Are we done?
+                if (this.reverse ?
+                  this.position != null && ByteUtil.compare(this.position, this.minKey) <= 0 :
+                  KeyRange.compare(this.position, this.maxKey) >= 0)
+                    return null;
+
+                // Start the next segment, from the shared cache if possible
+                final SharedKVCache sharedCache = SharedKVCacheView.this.cache;
+                final long txStartSeq = SharedKVCacheView.this.startSeq;
+                this.range = sharedCache.find(this.position, this.reverse, txStartSeq);
+                if (this.range != null) {
+                    if (this.reverse) {
+                        this.segmentEnd = ByteUtil.max(this.range.min, this.minKey);
+                        this.index = this.range.lower(this.position);
+                        SharedKVCacheView.this.recordCacheRead(this.segmentEnd, this.position);
+                    } else {
+                        this.segmentEnd = KeyRange.compare(this.range.max, this.maxKey) < 0 ? this.range.max : this.maxKey;
+                        this.index = this.range.ceiling(this.position);
+                        SharedKVCacheView.this.recordCacheRead(this.position, this.segmentEnd);
+                    }
+                } else {
+                    final KVStore kv = SharedKVCacheView.this.kvstore;
+                    if (this.reverse) {
+                        this.segmentEnd = sharedCache.findNextEdge(this.position, this.minKey, true, txStartSeq);
+                        this.iterator = kv.getRange(this.segmentEnd, this.position, true);
+                    } else {
+                        this.segmentEnd = sharedCache.findNextEdge(this.position, this.maxKey, false, txStartSeq);
+                        this.iterator = kv.getRange(this.position, this.segmentEnd, false);
+                    }
+                }
+            }
+        }
+    }
+}
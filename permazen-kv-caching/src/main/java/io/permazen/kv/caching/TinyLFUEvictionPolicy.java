@@ -0,0 +1,306 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.kv.caching;
+
+import com.google.common.base.Preconditions;
+
+import java.util.IdentityHashMap;
+
+/**
+ * A scan-resistant, size-aware {@link EvictionPolicy} in the style of W-TinyLFU.
+ *
+ * <p>
+ * New entries are first placed in a small "window" segment that is managed in least-recently-used order.
+ * Entries that overflow the window must be admitted into the "main" segment, which holds the remainder of the cache
+ * and is itself split into a "probation" and a "protected" segment: entries in probation that are accessed again
+ * are promoted into the protected segment, which is limited to a fraction of the main segment.
+ *
+ * <p>
+ * Admission into the main segment is decided by comparing access frequencies, which are estimated using a compact
+ * count-min sketch that also remembers entries that are no longer cached, and which is periodically aged by halving.
+ * Admission is size-aware: an entry overflowing the window is admitted only if it is accessed more frequently than
+ * every entry that would have to be evicted from probation to make room for it; otherwise the overflowing entry is
+ * evicted instead. As a result, a large entry that is used once, such as a range loaded by a one-off scan, cannot
+ * displace many small entries that are in frequent use.
+ *
+ * @param <T> cache entry type
+ * @see <a href="https://arxiv.org/abs/1512.00727">TinyLFU: A Highly Efficient Cache Admission Policy</a>
+ */
+public class TinyLFUEvictionPolicy<T> implements EvictionPolicy<T> {
+
+    /**
+     * Default fraction of the maximum cache size allotted to the window segment ({@value #DEFAULT_WINDOW_FRACTION}).
+     */
+    public static final double DEFAULT_WINDOW_FRACTION = 0.10;
+
+    /**
+     * Default number of counters in each row of the frequency sketch ({@value #DEFAULT_SKETCH_WIDTH}).
+     */
+    public static final int DEFAULT_SKETCH_WIDTH = 4096;
+
+    private static final double PROTECTED_FRACTION = 0.80;
+
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+
+    private final double windowFraction;
+    private final FrequencySketch sketch;
+    private final IdentityHashMap<T, Node<T>> nodes = new IdentityHashMap<>();
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private final RingEntry<Node<T>>[] segments = new RingEntry[] {     // segment rings (MRU first, LRU last)
+        new RingEntry<>(null), new RingEntry<>(null), new RingEntry<>(null)
+    };
+    private final long[] segmentBytes = new long[3];
+
+    /**
+     * Default constructor.
+     *
+     * <p>
+     * Uses {@link #DEFAULT_WINDOW_FRACTION} and {@link #DEFAULT_SKETCH_WIDTH}.
+     */
+    public TinyLFUEvictionPolicy() {
+        this(DEFAULT_WINDOW_FRACTION, DEFAULT_SKETCH_WIDTH);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param windowFraction fraction of the maximum cache size allotted to the window segment
+     * @param sketchWidth number of counters in each row of the frequency sketch (rounded up to a power of two);
+     *  this should be large compared to the number of entries in the cache
+     * @throws IllegalArgumentException if {@code windowFraction} is not between zero and one
+     * @throws IllegalArgumentException if {@code sketchWidth} is not positive
+     */
+    public TinyLFUEvictionPolicy(double windowFraction, int sketchWidth) {
+        Preconditions.checkArgument(windowFraction >= 0 && windowFraction <= 1, "invalid windowFraction");
+        Preconditions.checkArgument(sketchWidth > 0, "sketchWidth <= 0");
+        this.windowFraction = windowFraction;
+        this.sketch = new FrequencySketch(sketchWidth);
+    }
+
+    /**
+     * Get the fraction of the maximum cache size allotted to the window segment.
+     *
+     * @return window fraction
+     */
+    public double getWindowFraction() {
+        return this.windowFraction;
+    }
+
+    /**
+     * Get the estimated access frequency associated with the given hash value.
+     *
+     * @param hash entry hash value
+     * @return estimated recent access frequency, from zero to 15
+     */
+    public int getFrequency(int hash) {
+        return this.sketch.frequency(hash);
+    }
+
+// EvictionPolicy
+
+    @Override
+    public void add(T entry, int hash, long bytes) {
+        Preconditions.checkArgument(entry != null, "null entry");
+        Preconditions.checkArgument(bytes >= 0, "bytes < 0");
+        Preconditions.checkArgument(!this.nodes.containsKey(entry), "duplicate entry");
+        final Node<T> node = new Node<>(entry, hash, bytes);
+        this.nodes.put(entry, node);
+        this.attach(node, WINDOW);
+        this.sketch.increment(hash);
+    }
+
+    @Override
+    public void access(T entry) {
+        final Node<T> node = this.getNode(entry);
+        this.sketch.increment(node.hash);
+        this.attach(node, node.segment == WINDOW ? WINDOW : PROTECTED);
+    }
+
+    @Override
+    public void resize(T entry, long bytes) {
+        Preconditions.checkArgument(bytes >= 0, "bytes < 0");
+        final Node<T> node = this.getNode(entry);
+        this.segmentBytes[node.segment] += bytes - node.bytes;
+        node.bytes = bytes;
+    }
+
+    @Override
+    public void remove(T entry) {
+        final Node<T> node = this.nodes.remove(entry);
+        if (node != null)
+            this.detach(node);
+    }
+
+    @Override
+    public T victim(long maxBytes) {
+        final long maxWindowBytes = (long)(maxBytes * this.windowFraction);
+        final long maxMainBytes = maxBytes - maxWindowBytes;
+
+        // Demote least recently used protected entries into probation until protected fits
+        final long maxProtectedBytes = (long)(maxMainBytes * PROTECTED_FRACTION);
+        while (this.segmentBytes[PROTECTED] > maxProtectedBytes || this.isEmpty(PROBATION) && !this.isEmpty(PROTECTED))
+            this.attach(this.lru(PROTECTED), PROBATION);
+
+        // Admit entries overflowing the window into the main segment, or evict them
+        while (this.segmentBytes[WINDOW] > maxWindowBytes) {
+            final Node<T> candidate = this.lru(WINDOW);
+
+            // Is there room to admit the candidate without evicting anything?
+            final long mainBytes = this.segmentBytes[PROBATION] + this.segmentBytes[PROTECTED];
+            long needed = mainBytes + candidate.bytes - maxMainBytes;
+            if (needed <= 0) {
+                this.attach(candidate, PROBATION);
+                continue;
+            }
+
+            // Evict the candidate if it could never fit
+            if (candidate.bytes > maxMainBytes)
+                return candidate.entry;
+
+            // Compare the candidate's frequency against the probation entries that would have to be evicted to make room
+            final int candidateFrequency = this.sketch.frequency(candidate.hash);
+            int victimFrequency = 0;
+            Node<T> firstVictim = null;
+            for (RingEntry<Node<T>> ringEntry = this.segments[PROBATION].prev(); needed > 0; ringEntry = ringEntry.prev()) {
+                final Node<T> node = ringEntry.getOwner();
+                if (node == null)
+                    break;
+                if (firstVictim == null)
+                    firstVictim = node;
+                victimFrequency = Math.max(victimFrequency, this.sketch.frequency(node.hash));
+                needed -= node.bytes;
+            }
+            if (firstVictim == null || candidateFrequency <= victimFrequency)
+                return candidate.entry;
+
+            // Admit the candidate; the victims are now the least recently used probation entries
+            this.attach(candidate, PROBATION);
+            return firstVictim.entry;
+        }
+
+        // Evict from probation, then protected, then window
+        for (int segment : new int[] { PROBATION, PROTECTED, WINDOW }) {
+            if (!this.isEmpty(segment))
+                return this.lru(segment).entry;
+        }
+        return null;
+    }
+
+    @Override
+    public int size() {
+        return this.nodes.size();
+    }
+
+// Internal methods
+
+    private Node<T> getNode(T entry) {
+        final Node<T> node = this.nodes.get(entry);
+        Preconditions.checkArgument(node != null, "unknown entry");
+        return node;
+    }
+
+    // Move node to the most recently used position in the given segment
+    private void attach(Node<T> node, int segment) {
+        if (node.ringEntry.isAttached())
+            this.segmentBytes[node.segment] -= node.bytes;
+        node.ringEntry.attachAfter(this.segments[segment]);
+        node.segment = segment;
+        this.segmentBytes[segment] += node.bytes;
+    }
+
+    private void detach(Node<T> node) {
+        node.ringEntry.detach();
+        this.segmentBytes[node.segment] -= node.bytes;
+    }
+
+    private boolean isEmpty(int segment) {
+        return !this.segments[segment].isAttached();
+    }
+
+    private Node<T> lru(int segment) {
+        return this.segments[segment].prev().getOwner();
+    }
+
+// Object
+
+    @Override
+    public String toString() {
+        return this.getClass().getSimpleName()
+          + "[size=" + this.nodes.size()
+          + ",windowBytes=" + this.segmentBytes[WINDOW]
+          + ",probationBytes=" + this.segmentBytes[PROBATION]
+          + ",protectedBytes=" + this.segmentBytes[PROTECTED]
+          + "]";
+    }
+
+// Node
+
+    private static final class Node<T> {
+
+        final RingEntry<Node<T>> ringEntry = new RingEntry<>(this);
+        final T entry;
+        final int hash;
+        long bytes;
+        int segment;
+
+        Node(T entry, int hash, long bytes) {
+            this.entry = entry;
+            this.hash = hash;
+            this.bytes = bytes;
+        }
+    }
+
+// FrequencySketch
+
+    // Count-min sketch with four rows of 4-bit counters, aged by halving all counters after a sample period
+    private static final class FrequencySketch {
+
+        private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+        };
+        private static final int MAX_COUNT = 15;
+
+        private final byte[] counters;
+        private final int width;
+        private final int samplePeriod;
+
+        private int samples;
+
+        FrequencySketch(int width) {
+            this.width = Integer.highestOneBit(Math.max(width - 1, 1)) << 1;
+            this.counters = new byte[SEEDS.length * this.width];
+            this.samplePeriod = 10 * this.width;
+        }
+
+        int frequency(int hash) {
+            int frequency = MAX_COUNT;
+            for (int row = 0; row < SEEDS.length; row++)
+                frequency = Math.min(frequency, this.counters[this.index(hash, row)]);
+            return frequency;
+        }
+
+        void increment(int hash) {
+            for (int row = 0; row < SEEDS.length; row++) {
+                final int index = this.index(hash, row);
+                if (this.counters[index] < MAX_COUNT)
+                    this.counters[index]++;
+            }
+            if (++this.samples >= this.samplePeriod) {
+                for (int i = 0; i < this.counters.length; i++)
+                    this.counters[i] >>= 1;
+                this.samples /= 2;
+            }
+        }
+
+        private int index(int hash, int row) {
+            long h = (hash + SEEDS[row]) * SEEDS[row];
+            h += h >>> 32;
+            return row * this.width + ((int)h & (this.width - 1));
+        }
+    }
+}
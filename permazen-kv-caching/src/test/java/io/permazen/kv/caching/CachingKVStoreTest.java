@@ -0,0 +1,294 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.kv.caching;
+
+import io.permazen.kv.KVPair;
+import io.permazen.kv.KVStore;
+import io.permazen.kv.test.KVTestSupport;
+import io.permazen.kv.util.ForwardingKVStore;
+import io.permazen.kv.util.NavigableMapKVStore;
+import io.permazen.util.ByteUtil;
+import io.permazen.util.CloseableIterator;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class CachingKVStoreTest extends KVTestSupport {
+
+    private ExecutorService executor;
+
+    @BeforeClass
+    public void setupExecutor() {
+        this.executor = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterClass
+    public void shutdownExecutor() {
+        this.executor.shutdown();
+    }
+
+    @Test
+    public void testPointCache() throws Exception {
+        final NavigableMapKVStore kv = new NavigableMapKVStore();
+        for (int i = 0; i < 256; i += 2)
+            kv.put(new byte[] { (byte)0x10, (byte)i }, new byte[] { (byte)i });
+        final CountingKVStore counter = new CountingKVStore(kv);
+        final CachingKVStore cache = new CachingKVStore(counter, this.executor, 1000000L);
+        try {
+
+            // Random lookups, including misses, should be point lookups
+            final byte[][] keys = new byte[][] { b("1080"), b("1010"), b("10f0"), b("1041"), b("1002") };
+            for (byte[] key : keys)
+                Assert.assertEquals(cache.get(key), kv.get(key));
+            Assert.assertEquals(counter.gets.get(), keys.length);
+            Assert.assertEquals(counter.ranges.get(), 0);
+
+            // Repeated lookups, including misses, should be answered from the point cache
+            for (byte[] key : keys)
+                Assert.assertEquals(cache.get(key), kv.get(key));
+            final List<byte[]> values = cache.getMany(Arrays.asList(keys));
+            for (int i = 0; i < keys.length; i++)
+                Assert.assertEquals(values.get(i), kv.get(keys[i]));
+            Assert.assertEquals(counter.gets.get(), keys.length);
+            Assert.assertEquals(counter.getManys.get(), 0);
+
+            // Returned values must be copies
+            cache.get(b("1080"))[0] = (byte)0x55;
+            Assert.assertEquals(cache.get(b("1080")), b("80"));
+
+            // Ascending lookups in another region should switch to range loading
+            for (int i = 0; i < 64; i++) {
+                final byte[] key = new byte[] { (byte)0x10, (byte)0x02, (byte)i };
+                Assert.assertEquals(cache.get(key), kv.get(key));
+            }
+            Assert.assertTrue(counter.ranges.get() > 0);
+            Assert.assertTrue(counter.gets.get() < keys.length + 64);
+
+            // Point cache can be disabled
+            cache.setMaxPointBytes(0);
+            final int gets = counter.gets.get();
+            Assert.assertEquals(cache.get(b("10c0")), b("c0"));
+            Assert.assertEquals(counter.gets.get(), gets);
+        } finally {
+            cache.close();
+        }
+    }
+
+    @Test
+    public void testPointCacheLimit() throws Exception {
+        final NavigableMapKVStore kv = new NavigableMapKVStore();
+        final CountingKVStore counter = new CountingKVStore(kv);
+        final CachingKVStore cache = new CachingKVStore(counter, this.executor, 1000000L);
+        try {
+            cache.setMaxPointBytes(1000);
+            final byte[][] keys = new byte[100][];
+            for (int i = 0; i < keys.length; i++)
+                keys[i] = new byte[] { (byte)0x20, (byte)(i * 37 % 100) };
+            Assert.assertEquals(cache.getMany(Arrays.asList(keys)), Arrays.asList(new byte[keys.length][]));
+            Assert.assertEquals(counter.getManys.get(), 1);
+
+            // The most recent keys should still be cached, but not the oldest ones
+            Assert.assertNull(cache.get(keys[keys.length - 1]));
+            Assert.assertEquals(counter.gets.get(), 0);
+            Assert.assertNull(cache.get(keys[0]));
+            Assert.assertEquals(counter.gets.get(), 1);
+        } finally {
+            cache.close();
+        }
+    }
+
+    @Test
+    public void testScanResistantEviction() throws Exception {
+        Assert.assertFalse(this.scanEvictsHotRanges(TinyLFUEvictionPolicy::new));
+        Assert.assertTrue(this.scanEvictsHotRanges(LRUEvictionPolicy::new));
+    }
+
+    // Repeatedly read two small ranges, then scan a large range; return whether the small ranges had to be reloaded
+    private boolean scanEvictsHotRanges(EvictionPolicy.Factory factory) throws Exception {
+        final NavigableMapKVStore kv = new NavigableMapKVStore();
+        for (int i = 0; i < 16; i++) {
+            kv.put(new byte[] { (byte)0x30, (byte)i }, new byte[16]);
+            kv.put(new byte[] { (byte)0x32, (byte)i }, new byte[16]);
+        }
+        for (int i = 0; i < 2000; i++)
+            kv.put(new byte[] { (byte)0x40, (byte)(i >> 8), (byte)i }, new byte[100]);
+        final CountingKVStore counter = new CountingKVStore(kv);
+        final CachingKVStore cache = new CachingKVStore(counter, this.executor, 1000000L);
+        try {
+            cache.setReadAhead(false);
+            cache.setMaxTotalBytes(20000);
+            cache.setEvictionPolicyFactory(factory);
+
+            // Read hot ranges
+            for (int i = 0; i < 5; i++) {
+                Assert.assertEquals(this.count(cache, b("30"), b("31")), 16);
+                Assert.assertEquals(this.count(cache, b("32"), b("33")), 16);
+            }
+            Assert.assertEquals(cache.getEvictions(), 0);
+            Assert.assertTrue(cache.getHits() > 0);
+            Assert.assertTrue(cache.getMisses() > 0);
+
+            // Scan a range much larger than the cache
+            Assert.assertEquals(this.count(cache, b("40"), b("41")), 2000);
+            Assert.assertTrue(cache.getEvictions() > 0);
+
+            // Read hot ranges again
+            final int ranges = counter.ranges.get();
+            Assert.assertEquals(this.count(cache, b("30"), b("31")), 16);
+            Assert.assertEquals(this.count(cache, b("32"), b("33")), 16);
+            return counter.ranges.get() > ranges;
+        } finally {
+            cache.close();
+        }
+    }
+
+    @Test
+    public void testWriteThrough() throws Exception {
+        final NavigableMapKVStore kv = new NavigableMapKVStore();
+        for (int i = 0; i < 16; i++)
+            kv.put(new byte[] { (byte)0x50, (byte)i }, new byte[] { (byte)i });
+        kv.put(b("5080"), kv.encodeCounter(100));
+        final CountingKVStore counter = new CountingKVStore(kv);
+        final CachingKVStore cache = new CachingKVStore(counter, this.executor, 1000000L);
+        try {
+
+            // Writes are not allowed by default
+            try {
+                cache.put(b("5000"), b("01"));
+                assert false;
+            } catch (UnsupportedOperationException e) {
+                this.log.debug("got expected {}", e.toString());
+            }
+            cache.setWriteThrough(true);
+
+            // Load range
+            Assert.assertEquals(this.count(cache, b("50"), b("51")), 17);
+            final int ranges = counter.ranges.get();
+
+            // Modify cached range and read back without another round trip
+            cache.put(b("5005"), b("ee"));
+            cache.put(b("500508"), b("ff"));
+            cache.remove(b("5003"));
+            cache.removeRange(b("5008"), b("500c"));
+            cache.adjustCounter(b("5080"), 23);
+            Assert.assertEquals(cache.get(b("5005")), b("ee"));
+            Assert.assertEquals(cache.get(b("500508")), b("ff"));
+            Assert.assertNull(cache.get(b("5003")));
+            Assert.assertNull(cache.get(b("5009")));
+            Assert.assertEquals(cache.decodeCounter(cache.get(b("5080"))), 123);
+            Assert.assertEquals(this.count(cache, b("50"), b("51")), 13);
+
+            // Write outside of any cached range and read back without another round trip
+            cache.put(b("6000"), b("01"));
+            cache.removeRange(b("7000"), b("7100"));
+            Assert.assertEquals(cache.get(b("6000")), b("01"));
+            Assert.assertNull(cache.getAtLeast(b("7000"), b("7100")));
+            Assert.assertEquals(counter.ranges.get(), ranges);
+            Assert.assertEquals(counter.gets.get(), 0);
+
+            // Writes went through
+            Assert.assertEquals(kv.get(b("5005")), b("ee"));
+            Assert.assertNull(kv.get(b("5003")));
+            Assert.assertEquals(kv.decodeCounter(kv.get(b("5080"))), 123);
+            Assert.assertEquals(kv.get(b("6000")), b("01"));
+
+            // Adjusting an uncached counter should leave it uncached
+            kv.put(b("8000"), kv.encodeCounter(5));
+            cache.adjustCounter(b("8000"), 2);
+            Assert.assertEquals(cache.decodeCounter(cache.get(b("8000"))), 7);
+
+            // Random mutations and queries should always agree with the underlying store
+            for (int i = 0; i < 2000; i++) {
+                final byte[] key1 = new byte[] { (byte)0x50, (byte)this.random.nextInt(32) };
+                final byte[] key2 = new byte[] { (byte)0x50, (byte)this.random.nextInt(32) };
+                final byte[] minKey = ByteUtil.min(key1, key2);
+                final byte[] maxKey = ByteUtil.max(key1, key2);
+                switch (this.random.nextInt(8)) {
+                case 0:
+                    cache.put(key1, new byte[] { (byte)i });
+                    break;
+                case 1:
+                    cache.remove(key1);
+                    break;
+                case 2:
+                    cache.removeRange(minKey, maxKey);
+                    break;
+                case 3:
+                    Assert.assertEquals(cache.get(key1), kv.get(key1));
+                    break;
+                case 4:
+                    Assert.assertEquals(cache.getAtLeast(minKey, null), kv.getAtLeast(minKey, null));
+                    break;
+                case 5:
+                    Assert.assertEquals(cache.getAtMost(maxKey, null), kv.getAtMost(maxKey, null));
+                    break;
+                default:
+                    Assert.assertEquals(this.count(cache, minKey, maxKey), this.count(kv, minKey, maxKey));
+                    break;
+                }
+            }
+        } finally {
+            cache.close();
+        }
+    }
+
+    private int count(KVStore kv, byte[] minKey, byte[] maxKey) {
+        int count = 0;
+        try (CloseableIterator<KVPair> i = kv.getRange(minKey, maxKey, false)) {
+            while (i.hasNext()) {
+                i.next();
+                count++;
+            }
+        }
+        return count;
+    }
+
+// CountingKVStore
+
+    private static class CountingKVStore extends ForwardingKVStore {
+
+        final AtomicInteger gets = new AtomicInteger();
+        final AtomicInteger getManys = new AtomicInteger();
+        final AtomicInteger ranges = new AtomicInteger();
+
+        private final KVStore kv;
+
+        CountingKVStore(KVStore kv) {
+            this.kv = kv;
+        }
+
+        @Override
+        protected KVStore delegate() {
+            return this.kv;
+        }
+
+        @Override
+        public byte[] get(byte[] key) {
+            this.gets.incrementAndGet();
+            return super.get(key);
+        }
+
+        @Override
+        public List<byte[]> getMany(List<byte[]> keys) {
+            this.getManys.incrementAndGet();
+            return super.getMany(keys);
+        }
+
+        @Override
+        public CloseableIterator<KVPair> getRange(byte[] minKey, byte[] maxKey, boolean reverse) {
+            this.ranges.incrementAndGet();
+            return super.getRange(minKey, maxKey, reverse);
+        }
+    }
+}
@@ -0,0 +1,237 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.kv.caching;
+
+import io.permazen.kv.CloseableKVStore;
+import io.permazen.kv.KVDatabase;
+import io.permazen.kv.KVStore;
+import io.permazen.kv.KVTransaction;
+import io.permazen.kv.RetryTransactionException;
+import io.permazen.kv.array.ArrayKVDatabase;
+import io.permazen.kv.array.AtomicArrayKVStore;
+import io.permazen.kv.test.KVDatabaseTest;
+import io.permazen.kv.util.ForwardingKVStore;
+import io.permazen.util.CloseableIterator;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Future;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Optional;
+import org.testng.annotations.Parameters;
+import org.testng.annotations.Test;
+
+public class SharedCacheArrayKVDatabaseTest extends KVDatabaseTest {
+
+    private CachingKVDatabase kvdb;
+
+    @BeforeClass(groups = "configure")
+    @Parameters({
+      "testCachingKV",
+      "arrayDirPrefix",
+    })
+    public void setTestCachingKV(@Optional String testCachingKV, @Optional String arrayDirPrefix) throws IOException {
+        if (testCachingKV != null && Boolean.valueOf(testCachingKV) && arrayDirPrefix != null)
+            this.kvdb = this.createCachingKVDatabase(arrayDirPrefix);
+    }
+
+    @Override
+    protected KVDatabase getKVDatabase() {
+        return this.kvdb;
+    }
+
+    @Test
+    @Parameters("arrayDirPrefix")
+    public void testSharedCache(@Optional String arrayDirPrefix) throws Exception {
+        if (arrayDirPrefix == null)
+            return;
+        final CachingKVDatabase db = this.createCachingKVDatabase(arrayDirPrefix);
+        db.start();
+        try {
+            final SharedKVCache cache = db.getSharedKVCache();
+
+            // Populate
+            KVTransaction tx = db.createTransaction();
+            for (int i = 0; i < 100; i++)
+                tx.put(new byte[] { (byte)0x10, (byte)i }, new byte[] { (byte)i });
+            tx.commit();
+
+            // Load range; it should be shared on commit
+            tx = db.createTransaction();
+            Assert.assertEquals(this.count(tx, b("10"), b("11")), 100);
+            tx.commit();
+            Assert.assertTrue(cache.getNumRanges() > 0);
+            Assert.assertTrue(cache.getTotalBytes() > 0);
+
+            // A new transaction should read the range from the shared cache
+            final long hits = cache.getHits();
+            tx = db.createTransaction();
+            Assert.assertEquals(tx.get(b("1005")), b("05"));
+            Assert.assertEquals(this.count(tx, b("10"), b("11")), 100);
+            Assert.assertTrue(cache.getHits() > hits);
+            tx.commit();
+
+            // A commit should invalidate the range, and new transactions should see the change
+            tx = db.createTransaction();
+            tx.put(b("1005"), b("ee"));
+            tx.remove(b("1006"));
+            tx.commit();
+            tx = db.createTransaction();
+            Assert.assertEquals(tx.get(b("1005")), b("ee"));
+            Assert.assertNull(tx.get(b("1006")));
+            Assert.assertEquals(this.count(tx, b("10"), b("11")), 99);
+            tx.commit();
+
+            // Reading shared data that a concurrent transaction modifies should cause a retry
+            tx = db.createTransaction();
+            Assert.assertEquals(this.count(tx, b("10"), b("11")), 99);
+            tx.commit();
+            final KVTransaction tx1 = db.createTransaction();
+            final KVTransaction tx2 = db.createTransaction();
+            Assert.assertEquals(tx1.get(b("1007")), b("07"));
+            tx2.put(b("1007"), b("ff"));
+            tx2.commit();
+            tx1.put(b("2000"), b("01"));
+            try {
+                tx1.commit();
+                assert false : "expected retry";
+            } catch (RetryTransactionException e) {
+                this.log.debug("got expected {}", e.toString());
+            }
+            tx = db.createTransaction();
+            Assert.assertEquals(tx.get(b("1007")), b("ff"));
+            Assert.assertNull(tx.get(b("2000")));
+            tx.commit();
+        } finally {
+            db.stop();
+        }
+    }
+
+    @Test
+    @Parameters("arrayDirPrefix")
+    public void testCommitDuringCreateTransaction(@Optional String arrayDirPrefix) throws Exception {
+        if (arrayDirPrefix == null)
+            return;
+        final CachingKVDatabase db = this.createCachingKVDatabase(arrayDirPrefix);
+        db.start();
+        try {
+
+            // Populate
+            KVTransaction tx = db.createTransaction();
+            for (int i = 0; i < 100; i++)
+                tx.put(new byte[] { (byte)0x10, (byte)i }, new byte[] { (byte)i });
+            tx.commit();
+
+            // Create a transaction whose snapshot is taken just before some other transaction commits
+            final AtomicArrayKVStore kvstore = ((ArrayKVDatabase)db.getKVDatabase()).getKVStore();
+            final KVTransaction staleTx = db.createTransaction(() -> {
+                final KVTransaction inner = new SnapshotTransaction(db.getKVDatabase(), kvstore.snapshot());
+                final KVTransaction writer = db.createTransaction();
+                writer.put(b("1008"), b("ee"));
+                writer.commit();
+                return inner;
+            });
+
+            // It reads the old data, and its read-only commit must not publish that data into the shared cache
+            Assert.assertEquals(staleTx.get(b("1008")), b("08"));
+            Assert.assertEquals(this.count(staleTx, b("10"), b("11")), 100);
+            staleTx.setReadOnly(true);
+            staleTx.commit();
+
+            // New transactions must see the committed change
+            tx = db.createTransaction();
+            Assert.assertEquals(tx.get(b("1008")), b("ee"));
+            Assert.assertEquals(this.count(tx, b("10"), b("11")), 100);
+            tx.commit();
+        } finally {
+            db.stop();
+        }
+    }
+
+    private int count(KVTransaction tx, byte[] minKey, byte[] maxKey) {
+        int count = 0;
+        try (CloseableIterator<?> i = tx.getRange(minKey, maxKey)) {
+            while (i.hasNext()) {
+                i.next();
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private CachingKVDatabase createCachingKVDatabase(String arrayDirPrefix) throws IOException {
+        final File dir = File.createTempFile(arrayDirPrefix, null);
+        Assert.assertTrue(dir.delete());
+        Assert.assertTrue(dir.mkdirs());
+        dir.deleteOnExit();
+        final AtomicArrayKVStore kvstore = new AtomicArrayKVStore();
+        kvstore.setDirectory(dir);
+        final ArrayKVDatabase arrayKV = new ArrayKVDatabase();
+        arrayKV.setKVStore(kvstore);
+        final CachingKVDatabase db = new CachingKVDatabase(arrayKV);
+        db.setSharedCacheMaxBytes(10 * 1024 * 1024);
+        return db;
+    }
+
+// SnapshotTransaction
+
+    // A read-only transaction that always reads from the snapshot it was created with
+    private static class SnapshotTransaction extends ForwardingKVStore implements KVTransaction {
+
+        private final KVDatabase kvdb;
+        private final CloseableKVStore snapshot;
+
+        SnapshotTransaction(KVDatabase kvdb, CloseableKVStore snapshot) {
+            this.kvdb = kvdb;
+            this.snapshot = snapshot;
+        }
+
+        @Override
+        protected KVStore delegate() {
+            return this.snapshot;
+        }
+
+        @Override
+        public KVDatabase getKVDatabase() {
+            return this.kvdb;
+        }
+
+        @Override
+        public void setTimeout(long timeout) {
+        }
+
+        @Override
+        public boolean isReadOnly() {
+            return true;
+        }
+
+        @Override
+        public void setReadOnly(boolean readOnly) {
+        }
+
+        @Override
+        public Future<Void> watchKey(byte[] key) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void commit() {
+            this.snapshot.close();
+        }
+
+        @Override
+        public void rollback() {
+            this.snapshot.close();
+        }
+
+        @Override
+        public CloseableKVStore mutableSnapshot() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
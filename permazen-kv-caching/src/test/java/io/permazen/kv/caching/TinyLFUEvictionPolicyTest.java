@@ -0,0 +1,86 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.kv.caching;
+
+import io.permazen.test.TestSupport;
+
+import java.util.HashMap;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TinyLFUEvictionPolicyTest extends TestSupport {
+
+    private static final long MAX_BYTES = 2000;
+
+    @Test
+    public void testAdmission() throws Exception {
+        final TinyLFUEvictionPolicy<String> policy = new TinyLFUEvictionPolicy<>();
+        final HashMap<String, Long> cache = new HashMap<>();
+
+        // Add small entries and use them frequently
+        final String[] hot = new String[10];
+        for (int i = 0; i < hot.length; i++)
+            this.add(policy, cache, hot[i] = "hot" + i, 100);
+        for (int j = 0; j < 5; j++) {
+            for (String entry : hot)
+                policy.access(entry);
+        }
+        Assert.assertTrue(policy.getFrequency(hot[0].hashCode()) >= 5);
+
+        // Scan through many large entries that are used once
+        for (int i = 0; i < 50; i++)
+            this.add(policy, cache, "scan" + i, 500);
+
+        // The small entries should have survived
+        for (String entry : hot)
+            Assert.assertTrue(cache.containsKey(entry), entry + " was evicted");
+        Assert.assertEquals(policy.size(), cache.size());
+        Assert.assertTrue(cache.values().stream().mapToLong(Long::longValue).sum() <= MAX_BYTES);
+
+        // A large entry that is used often enough should be admitted
+        final String big = "big";
+        this.add(policy, cache, big, 500);
+        for (int j = 0; j < 10; j++)
+            policy.access(big);
+        for (int i = 0; i < 5; i++)
+            this.add(policy, cache, "small" + i, 100);
+        Assert.assertTrue(cache.containsKey(big), "big was evicted");
+    }
+
+    @Test
+    public void testResizeAndRemove() throws Exception {
+        final TinyLFUEvictionPolicy<String> policy = new TinyLFUEvictionPolicy<>();
+        policy.add("a", 1, 10);
+        policy.add("b", 2, 10);
+        policy.resize("a", 5000);
+        Assert.assertEquals(policy.victim(MAX_BYTES), "a");
+        policy.remove("a");
+        policy.remove("a");
+        Assert.assertEquals(policy.size(), 1);
+        Assert.assertEquals(policy.victim(MAX_BYTES), "b");
+        policy.remove("b");
+        Assert.assertNull(policy.victim(MAX_BYTES));
+        try {
+            policy.access("b");
+            assert false;
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    // Add entry, then evict until back under the limit
+    private void add(EvictionPolicy<String> policy, HashMap<String, Long> cache, String entry, long bytes) {
+        cache.put(entry, bytes);
+        policy.add(entry, entry.hashCode(), bytes);
+        while (cache.values().stream().mapToLong(Long::longValue).sum() > MAX_BYTES) {
+            final String victim = policy.victim(MAX_BYTES);
+            Assert.assertNotNull(victim);
+            Assert.assertNotNull(cache.remove(victim), "unknown victim " + victim);
+            policy.remove(victim);
+        }
+    }
+}
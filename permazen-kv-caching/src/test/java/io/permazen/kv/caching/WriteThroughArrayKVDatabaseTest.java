@@ -0,0 +1,50 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.kv.caching;
+
+import io.permazen.kv.KVDatabase;
+import io.permazen.kv.array.ArrayKVDatabase;
+import io.permazen.kv.array.AtomicArrayKVStore;
+import io.permazen.kv.test.KVDatabaseTest;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Optional;
+import org.testng.annotations.Parameters;
+
+public class WriteThroughArrayKVDatabaseTest extends KVDatabaseTest {
+
+    private CachingKVDatabase kvdb;
+
+    @BeforeClass(groups = "configure")
+    @Parameters({
+      "testCachingKV",
+      "arrayDirPrefix",
+    })
+    public void setTestCachingKV(@Optional String testCachingKV, @Optional String arrayDirPrefix) throws IOException {
+        if (testCachingKV != null && Boolean.valueOf(testCachingKV) && arrayDirPrefix != null) {
+            final File dir = File.createTempFile(arrayDirPrefix, null);
+            Assert.assertTrue(dir.delete());
+            Assert.assertTrue(dir.mkdirs());
+            dir.deleteOnExit();
+            final AtomicArrayKVStore kvstore = new AtomicArrayKVStore();
+            kvstore.setDirectory(dir);
+            final ArrayKVDatabase arrayKV = new ArrayKVDatabase();
+            arrayKV.setKVStore(kvstore);
+            this.kvdb = new CachingKVDatabase(arrayKV);
+            this.kvdb.setWriteThrough(true);
+            this.kvdb.setSharedCacheMaxBytes(10 * 1024 * 1024);
+        }
+    }
+
+    @Override
+    protected KVDatabase getKVDatabase() {
+        return this.kvdb;
+    }
+}
@@ -15,20 +15,30 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.Iterators;
 import com.google.common.primitives.Bytes;
 
+import io.permazen.kv.AsyncKVPairIterator;
+import io.permazen.kv.AsyncKVStore;
 import io.permazen.kv.KVPair;
 import io.permazen.kv.KVStore;
 import io.permazen.util.ByteUtil;
 import io.permazen.util.CloseableIterator;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 
+import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.ThreadSafe;
 
 /**
  * A {@link KVStore} view of a FoundationDB {@link Transaction}.
+ *
+ * <p>
+ * Because FoundationDB reads are natively asynchronous, this class also implements {@link AsyncKVStore}.
+ * In addition, {@link #getMany getMany()} issues all of its reads at once rather than one at a time.
  */
 @ThreadSafe
-public class FoundationKVStore implements KVStore {
+public class FoundationKVStore implements AsyncKVStore {
 
     private static final byte[] MIN_KEY = ByteUtil.EMPTY;                   // minimum possible key (inclusive)
     private static final byte[] MAX_KEY = new byte[] { (byte)0xff };        // maximum possible key (exclusive)
@@ -70,14 +80,12 @@ public class FoundationKVStore implements KVStore {
 
     @Override
     public byte[] get(byte[] key) {
-        Preconditions.checkArgument(key.length == 0 || key[0] != (byte)0xff, "key starts with 0xff");
-        try {
-            return this.tx.get(this.addPrefix(key)).get();
-        } catch (ExecutionException e) {
-            throw e.getCause() instanceof RuntimeException ? (RuntimeException)e.getCause() : new RuntimeException(e.getCause());
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
-        }
+        return this.waitFor(this.getAsync(key));
+    }
+
+    @Override
+    public List<byte[]> getMany(List<byte[]> keys) {
+        return this.waitFor(this.getManyAsync(keys));
     }
 
     @Override
@@ -108,6 +116,54 @@ public class FoundationKVStore implements KVStore {
           i instanceof AutoCloseable ? (AutoCloseable)i : (AutoCloseable)i::cancel);
     }
 
+// AsyncKVStore
+
+    @Override
+    public CompletableFuture<byte[]> getAsync(byte[] key) {
+        Preconditions.checkArgument(key.length == 0 || key[0] != (byte)0xff, "key starts with 0xff");
+        return this.tx.get(this.addPrefix(key));
+    }
+
+    @Override
+    public CompletableFuture<KVPair> getAtLeastAsync(byte[] minKey, byte[] maxKey) {
+        if (minKey != null && minKey.length > 0 && minKey[0] == (byte)0xff)
+            return CompletableFuture.completedFuture(null);
+        return this.getFirstInRangeAsync(minKey, maxKey, false);
+    }
+
+    @Override
+    public CompletableFuture<KVPair> getAtMostAsync(byte[] maxKey, byte[] minKey) {
+        if (maxKey != null && maxKey.length > 0 && maxKey[0] == (byte)0xff)
+            maxKey = null;
+        return this.getFirstInRangeAsync(minKey, maxKey, true);
+    }
+
+    @Override
+    public AsyncKVPairIterator getRangeAsync(byte[] minKey, byte[] maxKey, boolean reverse) {
+        if (minKey != null && minKey.length > 0 && minKey[0] == (byte)0xff)
+            minKey = MAX_KEY;
+        if (maxKey != null && maxKey.length > 0 && maxKey[0] == (byte)0xff)
+            maxKey = null;
+        Preconditions.checkArgument(minKey == null || maxKey == null || ByteUtil.compare(minKey, maxKey) <= 0, "minKey > maxKey");
+        final Range range = this.addPrefix(minKey, maxKey);
+        return new AsyncIter(this.tx.getRange(range, ReadTransaction.ROW_LIMIT_UNLIMITED, reverse).iterator());
+    }
+
+    private CompletableFuture<KVPair> getFirstInRangeAsync(byte[] minKey, byte[] maxKey, boolean reverse) {
+        return this.tx.getRange(this.addPrefix(minKey, maxKey), 1, reverse).asList()
+          .thenApply(list -> !list.isEmpty() ? new KVPair(this.removePrefix(list.get(0).getKey()), list.get(0).getValue()) : null);
+    }
+
+    private <T> T waitFor(CompletableFuture<T> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException)e.getCause() : new RuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     private KVPair getFirstInRange(byte[] minKey, byte[] maxKey, boolean reverse) {
         final AsyncIterator<KeyValue> i = this.tx.getRange(
           this.addPrefix(minKey, maxKey), ReadTransaction.ROW_LIMIT_UNLIMITED /* 1? */, reverse).iterator();
@@ -181,4 +237,55 @@ public class FoundationKVStore implements KVStore {
         System.arraycopy(key, this.keyPrefix.length, stripped, 0, stripped.length);
         return stripped;
     }
+
+// AsyncIter
+
+    private class AsyncIter implements AsyncKVPairIterator {
+
+        private final AsyncIterator<KeyValue> i;
+
+        @GuardedBy("this")
+        private CompletableFuture<List<KVPair>> pending;
+        @GuardedBy("this")
+        private boolean closed;
+
+        AsyncIter(AsyncIterator<KeyValue> i) {
+            this.i = i;
+        }
+
+        @Override
+        public synchronized CompletableFuture<List<KVPair>> nextBatch(int maxPairs) {
+            Preconditions.checkArgument(maxPairs > 0, "maxPairs <= 0");
+            Preconditions.checkState(!this.closed, "closed");
+            Preconditions.checkState(this.pending == null || this.pending.isDone(), "previous batch still pending");
+            this.pending = this.fill(new ArrayList<>(), maxPairs);
+            return this.pending;
+        }
+
+        // Add whatever key/value pairs have already arrived, waiting only if there are none
+        private CompletableFuture<List<KVPair>> fill(ArrayList<KVPair> batch, int maxPairs) {
+            while (batch.size() < maxPairs) {
+                final CompletableFuture<Boolean> hasNext = this.i.onHasNext();
+                if (!hasNext.isDone() || hasNext.isCompletedExceptionally()) {
+                    if (!batch.isEmpty())
+                        break;
+                    return hasNext.thenCompose(more ->
+                      more ? this.fill(batch, maxPairs) : CompletableFuture.completedFuture(batch));
+                }
+                if (!hasNext.join())
+                    break;
+                final KeyValue kv = this.i.next();
+                batch.add(new KVPair(FoundationKVStore.this.removePrefix(kv.getKey()), kv.getValue()));
+            }
+            return CompletableFuture.completedFuture(batch);
+        }
+
+        @Override
+        public synchronized void close() {
+            if (this.closed)
+                return;
+            this.closed = true;
+            this.i.cancel();
+        }
+    }
 }
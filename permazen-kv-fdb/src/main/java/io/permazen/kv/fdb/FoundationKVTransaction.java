@@ -9,6 +9,8 @@ import com.apple.foundationdb.FDBException;
 import com.apple.foundationdb.Transaction;
 import com.google.common.base.Preconditions;
 
+import io.permazen.kv.AsyncKVPairIterator;
+import io.permazen.kv.AsyncKVStore;
 import io.permazen.kv.CloseableKVStore;
 import io.permazen.kv.KVPair;
 import io.permazen.kv.KVStore;
@@ -19,10 +21,13 @@ import io.permazen.kv.StaleTransactionException;
 import io.permazen.kv.TransactionTimeoutException;
 import io.permazen.kv.mvcc.MutableView;
 import io.permazen.kv.mvcc.Writes;
+import io.permazen.kv.util.ExecutorAsyncKVStore;
 import io.permazen.util.ByteUtil;
 import io.permazen.util.CloseableIterator;
 
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
 
 import javax.annotation.concurrent.GuardedBy;
@@ -30,9 +35,14 @@ import javax.annotation.concurrent.ThreadSafe;
 
 /**
  * FoundationDB transaction.
+ *
+ * <p>
+ * Instances support asynchronous reads via {@link AsyncKVStore}. However, if this transaction has been
+ * {@linkplain #setReadOnly set read-only}, reads must be merged with locally buffered writes, so they are
+ * performed synchronously and the returned futures are already completed.
  */
 @ThreadSafe
-public class FoundationKVTransaction implements KVTransaction {
+public class FoundationKVTransaction implements KVTransaction, AsyncKVStore {
 
     private static final byte[] MIN_KEY = ByteUtil.EMPTY;                   // minimum possible key (inclusive)
     private static final byte[] MAX_KEY = new byte[] { (byte)0xff };        // maximum possible key (exclusive)
@@ -149,6 +159,16 @@ public class FoundationKVTransaction implements KVTransaction {
         }
     }
 
+    @Override
+    public List<byte[]> getMany(List<byte[]> keys) {
+        try {
+            return this.getKVStore().getMany(keys);
+        } catch (FDBException e) {
+            this.close();
+            throw this.wrapException(e);
+        }
+    }
+
     @Override
     public KVPair getAtLeast(byte[] minKey, byte[] maxKey) {
         try {
@@ -229,6 +249,75 @@ public class FoundationKVTransaction implements KVTransaction {
         }
     }
 
+// AsyncKVStore
+
+    @Override
+    public CompletableFuture<byte[]> getAsync(byte[] key) {
+        final AsyncKVStore kv = this.getAsyncKVStore();
+        try {
+            return this.wrapAsync(kv.getAsync(key));
+        } catch (FDBException e) {
+            this.close();
+            throw this.wrapException(e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<List<byte[]>> getManyAsync(List<byte[]> keys) {
+        final AsyncKVStore kv = this.getAsyncKVStore();
+        try {
+            return this.wrapAsync(kv.getManyAsync(keys));
+        } catch (FDBException e) {
+            this.close();
+            throw this.wrapException(e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<KVPair> getAtLeastAsync(byte[] minKey, byte[] maxKey) {
+        final AsyncKVStore kv = this.getAsyncKVStore();
+        try {
+            return this.wrapAsync(kv.getAtLeastAsync(minKey, maxKey));
+        } catch (FDBException e) {
+            this.close();
+            throw this.wrapException(e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<KVPair> getAtMostAsync(byte[] maxKey, byte[] minKey) {
+        final AsyncKVStore kv = this.getAsyncKVStore();
+        try {
+            return this.wrapAsync(kv.getAtMostAsync(maxKey, minKey));
+        } catch (FDBException e) {
+            this.close();
+            throw this.wrapException(e);
+        }
+    }
+
+    @Override
+    public AsyncKVPairIterator getRangeAsync(byte[] minKey, byte[] maxKey, boolean reverse) {
+        final AsyncKVPairIterator i;
+        try {
+            i = this.getAsyncKVStore().getRangeAsync(minKey, maxKey, reverse);
+        } catch (FDBException e) {
+            this.close();
+            throw this.wrapException(e);
+        }
+        return new AsyncKVPairIterator() {
+
+            @Override
+            public CompletableFuture<List<KVPair>> nextBatch(int maxPairs) {
+                return FoundationKVTransaction.this.wrapAsync(i.nextBatch(maxPairs));
+            }
+
+            @Override
+            public void close() {
+                i.close();
+            }
+        };
+    }
+
 // Internal methods
 
     private synchronized void close() {
@@ -257,6 +346,31 @@ public class FoundationKVTransaction implements KVTransaction {
         return new KVTransactionException(this, e);
     }
 
+    // Reads from a read-only MutableView can't be asynchronous, so they are done synchronously via our own methods
+    private synchronized AsyncKVStore getAsyncKVStore() {
+        final KVStore kv = this.getKVStore();
+        return kv == this.kvstore ? this.kvstore : new ExecutorAsyncKVStore(this, Runnable::run);
+    }
+
+    // Wrap any FDBException the same way the synchronous methods do
+    private <T> CompletableFuture<T> wrapAsync(CompletableFuture<T> future) {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        future.whenComplete((value, error) -> {
+            if (error == null) {
+                result.complete(value);
+                return;
+            }
+            if (error instanceof CompletionException && error.getCause() != null)
+                error = error.getCause();
+            if (error instanceof FDBException) {
+                this.close();
+                error = this.wrapException((FDBException)error);
+            }
+            result.completeExceptionally(error);
+        });
+        return result;
+    }
+
     private synchronized KVStore getKVStore() {
         if (this.closed)
             throw new StaleTransactionException(this);
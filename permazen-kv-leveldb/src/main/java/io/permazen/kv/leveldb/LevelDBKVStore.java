@@ -10,14 +10,22 @@ import com.google.common.base.Preconditions;
 import io.permazen.kv.AbstractKVStore;
 import io.permazen.kv.CloseableKVStore;
 import io.permazen.kv.KVPair;
+import io.permazen.kv.KeyRange;
+import io.permazen.kv.SizeEstimate;
+import io.permazen.kv.SizeEstimatingKVStore;
+import io.permazen.kv.util.KeyInterpolator;
+import io.permazen.kv.util.SamplingSizeEstimator;
 import io.permazen.util.ByteUtil;
 import io.permazen.util.CloseableIterator;
 import io.permazen.util.CloseableTracker;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.NoSuchElementException;
 
 import org.iq80.leveldb.DB;
 import org.iq80.leveldb.DBIterator;
+import org.iq80.leveldb.Range;
 import org.iq80.leveldb.ReadOptions;
 import org.iq80.leveldb.WriteBatch;
 import org.slf4j.Logger;
@@ -29,7 +37,13 @@ import org.slf4j.LoggerFactory;
  * <p>
  * Instances must be {@link #close}'d when no longer needed to avoid leaking resources associated with iterators.
  */
-public class LevelDBKVStore extends AbstractKVStore implements CloseableKVStore {
+public class LevelDBKVStore extends AbstractKVStore implements CloseableKVStore, SizeEstimatingKVStore {
+
+    // Upper bound used for key ranges having no maximum
+    private static final byte[] MAX_KEY = LevelDBKVStore.maxKey();
+
+    // Number of key/value pairs read to determine the average pair size
+    private static final int PAIR_SIZE_SAMPLES = 256;
 
     private final Logger log = LoggerFactory.getLogger(this.getClass());
     private final CloseableTracker cursorTracker = new CloseableTracker();
@@ -118,6 +132,72 @@ public class LevelDBKVStore extends AbstractKVStore implements CloseableKVStore
             this.db.delete(key);
     }
 
+// SizeEstimatingKVStore
+
+    /**
+     * Estimate the number of keys and bytes in the given range.
+     *
+     * <p>
+     * The byte count is the approximate on-disk size of the range, as reported by
+     * {@link DB#getApproximateSizes DB.getApproximateSizes()}, and the key count is extrapolated from the average size
+     * of the first few key/value pairs in the range. Because LevelDB only accounts for data that has been written
+     * to table files, ranges having no such data are estimated by {@linkplain SamplingSizeEstimator sampling} instead.
+     */
+    @Override
+    public SizeEstimate estimateSize(KeyRange range) {
+        Preconditions.checkArgument(range != null, "null range");
+        Preconditions.checkState(!this.closed, "closed");
+        this.cursorTracker.poll();
+
+        // Read the first few key/value pairs; if that's all of them, we're done
+        long sampleKeys = 0;
+        long sampleBytes = 0;
+        try (CloseableIterator<KVPair> i = this.getRange(range.getMin(), range.getMax(), false)) {
+            while (true) {
+                if (!i.hasNext())
+                    return new SizeEstimate(sampleKeys, sampleBytes);
+                if (sampleKeys == PAIR_SIZE_SAMPLES)
+                    break;
+                final KVPair pair = i.next();
+                sampleKeys++;
+                sampleBytes += pair.getKey().length + pair.getValue().length;
+            }
+        }
+
+        // Get native estimate, or fall back to sampling if there is none
+        final long bytes = this.nativeSize(range);
+        if (bytes <= 0)
+            return new SamplingSizeEstimator(this).estimateSize(range);
+        return new SizeEstimate(Math.max(bytes * sampleKeys / sampleBytes, sampleKeys), bytes);
+    }
+
+    /**
+     * Get keys that split the given range into pieces of roughly equal size.
+     *
+     * <p>
+     * This implementation bisects the range using {@link DB#getApproximateSizes DB.getApproximateSizes()},
+     * or {@linkplain SamplingSizeEstimator samples} the range if that reports no data.
+     */
+    @Override
+    public List<byte[]> getSplitKeys(KeyRange range, int count) {
+        Preconditions.checkArgument(range != null, "null range");
+        Preconditions.checkState(!this.closed, "closed");
+        if (this.nativeSize(range) <= 0)
+            return new SamplingSizeEstimator(this).getSplitKeys(range, count);
+        return KeyInterpolator.bisectSplitKeys(this, range, count, this::nativeSize);
+    }
+
+    private long nativeSize(KeyRange range) {
+        final byte[] limit = range.getMax() != null ? range.getMax() : MAX_KEY;
+        return this.db.getApproximateSizes(new Range(range.getMin(), limit))[0];
+    }
+
+    private static byte[] maxKey() {
+        final byte[] key = new byte[64];
+        Arrays.fill(key, (byte)0xff);
+        return key;
+    }
+
 // Object
 
     /**
@@ -10,7 +10,9 @@ import com.google.common.collect.Iterators;
 
 import io.permazen.kv.AbstractKVStore;
 import io.permazen.kv.CloseableKVStore;
+import io.permazen.kv.KVCursor;
 import io.permazen.kv.KVPair;
+import io.permazen.util.ByteSlice;
 import io.permazen.util.ByteUtil;
 import io.permazen.util.CloseableIterator;
 import io.permazen.util.CloseableTracker;
@@ -115,6 +117,24 @@ public abstract class LMDBKVStore<T> extends AbstractKVStore implements Closeabl
         return ci;
     }
 
+    /**
+     * Iterate the key/value pairs in the specified range using a cursor that avoids unnecessary copying.
+     *
+     * <p>
+     * The keys and values returned by the cursor are slices of the {@linkplain #unwrap unwrapped} buffers
+     * with the internal key prefix skipped over, instead of being copied into new arrays.
+     */
+    @Override
+    public KVCursor getRangeView(byte[] minKey, byte[] maxKey, boolean reverse) {
+        Preconditions.checkArgument(minKey == null || maxKey == null || ByteUtil.compare(minKey, maxKey) <= 0, "minKey > maxKey");
+        Preconditions.checkState(!this.closed.get(), "transaction closed");
+        this.cursorTracker.poll();
+        final CursorIterator<T> cursorIterator = this.db.iterate(this.tx, this.getKeyRange(minKey, maxKey, reverse));
+        final RangeCursor cursor = new RangeCursor(cursorIterator);
+        this.cursorTracker.add(cursor, new CloseableAutoCloseable(cursorIterator));
+        return cursor;
+    }
+
     @Override
     public void put(byte[] key, byte[] value) {
         key = this.addPrefix(key);
@@ -257,6 +277,62 @@ public abstract class LMDBKVStore<T> extends AbstractKVStore implements Closeabl
           + "]";
     }
 
+// RangeCursor
+
+    private class RangeCursor implements KVCursor {
+
+        private final CursorIterator<T> cursorIterator;
+        private final ByteSlice key = new ByteSlice();
+        private final ByteSlice value = new ByteSlice();
+
+        private boolean positioned;
+        private boolean closed;
+
+        RangeCursor(CursorIterator<T> cursorIterator) {
+            this.cursorIterator = cursorIterator;
+        }
+
+        @Override
+        public boolean next() {
+            Preconditions.checkState(!this.closed, "closed");
+            if (!this.cursorIterator.hasNext()) {
+                this.positioned = false;
+                return false;
+            }
+            final CursorIterator.KeyVal<T> kv = this.cursorIterator.next();
+            final byte[] prefixedKey = LMDBKVStore.this.unwrap(kv.key(), false);
+            if (prefixedKey.length == 0)
+                throw new RuntimeException("internal error: zero length key");
+            if (prefixedKey[0] != 0)
+                throw new RuntimeException("internal error: non-zero first byte");
+            this.key.set(prefixedKey, 1, prefixedKey.length - 1);
+            this.value.set(LMDBKVStore.this.unwrap(kv.val(), false));
+            this.positioned = true;
+            return true;
+        }
+
+        @Override
+        public ByteSlice getKey() {
+            Preconditions.checkState(this.positioned, "not positioned on a key/value pair");
+            return this.key;
+        }
+
+        @Override
+        public ByteSlice getValue() {
+            Preconditions.checkState(this.positioned, "not positioned on a key/value pair");
+            return this.value;
+        }
+
+        @Override
+        public void close() {
+            if (this.closed)
+                return;
+            this.closed = true;
+            this.positioned = false;
+            this.cursorIterator.close();
+        }
+    }
+
 // CloseableAutoCloseable
 
     private static class CloseableAutoCloseable implements Closeable {
@@ -9,17 +9,31 @@ import com.google.common.base.Preconditions;
 
 import io.permazen.kv.AbstractKVStore;
 import io.permazen.kv.KVPair;
+import io.permazen.kv.KeyRange;
+import io.permazen.kv.SizeEstimate;
+import io.permazen.kv.SizeEstimatingKVStore;
 import io.permazen.util.ByteUtil;
 import io.permazen.util.CloseableIterator;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 import org.h2.mvstore.MVMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Straightforward {@link io.permazen.kv.KVStore} view of an {@link MVMap}.
+ *
+ * <p>
+ * Because an {@link MVMap} is a counted B-tree, the number of keys in any key range, and keys that split a key range
+ * into equally sized pieces, are available in logarithmic time; see {@link SizeEstimatingKVStore}.
  */
-public class MVMapKVStore extends AbstractKVStore {
+public class MVMapKVStore extends AbstractKVStore implements SizeEstimatingKVStore {
+
+    // Number of key/value pairs read to determine the average pair size
+    private static final int PAIR_SIZE_SAMPLES = 64;
 
     protected final Logger log = LoggerFactory.getLogger(this.getClass());
 
@@ -121,6 +135,71 @@ public class MVMapKVStore extends AbstractKVStore {
 //    public void removeRange(byte[] minKey, byte[] maxKey) {
 //    }
 
+// SizeEstimatingKVStore
+
+    /**
+     * Estimate the number of keys and bytes in the given range.
+     *
+     * <p>
+     * The key count is exact. The byte count is extrapolated from the sizes of several key/value pairs
+     * evenly spaced throughout the range.
+     */
+    @Override
+    public SizeEstimate estimateSize(KeyRange range) {
+        Preconditions.checkArgument(range != null, "null range");
+        final MVMap<byte[], byte[]> map = this.getMVMap();
+        final long minIndex = this.indexOf(map, range.getMin());
+        final long keys = this.indexOf(map, range.getMax()) - minIndex;
+        if (keys <= 0)
+            return SizeEstimate.EMPTY;
+        final int samples = (int)Math.min(keys, PAIR_SIZE_SAMPLES);
+        long sampleBytes = 0;
+        for (int i = 0; i < samples; i++) {
+            final byte[] key = map.getKey(minIndex + keys * i / samples);
+            final byte[] value = key != null ? map.get(key) : null;
+            sampleBytes += (key != null ? key.length : 0) + (value != null ? value.length : 0);
+        }
+        return new SizeEstimate(keys, Math.round((double)sampleBytes * keys / samples));
+    }
+
+    /**
+     * Get keys that split the given range into pieces of roughly equal size.
+     *
+     * <p>
+     * This implementation splits the range into pieces having equal numbers of keys.
+     */
+    @Override
+    public List<byte[]> getSplitKeys(KeyRange range, int count) {
+        Preconditions.checkArgument(range != null, "null range");
+        Preconditions.checkArgument(count >= 0, "count < 0");
+        final MVMap<byte[], byte[]> map = this.getMVMap();
+        final long minIndex = this.indexOf(map, range.getMin());
+        final long keys = this.indexOf(map, range.getMax()) - minIndex;
+        if (count == 0 || keys <= 1)
+            return Collections.emptyList();
+        final ArrayList<byte[]> splitKeys = new ArrayList<>(count);
+        long prevIndex = minIndex;
+        for (int i = 1; i <= count; i++) {
+            final long index = minIndex + keys * i / (count + 1);
+            if (index <= prevIndex)
+                continue;
+            final byte[] key = map.getKey(index);
+            if (key == null)
+                break;
+            splitKeys.add(key);
+            prevIndex = index;
+        }
+        return splitKeys;
+    }
+
+    // Get the index of the first key greater than or equal to the given key
+    private long indexOf(MVMap<byte[], byte[]> map, byte[] key) {
+        if (key == null)
+            return map.sizeAsLong();
+        final long index = map.getKeyIndex(key);
+        return index >= 0 ? index : -(index + 1);
+    }
+
 // Object
 
     @Override
@@ -870,7 +870,7 @@ public class LeaderRole extends Role {
             // Decode reads
             final Reads reads;
             try {
-                reads = new Reads(new ByteBufferInputStream(msg.getReadsData()));
+                reads = new Reads(new ByteBufferInputStream(msg.getReadsData()), true);
             } catch (Exception e) {
                 this.error("error decoding reads data in " + msg, e);
                 this.raft.sendMessage(new CommitResponse(this.raft.clusterId, this.raft.identity, msg.getSenderId(),
@@ -1138,6 +1138,8 @@ public class LeaderRole extends Role {
                 if (conflict != null) {
                     if (dumpDesc != null)
                         this.dumpConflicts(reads, logEntry.getMutations(), dumpDesc + " fails due to conflicts with " + logEntry);
+                    if (this.raft.conflictProfiler != null)
+                        this.raft.conflictProfiler.record(conflict);
                     return "writes of committed transaction at index " + index
                       + " conflict with transaction reads from transaction base index " + baseIndex + ": " + conflict;
                 }
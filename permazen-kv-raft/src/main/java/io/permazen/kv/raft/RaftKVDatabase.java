@@ -9,13 +9,14 @@ import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
 import com.google.common.util.concurrent.ListenableFuture;
 
-import io.permazen.kv.KVDatabase;
 import io.permazen.kv.KVPair;
 import io.permazen.kv.KVTransactionException;
 import io.permazen.kv.KeyRange;
 import io.permazen.kv.RetryTransactionException;
 import io.permazen.kv.StaleTransactionException;
 import io.permazen.kv.mvcc.AtomicKVStore;
+import io.permazen.kv.mvcc.ConflictProfiler;
+import io.permazen.kv.mvcc.ConflictProfilingKVDatabase;
 import io.permazen.kv.mvcc.Writes;
 import io.permazen.kv.raft.msg.AppendRequest;
 import io.permazen.kv.raft.msg.AppendResponse;
@@ -328,7 +329,7 @@ import org.slf4j.LoggerFactory;
  * @see <a href="https://raftconsensus.github.io/">The Raft Consensus Algorithm</a>
  */
 @ThreadSafe
-public class RaftKVDatabase implements KVDatabase {
+public class RaftKVDatabase implements ConflictProfilingKVDatabase {
 
     /**
      * Default minimum election timeout ({@value #DEFAULT_MIN_ELECTION_TIMEOUT}ms).
@@ -433,6 +434,8 @@ public class RaftKVDatabase implements KVDatabase {
     @GuardedBy("this")
     boolean dumpConflicts;
     @GuardedBy("this")
+    ConflictProfiler conflictProfiler;
+    @GuardedBy("this")
     File logDir;
 
     // Raft runtime state
@@ -788,6 +791,28 @@ public class RaftKVDatabase implements KVDatabase {
         return this.dumpConflicts;
     }
 
+    /**
+     * Configure a {@link ConflictProfiler} to be notified of each MVCC conflict that causes a transaction to fail.
+     *
+     * <p>
+     * This includes conflicts detected when rebasing local transactions and, on the leader, conflicts detected
+     * when checking commit requests from followers.
+     *
+     * <p>
+     * Default is null.
+     *
+     * @param conflictProfiler conflict profiler, or null to disable conflict profiling
+     */
+    @Override
+    public synchronized void setConflictProfiler(final ConflictProfiler conflictProfiler) {
+        this.conflictProfiler = conflictProfiler;
+    }
+
+    @Override
+    public synchronized ConflictProfiler getConflictProfiler() {
+        return this.conflictProfiler;
+    }
+
     /**
      * Configure the priority of internal service threads.
      *
@@ -1400,6 +1425,14 @@ public class RaftKVDatabase implements KVDatabase {
         return this.keyWatchTracker.register(key);
     }
 
+    synchronized ListenableFuture<Void> watchRange(RaftKVTransaction tx, KeyRange range) {
+        Preconditions.checkState(this.role != null, "not started");
+        tx.verifyExecuting();
+        if (this.keyWatchTracker == null)
+            this.keyWatchTracker = new KeyWatchTracker();
+        return this.keyWatchTracker.register(range);
+    }
+
 // Transactions
 
     /**
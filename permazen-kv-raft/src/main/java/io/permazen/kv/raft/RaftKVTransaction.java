@@ -14,6 +14,7 @@ import io.permazen.kv.KVPair;
 import io.permazen.kv.KVStore;
 import io.permazen.kv.KVTransaction;
 import io.permazen.kv.KVTransactionException;
+import io.permazen.kv.KeyRange;
 import io.permazen.kv.StaleTransactionException;
 import io.permazen.kv.mvcc.MutableView;
 import io.permazen.kv.mvcc.Mutations;
@@ -24,6 +25,7 @@ import io.permazen.kv.util.CloseableForwardingKVStore;
 import io.permazen.util.CloseableIterator;
 
 import java.util.Comparator;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -493,6 +495,12 @@ public class RaftKVTransaction implements KVTransaction, ReadTracking {
         return this.view.get(key);
     }
 
+    @Override
+    public List<byte[]> getMany(List<byte[]> keys) {
+        this.fastVerifyExecuting();
+        return this.view.getMany(keys);
+    }
+
     @Override
     public KVPair getAtLeast(byte[] minKey, byte[] maxKey) {
         this.fastVerifyExecuting();
@@ -662,6 +670,26 @@ public class RaftKVTransaction implements KVTransaction, ReadTracking {
         return this.raft.watchKey(this, key);
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * <p>
+     * Key range watches are supported by {@link RaftKVTransaction}, with the same semantics as {@link #watchKey watchKey()}.
+     *
+     * @param range {@inheritDoc}
+     * @return {@inheritDoc}
+     * @throws StaleTransactionException {@inheritDoc}
+     * @throws io.permazen.kv.RetryTransactionException {@inheritDoc}
+     * @throws io.permazen.kv.KVDatabaseException {@inheritDoc}
+     * @throws UnsupportedOperationException {@inheritDoc}
+     * @throws IllegalArgumentException {@inheritDoc}
+     */
+    @Override
+    public ListenableFuture<Void> watchRange(KeyRange range) {
+        Preconditions.checkArgument(range != null, "null range");
+        return this.raft.watchRange(this, range);
+    }
+
     @Override
     public void commit() {
         this.raft.commit(this);
@@ -609,6 +609,8 @@ public abstract class Role {
                         this.dumpConflicts(tx.view.getReads(), logEntry.getWrites(),
                           "local txId=" + tx.txId + " fails due to conflicts with " + logEntry);
                     }
+                    if (this.raft.conflictProfiler != null)
+                        this.raft.conflictProfiler.record(conflict);
                     throw new TransactionConflictException(tx, conflict, "writes of committed transaction at index " + baseIndex
                       + " conflict with transaction reads from transaction base index " + tx.getBaseIndex() + ": " + conflict);
                 }
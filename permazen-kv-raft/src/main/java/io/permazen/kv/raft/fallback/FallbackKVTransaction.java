@@ -10,11 +10,14 @@ import com.google.common.util.concurrent.ListenableFuture;
 import io.permazen.kv.CloseableKVStore;
 import io.permazen.kv.KVStore;
 import io.permazen.kv.KVTransaction;
+import io.permazen.kv.KeyRange;
 import io.permazen.kv.RetryTransactionException;
 import io.permazen.kv.StaleTransactionException;
 import io.permazen.kv.util.ForwardingKVStore;
 
 import java.util.ArrayList;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
 
 /**
  * A {@link KVTransaction} associated with a {@link FallbackKVDatabase}.
@@ -68,6 +71,15 @@ public class FallbackKVTransaction extends ForwardingKVStore implements KVTransa
 
     @Override
     public ListenableFuture<Void> watchKey(byte[] key) {
+        return this.watch(() -> this.kvt.watchKey(key));
+    }
+
+    @Override
+    public ListenableFuture<Void> watchRange(KeyRange range) {
+        return this.watch(() -> this.kvt.watchRange(range));
+    }
+
+    private ListenableFuture<Void> watch(Supplier<Future<Void>> watcher) {
 
         // Check freshness
         synchronized (this.db) {
@@ -78,7 +90,7 @@ public class FallbackKVTransaction extends ForwardingKVStore implements KVTransa
         // Get target's future - it must be a ListenableFuture or we can't do this
         final ListenableFuture<Void> innerFuture;
         try {
-            innerFuture = (ListenableFuture<Void>)this.kvt.watchKey(key);
+            innerFuture = (ListenableFuture<Void>)watcher.get();
         } catch (ClassCastException e) {
             throw new UnsupportedOperationException("nested transaction does not support ListenableFuture's", e);
         }
@@ -10,13 +10,21 @@ import com.google.common.base.Preconditions;
 import io.permazen.kv.AbstractKVStore;
 import io.permazen.kv.CloseableKVStore;
 import io.permazen.kv.KVPair;
+import io.permazen.kv.KeyRange;
+import io.permazen.kv.SizeEstimate;
+import io.permazen.kv.SizeEstimatingKVStore;
+import io.permazen.kv.util.KeyInterpolator;
+import io.permazen.kv.util.SamplingSizeEstimator;
 import io.permazen.util.ByteUtil;
 import io.permazen.util.CloseableIterator;
 import io.permazen.util.CloseableTracker;
 
 import java.io.Closeable;
+import java.util.Arrays;
+import java.util.List;
 import java.util.NoSuchElementException;
 
+import org.rocksdb.LiveFileMetaData;
 import org.rocksdb.ReadOptions;
 import org.rocksdb.RocksDB;
 import org.rocksdb.RocksDBException;
@@ -31,7 +39,7 @@ import org.slf4j.LoggerFactory;
  * <p>
  * Instances must be {@link #close}'d when no longer needed to avoid leaking resources associated with iterators.
  */
-public class RocksDBKVStore extends AbstractKVStore implements CloseableKVStore {
+public class RocksDBKVStore extends AbstractKVStore implements CloseableKVStore, SizeEstimatingKVStore {
 
     private final Logger log = LoggerFactory.getLogger(this.getClass());
     private final CloseableTracker cursorTracker = new CloseableTracker();
@@ -109,6 +117,22 @@ public class RocksDBKVStore extends AbstractKVStore implements CloseableKVStore
         }
     }
 
+    @Override
+    public List<byte[]> getMany(List<byte[]> keys) {
+        Preconditions.checkArgument(keys != null, "null keys");
+        for (byte[] key : keys)
+            key.getClass();
+        Preconditions.checkState(!this.closed, "closed");
+        assert RocksDBUtil.isInitialized(this.db);
+        assert RocksDBUtil.isInitialized(this.readOptions);
+        this.cursorTracker.poll();
+        try {
+            return this.db.multiGetAsList(this.readOptions, keys);
+        } catch (RocksDBException e) {
+            throw new RuntimeException("RocksDB error", e);
+        }
+    }
+
     @Override
     public CloseableIterator<KVPair> getRange(byte[] minKey, byte[] maxKey, boolean reverse) {
         Preconditions.checkState(!this.closed, "closed");
@@ -219,6 +243,85 @@ public class RocksDBKVStore extends AbstractKVStore implements CloseableKVStore
         }
     }
 
+// SizeEstimatingKVStore
+
+    /**
+     * Estimate the number of keys and bytes in the given range.
+     *
+     * <p>
+     * For each table file overlapping the range, the size and entry count reported by
+     * {@link RocksDB#getLiveFilesMetaData} are prorated by the {@linkplain KeyInterpolator fraction} of the file's
+     * key range that overlaps the given range. Data still in memtables is assumed to be distributed like the data
+     * in table files. If no table files overlap the range, the range is {@linkplain SamplingSizeEstimator sampled}.
+     * Estimates are based on the current state of the database, even if this instance reads from a snapshot.
+     *
+     * <p>
+     * This implementation avoids {@code RocksDB.getApproximateSizes()} and
+     * {@code RocksDB.getApproximateMemTableStats()}, which are unreliable in the RocksDB Java API version used here.
+     */
+    @Override
+    public SizeEstimate estimateSize(KeyRange range) {
+        Preconditions.checkArgument(range != null, "null range");
+        Preconditions.checkState(!this.closed, "closed");
+        assert RocksDBUtil.isInitialized(this.db);
+        this.cursorTracker.poll();
+        final List<LiveFileMetaData> files = this.db.getLiveFilesMetaData();
+        final SizeEstimate fileSize = RocksDBKVStore.estimateFileSize(files, range);
+        if (fileSize.getBytes() <= 0)
+            return new SamplingSizeEstimator(this).estimateSize(range);
+        final long totalFileBytes = RocksDBKVStore.estimateFileSize(files, KeyRange.FULL).getBytes();
+        final long memKeys;
+        final long memBytes;
+        try {
+            memKeys = this.db.getLongProperty("rocksdb.num-entries-active-mem-table")
+              + this.db.getLongProperty("rocksdb.num-entries-imm-mem-tables");
+            memBytes = this.db.getLongProperty("rocksdb.cur-size-all-mem-tables");
+        } catch (RocksDBException e) {
+            throw new RuntimeException("RocksDB error", e);
+        }
+        final double share = (double)fileSize.getBytes() / Math.max(totalFileBytes, fileSize.getBytes());
+        return fileSize.plus(new SizeEstimate(Math.round(memKeys * share), Math.round(memBytes * share)));
+    }
+
+    /**
+     * Get keys that split the given range into pieces of roughly equal size.
+     *
+     * <p>
+     * This implementation bisects the range using the table file metadata, or, if there are no table files
+     * overlapping the range yet, {@linkplain SamplingSizeEstimator samples} the range.
+     */
+    @Override
+    public List<byte[]> getSplitKeys(KeyRange range, int count) {
+        Preconditions.checkArgument(range != null, "null range");
+        Preconditions.checkState(!this.closed, "closed");
+        assert RocksDBUtil.isInitialized(this.db);
+        this.cursorTracker.poll();
+        final List<LiveFileMetaData> files = this.db.getLiveFilesMetaData();
+        if (RocksDBKVStore.estimateFileSize(files, range).getBytes() <= 0)
+            return new SamplingSizeEstimator(this).getSplitKeys(range, count);
+        return KeyInterpolator.bisectSplitKeys(this, range, count, r -> RocksDBKVStore.estimateFileSize(files, r).getBytes());
+    }
+
+    // Estimate the size of the given range in the given table files
+    private static SizeEstimate estimateFileSize(List<LiveFileMetaData> files, KeyRange range) {
+        double keys = 0;
+        double bytes = 0;
+        for (LiveFileMetaData file : files) {
+            if (!Arrays.equals(file.columnFamilyName(), RocksDB.DEFAULT_COLUMN_FAMILY))
+                continue;
+            final KeyRange fileRange = new KeyRange(file.smallestKey(), ByteUtil.getNextKey(file.largestKey()));
+            if (!fileRange.overlaps(range))
+                continue;
+            final KeyInterpolator interpolator = new KeyInterpolator(fileRange);
+            final double start = interpolator.getPosition(range.getMin());
+            final double end = range.getMax() != null ? interpolator.getPosition(range.getMax()) : 1.0;
+            final double fraction = Math.max(end - start, 1.0 / Math.max(file.numEntries(), 1));
+            keys += Math.max(file.numEntries() - file.numDeletions(), 0) * fraction;
+            bytes += file.size() * fraction;
+        }
+        return new SizeEstimate(Math.round(keys), Math.round(bytes));
+    }
+
 // Object
 
     /**
@@ -86,7 +86,7 @@ public class SimpleKVDatabase implements KVDatabase, Serializable {
 
     protected /*final*/ transient Logger log = LoggerFactory.getLogger(this.getClass());
 
-    private /*final*/ transient LockManager lockManager = new LockManager(this);
+    private /*final*/ transient LockManager lockManager = SimpleKVDatabase.createLockManager();
     private /*final*/ transient KeyWatchTracker keyWatchTracker;
 
     private long waitTimeout;
@@ -219,6 +219,12 @@ public class SimpleKVDatabase implements KVDatabase, Serializable {
         return this.keyWatchTracker.register(key);
     }
 
+    synchronized ListenableFuture<Void> watchRange(KeyRange range) {
+        if (this.keyWatchTracker == null)
+            this.keyWatchTracker = new KeyWatchTracker();
+        return this.keyWatchTracker.register(range);
+    }
+
 // Subclass hooks
 
     /**
@@ -305,8 +311,10 @@ public class SimpleKVDatabase implements KVDatabase, Serializable {
     }
 
     private void checkUsable(SimpleKVTransaction tx) {
-        if (tx.stale)
+        if (tx.stale) {
+            this.lockManager.release(tx.lockOwner);                    // in case we acquired a lock after commit() or rollback()
             throw new StaleTransactionException(tx);
+        }
         if (this.lockManager.checkHoldTimeout(tx.lockOwner) == -1) {
             this.rollback(tx);
             throw new TransactionTimeoutException(tx,
@@ -316,37 +324,85 @@ public class SimpleKVDatabase implements KVDatabase, Serializable {
 
 // SimpleKVTransaction hooks
 
-    synchronized byte[] get(SimpleKVTransaction tx, byte[] key) {
+/*
+
+   Each of the following methods first checks the transaction's own mutations while synchronized on this instance,
+   then (if needed) acquires a lock from the lock manager while NOT synchronized on this instance, then synchronizes
+   again to read the underlying store and/or update the transaction's mutations. Because the transaction may have
+   changed in the meantime, the second step always starts over from scratch.
+
+*/
+
+    byte[] get(SimpleKVTransaction tx, byte[] key) {
 
         // Sanity check
         Preconditions.checkArgument(key.length == 0 || key[0] != (byte)0xff, "key starts with 0xff");
-        this.checkUsable(tx);
-        this.checkState(tx);
 
         // Check transaction mutations
-        final Mutation mutation = tx.findMutation(key);
-        if (mutation != null)
-            return mutation instanceof Put ? ((Put)mutation).getValue() : null;
+        synchronized (this) {
+            this.checkUsable(tx);
+            this.checkState(tx);
+            final Mutation mutation = tx.findMutation(key);
+            if (mutation != null)
+                return mutation instanceof Put ? ((Put)mutation).getValue() : null;
+        }
 
-        // Read from underlying store
+        // Get read lock
         this.getLock(tx, key, ByteUtil.getNextKey(key), false);
-        return this.kv.get(key);
+
+        // Read from underlying store
+        synchronized (this) {
+            this.checkUsable(tx);
+            this.checkState(tx);
+            final Mutation mutation = tx.findMutation(key);
+            if (mutation != null)
+                return mutation instanceof Put ? ((Put)mutation).getValue() : null;
+            return this.kv.get(key);
+        }
     }
 
-    synchronized KVPair getAtLeast(SimpleKVTransaction tx, byte[] minKey, final byte[] maxKey) {
+    KVPair getAtLeast(SimpleKVTransaction tx, byte[] minKey, final byte[] maxKey) {
 
         // Realize minKey
         if (minKey == null)
             minKey = ByteUtil.EMPTY;
 
         // Sanity check
-        this.checkUsable(tx);
-        this.checkState(tx);
-        if (maxKey != null && ByteUtil.compare(minKey, maxKey) >= 0)
-            return null;
+        synchronized (this) {
+            this.checkUsable(tx);
+            this.checkState(tx);
+            if (maxKey != null && ByteUtil.compare(minKey, maxKey) >= 0)
+                return null;
 
-        // Save original min key for locking purposes
-        final byte[] originalMinKey = minKey;
+            // Look for a mutation starting before minKey but containing it that lets us avoid locking
+            if (minKey.length > 0) {
+                final Mutation overlap = tx.findMutation(minKey);
+                if (overlap instanceof Put) {
+                    final Put put = (Put)overlap;
+                    assert Arrays.equals(put.getKey(), minKey);
+                    return new KVPair(put.getKey(), put.getValue());
+                }
+                if (overlap instanceof Del) {
+                    final byte[] max = overlap.getMax();
+                    if (max == null || (maxKey != null && ByteUtil.compare(max, maxKey) >= 0))
+                        return null;
+                }
+            }
+        }
+
+        // Get read lock
+        this.getLock(tx, minKey, maxKey, false);
+
+        // Search transaction mutations and underlying store
+        synchronized (this) {
+            this.checkUsable(tx);
+            this.checkState(tx);
+            return this.findAtLeast(tx, minKey, maxKey);
+        }
+    }
+
+    // Assumes synchronized already and the range [minKey, maxKey) is read locked
+    private KVPair findAtLeast(SimpleKVTransaction tx, byte[] minKey, final byte[] maxKey) {
 
         // Look for a mutation starting before minKey but containing it
         if (minKey.length > 0) {
@@ -365,9 +421,6 @@ public class SimpleKVDatabase implements KVDatabase, Serializable {
             }
         }
 
-        // Get read lock
-        this.getLock(tx, originalMinKey, maxKey, false);
-
         // Find whichever is first: a transaction Put, or an underlying store entry not covered by a transaction Delete
         SortedSet<Mutation> mutations = maxKey != null ? tx.mutations.headSet(Mutation.key(maxKey)) : tx.mutations;
         while (true) {
@@ -398,21 +451,34 @@ public class SimpleKVDatabase implements KVDatabase, Serializable {
         }
     }
 
-    synchronized KVPair getAtMost(SimpleKVTransaction tx, byte[] maxKey, byte[] minKey) {
+    KVPair getAtMost(SimpleKVTransaction tx, byte[] maxKey, byte[] minKey) {
 
         // Realize minKey
         if (minKey == null)
             minKey = ByteUtil.EMPTY;
 
         // Sanity check
-        this.checkUsable(tx);
-        this.checkState(tx);
-        if (maxKey != null && ByteUtil.compare(minKey, maxKey) >= 0)
-            return null;
+        synchronized (this) {
+            this.checkUsable(tx);
+            this.checkState(tx);
+            if (maxKey != null && ByteUtil.compare(minKey, maxKey) >= 0)
+                return null;
+        }
 
         // Get read lock
         this.getLock(tx, minKey, maxKey, false);
 
+        // Search transaction mutations and underlying store
+        synchronized (this) {
+            this.checkUsable(tx);
+            this.checkState(tx);
+            return this.findAtMost(tx, maxKey, minKey);
+        }
+    }
+
+    // Assumes synchronized already and the range [minKey, maxKey) is read locked
+    private KVPair findAtMost(SimpleKVTransaction tx, byte[] maxKey, final byte[] minKey) {
+
         // Find whichever is first: a transaction addition, or an underlying store entry not covered by a transaction deletion
         SortedSet<Mutation> mutations = tx.mutations;
         while (true) {
@@ -447,16 +513,36 @@ public class SimpleKVDatabase implements KVDatabase, Serializable {
         }
     }
 
-    synchronized void put(SimpleKVTransaction tx, byte[] key, byte[] value) {
+    void put(SimpleKVTransaction tx, byte[] key, byte[] value) {
 
         // Sanity check
         if (value == null)
             throw new NullPointerException();
         Preconditions.checkArgument(key.length == 0 || key[0] != (byte)0xff, "key starts with 0xff");
-        this.checkUsable(tx);
-        this.checkState(tx);
         final byte[] keyNext = ByteUtil.getNextKey(key);
 
+        // Update existing mutation, if any
+        synchronized (this) {
+            this.checkUsable(tx);
+            this.checkState(tx);
+            if (this.addPut(tx, key, keyNext, value, false))
+                return;
+        }
+
+        // Get write lock
+        this.getLock(tx, key, keyNext, true);
+
+        // Add new tx mutation
+        synchronized (this) {
+            this.checkUsable(tx);
+            this.checkState(tx);
+            this.addPut(tx, key, keyNext, value, true);
+        }
+    }
+
+    // Assumes synchronized already. Returns false if there is no existing mutation and the key is not locked yet.
+    private boolean addPut(SimpleKVTransaction tx, byte[] key, byte[] keyNext, byte[] value, boolean locked) {
+
         // Check transaction mutations
         final Mutation mutation = tx.findMutation(key);
         if (mutation instanceof Put) {
@@ -479,20 +565,42 @@ public class SimpleKVDatabase implements KVDatabase, Serializable {
             tx.mutations.add(new Put(key, value));
         } else {
 
-            // Add write lock and new tx mutation
-            this.getLock(tx, key, keyNext, true);
+            // Add new tx mutation (requires write lock)
+            if (!locked)
+                return false;
             tx.mutations.add(new Put(key, value));
         }
+        return true;
     }
 
-    synchronized void remove(SimpleKVTransaction tx, byte[] key) {
+    void remove(SimpleKVTransaction tx, byte[] key) {
 
         // Sanity check
         Preconditions.checkArgument(key.length == 0 || key[0] != (byte)0xff, "key starts with 0xff");
-        this.checkUsable(tx);
-        this.checkState(tx);
         final byte[] keyNext = ByteUtil.getNextKey(key);
 
+        // Update existing mutation, if any
+        synchronized (this) {
+            this.checkUsable(tx);
+            this.checkState(tx);
+            if (this.addDel(tx, key, false))
+                return;
+        }
+
+        // Get write lock
+        this.getLock(tx, key, keyNext, true);
+
+        // Add new tx mutation
+        synchronized (this) {
+            this.checkUsable(tx);
+            this.checkState(tx);
+            this.addDel(tx, key, true);
+        }
+    }
+
+    // Assumes synchronized already. Returns false if there is no existing mutation and the key is not locked yet.
+    private boolean addDel(SimpleKVTransaction tx, byte[] key, boolean locked) {
+
         // Check transaction mutations
         final Mutation mutation = tx.findMutation(key);
         if (mutation instanceof Put) {
@@ -503,13 +611,15 @@ public class SimpleKVDatabase implements KVDatabase, Serializable {
             tx.mutations.add(new Del(key));
         } else if (mutation == null) {
 
-            // Add write lock and new tx mutation
-            this.getLock(tx, key, keyNext, true);
+            // Add new tx mutation (requires write lock)
+            if (!locked)
+                return false;
             tx.mutations.add(new Del(key));
         }
+        return true;
     }
 
-    synchronized void removeRange(SimpleKVTransaction tx, byte[] minKey, byte[] maxKey) {
+    void removeRange(SimpleKVTransaction tx, byte[] minKey, byte[] maxKey) {
 
         // Realize minKey
         if (minKey == null)
@@ -518,10 +628,26 @@ public class SimpleKVDatabase implements KVDatabase, Serializable {
         // Sanity check
         int diff = KeyRange.compare(minKey, maxKey);
         Preconditions.checkArgument(diff <= 0, "minKey > maxKey");
-        this.checkUsable(tx);
-        this.checkState(tx);
+        synchronized (this) {
+            this.checkUsable(tx);
+            this.checkState(tx);
+        }
         if (diff == 0)                                                          // range is empty
             return;
+
+        // Get write lock; any existing Del's that we merge with below are already write locked
+        this.getLock(tx, minKey, maxKey, true);
+
+        // Update tx mutations
+        synchronized (this) {
+            this.checkUsable(tx);
+            this.checkState(tx);
+            this.addDelRange(tx, minKey, maxKey);
+        }
+    }
+
+    // Assumes synchronized already and the range [minKey, maxKey) is write locked
+    private void addDelRange(SimpleKVTransaction tx, byte[] minKey, byte[] maxKey) {
         final byte[] originalMinKey = minKey;
         final byte[] originalMaxKey = maxKey;
 
@@ -570,8 +696,7 @@ public class SimpleKVDatabase implements KVDatabase, Serializable {
         else
             tx.mutations.subSet(Mutation.key(originalMinKey), Mutation.key(originalMaxKey)).clear();
 
-        // Add write lock and new tx mutation
-        this.getLock(tx, minKey, maxKey, true);
+        // Add new tx mutation
         tx.mutations.add(new Del(minKey, maxKey));
     }
 
@@ -619,7 +744,7 @@ public class SimpleKVDatabase implements KVDatabase, Serializable {
             successful = true;
 
             // Trigger key watches
-            if (this.keyWatchTracker != null && this.keyWatchTracker.getNumKeysWatched() > 0) {
+            if (this.keyWatchTracker != null && !this.keyWatchTracker.isEmpty()) {
                 for (Mutation mutation : tx.mutations)
                     mutation.trigger(this.keyWatchTracker);
             }
@@ -642,7 +767,16 @@ public class SimpleKVDatabase implements KVDatabase, Serializable {
 
 // Internal methods
 
-    private /*synchronized*/ void getLock(SimpleKVTransaction tx, byte[] minKey, byte[] maxKey, boolean write) {
+    // We don't hold our monitor while acquiring locks, so have the lock manager release locks atomically on wait timeout
+    private static LockManager createLockManager() {
+        final LockManager lockManager = new LockManager();
+        lockManager.setReleaseOnWaitTimeout(true);
+        return lockManager;
+    }
+
+    // Must NOT be synchronized, otherwise we could block other transactions from releasing their locks while we wait
+    private void getLock(SimpleKVTransaction tx, byte[] minKey, byte[] maxKey, boolean write) {
+        assert !Thread.holdsLock(this);
 
         // Attempt to get the lock
         LockManager.LockResult lockResult;
@@ -675,6 +809,6 @@ public class SimpleKVDatabase implements KVDatabase, Serializable {
     private void readObject(ObjectInputStream input) throws IOException, ClassNotFoundException {
         input.defaultReadObject();
         this.log = LoggerFactory.getLogger(this.getClass());
-        this.lockManager = new LockManager(this);
+        this.lockManager = SimpleKVDatabase.createLockManager();
     }
 }
@@ -76,6 +76,12 @@ public class SimpleKVTransaction extends AbstractKVStore implements KVTransactio
         return this.kvdb.watchKey(key);
     }
 
+    @Override
+    public ListenableFuture<Void> watchRange(KeyRange range) {
+        Preconditions.checkArgument(range != null, "null range");
+        return this.kvdb.watchRange(range);
+    }
+
     @Override
     public byte[] get(byte[] key) {
         return this.kvdb.get(this, key);
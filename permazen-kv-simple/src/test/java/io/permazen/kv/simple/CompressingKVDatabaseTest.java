@@ -0,0 +1,143 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.kv.simple;
+
+import com.google.common.primitives.Bytes;
+
+import io.permazen.kv.KVCursor;
+import io.permazen.kv.KVDatabase;
+import io.permazen.kv.KVTransaction;
+import io.permazen.kv.compress.CompressingKVDatabase;
+import io.permazen.kv.compress.CompressingKVTransaction;
+import io.permazen.kv.compress.CompressionDictionary;
+import io.permazen.kv.compress.ValueCompressor;
+import io.permazen.kv.test.KVDatabaseTest;
+import io.permazen.kv.util.NavigableMapKVStore;
+import io.permazen.util.ByteUtil;
+import io.permazen.util.UnsignedIntEncoder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class CompressingKVDatabaseTest extends KVDatabaseTest {
+
+    private CompressingKVDatabase compressingKV;
+
+    @BeforeClass(groups = "configure")
+    public void setupCompressingKV() {
+        final ValueCompressor compressor
+          = new ValueCompressor(4, Deflater.BEST_SPEED, ValueCompressor.getDefaultDictionaryKeyPrefix());
+        this.compressingKV = new CompressingKVDatabase(new SimpleKVDatabase(new NavigableMapKVStore(), 250, 5000), compressor);
+    }
+
+    @Override
+    protected KVDatabase getKVDatabase() {
+        return this.compressingKV;
+    }
+
+    @Test
+    public void testValueCompressor() throws Exception {
+        final ValueCompressor compressor = new ValueCompressor();
+        final byte[] key = b("1234");
+
+        // Empty, short, incompressible, and compressible values
+        Assert.assertEquals(compressor.compress(key, b("")), b(""));
+        Assert.assertEquals(compressor.compress(key, b("5678")), b("005678"));
+        final byte[] random = this.randomBytes(200, 201, false);
+        Assert.assertEquals((int)compressor.compress(key, random)[0], ValueCompressor.HEADER_RAW);
+        final byte[] text = this.repeat("the quick brown fox jumps over the lazy dog; ", 20);
+        final byte[] compressed = compressor.compress(key, text);
+        Assert.assertEquals((int)compressed[0], ValueCompressor.HEADER_DEFLATE);
+        Assert.assertTrue(compressed.length < text.length / 4);
+        for (byte[] value : Arrays.asList(b(""), b("5678"), random, text))
+            Assert.assertEquals(compressor.decompress(compressor.compress(key, value)), value);
+
+        // Invalid values
+        for (byte[] value : Arrays.asList(b("03"), b("0105"), b("0205"))) {
+            try {
+                compressor.decompress(value);
+                assert false : "expected exception for " + ByteUtil.toString(value);
+            } catch (IllegalArgumentException e) {
+                this.log.debug("got expected {}", e.toString());
+            }
+        }
+    }
+
+    @Test
+    public void testDictionary() throws Exception {
+        final int storageId = 100;
+        final byte[] prefix = UnsignedIntEncoder.encode(storageId);
+        final CompressingKVDatabase kvdb = new CompressingKVDatabase(new SimpleKVDatabase(100, 5000));
+        kvdb.start();
+        try {
+
+            // Write similar small values
+            CompressingKVTransaction tx = kvdb.createTransaction();
+            for (int i = 0; i < 200; i++)
+                tx.put(Bytes.concat(prefix, UnsignedIntEncoder.encode(i)), this.record(i));
+            tx.commit();
+            final byte[] key = Bytes.concat(prefix, UnsignedIntEncoder.encode(1000));
+            final int sizeBefore = kvdb.getValueCompressor().compress(key, this.record(1000)).length;
+
+            // Train dictionary
+            final CompressionDictionary dictionary = kvdb.trainDictionary(storageId);
+            Assert.assertNotNull(dictionary);
+            Assert.assertEquals(dictionary.getId(), 0);
+            Assert.assertEquals(dictionary.getStorageId(), storageId);
+            Assert.assertSame(kvdb.getValueCompressor().getCurrentDictionary(storageId), dictionary);
+            final byte[] encoded = kvdb.getValueCompressor().compress(key, this.record(1000));
+            Assert.assertEquals((int)encoded[0], ValueCompressor.HEADER_DEFLATE_DICTIONARY);
+            Assert.assertTrue(encoded.length < sizeBefore, encoded.length + " >= " + sizeBefore);
+
+            // Write and read back using dictionary; check stored value is compressed
+            tx = kvdb.createTransaction();
+            tx.put(key, this.record(1000));
+            Assert.assertEquals(tx.get(key), this.record(1000));
+            Assert.assertEquals(tx.getInnerTransaction().get(key), encoded);
+            tx.commit();
+
+            // Another instance should find the dictionary, either at startup or when first encountered
+            final CompressingKVDatabase kvdb2 = new CompressingKVDatabase(kvdb.getInnerKVDatabase());
+            kvdb2.start();
+            Assert.assertEquals(kvdb2.getValueCompressor().getDictionaries(), Arrays.asList(dictionary));
+            final CompressingKVDatabase kvdb3 = new CompressingKVDatabase(kvdb.getInnerKVDatabase());
+            final CompressingKVTransaction tx3 = kvdb3.createTransaction();
+            try (KVCursor cursor = tx3.getRangeView(key, null, false)) {
+                Assert.assertTrue(cursor.next());
+                Assert.assertEquals(cursor.getValue().toByteArray(), this.record(1000));
+            }
+            tx3.commit();
+            Assert.assertEquals(kvdb3.getValueCompressor().getDictionary(0), dictionary);
+
+            // Check counters
+            final KVTransaction tx4 = kvdb.createTransaction();
+            tx4.put(b("ee"), tx4.encodeCounter(123));
+            tx4.adjustCounter(b("ee"), 7);
+            Assert.assertEquals(tx4.decodeCounter(tx4.get(b("ee"))), 130);
+            tx4.commit();
+        } finally {
+            kvdb.stop();
+        }
+    }
+
+    private byte[] record(int i) {
+        return ("{\"type\":\"Person\",\"id\":" + i + ",\"name\":\"Person #" + i + "\","
+          + "\"email\":\"person" + i + "@example.com\",\"active\":" + (i % 2 == 0) + "}")
+          .getBytes(StandardCharsets.UTF_8);
+    }
+
+    private byte[] repeat(String text, int count) {
+        final StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < count; i++)
+            buf.append(text);
+        return buf.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,116 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.kv.simple;
+
+import io.permazen.kv.KVPair;
+import io.permazen.kv.RetryTransactionException;
+import io.permazen.kv.metrics.KVMetrics;
+import io.permazen.kv.metrics.KVOperation;
+import io.permazen.kv.metrics.MetricsKVDatabase;
+import io.permazen.kv.metrics.MetricsKVTransaction;
+import io.permazen.kv.metrics.OperationStats;
+import io.permazen.kv.test.KVTestSupport;
+import io.permazen.util.CloseableIterator;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class MetricsKVDatabaseTest extends KVTestSupport {
+
+    @Test
+    public void testMetrics() throws Exception {
+        final MetricsKVDatabase kvdb = new MetricsKVDatabase(new SimpleKVDatabase(100, 5000));
+        final KVMetrics metrics = kvdb.getMetrics();
+        final List<KVOperation> notified = new ArrayList<>();
+        metrics.addListener((op, nanos, bytesRead, bytesWritten, error) -> notified.add(op));
+        kvdb.start();
+        try {
+
+            // Write some data
+            MetricsKVTransaction tx = kvdb.createTransaction();
+            tx.put(b("01"), b("aaaa"));
+            tx.put(b("02"), b("bbbbbb"));
+            tx.put(b("03"), b(""));
+            tx.remove(b("04"));
+            tx.commit();
+            Assert.assertEquals(notified, Arrays.asList(
+              KVOperation.PUT, KVOperation.PUT, KVOperation.PUT, KVOperation.REMOVE, KVOperation.COMMIT));
+
+            // Read it back
+            tx = kvdb.createTransaction();
+            Assert.assertEquals(tx.get(b("01")), b("aaaa"));
+            Assert.assertNull(tx.get(b("05")));
+            Assert.assertEquals(tx.getAtLeast(b("02"), null), new KVPair(b("02"), b("bbbbbb")));
+            int count = 0;
+            try (CloseableIterator<KVPair> i = tx.getRange(null, null, false)) {
+                while (i.hasNext()) {
+                    i.next();
+                    count++;
+                }
+            }
+            Assert.assertEquals(count, 3);
+            tx.rollback();
+
+            // Check statistics
+            Assert.assertEquals(metrics.getTransactionsCreated(), 2);
+            Assert.assertEquals(metrics.getTransactionsCommitted(), 1);
+            Assert.assertEquals(metrics.getTransactionsRolledBack(), 1);
+            Assert.assertEquals(metrics.getBytesWritten(), (1 + 2) + (1 + 3) + (1 + 0) + 1);
+            Assert.assertEquals(metrics.getBytesRead(), 2 + (1 + 3) + ((1 + 2) + (1 + 3) + (1 + 0)));
+            Assert.assertEquals(metrics.getMeanRangeLength(), 3.0);
+            final OperationStats putStats = metrics.getStats(KVOperation.PUT);
+            Assert.assertEquals(putStats.getCount(), 3);
+            Assert.assertEquals(putStats.getErrors(), 0);
+            Assert.assertTrue(putStats.getMaxNanos() >= putStats.getMedianNanos());
+            Assert.assertEquals(metrics.getStats(KVOperation.GET).getCount(), 2);
+            Assert.assertEquals(metrics.getStats(KVOperation.GET_RANGE).getCount(), 1);
+
+            // Provoke a lock timeout
+            final MetricsKVTransaction tx1 = kvdb.createTransaction();
+            final MetricsKVTransaction tx2 = kvdb.createTransaction();
+            tx1.put(b("01"), b("cccc"));
+            try {
+                tx2.get(b("01"));
+                assert false : "expected retry exception";
+            } catch (RetryTransactionException e) {
+                this.log.info("got expected " + e);
+            }
+            tx2.rollback();
+            tx1.commit();
+            Assert.assertEquals(metrics.getRetries(), 1);
+            Assert.assertEquals(metrics.getStats(KVOperation.GET).getErrors(), 1);
+            Assert.assertEquals(metrics.getRetryRate(), 0.25);
+
+            // Check JMX
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = new ObjectName("io.permazen.test:type=KVMetrics");
+            server.registerMBean(metrics, name);
+            try {
+                Assert.assertEquals(server.getAttribute(name, "TransactionsCommitted"), 2L);
+                Assert.assertEquals(server.getAttribute(name, "Retries"), 1L);
+                final TabularData operations = (TabularData)server.getAttribute(name, "Operations");
+                final CompositeData put = operations.get(new Object[] { "PUT" });
+                Assert.assertEquals(((CompositeData)put.get("value")).get("count"), 4L);
+                server.invoke(name, "reset", new Object[0], new String[0]);
+                Assert.assertEquals(server.getAttribute(name, "TransactionsCreated"), 0L);
+            } finally {
+                server.unregisterMBean(name);
+            }
+        } finally {
+            kvdb.stop();
+        }
+    }
+}
@@ -18,6 +18,7 @@ import com.google.cloud.spanner.TransactionManager;
 import com.google.common.base.Preconditions;
 
 import io.permazen.kv.CloseableKVStore;
+import io.permazen.kv.KVCursor;
 import io.permazen.kv.KVPair;
 import io.permazen.kv.KVStore;
 import io.permazen.kv.KVTransaction;
@@ -27,6 +28,7 @@ import io.permazen.kv.StaleTransactionException;
 import io.permazen.kv.util.ForwardingKVStore;
 import io.permazen.util.CloseableIterator;
 
+import java.util.List;
 import java.util.concurrent.Future;
 
 import javax.annotation.concurrent.GuardedBy;
@@ -366,6 +368,16 @@ public class SpannerKVTransaction extends ForwardingKVStore implements KVTransac
         }
     }
 
+    @Override
+    public List<byte[]> getMany(List<byte[]> keys) {
+        try {
+            return super.getMany(keys);
+        } catch (SpannerException e) {
+            this.rollback();
+            throw this.wrapException(e);
+        }
+    }
+
     @Override
     public KVPair getAtLeast(byte[] minKey, byte[] maxKey) {
         try {
@@ -396,6 +408,16 @@ public class SpannerKVTransaction extends ForwardingKVStore implements KVTransac
         }
     }
 
+    @Override
+    public KVCursor getRangeView(byte[] minKey, byte[] maxKey, boolean reverse) {
+        try {
+            return super.getRangeView(minKey, maxKey, reverse);
+        } catch (SpannerException e) {
+            this.rollback();
+            throw this.wrapException(e);
+        }
+    }
+
     @Override
     protected synchronized KVStore delegate() {
 
@@ -30,6 +30,7 @@ import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.TreeMap;
 import java.util.concurrent.Future;
 import java.util.function.Function;
 
@@ -44,6 +45,7 @@ public class SQLKVTransaction extends ForwardingKVStore implements KVTransaction
     private static final int MAX_DATA_PER_BATCH = 10 * 1024 * 1024;     // 10 MB
     private static final int MAX_STATEMENTS_PER_BATCH = 1000;
     private static final int BATCH_STATEMENT_OVERHEAD = 8;              // just a guess
+    private static final int MAX_KEYS_PER_QUERY = 500;                  // stay well under typical bind parameter limits
 
     protected final Logger log = LoggerFactory.getLogger(this.getClass());
 
@@ -109,6 +111,19 @@ public class SQLKVTransaction extends ForwardingKVStore implements KVTransaction
         return this.queryBytes(StmtType.GET, this.encodeKey(key));
     }
 
+    private synchronized List<byte[]> getManySQL(List<byte[]> keys) {
+        if (this.stale)
+            throw new StaleTransactionException(this);
+        Preconditions.checkArgument(keys != null, "null keys");
+        final TreeMap<byte[], byte[]> found = new TreeMap<>(ByteUtil.COMPARATOR);
+        for (int i = 0; i < keys.size(); i += MAX_KEYS_PER_QUERY)
+            this.queryKVPairs(keys.subList(i, Math.min(i + MAX_KEYS_PER_QUERY, keys.size())), found);
+        final ArrayList<byte[]> values = new ArrayList<>(keys.size());
+        for (byte[] key : keys)
+            values.add(found.get(key));
+        return values;
+    }
+
     private synchronized KVPair getAtLeastSQL(byte[] minKey, byte[] maxKey) {
         if (this.stale)
             throw new StaleTransactionException(this);
@@ -421,6 +436,33 @@ public class SQLKVTransaction extends ForwardingKVStore implements KVTransaction
         }
     }
 
+    private void queryKVPairs(List<byte[]> keys, Map<byte[], byte[]> found) {
+        final String sql = this.database.createGetManyStatement(keys.size());
+        if (this.log.isTraceEnabled())
+            this.log.trace("preparing SQL statement: " + sql);
+        try (PreparedStatement preparedStatement = this.connection.prepareStatement(sql,
+          ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY, ResultSet.CLOSE_CURSORS_AT_COMMIT)) {
+            for (int i = 0; i < keys.size(); i++) {
+                final byte[] key = keys.get(i);
+                Preconditions.checkArgument(key != null, "null key");
+                if (this.log.isTraceEnabled())
+                    this.log.trace("setting ?" + (i + 1) + " = " + ByteUtil.toString(key));
+                preparedStatement.setBytes(i + 1, this.encodeKey(key));
+            }
+            preparedStatement.setQueryTimeout((int)((this.timeout + 999) / 1000));
+            if (this.log.isTraceEnabled())
+                this.log.trace("executing SQL query");
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                while (resultSet.next())
+                    found.put(this.decodeKey(resultSet.getBytes(1)), resultSet.getBytes(2));
+            }
+            if (this.log.isTraceEnabled())
+                this.log.trace("SQL query returned " + found.size() + " total key/value pair(s)");
+        } catch (SQLException e) {
+            throw this.handleException(e);
+        }
+    }
+
     protected void update(StmtType stmtType, byte[]... params) {
         assert params.length == stmtType.getNumParams();
         try (PreparedStatement preparedStatement = stmtType.create(this.database, this.connection, this.log)) {
@@ -528,6 +570,11 @@ public class SQLKVTransaction extends ForwardingKVStore implements KVTransaction
             return SQLKVTransaction.this.getSQL(key);
         }
 
+        @Override
+        public List<byte[]> getMany(List<byte[]> keys) {
+            return SQLKVTransaction.this.getManySQL(keys);
+        }
+
         @Override
         public KVPair getAtLeast(byte[] minKey, byte[] maxKey) {
 
@@ -5,6 +5,7 @@
 
 package io.permazen.kv.test;
 
+import io.permazen.kv.KVCursor;
 import io.permazen.kv.KVDatabase;
 import io.permazen.kv.KVPair;
 import io.permazen.kv.KVStore;
@@ -17,6 +18,7 @@ import io.permazen.kv.TransactionTimeoutException;
 import io.permazen.kv.mvcc.MutableView;
 import io.permazen.kv.mvcc.Mutations;
 import io.permazen.kv.util.NavigableMapKVStore;
+import io.permazen.kv.util.PrefixKVStore;
 import io.permazen.util.ByteUtil;
 import io.permazen.util.CloseableIterator;
 
@@ -25,6 +27,7 @@ import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
 import java.util.NavigableSet;
@@ -37,6 +40,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Consumer;
 
 import org.testng.Assert;
@@ -392,6 +396,63 @@ public abstract class KVDatabaseTest extends KVTestSupport {
         this.log.info("finished testKeyWatch() on " + store);
     }
 
+    @Test(dataProvider = "kvdbs")
+    public void testRangeWatch(KVDatabase store) throws Exception {
+
+        // Debug
+        this.log.info("starting testRangeWatch() on " + store);
+
+        // Clear database
+        this.tryNtimes(store, tx -> tx.removeRange(null, null));
+
+        // Set up the modifications we want to test; the first one does not affect the watched range
+        final ArrayList<Consumer<KVTransaction>> mods = new ArrayList<>();
+        mods.add(tx -> tx.put(b("0200"), b("4567")));
+        mods.add(tx -> tx.put(b("0123"), tx.encodeCounter(1234)));
+        mods.add(tx -> tx.adjustCounter(b("0123"), 99));
+        mods.add(tx -> tx.removeRange(b("00"), b("0101")));
+        mods.add(tx -> {
+            for (int i = 0; i < 10; i++)
+                tx.put(b(String.format("01%02x", i)), b(""));
+        });
+
+        // Set watches, perform modifications, and test notifications
+        for (int i = 0; i < mods.size(); i++) {
+            final Consumer<KVTransaction> mod = mods.get(i);
+
+            // Set watch
+            final Future<Void> watch = this.tryNtimesWithResult(store, tx -> {
+                try {
+                    return tx.watchPrefix(b("01"));
+                } catch (UnsupportedOperationException e) {
+                    return null;
+                }
+            });
+            if (watch == null) {
+                this.log.info("testRangeWatch() on " + store + ": range watches not supported, bailing out");
+                return;
+            }
+
+            // Perform modification
+            this.tryNtimes(store, mod);
+
+            // Get notification, or verify there is none
+            if (i == 0) {
+                try {
+                    watch.get(100, TimeUnit.MILLISECONDS);
+                    this.log.info("testRangeWatch() on " + store + ": got spurious notification");
+                } catch (TimeoutException e) {
+                    // expected
+                }
+                watch.cancel(false);
+            } else
+                watch.get(1, TimeUnit.SECONDS);
+        }
+
+        // Done
+        this.log.info("finished testRangeWatch() on " + store);
+    }
+
     @Test(dataProvider = "kvdbs")
     public void testReadWriteConflict(KVDatabase store) throws Exception {
         this.testConflictingTransactions(store, "testReadWriteConflict", (tx1, tx2) -> {
@@ -798,6 +859,97 @@ public abstract class KVDatabaseTest extends KVTestSupport {
         this.log.info("finished testApplyMutations() on " + store);
     }
 
+    /**
+     * Test KVStore.getMany().
+     *
+     * @param store database
+     * @throws Exception if an error occurs
+     */
+    @Test(dataProvider = "kvdbs")
+    public void testGetMany(KVDatabase store) throws Exception {
+        this.log.info("starting testGetMany() on " + store);
+
+        // Populate database with every other key
+        this.tryNtimes(store, tx -> {
+            tx.removeRange(null, null);
+            for (int i = 0; i < 600; i += 2)
+                tx.put(new byte[] { (byte)(i >> 8), (byte)i }, this.randomBytes(i));
+        });
+
+        // Build list of keys, including missing and duplicate keys
+        final ArrayList<byte[]> keys = new ArrayList<>();
+        for (int i = 0; i < 600; i++) {
+            final int index = this.random.nextInt(610);
+            keys.add(new byte[] { (byte)(index >> 8), (byte)index });
+        }
+        keys.add(keys.get(0).clone());
+
+        // Compare with get(), both before and after some local modifications
+        this.tryNtimes(store, tx -> {
+            for (int pass = 0; pass < 2; pass++) {
+                final List<byte[]> values = tx.getMany(keys);
+                Assert.assertEquals(values.size(), keys.size());
+                for (int i = 0; i < keys.size(); i++) {
+                    final byte[] key = keys.get(i);
+                    Assert.assertEquals(values.get(i), tx.get(key), "wrong value for key " + ByteUtil.toString(key));
+                }
+                for (int i = 0; i < 10; i++) {
+                    final byte[] key = keys.get(this.random.nextInt(keys.size()));
+                    if (this.random.nextBoolean())
+                        tx.put(key, this.randomBytes(i));
+                    else
+                        tx.remove(key);
+                }
+            }
+        });
+        this.log.info("finished testGetMany() on " + store);
+    }
+
+    /**
+     * Test KVStore.getRangeView().
+     *
+     * @param store database
+     * @throws Exception if an error occurs
+     */
+    @Test(dataProvider = "kvdbs")
+    public void testRangeView(KVDatabase store) throws Exception {
+        this.log.info("starting testRangeView() on " + store);
+
+        // Populate database
+        this.tryNtimes(store, tx -> {
+            tx.removeRange(null, null);
+            for (int i = 0; i < 300; i++)
+                tx.put(new byte[] { (byte)(i >> 4), (byte)(i << 4) }, this.randomBytes(i));
+        });
+
+        // Compare with getRange(), directly and via a prefix view
+        this.tryNtimes(store, tx -> {
+            for (int i = 0; i < 50; i++) {
+                byte[] minKey = this.random.nextInt(5) != 0 ? this.randomBytes(0, 3, false) : null;
+                byte[] maxKey = this.random.nextInt(5) != 0 ? this.randomBytes(0, 3, false) : null;
+                if (minKey != null && maxKey != null && ByteUtil.compare(minKey, maxKey) > 0) {
+                    final byte[] temp = minKey;
+                    minKey = maxKey;
+                    maxKey = temp;
+                }
+                final boolean reverse = this.random.nextBoolean();
+                final KVStore kv = this.random.nextBoolean() ? tx : PrefixKVStore.create(tx, new byte[] { (byte)i });
+                final ArrayList<KVPair> expected = new ArrayList<>();
+                try (CloseableIterator<KVPair> iter = kv.getRange(minKey, maxKey, reverse)) {
+                    iter.forEachRemaining(expected::add);
+                }
+                final ArrayList<KVPair> actual = new ArrayList<>();
+                try (KVCursor cursor = kv.getRangeView(minKey, maxKey, reverse)) {
+                    while (cursor.next())
+                        actual.add(cursor.toKVPair());
+                }
+                Assert.assertEquals(actual, expected, "wrong getRangeView() result for "
+                  + ByteUtil.toString(minKey) + ", " + ByteUtil.toString(maxKey) + ", reverse=" + reverse);
+            }
+        });
+        this.log.info("finished testRangeView() on " + store);
+    }
+
 // RandomTask
 
     public class RandomTask extends Thread {
@@ -0,0 +1,116 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.kv;
+
+import com.google.common.base.Preconditions;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * An asynchronous iteration of key/value pairs, as returned by {@link AsyncKVStore#getRangeAsync AsyncKVStore.getRangeAsync()}.
+ *
+ * <p>
+ * Key/value pairs are retrieved in batches via {@link #nextBatch nextBatch()}. Each batch contains at least one
+ * key/value pair, unless the iteration is exhausted, in which case the batch is empty. Implementations may return
+ * smaller batches than requested, e.g., to deliver the key/value pairs that have already arrived without waiting
+ * for more. At most one batch may be outstanding at any time.
+ *
+ * <p>
+ * Alternately, {@link #forEachRemaining forEachRemaining()} delivers all remaining key/value pairs to a
+ * {@link Consumer} as they arrive.
+ *
+ * <p>
+ * Instances must be {@link #close}'d when no longer needed to avoid leaking resources.
+ */
+public interface AsyncKVPairIterator extends Closeable {
+
+    /**
+     * Retrieve the next batch of key/value pairs.
+     *
+     * @param maxPairs the maximum number of key/value pairs to return
+     * @return future list of between one and {@code maxPairs} key/value pairs, or an empty list if the iteration is exhausted
+     * @throws IllegalArgumentException if {@code maxPairs} is not positive
+     * @throws IllegalStateException if the future returned by a previous invocation has not yet completed
+     * @throws IllegalStateException if this instance is closed
+     */
+    CompletableFuture<List<KVPair>> nextBatch(int maxPairs);
+
+    /**
+     * Asynchronously deliver all remaining key/value pairs to the given action.
+     *
+     * <p>
+     * The action is invoked in the thread that completes each batch, or in the current thread for batches
+     * that are already available. If {@code action} throws an exception, iteration stops and the returned
+     * future completes exceptionally.
+     *
+     * <p>
+     * The implementation in {@link AsyncKVPairIterator} repeatedly invokes {@link #nextBatch nextBatch()}.
+     * This instance is not closed when iteration completes.
+     *
+     * @param batchSize the maximum number of key/value pairs to request in each batch
+     * @param action action to perform on each key/value pair
+     * @return future that completes when all key/value pairs have been delivered
+     * @throws IllegalArgumentException if {@code batchSize} is not positive
+     * @throws IllegalArgumentException if {@code action} is null
+     */
+    default CompletableFuture<Void> forEachRemaining(int batchSize, Consumer<? super KVPair> action) {
+        Preconditions.checkArgument(batchSize > 0, "batchSize <= 0");
+        Preconditions.checkArgument(action != null, "null action");
+        final CompletableFuture<Void> result = new CompletableFuture<>();
+
+        // Consume batches that are already available in a loop, avoiding unbounded recursion
+        class Pump implements BiConsumer<List<KVPair>, Throwable> {
+
+            @Override
+            public void accept(List<KVPair> batch, Throwable error) {
+                while (true) {
+                    if (error != null) {
+                        result.completeExceptionally(
+                          error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+                        return;
+                    }
+                    if (batch.isEmpty()) {
+                        result.complete(null);
+                        return;
+                    }
+                    final CompletableFuture<List<KVPair>> next;
+                    try {
+                        batch.forEach(action);
+                        next = AsyncKVPairIterator.this.nextBatch(batchSize);
+                    } catch (Throwable t) {
+                        result.completeExceptionally(t);
+                        return;
+                    }
+                    if (!next.isDone()) {
+                        next.whenComplete(this);
+                        return;
+                    }
+                    try {
+                        batch = next.join();
+                    } catch (Throwable t) {
+                        error = t;
+                    }
+                }
+            }
+        }
+        this.nextBatch(batchSize).whenComplete(new Pump());
+        return result;
+    }
+
+    /**
+     * Close this instance, releasing any associated resources.
+     *
+     * <p>
+     * Any outstanding batch may complete normally or exceptionally. Closing an instance more than once has no effect.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,144 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.kv;
+
+import com.google.common.base.Preconditions;
+
+import io.permazen.kv.util.ExecutorAsyncKVStore;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Extension of the {@link KVStore} interface for implementations that support asynchronous reads.
+ *
+ * <p>
+ * Each asynchronous method returns immediately with a {@link CompletableFuture} that completes when the corresponding
+ * synchronous operation would have returned. This allows multiple reads to be outstanding at the same time, which
+ * can greatly reduce latency when the underlying key/value store has a high round trip time.
+ *
+ * <p>
+ * Any exception that the corresponding synchronous method would have thrown is instead reported by completing
+ * the returned future exceptionally, except that exceptions caused by invalid parameters may be thrown immediately.
+ * The returned futures may be completed by internal threads, so actions chained onto them should not block.
+ *
+ * <p>
+ * Implementations that have native support for asynchronous reads implement this interface directly. Any other
+ * {@link KVStore} may be adapted to this interface via {@link #of of()}, which performs the synchronous reads
+ * using a caller-supplied {@link Executor}.
+ *
+ * @see ExecutorAsyncKVStore
+ */
+public interface AsyncKVStore extends KVStore {
+
+    /**
+     * Asynchronously get the value associated with the given key, if any.
+     *
+     * @param key key
+     * @return future value associated with key, or null if not found
+     * @throws NullPointerException if {@code key} is null
+     * @see KVStore#get KVStore.get()
+     */
+    CompletableFuture<byte[]> getAsync(byte[] key);
+
+    /**
+     * Asynchronously get the values associated with multiple keys.
+     *
+     * <p>
+     * The implementation in {@link AsyncKVStore} invokes {@link #getAsync getAsync()} for every key at once
+     * and combines the results.
+     *
+     * @param keys keys to look up
+     * @return future list of values associated with {@code keys}, with null for keys not found
+     * @throws IllegalArgumentException if {@code keys} is null
+     * @see KVStore#getMany KVStore.getMany()
+     */
+    default CompletableFuture<List<byte[]>> getManyAsync(List<byte[]> keys) {
+        Preconditions.checkArgument(keys != null, "null keys");
+        final ArrayList<CompletableFuture<byte[]>> futures = new ArrayList<>(keys.size());
+        for (byte[] key : keys)
+            futures.add(this.getAsync(key));
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()])).thenApply(v -> {
+            final ArrayList<byte[]> values = new ArrayList<>(futures.size());
+            for (CompletableFuture<byte[]> future : futures)
+                values.add(future.join());
+            return values;
+        });
+    }
+
+    /**
+     * Asynchronously get the key/value pair having the smallest key greater than or equal to the given minimum, if any.
+     *
+     * @param minKey minimum key (inclusive), or null for no minimum (get the smallest key)
+     * @param maxKey maximum key (exclusive), or null for no maximum (no upper bound)
+     * @return future smallest key/value pair with {@code key >= minKey} and {@code key < maxKey}, or null if none exists
+     * @see KVStore#getAtLeast KVStore.getAtLeast()
+     */
+    CompletableFuture<KVPair> getAtLeastAsync(byte[] minKey, byte[] maxKey);
+
+    /**
+     * Asynchronously get the key/value pair having the largest key strictly less than the given maximum, if any.
+     *
+     * @param maxKey maximum key (exclusive), or null for no maximum (get the largest key)
+     * @param minKey minimum key (inclusive), or null for no minimum (no lower bound)
+     * @return future largest key/value pair with {@code key < maxKey} and {@code key >= minKey}, or null if none exists
+     * @see KVStore#getAtMost KVStore.getAtMost()
+     */
+    CompletableFuture<KVPair> getAtMostAsync(byte[] maxKey, byte[] minKey);
+
+    /**
+     * Asynchronously iterate the key/value pairs in the specified range.
+     *
+     * <p>
+     * The returned iterator delivers key/value pairs in batches; see {@link AsyncKVPairIterator}.
+     * Whether it reflects modifications made after its creation is implementation dependent.
+     * The caller must {@link AsyncKVPairIterator#close close()} it when done with it.
+     *
+     * @param minKey minimum key (inclusive), or null for no minimum (start at the smallest key)
+     * @param maxKey maximum key (exclusive), or null for no maximum (end at the largest key)
+     * @param reverse true to return key/value pairs in reverse order (i.e., keys descending)
+     * @return asynchronous iteration of key/value pairs in the range {@code minKey} (inclusive) to {@code maxKey} (exclusive)
+     * @throws IllegalArgumentException if {@code minKey > maxKey}
+     * @see KVStore#getRange(byte[], byte[], boolean) KVStore.getRange()
+     */
+    AsyncKVPairIterator getRangeAsync(byte[] minKey, byte[] maxKey, boolean reverse);
+
+    /**
+     * Asynchronously iterate the key/value pairs in the specified range in the forward direction.
+     *
+     * <p>
+     * This is a convenience method, equivalent to:
+     * {@link #getRangeAsync(byte[], byte[], boolean) getRangeAsync}{@code (range.getMin(), range.getMax(), false)}.
+     *
+     * @param range range of keys to iterate
+     * @return asynchronous iteration of key/value pairs in {@code range}
+     * @throws IllegalArgumentException if {@code range} is null
+     */
+    default AsyncKVPairIterator getRangeAsync(KeyRange range) {
+        Preconditions.checkArgument(range != null, "null range");
+        return this.getRangeAsync(range.getMin(), range.getMax(), false);
+    }
+
+    /**
+     * Obtain an {@link AsyncKVStore} view of the given {@link KVStore}.
+     *
+     * <p>
+     * If {@code kv} already implements {@link AsyncKVStore}, it is returned unchanged. Otherwise, an
+     * {@link ExecutorAsyncKVStore} is returned that performs the corresponding synchronous reads using {@code executor}.
+     *
+     * @param kv key/value store
+     * @param executor executor for performing synchronous reads
+     * @return asynchronous view of {@code kv}
+     * @throws IllegalArgumentException if either parameter is null
+     */
+    static AsyncKVStore of(KVStore kv, Executor executor) {
+        Preconditions.checkArgument(kv != null, "null kv");
+        Preconditions.checkArgument(executor != null, "null executor");
+        return kv instanceof AsyncKVStore ? (AsyncKVStore)kv : new ExecutorAsyncKVStore(kv, executor);
+    }
+}
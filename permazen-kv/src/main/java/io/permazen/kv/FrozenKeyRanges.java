@@ -0,0 +1,156 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.kv;
+
+import io.permazen.util.ByteUtil;
+
+/**
+ * Flat array representation of an immutable {@link KeyRanges}.
+ *
+ * <p>
+ * The minimum and maximum keys of the ranges are stored in parallel sorted arrays and located by binary search.
+ * If there are enough ranges, a jump table indexed by the first byte of the key narrows the binary search to the
+ * ranges whose minimum keys share that first byte. Lookups do not allocate any objects and do not modify
+ * any state, so instances are safe for concurrent use.
+ *
+ * <p>
+ * Keys returned by {@link #seekHigher seekHigher()} and {@link #seekLower seekLower()} may be shared with
+ * this instance and must not be modified.
+ */
+final class FrozenKeyRanges implements KeyFilter {
+
+    private static final int MIN_JUMP_TABLE_SIZE = 32;              // don't bother with a jump table for fewer ranges
+
+    private final KeyRange[] ranges;
+    private final byte[][] mins;
+    private final byte[][] maxs;
+    private final int[] jumps;                                      // index of first range with min first byte >= i, or null
+
+    /**
+     * Constructor.
+     *
+     * <p>
+     * The given array is not copied; the caller must not modify it.
+     *
+     * @param ranges minimal, sorted ranges
+     */
+    FrozenKeyRanges(KeyRange[] ranges) {
+        final int size = ranges.length;
+        this.ranges = ranges;
+        this.mins = new byte[size][];
+        this.maxs = new byte[size][];
+        for (int i = 0; i < size; i++) {
+            this.mins[i] = ranges[i].min;
+            this.maxs[i] = ranges[i].max;
+        }
+        if (size >= MIN_JUMP_TABLE_SIZE) {
+            this.jumps = new int[0x101];
+            int index = 0;
+            for (int b = 0; b <= 0xff; b++) {
+                while (index < size && FrozenKeyRanges.firstByte(this.mins[index]) < b)
+                    index++;
+                this.jumps[b] = index;
+            }
+            this.jumps[0x100] = size;
+        } else
+            this.jumps = null;
+    }
+
+// Accessors
+
+    /**
+     * Get the number of ranges.
+     *
+     * @return number of ranges
+     */
+    public int size() {
+        return this.mins.length;
+    }
+
+    /**
+     * Get the range at the given index.
+     *
+     * @param index range index
+     * @return key range
+     */
+    public KeyRange getRange(int index) {
+        return this.ranges[index];
+    }
+
+// Searching
+
+    /**
+     * Find the range containing the given key.
+     *
+     * @param key key to find
+     * @return index of the range containing {@code key}, otherwise {@code (-(insertion point) - 1)}, where
+     *  insertion point is the index of the first range above {@code key}, or {@link #size} if none
+     */
+    public int find(byte[] key) {
+        final int index = this.floorIndex(key);
+        if (index >= 0 && KeyRange.compare(this.maxs[index], key) > 0)
+            return index;
+        return -(index + 1) - 1;
+    }
+
+    // Find the index of the last range whose minimum is <= key, or -1 if none
+    private int floorIndex(byte[] key) {
+        int lo;
+        int hi;
+        if (this.jumps != null) {
+            final int b = FrozenKeyRanges.firstByte(key);
+            lo = this.jumps[b];
+            hi = this.jumps[b + 1] - 1;
+        } else {
+            lo = 0;
+            hi = this.mins.length - 1;
+        }
+        while (lo <= hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (ByteUtil.compare(this.mins[mid], key) <= 0)
+                lo = mid + 1;
+            else
+                hi = mid - 1;
+        }
+        return lo - 1;
+    }
+
+    private static int firstByte(byte[] key) {
+        return key.length > 0 ? key[0] & 0xff : 0;
+    }
+
+// KeyFilter
+
+    @Override
+    public boolean contains(byte[] key) {
+        return this.find(key) >= 0;
+    }
+
+    @Override
+    public byte[] seekHigher(byte[] key) {
+        final int index = this.find(key);
+        if (index >= 0)
+            return key;
+        final int next = -index - 1;
+        return next < this.mins.length ? this.mins[next] : null;
+    }
+
+    @Override
+    public byte[] seekLower(byte[] key) {
+        final int size = this.mins.length;
+        if (key.length == 0) {
+            if (size == 0)
+                return null;
+            final byte[] lastMax = this.maxs[size - 1];
+            return lastMax != null ? lastMax : ByteUtil.EMPTY;
+        }
+        final int index = this.find(key);
+        if (index >= 0)
+            return key;
+        final int prev = -index - 2;
+        return prev >= 0 ? this.maxs[prev] : null;
+    }
+}
@@ -0,0 +1,69 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.kv;
+
+import io.permazen.util.ByteSlice;
+
+import java.io.Closeable;
+
+/**
+ * A cursor over a range of key/value pairs that exposes each key and value as a {@link ByteSlice},
+ * as returned by {@link KVStore#getRangeView KVStore.getRangeView()}.
+ *
+ * <p>
+ * A newly created cursor is positioned before the first key/value pair; each invocation of {@link #next}
+ * advances to the next pair. The {@link ByteSlice}s returned by {@link #getKey} and {@link #getValue}
+ * may be reused and are only valid until the next invocation of {@link #next} or {@link #close}.
+ * Their underlying arrays must not be modified.
+ *
+ * <p>
+ * Instances are not thread safe. Instances should be {@link #close}'d when no longer needed.
+ */
+public interface KVCursor extends Closeable {
+
+    /**
+     * Advance to the next key/value pair, if any.
+     *
+     * @return true if positioned on the next key/value pair, false if there are no more
+     * @throws IllegalStateException if this instance is closed
+     */
+    boolean next();
+
+    /**
+     * Get the key of the current key/value pair.
+     *
+     * @return current key
+     * @throws IllegalStateException if this cursor is not positioned on a key/value pair
+     */
+    ByteSlice getKey();
+
+    /**
+     * Get the value of the current key/value pair.
+     *
+     * @return current value
+     * @throws IllegalStateException if this cursor is not positioned on a key/value pair
+     */
+    ByteSlice getValue();
+
+    /**
+     * Copy the current key/value pair into a new {@link KVPair}.
+     *
+     * @return copy of the current key/value pair
+     * @throws IllegalStateException if this cursor is not positioned on a key/value pair
+     */
+    default KVPair toKVPair() {
+        return new KVPair(this.getKey().toByteArray(), this.getValue().toByteArray());
+    }
+
+    /**
+     * Close this instance, releasing any associated resources.
+     *
+     * <p>
+     * Closing an instance more than once has no effect.
+     */
+    @Override
+    void close();
+}
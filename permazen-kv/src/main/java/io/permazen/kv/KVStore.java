@@ -8,9 +8,13 @@ package io.permazen.kv;
 import com.google.common.base.Preconditions;
 
 import io.permazen.kv.mvcc.Mutations;
+import io.permazen.kv.util.IteratorKVCursor;
+import io.permazen.util.ByteSlice;
 import io.permazen.util.ByteUtil;
 import io.permazen.util.CloseableIterator;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -58,6 +62,37 @@ public interface KVStore {
      */
     byte[] get(byte[] key);
 
+    /**
+     * Get the values associated with multiple keys.
+     *
+     * <p>
+     * The returned list has the same length as {@code keys}, and each element is the value associated with the
+     * corresponding key, or null if not found. Duplicate keys are allowed.
+     *
+     * <p>
+     * Modifications to the returned list and {@code byte[]} arrays do not affect this instance.
+     *
+     * <p>
+     * The implementation in {@link KVStore} simply invokes {@link #get get()} for each key in order.
+     * Implementations that can look up multiple keys more efficiently, e.g., in a single round trip,
+     * are encouraged to override this method.
+     *
+     * @param keys keys to look up
+     * @return list of values associated with {@code keys}, with null for keys not found
+     * @throws IllegalArgumentException if {@code keys} is null
+     * @throws IllegalArgumentException if any key starts with {@code 0xff} and such keys are not supported
+     * @throws StaleTransactionException if an underlying transaction is no longer usable
+     * @throws RetryTransactionException if an underlying transaction must be retried and is no longer usable
+     * @throws NullPointerException if any key is null
+     */
+    default List<byte[]> getMany(List<byte[]> keys) {
+        Preconditions.checkArgument(keys != null, "null keys");
+        final ArrayList<byte[]> values = new ArrayList<>(keys.size());
+        for (byte[] key : keys)
+            values.add(this.get(key));
+        return values;
+    }
+
     /**
      * Get the key/value pair having the smallest key greater than or equal to the given minimum, if any.
      *
@@ -177,6 +212,37 @@ public interface KVStore {
         return this.getRange(range.getMin(), range.getMax(), false);
     }
 
+    /**
+     * Iterate the key/value pairs in the specified range using a cursor that exposes keys and values as
+     * {@link ByteSlice}s rather than newly allocated {@code byte[]} arrays.
+     *
+     * <p>
+     * The returned cursor, and the {@link ByteSlice}s it returns, may be reused from one key/value pair to the next,
+     * so the key and value data are only valid until the next invocation of {@link KVCursor#next next()} or
+     * {@link KVCursor#close close()}. This allows implementations to avoid allocating and copying data for every
+     * key/value pair during large range scans; callers needing to retain a key or value must copy it.
+     *
+     * <p>
+     * Otherwise, the semantics are the same as for {@link #getRange(byte[], byte[], boolean) getRange()},
+     * except that the returned cursor does not support removal.
+     *
+     * <p>
+     * The implementation in {@link KVStore} wraps the iterator returned by
+     * {@link #getRange(byte[], byte[], boolean) getRange()}. Implementations are encouraged to override this
+     * method if they can avoid copying data.
+     *
+     * @param minKey minimum key (inclusive), or null for no minimum (start at the smallest key)
+     * @param maxKey maximum key (exclusive), or null for no maximum (end at the largest key)
+     * @param reverse true to return key/value pairs in reverse order (i.e., keys descending)
+     * @return cursor over key/value pairs in the range {@code minKey} (inclusive) to {@code maxKey} (exclusive)
+     * @throws IllegalArgumentException if {@code minKey > maxKey}
+     * @throws StaleTransactionException if an underlying transaction is no longer usable
+     * @throws RetryTransactionException if an underlying transaction must be retried and is no longer usable
+     */
+    default KVCursor getRangeView(byte[] minKey, byte[] maxKey, boolean reverse) {
+        return new IteratorKVCursor(this.getRange(minKey, maxKey, reverse));
+    }
+
     /**
      * Set the value associated with the given key.
      *
@@ -5,6 +5,8 @@
 
 package io.permazen.kv;
 
+import com.google.common.base.Preconditions;
+
 import java.util.concurrent.Future;
 
 /**
@@ -169,6 +171,57 @@ public interface KVTransaction extends KVStore {
      */
     Future<Void> watchKey(byte[] key);
 
+    /**
+     * Watch a range of keys to see when the value associated with any key in the range changes (optional operation).
+     *
+     * <p>
+     * This behaves like {@link #watchKey watchKey()} except that the returned {@link Future} completes when the value
+     * associated with any key in {@code range} is modified. A single range watch is much cheaper than separately watching
+     * many individual keys. Each range watch completes at most once, so a committed batch of mutations that affects several
+     * keys in the range results in a single notification.
+     *
+     * <p>
+     * All of the caveats described for {@link #watchKey watchKey()} apply, including the possibility of spurious
+     * notifications and the need to {@link Future#cancel cancel()} unneeded {@link Future}s.
+     *
+     * <p>
+     * The implementation in {@link KVTransaction} always throws {@link UnsupportedOperationException}.
+     *
+     * @param range the range of keys to watch
+     * @return a {@link Future} that completes when the value associated with any key in {@code range} is modified
+     * @throws StaleTransactionException if this transaction is no longer usable
+     * @throws RetryTransactionException if this transaction must be retried and is no longer usable
+     * @throws KVDatabaseException if an unexpected error occurs
+     * @throws UnsupportedOperationException if this instance does not support key range watches
+     * @throws IllegalArgumentException if {@code range} is null
+     * @see #watchKey watchKey()
+     */
+    default Future<Void> watchRange(KeyRange range) {
+        Preconditions.checkArgument(range != null, "null range");
+        throw new UnsupportedOperationException("watchRange() not supported");
+    }
+
+    /**
+     * Watch all keys having the given prefix to see when the value associated with any such key changes (optional operation).
+     *
+     * <p>
+     * The implementation in {@link KVTransaction} invokes {@link #watchRange watchRange()} with
+     * {@link KeyRange#forPrefix KeyRange.forPrefix(prefix)}.
+     *
+     * @param prefix the prefix of the keys to watch
+     * @return a {@link Future} that completes when the value associated with any key having {@code prefix} is modified
+     * @throws StaleTransactionException if this transaction is no longer usable
+     * @throws RetryTransactionException if this transaction must be retried and is no longer usable
+     * @throws KVDatabaseException if an unexpected error occurs
+     * @throws UnsupportedOperationException if this instance does not support key range watches
+     * @throws IllegalArgumentException if {@code prefix} is null
+     * @see #watchRange watchRange()
+     */
+    default Future<Void> watchPrefix(byte[] prefix) {
+        Preconditions.checkArgument(prefix != null, "null prefix");
+        return this.watchRange(KeyRange.forPrefix(prefix));
+    }
+
     /**
      * Commit this transaction.
      *
@@ -32,16 +32,18 @@ public class KeyRange {
     /**
      * Sorts instances by {@linkplain KeyRange#getMin min value}, then {@linkplain KeyRange#getMax max value}.
      */
-    public static final Comparator<KeyRange> SORT_BY_MIN = Comparator
-      .comparing(KeyRange::getMin, ByteUtil::compare)
-      .thenComparing(KeyRange::getMax, KeyRange::compare);
+    public static final Comparator<KeyRange> SORT_BY_MIN = (range1, range2) -> {
+        final int diff = ByteUtil.compare(range1.min, range2.min);
+        return diff != 0 ? diff : KeyRange.compare(range1.max, range2.max);
+    };
 
     /**
      * Sorts instances by {@linkplain KeyRange#getMax max value}, then {@linkplain KeyRange#getMin min value}.
      */
-    public static final Comparator<KeyRange> SORT_BY_MAX = Comparator
-      .comparing(KeyRange::getMax, KeyRange::compare)
-      .thenComparing(KeyRange::getMin, ByteUtil::compare);
+    public static final Comparator<KeyRange> SORT_BY_MAX = (range1, range2) -> {
+        final int diff = KeyRange.compare(range1.max, range2.max);
+        return diff != 0 ? diff : ByteUtil.compare(range1.min, range2.min);
+    };
 
     /**
      * Lower bound (inclusive), or null for no minimum. Subclasses must <b>not</b> modify the array (to preserve immutability).
@@ -0,0 +1,251 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.kv;
+
+import com.google.common.base.Preconditions;
+
+import io.permazen.util.ByteUtil;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * An interval tree containing {@link KeyRange}s.
+ *
+ * <p>
+ * Implemented as a treap ordered by range minimum, in which each node also records the greatest range maximum found in
+ * its subtree. This allows all of the ranges overlapping some key range to be found in O(log n + k) expected time.
+ *
+ * <p>
+ * Elements are tracked by identity, not {@link KeyRange#equals equals()}, so equal elements may coexist.
+ * Elements must not be null.
+ *
+ * <p>
+ * Instances are not thread safe.
+ *
+ * @param <R> element type
+ */
+public class KeyRangeTree<R extends KeyRange> {
+
+    // Orders nodes by range minimum, then by insertion order
+    private static final Comparator<Node<?>> NODE_COMPARATOR = (node1, node2) -> {
+        final int diff = KeyRange.compare(node1.range.min, node2.range.min);
+        return diff != 0 ? diff : Long.compare(node1.seq, node2.seq);
+    };
+
+    private final IdentityHashMap<R, Node<R>> nodes = new IdentityHashMap<>();
+
+    private Node<R> root;
+    private long nextSeq;
+
+    /**
+     * Get the number of elements in this tree.
+     *
+     * @return number of elements
+     */
+    public int size() {
+        return this.nodes.size();
+    }
+
+    /**
+     * Determine whether this tree is empty.
+     *
+     * @return true if this tree contains no elements
+     */
+    public boolean isEmpty() {
+        return this.nodes.isEmpty();
+    }
+
+    /**
+     * Determine whether the given element is in this tree.
+     *
+     * @param range element
+     * @return true if {@code range} is in this tree
+     */
+    public boolean contains(R range) {
+        return this.nodes.containsKey(range);
+    }
+
+    /**
+     * Add an element to this tree.
+     *
+     * @param range element to add
+     * @return true if added, false if {@code range} was already in this tree
+     * @throws IllegalArgumentException if {@code range} is null
+     */
+    public boolean add(R range) {
+        Preconditions.checkArgument(range != null, "null range");
+        if (this.nodes.containsKey(range))
+            return false;
+        final Node<R> node = new Node<>(range, this.nextSeq++, ThreadLocalRandom.current().nextInt());
+        this.nodes.put(range, node);
+        this.root = this.insert(this.root, node);
+        return true;
+    }
+
+    /**
+     * Remove an element from this tree.
+     *
+     * @param range element to remove
+     * @return true if removed, false if {@code range} was not in this tree
+     */
+    public boolean remove(R range) {
+        final Node<R> node = this.nodes.remove(range);
+        if (node == null)
+            return false;
+        this.root = this.delete(this.root, node);
+        return true;
+    }
+
+    /**
+     * Remove all elements from this tree.
+     */
+    public void clear() {
+        this.nodes.clear();
+        this.root = null;
+    }
+
+    /**
+     * Find all elements in this tree that overlap the given key range.
+     *
+     * @param range key range to search
+     * @param overlaps collection to which overlapping elements are added
+     * @throws IllegalArgumentException if either parameter is null
+     */
+    public void findOverlaps(KeyRange range, Collection<? super R> overlaps) {
+        Preconditions.checkArgument(range != null, "null range");
+        Preconditions.checkArgument(overlaps != null, "null overlaps");
+        this.findOverlaps(this.root, range.min, range.max, overlaps);
+    }
+
+    /**
+     * Find all elements in this tree that contain the given key.
+     *
+     * @param key key to search for
+     * @param overlaps collection to which containing elements are added
+     * @throws IllegalArgumentException if either parameter is null
+     */
+    public void findContaining(byte[] key, Collection<? super R> overlaps) {
+        Preconditions.checkArgument(key != null, "null key");
+        Preconditions.checkArgument(overlaps != null, "null overlaps");
+        this.findOverlaps(this.root, key, ByteUtil.getNextKey(key), overlaps);
+    }
+
+    private void findOverlaps(Node<R> node, byte[] min, byte[] max, Collection<? super R> overlaps) {
+        while (node != null) {
+
+            // Skip subtree if nothing in it extends past our minimum
+            if (KeyRange.compare(node.subtreeMax, min) <= 0)
+                return;
+
+            // Search left subtree
+            this.findOverlaps(node.left, min, max, overlaps);
+
+            // If this node starts at or after our maximum, so does everything in the right subtree
+            if (KeyRange.compare(node.range.min, max) >= 0)
+                return;
+
+            // Check this node, then continue with the right subtree
+            if (KeyRange.compare(min, node.range.max) < 0)
+                overlaps.add(node.range);
+            node = node.right;
+        }
+    }
+
+// Treap operations
+
+    private Node<R> insert(Node<R> root, Node<R> node) {
+        if (root == null)
+            return node;
+        if (NODE_COMPARATOR.compare(node, root) < 0) {
+            root.left = this.insert(root.left, node);
+            if (root.left.priority > root.priority)
+                root = this.rotateRight(root);
+        } else {
+            root.right = this.insert(root.right, node);
+            if (root.right.priority > root.priority)
+                root = this.rotateLeft(root);
+        }
+        root.update();
+        return root;
+    }
+
+    private Node<R> delete(Node<R> root, Node<R> node) {
+        assert root != null;
+        if (root == node)
+            return this.merge(root.left, root.right);
+        if (NODE_COMPARATOR.compare(node, root) < 0)
+            root.left = this.delete(root.left, node);
+        else
+            root.right = this.delete(root.right, node);
+        root.update();
+        return root;
+    }
+
+    // Merge two subtrees, where every node in "left" sorts before every node in "right"
+    private Node<R> merge(Node<R> left, Node<R> right) {
+        if (left == null)
+            return right;
+        if (right == null)
+            return left;
+        if (left.priority > right.priority) {
+            left.right = this.merge(left.right, right);
+            left.update();
+            return left;
+        } else {
+            right.left = this.merge(left, right.left);
+            right.update();
+            return right;
+        }
+    }
+
+    private Node<R> rotateRight(Node<R> node) {
+        final Node<R> left = node.left;
+        node.left = left.right;
+        left.right = node;
+        node.update();
+        return left;
+    }
+
+    private Node<R> rotateLeft(Node<R> node) {
+        final Node<R> right = node.right;
+        node.right = right.left;
+        right.left = node;
+        node.update();
+        return right;
+    }
+
+// Node
+
+    private static final class Node<R extends KeyRange> {
+
+        final R range;
+        final long seq;                                     // tie-breaker for ranges having the same minimum
+        final int priority;
+
+        Node<R> left;
+        Node<R> right;
+        byte[] subtreeMax;                                  // greatest range maximum in this subtree (null = infinity)
+
+        Node(R range, long seq, int priority) {
+            this.range = range;
+            this.seq = seq;
+            this.priority = priority;
+            this.subtreeMax = range.max;
+        }
+
+        void update() {
+            byte[] max = this.range.max;
+            if (this.left != null && KeyRange.compare(this.left.subtreeMax, max) > 0)
+                max = this.left.subtreeMax;
+            if (this.right != null && KeyRange.compare(this.right.subtreeMax, max) > 0)
+                max = this.right.subtreeMax;
+            this.subtreeMax = max;
+        }
+    }
+}
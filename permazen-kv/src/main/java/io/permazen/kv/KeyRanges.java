@@ -30,7 +30,10 @@ import java.util.stream.Stream;
  * A fixed set of {@link KeyRange} instances that can be treated as a unified whole, in particular as a {@link KeyFilter}.
  *
  * <p>
- * Instances are not thread safe.
+ * Mutable instances are not thread safe. Immutable instances, i.e., those returned by {@link #immutableSnapshot}
+ * or deserialized by {@link #KeyRanges(InputStream, boolean)}, are frozen into a flat array form that supports
+ * allocation-free lookups via {@link #contains(byte[]) contains()}, {@link #seekHigher seekHigher()}, and
+ * {@link #seekLower seekLower()}, and are thread safe.
  *
  * @see KeyRange
  */
@@ -39,6 +42,7 @@ public class KeyRanges implements Iterable<KeyRange>, KeyFilter, Cloneable {
     private /*final*/ NavigableSet<KeyRange> ranges;
 
     private transient KeyRange lastContainingKeyRange;                      // used for optimization
+    private transient FrozenKeyRanges frozen;                               // non-null iff immutable
 
 // Constructors
 
@@ -186,9 +190,10 @@ public class KeyRanges implements Iterable<KeyRange>, KeyFilter, Cloneable {
             array[i] = new KeyRange(min, Arrays.equals(min, max) ? null : max);         // map final [min, min) to [min, null]
             prev = max;
         }
-        if (immutable)
+        if (immutable) {
             this.ranges = new ImmutableNavigableSet<>(array, KeyRange.SORT_BY_MIN);
-        else {
+            this.frozen = new FrozenKeyRanges(array);
+        } else {
             this.ranges = new TreeSet<>(KeyRange.SORT_BY_MIN);
             this.ranges.addAll(Arrays.asList(array));
         }
@@ -389,6 +394,10 @@ public class KeyRanges implements Iterable<KeyRange>, KeyFilter, Cloneable {
     public boolean contains(KeyRange range) {
         Preconditions.checkArgument(range != null, "null range");
         assert this.checkMinimal();
+        if (this.frozen != null) {
+            final int index = this.frozen.find(range.min);
+            return index >= 0 && this.frozen.getRange(index).contains(range);
+        }
         final KeyRange[] neighbors = this.findKey(range.min);
         if (neighbors[0] != neighbors[1] || neighbors[0] == null)
             return false;
@@ -407,6 +416,17 @@ public class KeyRanges implements Iterable<KeyRange>, KeyFilter, Cloneable {
         Preconditions.checkArgument(range != null, "null range");
         assert this.checkMinimal();
 
+        // Handle frozen case
+        if (this.frozen != null) {
+            final int index = this.frozen.find(range.min);
+            if (index >= 0) {
+                final KeyRange match = this.frozen.getRange(index);
+                return ByteUtil.compare(match.min, range.min) < 0 || KeyRange.compare(match.min, range.max) < 0;
+            }
+            final int next = -index - 1;
+            return next < this.frozen.size() && KeyRange.compare(this.frozen.getRange(next).min, range.max) < 0;
+        }
+
         // Get search key
         final KeyRange searchKey = new KeyRange(range.min, range.min);
         assert !this.ranges.contains(searchKey);
@@ -446,6 +466,20 @@ public class KeyRanges implements Iterable<KeyRange>, KeyFilter, Cloneable {
         Preconditions.checkArgument(key != null, "null key");
         assert this.checkMinimal();
 
+        // Handle frozen case
+        if (this.frozen != null) {
+            final int index = this.frozen.find(key);
+            if (index >= 0) {
+                final KeyRange range = this.frozen.getRange(index);
+                return new KeyRange[] { range, range };
+            }
+            final int next = -index - 1;
+            return new KeyRange[] {
+                next > 0 ? this.frozen.getRange(next - 1) : null,
+                next < this.frozen.size() ? this.frozen.getRange(next) : null
+            };
+        }
+
         // Optimization: assume previous success is likely to repeat
         final KeyRange likelyKeyRange = this.lastContainingKeyRange;
         if (likelyKeyRange != null) {
@@ -763,6 +797,10 @@ public class KeyRanges implements Iterable<KeyRange>, KeyFilter, Cloneable {
     @Override
     public boolean contains(byte[] key) {
         assert this.checkMinimal();
+        if (this.frozen != null) {
+            Preconditions.checkArgument(key != null, "null key");
+            return this.frozen.contains(key);
+        }
         final KeyRange[] neighbors = this.findKey(key);
         return neighbors[0] == neighbors[1] && neighbors[0] != null;
     }
@@ -770,6 +808,10 @@ public class KeyRanges implements Iterable<KeyRange>, KeyFilter, Cloneable {
     @Override
     public byte[] seekHigher(byte[] key) {
         assert this.checkMinimal();
+        if (this.frozen != null) {
+            Preconditions.checkArgument(key != null, "null key");
+            return this.frozen.seekHigher(key);
+        }
         final KeyRange[] neighbors = this.findKey(key);
         if (neighbors[0] == neighbors[1])
             return neighbors[0] != null ? key : null;
@@ -780,6 +822,8 @@ public class KeyRanges implements Iterable<KeyRange>, KeyFilter, Cloneable {
     public byte[] seekLower(byte[] key) {
         Preconditions.checkArgument(key != null, "null key");
         assert this.checkMinimal();
+        if (this.frozen != null)
+            return this.frozen.seekLower(key);
         if (key.length == 0) {
             if (this.ranges.isEmpty())
                 return null;
@@ -811,6 +855,7 @@ public class KeyRanges implements Iterable<KeyRange>, KeyFilter, Cloneable {
             throw new RuntimeException(e);
         }
         clone.ranges = new TreeSet<>(clone.ranges);
+        clone.frozen = null;
         assert clone.checkMinimal();
         return clone;
     }
@@ -829,7 +874,10 @@ public class KeyRanges implements Iterable<KeyRange>, KeyFilter, Cloneable {
         } catch (CloneNotSupportedException e) {
             throw new RuntimeException(e);
         }
-        clone.ranges = new ImmutableNavigableSet<>(clone.ranges);
+        final KeyRange[] array = clone.ranges.toArray(new KeyRange[clone.ranges.size()]);
+        clone.ranges = new ImmutableNavigableSet<>(array, KeyRange.SORT_BY_MIN);
+        clone.frozen = new FrozenKeyRanges(array);
+        clone.lastContainingKeyRange = null;
         assert clone.checkMinimal();
         return clone;
     }
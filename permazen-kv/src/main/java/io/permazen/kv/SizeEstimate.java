@@ -0,0 +1,97 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.kv;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * An approximate count of the keys and bytes in a {@link KeyRange}.
+ *
+ * <p>
+ * Instances are immutable.
+ *
+ * @see SizeEstimatingKVStore
+ */
+public final class SizeEstimate {
+
+    /**
+     * An estimate of zero keys and zero bytes.
+     */
+    public static final SizeEstimate EMPTY = new SizeEstimate(0, 0);
+
+    private final long keys;
+    private final long bytes;
+
+    /**
+     * Constructor.
+     *
+     * @param keys approximate number of keys
+     * @param bytes approximate number of bytes
+     * @throws IllegalArgumentException if either parameter is negative
+     */
+    public SizeEstimate(long keys, long bytes) {
+        Preconditions.checkArgument(keys >= 0, "keys < 0");
+        Preconditions.checkArgument(bytes >= 0, "bytes < 0");
+        this.keys = keys;
+        this.bytes = bytes;
+    }
+
+    /**
+     * Get the approximate number of keys.
+     *
+     * @return key count
+     */
+    public long getKeys() {
+        return this.keys;
+    }
+
+    /**
+     * Get the approximate number of bytes.
+     *
+     * <p>
+     * Depending on the implementation, this may be the size of the keys and values, or the space they occupy
+     * in storage (e.g., after compression).
+     *
+     * @return byte count
+     */
+    public long getBytes() {
+        return this.bytes;
+    }
+
+    /**
+     * Add this instance to the given instance.
+     *
+     * @param that other estimate
+     * @return sum of the two estimates
+     * @throws IllegalArgumentException if {@code that} is null
+     */
+    public SizeEstimate plus(SizeEstimate that) {
+        Preconditions.checkArgument(that != null, "null that");
+        return new SizeEstimate(this.keys + that.keys, this.bytes + that.bytes);
+    }
+
+// Object
+
+    @Override
+    public String toString() {
+        return "{keys=" + this.keys + ",bytes=" + this.bytes + "}";
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this)
+            return true;
+        if (obj == null || obj.getClass() != this.getClass())
+            return false;
+        final SizeEstimate that = (SizeEstimate)obj;
+        return this.keys == that.keys && this.bytes == that.bytes;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(this.keys) ^ Long.hashCode(this.bytes);
+    }
+}
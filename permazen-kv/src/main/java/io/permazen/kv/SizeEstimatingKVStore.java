@@ -0,0 +1,70 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.kv;
+
+import com.google.common.base.Preconditions;
+
+import io.permazen.kv.util.SamplingSizeEstimator;
+
+import java.util.List;
+
+/**
+ * Extension of the {@link KVStore} interface for implementations that can estimate how their data is distributed.
+ *
+ * <p>
+ * This information allows work such as range scans, exports, and consistency checks to be divided into pieces
+ * of roughly equal size and performed in parallel. Estimates are approximate and should be used only for that kind
+ * of planning; for example, they may ignore recent writes or be based on on-disk (e.g., compressed) sizes.
+ *
+ * <p>
+ * Implementations with native support for size estimation implement this interface directly. Any other
+ * {@link KVStore} may be adapted to this interface via {@link #of of()}, which estimates sizes by sampling.
+ *
+ * @see SamplingSizeEstimator
+ */
+public interface SizeEstimatingKVStore extends KVStore {
+
+    /**
+     * Estimate the number of keys and bytes in the given range.
+     *
+     * @param range key range
+     * @return approximate size of {@code range}
+     * @throws IllegalArgumentException if {@code range} is null
+     */
+    SizeEstimate estimateSize(KeyRange range);
+
+    /**
+     * Get keys that split the given range into pieces of roughly equal size.
+     *
+     * <p>
+     * The returned keys are strictly increasing and lie strictly inside {@code range}, so they divide it into at most
+     * {@code count + 1} pieces. Pieces are balanced by {@linkplain SizeEstimate#getBytes estimated bytes}.
+     * Fewer than {@code count} keys may be returned, e.g., if the range contains too few keys.
+     *
+     * @param range key range
+     * @param count desired number of split keys
+     * @return sorted split keys
+     * @throws IllegalArgumentException if {@code range} is null
+     * @throws IllegalArgumentException if {@code count} is negative
+     */
+    List<byte[]> getSplitKeys(KeyRange range, int count);
+
+    /**
+     * Adapt the given {@link KVStore} to the {@link SizeEstimatingKVStore} interface.
+     *
+     * <p>
+     * If {@code kv} already implements {@link SizeEstimatingKVStore}, it is returned unchanged; otherwise, it is
+     * wrapped in a {@link SamplingSizeEstimator}.
+     *
+     * @param kv key/value store
+     * @return size estimating view of {@code kv}
+     * @throws IllegalArgumentException if {@code kv} is null
+     */
+    static SizeEstimatingKVStore of(KVStore kv) {
+        Preconditions.checkArgument(kv != null, "null kv");
+        return kv instanceof SizeEstimatingKVStore ? (SizeEstimatingKVStore)kv : new SamplingSizeEstimator(kv);
+    }
+}
@@ -0,0 +1,229 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.kv.compress;
+
+import com.google.common.base.Preconditions;
+
+import io.permazen.kv.KVCursor;
+import io.permazen.kv.KVDatabase;
+import io.permazen.kv.KVPair;
+import io.permazen.kv.KVTransaction;
+import io.permazen.kv.KeyRange;
+import io.permazen.util.CloseableIterator;
+import io.permazen.util.UnsignedIntEncoder;
+
+import java.util.ArrayList;
+import java.util.Map;
+
+/**
+ * {@link KVDatabase} wrapper that transparently compresses values.
+ *
+ * <p>
+ * Instances wrap an inner {@link KVDatabase}, and all transactions are {@link CompressingKVTransaction}s wrapping the
+ * corresponding inner transactions. Values are encoded by a {@link ValueCompressor}; keys are not modified, so
+ * key ordering and range semantics are preserved. Because values are compressed before they reach the inner
+ * database, less data is written to disk, to replication logs, and to snapshots, at the cost of some CPU time.
+ *
+ * <p>
+ * Small values having a common structure, such as the fields of objects of the same type, compress much better with
+ * a preset {@link CompressionDictionary}. Use {@link #trainDictionary trainDictionary()} to build a dictionary from
+ * existing values under a storage ID prefix and store it in the database. Dictionaries stored in the database are
+ * loaded by {@link #start}, and dictionaries created by other instances are loaded when first encountered.
+ *
+ * <p>
+ * An inner {@link KVDatabase} containing uncompressed data cannot be wrapped by an instance of this class.
+ *
+ * <p>
+ * Invocations of {@link #start} and {@link #stop} are forwarded to the inner {@link KVDatabase}.
+ *
+ * @see ValueCompressor
+ */
+public class CompressingKVDatabase implements KVDatabase {
+
+    /**
+     * Default maximum number of sample values used by {@link #trainDictionary trainDictionary()}
+     * ({@value #DEFAULT_MAX_SAMPLES}).
+     */
+    public static final int DEFAULT_MAX_SAMPLES = 1000;
+
+    /**
+     * Default maximum dictionary size used by {@link #trainDictionary trainDictionary()}
+     * ({@value #DEFAULT_DICTIONARY_SIZE}).
+     */
+    public static final int DEFAULT_DICTIONARY_SIZE = 16 * 1024;
+
+    private final KVDatabase db;
+    private final ValueCompressor compressor;
+
+    /**
+     * Constructor.
+     *
+     * <p>
+     * Values are encoded by a new {@link ValueCompressor} with default settings.
+     *
+     * @param db the inner {@link KVDatabase}
+     * @throws IllegalArgumentException if {@code db} is null
+     */
+    public CompressingKVDatabase(KVDatabase db) {
+        this(db, new ValueCompressor());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param db the inner {@link KVDatabase}
+     * @param compressor value encoder
+     * @throws IllegalArgumentException if either parameter is null
+     */
+    public CompressingKVDatabase(KVDatabase db, ValueCompressor compressor) {
+        Preconditions.checkArgument(db != null, "null db");
+        Preconditions.checkArgument(compressor != null, "null compressor");
+        this.db = db;
+        this.compressor = compressor;
+    }
+
+    /**
+     * Get the inner {@link KVDatabase} associated with this instance.
+     *
+     * @return the inner {@link KVDatabase}
+     */
+    public KVDatabase getInnerKVDatabase() {
+        return this.db;
+    }
+
+    /**
+     * Get the {@link ValueCompressor} that encodes values for this instance.
+     *
+     * @return value encoder
+     */
+    public ValueCompressor getValueCompressor() {
+        return this.compressor;
+    }
+
+// Dictionaries
+
+    /**
+     * Train a new dictionary for the values of keys having the given storage ID prefix and store it in the database.
+     *
+     * <p>
+     * Equivalent to: {@link #trainDictionary(int, int, int) trainDictionary}{@code (storageId,
+     * }{@link #DEFAULT_MAX_SAMPLES}{@code , }{@link #DEFAULT_DICTIONARY_SIZE}{@code )}.
+     *
+     * @param storageId storage ID
+     * @return new dictionary, or null if there was not enough data to build one
+     * @throws IllegalArgumentException if {@code storageId} is negative
+     * @throws io.permazen.kv.RetryTransactionException if the transaction must be retried
+     */
+    public CompressionDictionary trainDictionary(int storageId) {
+        return this.trainDictionary(storageId, DEFAULT_MAX_SAMPLES, DEFAULT_DICTIONARY_SIZE);
+    }
+
+    /**
+     * Train a new dictionary for the values of keys having the given storage ID prefix and store it in the database.
+     *
+     * <p>
+     * Sample values are taken from the first non-empty values under the storage ID prefix. The new dictionary is
+     * stored and {@linkplain ValueCompressor#addDictionary registered} with this instance's {@link ValueCompressor},
+     * so it applies to values written from now on. Existing values are not recompressed, and the previous dictionary,
+     * if any, must be kept because those values still refer to it.
+     *
+     * @param storageId storage ID
+     * @param maxSamples maximum number of sample values
+     * @param maxSize maximum dictionary size
+     * @return new dictionary, or null if there was not enough data to build one
+     * @throws IllegalArgumentException if {@code storageId} is negative
+     * @throws IllegalArgumentException if {@code maxSamples} is not positive
+     * @throws IllegalArgumentException if {@code maxSize} is not positive or greater than {@link CompressionDictionary#MAX_SIZE}
+     * @throws io.permazen.kv.RetryTransactionException if the transaction must be retried
+     */
+    public CompressionDictionary trainDictionary(int storageId, int maxSamples, int maxSize) {
+        Preconditions.checkArgument(storageId >= 0, "storageId < 0");
+        Preconditions.checkArgument(maxSamples > 0, "maxSamples <= 0");
+        Preconditions.checkArgument(maxSize > 0 && maxSize <= CompressionDictionary.MAX_SIZE, "invalid maxSize");
+        final CompressingKVTransaction tx = this.createTransaction();
+        boolean success = false;
+        try {
+
+            // Gather samples
+            final KeyRange range = KeyRange.forPrefix(UnsignedIntEncoder.encode(storageId));
+            final ArrayList<byte[]> samples = new ArrayList<>();
+            try (KVCursor cursor = tx.getRangeView(range.getMin(), range.getMax(), false)) {
+                while (samples.size() < maxSamples && cursor.next()) {
+                    if (cursor.getValue().getLength() > 0)
+                        samples.add(cursor.getValue().toByteArray());
+                }
+            }
+
+            // Choose next dictionary ID
+            final KeyRange dictionaryRange = this.compressor.getDictionaryKeyRange();
+            final KVPair last = tx.getInnerTransaction().getAtMost(dictionaryRange.getMax(), dictionaryRange.getMin());
+            final int id = last != null ? this.compressor.decodeDictionary(last.getKey(), last.getValue()).getId() + 1 : 0;
+
+            // Build and store dictionary
+            final CompressionDictionary dictionary = CompressionDictionary.train(id, storageId, samples, maxSize);
+            if (dictionary != null)
+                tx.getInnerTransaction().put(this.compressor.getDictionaryKey(id), this.compressor.encodeDictionary(dictionary));
+            tx.commit();
+            success = true;
+            if (dictionary != null)
+                this.compressor.addDictionary(dictionary);
+            return dictionary;
+        } finally {
+            if (!success)
+                tx.rollback();
+        }
+    }
+
+    // Load all dictionaries from the database
+    private void loadDictionaries() {
+        final KVTransaction tx = this.db.createTransaction();
+        boolean success = false;
+        try {
+            final KeyRange range = this.compressor.getDictionaryKeyRange();
+            try (CloseableIterator<KVPair> i = tx.getRange(range)) {
+                while (i.hasNext()) {
+                    final KVPair pair = i.next();
+                    this.compressor.addDictionary(this.compressor.decodeDictionary(pair.getKey(), pair.getValue()));
+                }
+            }
+            tx.commit();
+            success = true;
+        } finally {
+            if (!success)
+                tx.rollback();
+        }
+    }
+
+// KVDatabase
+
+    /**
+     * Start this instance.
+     *
+     * <p>
+     * The implementation in {@link CompressingKVDatabase} starts the inner {@link KVDatabase} and then loads
+     * the dictionaries stored in it.
+     */
+    @Override
+    public void start() {
+        this.db.start();
+        this.loadDictionaries();
+    }
+
+    @Override
+    public void stop() {
+        this.db.stop();
+    }
+
+    @Override
+    public CompressingKVTransaction createTransaction(Map<String, ?> options) {
+        return new CompressingKVTransaction(this, this.db.createTransaction(options));
+    }
+
+    @Override
+    public CompressingKVTransaction createTransaction() {
+        return new CompressingKVTransaction(this, this.db.createTransaction());
+    }
+}
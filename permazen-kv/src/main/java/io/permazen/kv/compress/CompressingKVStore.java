@@ -0,0 +1,223 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.kv.compress;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Iterators;
+
+import io.permazen.kv.KVCursor;
+import io.permazen.kv.KVPair;
+import io.permazen.kv.KVStore;
+import io.permazen.kv.KeyRange;
+import io.permazen.kv.mvcc.Mutations;
+import io.permazen.kv.util.ForwardingKVStore;
+import io.permazen.util.ByteSlice;
+import io.permazen.util.ByteUtil;
+import io.permazen.util.CloseableIterator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link KVStore} view of an underlying {@link KVStore} in which values are transparently compressed.
+ *
+ * <p>
+ * Values are encoded by a {@link ValueCompressor} when written and decoded when read. Keys are not modified,
+ * so key ordering and key range operations are unaffected. Values returned by {@link #getRangeView getRangeView()}
+ * cursors are not decoded unless and until {@link KVCursor#getValue} is invoked, so scans that only look at keys
+ * never pay for decompression. Values encountered that use a dictionary not yet known to the {@link ValueCompressor}
+ * cause the dictionary to be read from the underlying {@link KVStore}.
+ *
+ * <p>
+ * Because stored values differ from the values seen by the caller, {@link #adjustCounter adjustCounter()} is
+ * implemented as a read followed by a write, and therefore never behaves in a lock-free manner.
+ */
+public abstract class CompressingKVStore extends ForwardingKVStore {
+
+    private final ValueCompressor compressor;
+
+    /**
+     * Constructor.
+     *
+     * @param compressor value encoder
+     * @throws IllegalArgumentException if {@code compressor} is null
+     */
+    protected CompressingKVStore(ValueCompressor compressor) {
+        Preconditions.checkArgument(compressor != null, "null compressor");
+        this.compressor = compressor;
+    }
+
+    /**
+     * Get the {@link ValueCompressor} associated with this instance.
+     *
+     * @return value encoder
+     */
+    public ValueCompressor getValueCompressor() {
+        return this.compressor;
+    }
+
+    /**
+     * Create a {@link CompressingKVStore} instance using the specified {@link ValueCompressor} and underlying {@link KVStore}.
+     *
+     * @param kvstore underyling key/value store
+     * @param compressor value encoder
+     * @return view of {@code kvstore} with values compressed by {@code compressor}
+     * @throws IllegalArgumentException if either parameter is null
+     */
+    public static CompressingKVStore create(final KVStore kvstore, ValueCompressor compressor) {
+        Preconditions.checkArgument(kvstore != null, "null kvstore");
+        return new CompressingKVStore(compressor) {
+            @Override
+            protected KVStore delegate() {
+                return kvstore;
+            }
+        };
+    }
+
+// KVStore
+
+    @Override
+    public byte[] get(byte[] key) {
+        return this.decode(this.delegate().get(key));
+    }
+
+    @Override
+    public List<byte[]> getMany(List<byte[]> keys) {
+        final List<byte[]> values = this.delegate().getMany(keys);
+        final ArrayList<byte[]> decodedValues = new ArrayList<>(values.size());
+        for (byte[] value : values)
+            decodedValues.add(this.decode(value));
+        return decodedValues;
+    }
+
+    @Override
+    public KVPair getAtLeast(byte[] minKey, byte[] maxKey) {
+        return this.decode(this.delegate().getAtLeast(minKey, maxKey));
+    }
+
+    @Override
+    public KVPair getAtMost(byte[] maxKey, byte[] minKey) {
+        return this.decode(this.delegate().getAtMost(maxKey, minKey));
+    }
+
+    @Override
+    public CloseableIterator<KVPair> getRange(byte[] minKey, byte[] maxKey, boolean reverse) {
+        final CloseableIterator<KVPair> i = this.delegate().getRange(minKey, maxKey, reverse);
+        return CloseableIterator.wrap(Iterators.transform(i, this::decode), i);
+    }
+
+    @Override
+    public KVCursor getRangeView(byte[] minKey, byte[] maxKey, boolean reverse) {
+        return new DecodingCursor(this.delegate().getRangeView(minKey, maxKey, reverse));
+    }
+
+    @Override
+    public void put(byte[] key, byte[] value) {
+        this.delegate().put(key, this.compressor.compress(key, value));
+    }
+
+    @Override
+    public void adjustCounter(byte[] key, long amount) {
+        if (key == null)
+            throw new NullPointerException("null key");
+        final byte[] previous = this.get(key);
+        if (previous == null)
+            return;
+        final long oldValue;
+        try {
+            oldValue = this.decodeCounter(previous);
+        } catch (IllegalArgumentException e) {
+            return;                                                     // if previous value is not valid, behavior is undefined
+        }
+        this.put(key, this.encodeCounter(oldValue + amount));
+    }
+
+    @Override
+    public void apply(Mutations mutations) {
+        Preconditions.checkArgument(mutations != null, "null mutations");
+        for (KeyRange remove : mutations.getRemoveRanges()) {
+            final byte[] min = remove.getMin();
+            final byte[] max = remove.getMax();
+            if (max != null && ByteUtil.isConsecutive(min, max))
+                this.remove(min);
+            else
+                this.removeRange(min, max);
+        }
+        for (Map.Entry<byte[], byte[]> entry : mutations.getPutPairs())
+            this.put(entry.getKey(), entry.getValue());
+        for (Map.Entry<byte[], Long> entry : mutations.getAdjustPairs())
+            this.adjustCounter(entry.getKey(), entry.getValue());
+    }
+
+// Decoding
+
+    private byte[] decode(byte[] value) {
+        if (value == null)
+            return null;
+        return this.compressor.decompress(value, 0, value.length, this::loadDictionary);
+    }
+
+    private KVPair decode(KVPair pair) {
+        if (pair == null)
+            return null;
+        return new KVPair(pair.getKey(), this.decode(pair.getValue()));
+    }
+
+    private CompressionDictionary loadDictionary(int id) {
+        final byte[] key = this.compressor.getDictionaryKey(id);
+        final byte[] value = this.delegate().get(key);
+        return value != null ? this.compressor.decodeDictionary(key, value) : null;
+    }
+
+// DecodingCursor
+
+    private class DecodingCursor implements KVCursor {
+
+        private final KVCursor cursor;
+        private final ByteSlice value = new ByteSlice();
+
+        private boolean decoded;
+
+        DecodingCursor(KVCursor cursor) {
+            this.cursor = cursor;
+        }
+
+        @Override
+        public boolean next() {
+            this.decoded = false;
+            return this.cursor.next();
+        }
+
+        @Override
+        public ByteSlice getKey() {
+            return this.cursor.getKey();
+        }
+
+        @Override
+        public ByteSlice getValue() {
+            if (!this.decoded) {
+                final ByteSlice encoded = this.cursor.getValue();
+                final byte[] buf = encoded.getArray();
+                final int off = encoded.getOffset();
+                final int len = encoded.getLength();
+                if (len == 0 || encoded.byteAt(0) == ValueCompressor.HEADER_RAW)      // no need to copy
+                    this.value.set(buf, off + Math.min(len, 1), Math.max(len - 1, 0));
+                else {
+                    this.value.set(CompressingKVStore.this.compressor.decompress(buf, off, len,
+                      CompressingKVStore.this::loadDictionary));
+                }
+                this.decoded = true;
+            }
+            return this.value;
+        }
+
+        @Override
+        public void close() {
+            this.cursor.close();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.kv.compress;
+
+import com.google.common.base.Preconditions;
+
+import io.permazen.kv.CloseableKVStore;
+import io.permazen.kv.KVTransaction;
+import io.permazen.kv.KeyRange;
+import io.permazen.kv.util.CloseableForwardingKVStore;
+
+import java.util.concurrent.Future;
+
+/**
+ * {@link KVTransaction} view of an inner {@link KVTransaction} in which values are transparently compressed.
+ *
+ * <p>
+ * Instances are normally created indirectly from {@link CompressingKVDatabase} instances via
+ * {@link CompressingKVDatabase#createTransaction}.
+ *
+ * @see CompressingKVStore
+ */
+public class CompressingKVTransaction extends CompressingKVStore implements KVTransaction {
+
+    private final CompressingKVDatabase kvdb;
+    private final KVTransaction tx;
+
+    /**
+     * Constructor.
+     *
+     * @param kvdb associated database
+     * @param tx inner transaction
+     * @throws IllegalArgumentException if either parameter is null
+     */
+    protected CompressingKVTransaction(CompressingKVDatabase kvdb, KVTransaction tx) {
+        super(kvdb != null ? kvdb.getValueCompressor() : null);
+        Preconditions.checkArgument(tx != null, "null tx");
+        this.kvdb = kvdb;
+        this.tx = tx;
+    }
+
+    /**
+     * Get the inner transaction associated with this instance.
+     *
+     * @return inner transaction
+     */
+    public KVTransaction getInnerTransaction() {
+        return this.tx;
+    }
+
+// CompressingKVStore
+
+    @Override
+    protected KVTransaction delegate() {
+        return this.tx;
+    }
+
+// KVTransaction
+
+    @Override
+    public CompressingKVDatabase getKVDatabase() {
+        return this.kvdb;
+    }
+
+    @Override
+    public void setTimeout(long timeout) {
+        this.tx.setTimeout(timeout);
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return this.tx.isReadOnly();
+    }
+
+    @Override
+    public void setReadOnly(boolean readOnly) {
+        this.tx.setReadOnly(readOnly);
+    }
+
+    @Override
+    public Future<Void> watchKey(byte[] key) {
+        return this.tx.watchKey(key);
+    }
+
+    @Override
+    public Future<Void> watchRange(KeyRange range) {
+        return this.tx.watchRange(range);
+    }
+
+    @Override
+    public void commit() {
+        this.tx.commit();
+    }
+
+    @Override
+    public void rollback() {
+        this.tx.rollback();
+    }
+
+    @Override
+    public CloseableKVStore mutableSnapshot() {
+        final CloseableKVStore kvstore = this.tx.mutableSnapshot();
+        return new CloseableForwardingKVStore(CompressingKVStore.create(kvstore, this.getValueCompressor()), kvstore);
+    }
+}
@@ -0,0 +1,239 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.kv.compress;
+
+import com.google.common.base.Preconditions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * A preset dictionary used by a {@link ValueCompressor} to compress the values of all keys having a common
+ * storage ID prefix.
+ *
+ * <p>
+ * Small values compress poorly on their own because the compressor has nothing to refer back to. A preset dictionary
+ * containing byte sequences that commonly occur in such values fixes this; see {@link #train train()}.
+ *
+ * <p>
+ * Each dictionary has a unique, non-negative ID, which is recorded in every value compressed with it.
+ * Instances are immutable.
+ */
+public final class CompressionDictionary {
+
+    /**
+     * Maximum useful dictionary size ({@value #MAX_SIZE}), which is the size of the compression window.
+     */
+    public static final int MAX_SIZE = 32 * 1024;
+
+    private static final int DMER_LENGTH = 8;                       // unit of similarity between samples
+    private static final int SEGMENT_LENGTH = 64;                   // unit of dictionary content
+
+    private final int id;
+    private final int storageId;
+    private final byte[] data;
+
+    /**
+     * Constructor.
+     *
+     * @param id unique dictionary ID
+     * @param storageId storage ID of the keys whose values this dictionary applies to
+     * @param data dictionary content
+     * @throws IllegalArgumentException if {@code id} or {@code storageId} is negative
+     * @throws IllegalArgumentException if {@code data} is null, empty, or longer than {@link #MAX_SIZE}
+     */
+    public CompressionDictionary(int id, int storageId, byte[] data) {
+        Preconditions.checkArgument(id >= 0, "id < 0");
+        Preconditions.checkArgument(storageId >= 0, "storageId < 0");
+        Preconditions.checkArgument(data != null, "null data");
+        Preconditions.checkArgument(data.length > 0, "empty data");
+        Preconditions.checkArgument(data.length <= MAX_SIZE, "data is too long");
+        this.id = id;
+        this.storageId = storageId;
+        this.data = data.clone();
+    }
+
+    /**
+     * Get the unique ID of this dictionary.
+     *
+     * @return dictionary ID
+     */
+    public int getId() {
+        return this.id;
+    }
+
+    /**
+     * Get the storage ID of the keys whose values this dictionary applies to.
+     *
+     * @return storage ID
+     */
+    public int getStorageId() {
+        return this.storageId;
+    }
+
+    /**
+     * Get the content of this dictionary.
+     *
+     * @return (a copy of) the dictionary content
+     */
+    public byte[] getData() {
+        return this.data.clone();
+    }
+
+    // Avoids copying
+    byte[] data() {
+        return this.data;
+    }
+
+    /**
+     * Build a dictionary from sample values.
+     *
+     * <p>
+     * Each sample is divided into short, overlapping segments, and each segment is scored by how many samples share
+     * the short byte sequences it contains. Segments are then chosen greedily in score order, skipping sequences
+     * already covered by earlier choices, until the dictionary is full. The best segments are placed at the end of
+     * the dictionary, where the compressor can refer to them most cheaply.
+     *
+     * @param id unique dictionary ID
+     * @param storageId storage ID of the keys whose values the dictionary applies to
+     * @param samples sample values
+     * @param maxSize maximum dictionary size
+     * @return new dictionary, or null if the samples have nothing in common
+     * @throws IllegalArgumentException if {@code id} or {@code storageId} is negative
+     * @throws IllegalArgumentException if {@code samples} is null
+     * @throws IllegalArgumentException if {@code maxSize} is not positive or greater than {@link #MAX_SIZE}
+     */
+    public static CompressionDictionary train(int id, int storageId, Iterable<byte[]> samples, int maxSize) {
+        Preconditions.checkArgument(id >= 0, "id < 0");
+        Preconditions.checkArgument(storageId >= 0, "storageId < 0");
+        Preconditions.checkArgument(samples != null, "null samples");
+        Preconditions.checkArgument(maxSize > 0 && maxSize <= MAX_SIZE, "invalid maxSize");
+
+        // Count the number of samples containing each d-mer
+        final ArrayList<byte[]> sampleList = new ArrayList<>();
+        final HashMap<Long, Integer> frequencies = new HashMap<>();
+        for (byte[] sample : samples) {
+            if (sample.length < DMER_LENGTH)
+                continue;
+            sampleList.add(sample);
+            final HashSet<Long> dmers = new HashSet<>();
+            for (int i = 0; i <= sample.length - DMER_LENGTH; i++)
+                dmers.add(CompressionDictionary.dmer(sample, i));
+            for (Long dmer : dmers)
+                frequencies.merge(dmer, 1, Integer::sum);
+        }
+        frequencies.values().removeIf(count -> count < 2);
+
+        // Score candidate segments
+        final PriorityQueue<Segment> queue = new PriorityQueue<>(Comparator.comparingLong((Segment s) -> s.score).reversed());
+        for (byte[] sample : sampleList) {
+            for (int off = 0; off < sample.length - DMER_LENGTH + 1; off += SEGMENT_LENGTH / 2) {
+                final Segment segment = new Segment(sample, off, Math.min(SEGMENT_LENGTH, sample.length - off));
+                segment.score(frequencies);
+                if (segment.score > 0)
+                    queue.add(segment);
+            }
+        }
+
+        // Choose segments greedily; because scores only decrease as d-mers get covered, we can rescore lazily
+        final List<Segment> chosen = new ArrayList<>();
+        int size = 0;
+        while (size < maxSize && !queue.isEmpty()) {
+            final Segment segment = queue.poll();
+            final long previousScore = segment.score;
+            segment.score(frequencies);
+            if (segment.score <= 0)
+                continue;
+            if (segment.score < previousScore && !queue.isEmpty() && segment.score < queue.peek().score) {
+                queue.add(segment);
+                continue;
+            }
+            final int length = Math.min(segment.length, maxSize - size);
+            chosen.add(new Segment(segment.sample, segment.offset, length));
+            size += length;
+            for (int i = segment.offset; i <= segment.offset + segment.length - DMER_LENGTH; i++)
+                frequencies.remove(CompressionDictionary.dmer(segment.sample, i));
+        }
+        if (chosen.isEmpty())
+            return null;
+
+        // Build dictionary, with the best segments last
+        final byte[] data = new byte[size];
+        int off = size;
+        for (Segment segment : chosen) {
+            off -= segment.length;
+            System.arraycopy(segment.sample, segment.offset, data, off, segment.length);
+        }
+        assert off == 0;
+        return new CompressionDictionary(id, storageId, data);
+    }
+
+    private static long dmer(byte[] buf, int off) {
+        long value = 0;
+        for (int i = 0; i < DMER_LENGTH; i++)
+            value = (value << 8) | (buf[off + i] & 0xff);
+        return value;
+    }
+
+// Object
+
+    @Override
+    public String toString() {
+        return this.getClass().getSimpleName()
+          + "[id=" + this.id
+          + ",storageId=" + this.storageId
+          + ",size=" + this.data.length
+          + "]";
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this)
+            return true;
+        if (obj == null || obj.getClass() != this.getClass())
+            return false;
+        final CompressionDictionary that = (CompressionDictionary)obj;
+        return this.id == that.id && this.storageId == that.storageId && Arrays.equals(this.data, that.data);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.id ^ (this.storageId << 16) ^ Arrays.hashCode(this.data);
+    }
+
+// Segment
+
+    private static final class Segment {
+
+        final byte[] sample;
+        final int offset;
+        final int length;
+        long score;
+
+        Segment(byte[] sample, int offset, int length) {
+            this.sample = sample;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        // Score is the total frequency of the distinct, uncovered d-mers in this segment
+        void score(HashMap<Long, Integer> frequencies) {
+            final HashSet<Long> seen = new HashSet<>();
+            long total = 0;
+            for (int i = this.offset; i <= this.offset + this.length - DMER_LENGTH; i++) {
+                final Long dmer = CompressionDictionary.dmer(this.sample, i);
+                if (seen.add(dmer))
+                    total += frequencies.getOrDefault(dmer, 0);
+            }
+            this.score = total;
+        }
+    }
+}
@@ -0,0 +1,410 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.kv.compress;
+
+import com.google.common.base.Preconditions;
+
+import io.permazen.kv.KeyRange;
+import io.permazen.util.ByteReader;
+import io.permazen.util.ByteUtil;
+import io.permazen.util.UnsignedIntEncoder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntFunction;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Encodes and decodes the values stored by {@link CompressingKVStore}s.
+ *
+ * <p>
+ * Empty values are stored as-is. Every other value is stored with a one byte header:
+ * <ul>
+ *  <li>{@link #HEADER_RAW} - the original value follows</li>
+ *  <li>{@link #HEADER_DEFLATE} - the original length and the raw DEFLATE compressed value follow</li>
+ *  <li>{@link #HEADER_DEFLATE_DICTIONARY} - the ID of a {@link CompressionDictionary}, the original length,
+ *      and the raw DEFLATE compressed value (using the dictionary as its preset dictionary) follow</li>
+ * </ul>
+ * Integers are encoded via {@link UnsignedIntEncoder}. Values are only compressed when their length is at least
+ * the configured {@linkplain #getThreshold threshold} and compression actually makes them smaller.
+ *
+ * <p>
+ * A value is compressed using the most recently {@linkplain #addDictionary added} dictionary associated with its key's
+ * storage ID prefix, if any. Dictionaries are persisted under the {@linkplain #getDictionaryKeyPrefix dictionary key
+ * prefix}: the key is the prefix followed by the dictionary ID, and the (encoded) value is the dictionary's storage ID
+ * followed by its content. Since dictionary records are stored like any other value, they are visible through a
+ * {@link CompressingKVStore} and may be copied, exported, etc., along with the rest of the data.
+ *
+ * <p>
+ * Instances are thread safe.
+ */
+public class ValueCompressor {
+
+    /**
+     * Header byte for values stored uncompressed.
+     */
+    public static final int HEADER_RAW = 0x00;
+
+    /**
+     * Header byte for values compressed without a dictionary.
+     */
+    public static final int HEADER_DEFLATE = 0x01;
+
+    /**
+     * Header byte for values compressed with a {@link CompressionDictionary}.
+     */
+    public static final int HEADER_DEFLATE_DICTIONARY = 0x02;
+
+    /**
+     * Default minimum length for values to be compressed ({@value #DEFAULT_THRESHOLD}).
+     */
+    public static final int DEFAULT_THRESHOLD = 64;
+
+    private static final byte[] DEFAULT_DICTIONARY_KEY_PREFIX = ByteUtil.parse("00ff436f6d7072657373696f6e44696374696f6e617279");
+
+    private final int threshold;
+    private final int level;
+    private final byte[] dictionaryKeyPrefix;
+    private final ConcurrentHashMap<Integer, CompressionDictionary> dictionaries = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, CompressionDictionary> currentDictionaries = new ConcurrentHashMap<>();
+    private final ThreadLocal<Deflater> deflaters;
+    private final ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(() -> new Inflater(true));
+
+    /**
+     * Default constructor.
+     *
+     * <p>
+     * Uses {@link #DEFAULT_THRESHOLD}, {@link Deflater#DEFAULT_COMPRESSION}, and the
+     * {@linkplain #getDefaultDictionaryKeyPrefix default dictionary key prefix}.
+     */
+    public ValueCompressor() {
+        this(DEFAULT_THRESHOLD, Deflater.DEFAULT_COMPRESSION, DEFAULT_DICTIONARY_KEY_PREFIX);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param threshold minimum length for values to be compressed
+     * @param level compression level, or {@link Deflater#DEFAULT_COMPRESSION}
+     * @param dictionaryKeyPrefix key prefix under which dictionaries are stored
+     * @throws IllegalArgumentException if {@code threshold} is negative
+     * @throws IllegalArgumentException if {@code level} is invalid
+     * @throws IllegalArgumentException if {@code dictionaryKeyPrefix} is null
+     */
+    public ValueCompressor(int threshold, int level, byte[] dictionaryKeyPrefix) {
+        Preconditions.checkArgument(threshold >= 0, "threshold < 0");
+        Preconditions.checkArgument(level == Deflater.DEFAULT_COMPRESSION
+          || (level >= Deflater.NO_COMPRESSION && level <= Deflater.BEST_COMPRESSION), "invalid level");
+        Preconditions.checkArgument(dictionaryKeyPrefix != null, "null dictionaryKeyPrefix");
+        this.threshold = threshold;
+        this.level = level;
+        this.dictionaryKeyPrefix = dictionaryKeyPrefix.clone();
+        this.deflaters = ThreadLocal.withInitial(() -> new Deflater(this.level, true));
+    }
+
+    /**
+     * Get the default key prefix under which dictionaries are stored.
+     *
+     * <p>
+     * This prefix is {@code 0x00 0xff} followed by the ASCII string {@code "CompressionDictionary"}, which puts
+     * dictionaries into the area of the key space that Permazen reserves for user meta-data.
+     *
+     * @return (a copy of) the default dictionary key prefix
+     */
+    public static byte[] getDefaultDictionaryKeyPrefix() {
+        return DEFAULT_DICTIONARY_KEY_PREFIX.clone();
+    }
+
+    /**
+     * Get the minimum length for values to be compressed.
+     *
+     * @return compression threshold
+     */
+    public int getThreshold() {
+        return this.threshold;
+    }
+
+    /**
+     * Get the compression level.
+     *
+     * @return compression level
+     */
+    public int getLevel() {
+        return this.level;
+    }
+
+    /**
+     * Get the key prefix under which dictionaries are stored.
+     *
+     * @return (a copy of) the dictionary key prefix
+     */
+    public byte[] getDictionaryKeyPrefix() {
+        return this.dictionaryKeyPrefix.clone();
+    }
+
+// Dictionaries
+
+    /**
+     * Get the key range containing all dictionary records.
+     *
+     * @return dictionary key range
+     */
+    public KeyRange getDictionaryKeyRange() {
+        return KeyRange.forPrefix(this.dictionaryKeyPrefix);
+    }
+
+    /**
+     * Get the key under which the dictionary with the given ID is stored.
+     *
+     * @param id dictionary ID
+     * @return dictionary key
+     * @throws IllegalArgumentException if {@code id} is negative
+     */
+    public byte[] getDictionaryKey(int id) {
+        Preconditions.checkArgument(id >= 0, "id < 0");
+        final byte[] key = Arrays.copyOf(this.dictionaryKeyPrefix,
+          this.dictionaryKeyPrefix.length + UnsignedIntEncoder.encodeLength(id));
+        UnsignedIntEncoder.encode(id, key, this.dictionaryKeyPrefix.length);
+        return key;
+    }
+
+    /**
+     * Encode a dictionary record value.
+     *
+     * @param dictionary dictionary
+     * @return value to store under the {@linkplain #getDictionaryKey dictionary's key}, already encoded
+     * @throws IllegalArgumentException if {@code dictionary} is null
+     */
+    public byte[] encodeDictionary(CompressionDictionary dictionary) {
+        Preconditions.checkArgument(dictionary != null, "null dictionary");
+        final byte[] data = dictionary.data();
+        final int storageIdLength = UnsignedIntEncoder.encodeLength(dictionary.getStorageId());
+        final byte[] value = new byte[1 + storageIdLength + data.length];
+        value[0] = (byte)HEADER_RAW;
+        UnsignedIntEncoder.encode(dictionary.getStorageId(), value, 1);
+        System.arraycopy(data, 0, value, 1 + storageIdLength, data.length);
+        return value;
+    }
+
+    /**
+     * Decode a dictionary record.
+     *
+     * @param key dictionary key
+     * @param value dictionary value, as stored (i.e., still encoded)
+     * @return decoded dictionary
+     * @throws IllegalArgumentException if {@code key} or {@code value} is invalid
+     */
+    public CompressionDictionary decodeDictionary(byte[] key, byte[] value) {
+        Preconditions.checkArgument(key != null, "null key");
+        Preconditions.checkArgument(value != null, "null value");
+        Preconditions.checkArgument(ByteUtil.isPrefixOf(this.dictionaryKeyPrefix, key), "not a dictionary key");
+        final int id = UnsignedIntEncoder.decode(Arrays.copyOfRange(key, this.dictionaryKeyPrefix.length, key.length));
+        final ByteReader reader = new ByteReader(this.decompress(value));
+        final int storageId = UnsignedIntEncoder.read(reader);
+        return new CompressionDictionary(id, storageId, reader.getBytes(reader.getOffset()));
+    }
+
+    /**
+     * Register a dictionary with this instance.
+     *
+     * <p>
+     * If {@code dictionary} has a higher ID than any other dictionary registered for the same storage ID,
+     * it will be used to compress values from now on.
+     *
+     * @param dictionary dictionary
+     * @throws IllegalArgumentException if {@code dictionary} is null
+     * @throws IllegalArgumentException if a different dictionary with the same ID is already registered
+     */
+    public void addDictionary(CompressionDictionary dictionary) {
+        Preconditions.checkArgument(dictionary != null, "null dictionary");
+        final CompressionDictionary previous = this.dictionaries.putIfAbsent(dictionary.getId(), dictionary);
+        Preconditions.checkArgument(previous == null || previous.equals(dictionary),
+          "a different dictionary with ID " + dictionary.getId() + " is already registered");
+        this.currentDictionaries.merge(dictionary.getStorageId(), dictionary,
+          (d1, d2) -> d1.getId() >= d2.getId() ? d1 : d2);
+    }
+
+    /**
+     * Get the registered dictionary with the given ID.
+     *
+     * @param id dictionary ID
+     * @return dictionary, or null if not found
+     */
+    public CompressionDictionary getDictionary(int id) {
+        return this.dictionaries.get(id);
+    }
+
+    /**
+     * Get all registered dictionaries.
+     *
+     * @return dictionaries sorted by ID
+     */
+    public List<CompressionDictionary> getDictionaries() {
+        final ArrayList<CompressionDictionary> list = new ArrayList<>(this.dictionaries.values());
+        Collections.sort(list, (d1, d2) -> Integer.compare(d1.getId(), d2.getId()));
+        return list;
+    }
+
+    /**
+     * Get the dictionary currently used to compress values for the given storage ID.
+     *
+     * @param storageId storage ID
+     * @return current dictionary, or null if none
+     */
+    public CompressionDictionary getCurrentDictionary(int storageId) {
+        return this.currentDictionaries.get(storageId);
+    }
+
+// Encoding
+
+    /**
+     * Encode a value, compressing it if appropriate.
+     *
+     * @param key the value's key, used to choose a dictionary
+     * @param value value to encode
+     * @return encoded value
+     * @throws IllegalArgumentException if either parameter is null
+     */
+    public byte[] compress(byte[] key, byte[] value) {
+        Preconditions.checkArgument(key != null, "null key");
+        Preconditions.checkArgument(value != null, "null value");
+        if (value.length == 0)
+            return value;
+
+        // Try to compress
+        if (value.length >= this.threshold && this.level != Deflater.NO_COMPRESSION) {
+            final CompressionDictionary dictionary = !this.currentDictionaries.isEmpty() ?
+              this.currentDictionaries.get(ValueCompressor.getStorageId(key)) : null;
+            final byte[] buf = new byte[1 + 2 * UnsignedIntEncoder.MAX_ENCODED_LENGTH + value.length];
+            int off = 0;
+            if (dictionary != null) {
+                buf[off++] = (byte)HEADER_DEFLATE_DICTIONARY;
+                off += UnsignedIntEncoder.encode(dictionary.getId(), buf, off);
+            } else
+                buf[off++] = (byte)HEADER_DEFLATE;
+            off += UnsignedIntEncoder.encode(value.length, buf, off);
+            final int limit = value.length - off;                           // compressed result must be smaller
+            if (limit > 0) {
+                final Deflater deflater = this.deflaters.get();
+                deflater.reset();
+                try {
+                    if (dictionary != null)
+                        deflater.setDictionary(dictionary.data());
+                    deflater.setInput(value);
+                    deflater.finish();
+                    off += deflater.deflate(buf, off, limit);
+                    if (deflater.finished())
+                        return Arrays.copyOf(buf, off);
+                } finally {
+                    deflater.reset();                                       // release reference to input
+                }
+            }
+        }
+
+        // Store uncompressed
+        final byte[] raw = new byte[1 + value.length];
+        raw[0] = (byte)HEADER_RAW;
+        System.arraycopy(value, 0, raw, 1, value.length);
+        return raw;
+    }
+
+    /**
+     * Decode a value.
+     *
+     * <p>
+     * Equivalent to {@link #decompress(byte[], int, int, IntFunction) decompress}{@code (value, 0, value.length, null)}.
+     *
+     * @param value encoded value
+     * @return decoded value
+     * @throws IllegalArgumentException if {@code value} is null or invalid
+     * @throws IllegalArgumentException if {@code value} uses an unknown dictionary
+     */
+    public byte[] decompress(byte[] value) {
+        Preconditions.checkArgument(value != null, "null value");
+        return this.decompress(value, 0, value.length, null);
+    }
+
+    /**
+     * Decode a value.
+     *
+     * @param buf buffer containing encoded value
+     * @param off offset of encoded value
+     * @param len length of encoded value
+     * @param dictionaryLoader invoked to find unregistered dictionaries, or null for none;
+     *  any dictionary it returns is registered with this instance
+     * @return decoded value
+     * @throws IllegalArgumentException if {@code buf} is null
+     * @throws IllegalArgumentException if the encoded value is invalid
+     * @throws IllegalArgumentException if the encoded value uses an unknown dictionary
+     */
+    public byte[] decompress(byte[] buf, int off, int len, IntFunction<CompressionDictionary> dictionaryLoader) {
+        Preconditions.checkArgument(buf != null, "null buf");
+        if (len == 0)
+            return ByteUtil.EMPTY;
+        final ByteReader reader = new ByteReader(buf, off, len);
+        final int header = reader.readByte();
+        switch (header) {
+        case HEADER_RAW:
+            return Arrays.copyOfRange(buf, off + 1, off + len);
+        case HEADER_DEFLATE:
+            return this.inflate(buf, reader, null);
+        case HEADER_DEFLATE_DICTIONARY:
+        {
+            final int id = UnsignedIntEncoder.read(reader);
+            CompressionDictionary dictionary = this.dictionaries.get(id);
+            if (dictionary == null && dictionaryLoader != null && (dictionary = dictionaryLoader.apply(id)) != null) {
+                Preconditions.checkArgument(dictionary.getId() == id, "loaded wrong dictionary");
+                this.addDictionary(dictionary);
+            }
+            if (dictionary == null)
+                throw new IllegalArgumentException("value uses unknown compression dictionary " + id);
+            return this.inflate(buf, reader, dictionary);
+        }
+        default:
+            throw new IllegalArgumentException(String.format("invalid compressed value header 0x%02x", header));
+        }
+    }
+
+    private byte[] inflate(byte[] buf, ByteReader reader, CompressionDictionary dictionary) {
+        final int length = UnsignedIntEncoder.read(reader);
+        final byte[] result = new byte[length];
+        final Inflater inflater = this.inflaters.get();
+        inflater.reset();
+        try {
+            if (dictionary != null)
+                inflater.setDictionary(dictionary.data());
+            inflater.setInput(buf, reader.getOffset(), reader.getMax() - reader.getOffset());
+            int off = 0;
+            while (off < length) {
+                final int n = inflater.inflate(result, off, length - off);
+                if (n == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary()))
+                    throw new IllegalArgumentException("truncated compressed value");
+                off += n;
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("invalid compressed value", e);
+        } finally {
+            inflater.reset();                                               // release reference to input
+        }
+        return result;
+    }
+
+    // Get the storage ID prefix of the given key, or -1 if none
+    private static int getStorageId(byte[] key) {
+        if (key.length == 0 || (key[0] & 0xff) == 0xff || UnsignedIntEncoder.decodeLength(key[0]) > key.length)
+            return -1;
+        try {
+            return UnsignedIntEncoder.read(new ByteReader(key));
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,11 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+/**
+ * Support for transparently compressing the values stored in {@link io.permazen.kv.KVDatabase}s.
+ *
+ * @see io.permazen.kv.compress.CompressingKVDatabase
+ */
+package io.permazen.kv.compress;
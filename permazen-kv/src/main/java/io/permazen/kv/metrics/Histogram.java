@@ -0,0 +1,166 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.kv.metrics;
+
+import com.google.common.base.Preconditions;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A concurrent histogram of non-negative {@code long} values, e.g., latencies in nanoseconds.
+ *
+ * <p>
+ * Values are counted in logarithmically sized buckets: values less than {@value #SUB_BUCKETS} have their own buckets,
+ * and each larger power of two range is divided into {@value #SUB_BUCKETS} equal sub-buckets. Therefore, reported
+ * percentiles are accurate to within 12.5%, using a fixed amount of memory, no matter how many values are recorded.
+ *
+ * <p>
+ * Counts are kept in {@link LongAdder}s, so recording is cheap even when many threads record concurrently.
+ * Reading from an instance that is being concurrently updated does not return an atomic snapshot.
+ *
+ * <p>
+ * Instances are thread safe.
+ */
+public class Histogram {
+
+    /**
+     * The number of sub-buckets per power of two.
+     */
+    public static final int SUB_BUCKETS = 8;
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int NUM_BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final LongAdder[] buckets = new LongAdder[NUM_BUCKETS];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Constructor.
+     */
+    public Histogram() {
+        for (int i = 0; i < this.buckets.length; i++)
+            this.buckets[i] = new LongAdder();
+    }
+
+    /**
+     * Record a value.
+     *
+     * <p>
+     * Negative values are recorded as zero.
+     *
+     * @param value value to record
+     */
+    public void record(long value) {
+        value = Math.max(value, 0);
+        this.buckets[Histogram.bucketFor(value)].increment();
+        this.count.increment();
+        this.sum.add(value);
+        this.max.accumulate(value);
+    }
+
+    /**
+     * Get the number of values recorded.
+     *
+     * @return number of values
+     */
+    public long getCount() {
+        return this.count.sum();
+    }
+
+    /**
+     * Get the sum of all values recorded.
+     *
+     * @return sum of values
+     */
+    public long getSum() {
+        return this.sum.sum();
+    }
+
+    /**
+     * Get the largest value recorded.
+     *
+     * @return maximum value, or zero if no values have been recorded
+     */
+    public long getMax() {
+        return this.max.get();
+    }
+
+    /**
+     * Get the mean of all values recorded.
+     *
+     * @return mean value, or zero if no values have been recorded
+     */
+    public double getMean() {
+        final long total = this.count.sum();
+        return total != 0 ? (double)this.sum.sum() / total : 0.0;
+    }
+
+    /**
+     * Estimate the given percentile of the values recorded.
+     *
+     * <p>
+     * The returned value is the largest value that falls into the same bucket as the actual percentile value
+     * (but no larger than {@link #getMax}).
+     *
+     * @param percentile percentile, from 0.0 to 100.0
+     * @return estimated percentile value, or zero if no values have been recorded
+     * @throws IllegalArgumentException if {@code percentile} is out of range
+     */
+    public long getPercentile(double percentile) {
+        Preconditions.checkArgument(percentile >= 0.0 && percentile <= 100.0, "invalid percentile");
+
+        // Snapshot bucket counts
+        final long[] counts = new long[NUM_BUCKETS];
+        long total = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++)
+            total += counts[i] = this.buckets[i].sum();
+        if (total == 0)
+            return 0;
+
+        // Find bucket containing the percentile
+        final long target = Math.max((long)Math.ceil(total * percentile / 100.0), 1);
+        long seen = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            if ((seen += counts[i]) >= target)
+                return Math.min(Histogram.bucketLimit(i), this.max.get());
+        }
+        return this.max.get();
+    }
+
+    /**
+     * Discard all recorded values.
+     *
+     * <p>
+     * Values recorded concurrently with this method may or may not be discarded.
+     */
+    public void reset() {
+        for (LongAdder bucket : this.buckets)
+            bucket.reset();
+        this.count.reset();
+        this.sum.reset();
+        this.max.reset();
+    }
+
+    // Get the bucket containing the given non-negative value
+    static int bucketFor(long value) {
+        if (value < SUB_BUCKETS)
+            return (int)value;
+        final int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int)((value >>> shift) - SUB_BUCKETS);
+    }
+
+    // Get the largest value contained by the given bucket
+    static long bucketLimit(int bucket) {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+        final int shift = bucket / SUB_BUCKETS - 1;
+        final long next = (long)(SUB_BUCKETS + bucket % SUB_BUCKETS + 1) << shift;
+        return next > 0 ? next - 1 : Long.MAX_VALUE;
+    }
+}
@@ -0,0 +1,271 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.kv.metrics;
+
+import com.google.common.base.Preconditions;
+
+import io.permazen.kv.RetryTransactionException;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collects performance statistics for {@link io.permazen.kv.KVTransaction} operations.
+ *
+ * <p>
+ * For each {@link KVOperation}, instances track invocation and error counts, bytes read and written, and a latency
+ * {@link Histogram}. Instances also track transaction outcomes, {@link RetryTransactionException}s, and the lengths of
+ * {@link KVOperation#GET_RANGE} iterations. Individual measurements may also be delivered to {@link KVMetricsListener}s.
+ *
+ * <p>
+ * All counters are based on {@link LongAdder}s, so the overhead of gathering statistics is low enough to leave
+ * enabled in production.
+ *
+ * <p>
+ * Instances implement {@link KVMetricsMXBean}, so they may be registered with JMX, e.g.:
+ * <pre>
+ *  ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, new ObjectName("io.permazen:type=KVMetrics"));
+ * </pre>
+ *
+ * <p>
+ * Instances are thread safe.
+ *
+ * @see MetricsKVDatabase
+ */
+public class KVMetrics implements KVMetricsMXBean {
+
+    private static final KVOperation[] OPERATIONS = KVOperation.values();
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+    private final OpMetrics[] ops = new OpMetrics[OPERATIONS.length];
+    private final LongAdder created = new LongAdder();
+    private final LongAdder committed = new LongAdder();
+    private final LongAdder rolledBack = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final Histogram rangeLengths = new Histogram();
+    private final CopyOnWriteArrayList<KVMetricsListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Constructor.
+     */
+    public KVMetrics() {
+        for (int i = 0; i < this.ops.length; i++)
+            this.ops[i] = new OpMetrics();
+    }
+
+// Listeners
+
+    /**
+     * Add a listener to be notified of individual measurements.
+     *
+     * @param listener listener to add
+     * @throws IllegalArgumentException if {@code listener} is null
+     */
+    public void addListener(KVMetricsListener listener) {
+        Preconditions.checkArgument(listener != null, "null listener");
+        this.listeners.add(listener);
+    }
+
+    /**
+     * Remove a listener previously added via {@link #addListener addListener()}.
+     *
+     * @param listener listener to remove
+     * @throws IllegalArgumentException if {@code listener} is null
+     */
+    public void removeListener(KVMetricsListener listener) {
+        Preconditions.checkArgument(listener != null, "null listener");
+        this.listeners.remove(listener);
+    }
+
+// Statistics
+
+    /**
+     * Get the latency histogram for the given operation.
+     *
+     * @param operation operation
+     * @return live latency histogram (in nanoseconds)
+     * @throws IllegalArgumentException if {@code operation} is null
+     */
+    public Histogram getLatency(KVOperation operation) {
+        Preconditions.checkArgument(operation != null, "null operation");
+        return this.ops[operation.ordinal()].latency;
+    }
+
+    /**
+     * Get a snapshot of the statistics for the given operation.
+     *
+     * @param operation operation
+     * @return operation statistics
+     * @throws IllegalArgumentException if {@code operation} is null
+     */
+    public OperationStats getStats(KVOperation operation) {
+        Preconditions.checkArgument(operation != null, "null operation");
+        final OpMetrics op = this.ops[operation.ordinal()];
+        return new OperationStats(operation, op.latency, op.errors.sum(), op.bytesRead.sum(), op.bytesWritten.sum());
+    }
+
+    /**
+     * Get the histogram of the number of key/value pairs returned by {@link KVOperation#GET_RANGE} iterators.
+     *
+     * @return live iterator length histogram
+     */
+    public Histogram getRangeLengths() {
+        return this.rangeLengths;
+    }
+
+// KVMetricsMXBean
+
+    @Override
+    public long getTransactionsCreated() {
+        return this.created.sum();
+    }
+
+    @Override
+    public long getTransactionsCommitted() {
+        return this.committed.sum();
+    }
+
+    @Override
+    public long getTransactionsRolledBack() {
+        return this.rolledBack.sum();
+    }
+
+    @Override
+    public long getRetries() {
+        return this.retries.sum();
+    }
+
+    @Override
+    public double getRetryRate() {
+        final long total = this.created.sum();
+        return total != 0 ? (double)this.retries.sum() / total : 0.0;
+    }
+
+    @Override
+    public long getBytesRead() {
+        long total = 0;
+        for (OpMetrics op : this.ops)
+            total += op.bytesRead.sum();
+        return total;
+    }
+
+    @Override
+    public long getBytesWritten() {
+        long total = 0;
+        for (OpMetrics op : this.ops)
+            total += op.bytesWritten.sum();
+        return total;
+    }
+
+    @Override
+    public double getMeanRangeLength() {
+        return this.rangeLengths.getMean();
+    }
+
+    @Override
+    public Map<String, OperationStats> getOperations() {
+        final LinkedHashMap<String, OperationStats> map = new LinkedHashMap<>(OPERATIONS.length);
+        for (KVOperation operation : OPERATIONS)
+            map.put(operation.name(), this.getStats(operation));
+        return map;
+    }
+
+    @Override
+    public void reset() {
+        for (OpMetrics op : this.ops)
+            op.reset();
+        this.created.reset();
+        this.committed.reset();
+        this.rolledBack.reset();
+        this.retries.reset();
+        this.rangeLengths.reset();
+    }
+
+// Recording
+
+    void transactionCreated() {
+        this.created.increment();
+    }
+
+    void transactionCommitted() {
+        this.committed.increment();
+    }
+
+    void transactionRolledBack() {
+        this.rolledBack.increment();
+    }
+
+    // Record a completed operation
+    void record(KVOperation operation, long startTime, long bytesRead, long bytesWritten, RuntimeException error) {
+        final long nanos = System.nanoTime() - startTime;
+        final OpMetrics op = this.ops[operation.ordinal()];
+        op.latency.record(nanos);
+        if (bytesRead != 0)
+            op.bytesRead.add(bytesRead);
+        if (bytesWritten != 0)
+            op.bytesWritten.add(bytesWritten);
+        if (error != null)
+            this.recordError(op, error);
+        if (!this.listeners.isEmpty()) {
+            for (KVMetricsListener listener : this.listeners) {
+                try {
+                    listener.operationCompleted(operation, nanos, bytesRead, bytesWritten, error);
+                } catch (Throwable t) {
+                    this.log.error("exception from metrics listener " + listener, t);
+                }
+            }
+        }
+    }
+
+    // Record an exception thrown by a GET_RANGE iterator
+    void recordRangeError(RuntimeException error) {
+        this.recordError(this.ops[KVOperation.GET_RANGE.ordinal()], error);
+    }
+
+    // Record completion of a GET_RANGE iterator
+    void recordRange(long pairs, long bytesRead) {
+        this.rangeLengths.record(pairs);
+        if (bytesRead != 0)
+            this.ops[KVOperation.GET_RANGE.ordinal()].bytesRead.add(bytesRead);
+        if (!this.listeners.isEmpty()) {
+            for (KVMetricsListener listener : this.listeners) {
+                try {
+                    listener.rangeCompleted(pairs, bytesRead);
+                } catch (Throwable t) {
+                    this.log.error("exception from metrics listener " + listener, t);
+                }
+            }
+        }
+    }
+
+    private void recordError(OpMetrics op, RuntimeException error) {
+        op.errors.increment();
+        if (error instanceof RetryTransactionException)
+            this.retries.increment();
+    }
+
+// OpMetrics
+
+    private static final class OpMetrics {
+
+        final Histogram latency = new Histogram();
+        final LongAdder errors = new LongAdder();
+        final LongAdder bytesRead = new LongAdder();
+        final LongAdder bytesWritten = new LongAdder();
+
+        void reset() {
+            this.latency.reset();
+            this.errors.reset();
+            this.bytesRead.reset();
+            this.bytesWritten.reset();
+        }
+    }
+}
@@ -0,0 +1,42 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.kv.metrics;
+
+/**
+ * Listener interface for receiving individual {@link KVMetrics} measurements, e.g., to forward them
+ * to an external metrics system.
+ *
+ * <p>
+ * Listeners are invoked synchronously in the thread performing the operation, so they must be fast and must not block.
+ *
+ * @see KVMetrics#addListener KVMetrics.addListener()
+ */
+@FunctionalInterface
+public interface KVMetricsListener {
+
+    /**
+     * Receive notification that a {@link io.permazen.kv.KVTransaction} operation completed.
+     *
+     * @param operation the operation
+     * @param nanos duration of the operation in nanoseconds
+     * @param bytesRead number of key and value bytes returned by the operation
+     * @param bytesWritten number of key and value bytes written by the operation
+     * @param error the exception thrown by the operation, or null if the operation succeeded
+     */
+    void operationCompleted(KVOperation operation, long nanos, long bytesRead, long bytesWritten, RuntimeException error);
+
+    /**
+     * Receive notification that iteration of a {@link KVOperation#GET_RANGE} iterator completed.
+     *
+     * <p>
+     * The implementation in {@link KVMetricsListener} does nothing.
+     *
+     * @param pairs number of key/value pairs returned by the iterator
+     * @param bytesRead number of key and value bytes returned by the iterator
+     */
+    default void rangeCompleted(long pairs, long bytesRead) {
+    }
+}
@@ -0,0 +1,82 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.kv.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX interface for {@link KVMetrics}.
+ */
+public interface KVMetricsMXBean {
+
+    /**
+     * Get the number of transactions created.
+     *
+     * @return transactions created
+     */
+    long getTransactionsCreated();
+
+    /**
+     * Get the number of transactions successfully committed.
+     *
+     * @return transactions committed
+     */
+    long getTransactionsCommitted();
+
+    /**
+     * Get the number of transactions rolled back.
+     *
+     * @return transactions rolled back
+     */
+    long getTransactionsRolledBack();
+
+    /**
+     * Get the number of {@link io.permazen.kv.RetryTransactionException}s thrown by any operation.
+     *
+     * @return retry count
+     */
+    long getRetries();
+
+    /**
+     * Get the number of {@link io.permazen.kv.RetryTransactionException}s thrown per transaction created.
+     *
+     * @return retry rate, or zero if no transactions have been created
+     */
+    double getRetryRate();
+
+    /**
+     * Get the total number of key and value bytes read by all operations.
+     *
+     * @return bytes read
+     */
+    long getBytesRead();
+
+    /**
+     * Get the total number of key and value bytes written by all operations.
+     *
+     * @return bytes written
+     */
+    long getBytesWritten();
+
+    /**
+     * Get the mean number of key/value pairs returned by {@link KVOperation#GET_RANGE} iterators.
+     *
+     * @return mean iterator length
+     */
+    double getMeanRangeLength();
+
+    /**
+     * Get per-operation statistics.
+     *
+     * @return statistics keyed by {@link KVOperation} name
+     */
+    Map<String, OperationStats> getOperations();
+
+    /**
+     * Reset all statistics.
+     */
+    void reset();
+}
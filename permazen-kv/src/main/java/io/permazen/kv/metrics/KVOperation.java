@@ -0,0 +1,66 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.kv.metrics;
+
+/**
+ * The {@link io.permazen.kv.KVTransaction} operations tracked by {@link KVMetrics}.
+ */
+public enum KVOperation {
+
+    /**
+     * {@link io.permazen.kv.KVStore#get KVStore.get()}.
+     */
+    GET,
+
+    /**
+     * {@link io.permazen.kv.KVStore#getMany KVStore.getMany()}.
+     */
+    GET_MANY,
+
+    /**
+     * {@link io.permazen.kv.KVStore#getAtLeast KVStore.getAtLeast()}.
+     */
+    GET_AT_LEAST,
+
+    /**
+     * {@link io.permazen.kv.KVStore#getAtMost KVStore.getAtMost()}.
+     */
+    GET_AT_MOST,
+
+    /**
+     * {@link io.permazen.kv.KVStore#getRange(byte[], byte[], boolean) KVStore.getRange()}
+     * and {@link io.permazen.kv.KVStore#getRangeView KVStore.getRangeView()}.
+     *
+     * <p>
+     * Latency measures the time to create the iterator; bytes read are counted as iteration proceeds.
+     */
+    GET_RANGE,
+
+    /**
+     * {@link io.permazen.kv.KVStore#put KVStore.put()}.
+     */
+    PUT,
+
+    /**
+     * {@link io.permazen.kv.KVStore#remove KVStore.remove()}.
+     */
+    REMOVE,
+
+    /**
+     * {@link io.permazen.kv.KVStore#removeRange(byte[], byte[]) KVStore.removeRange()}.
+     */
+    REMOVE_RANGE,
+
+    /**
+     * {@link io.permazen.kv.KVStore#adjustCounter KVStore.adjustCounter()}.
+     */
+    ADJUST_COUNTER,
+
+    /**
+     * {@link io.permazen.kv.KVTransaction#commit KVTransaction.commit()}.
+     */
+    COMMIT;
+}
@@ -0,0 +1,102 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.kv.metrics;
+
+import com.google.common.base.Preconditions;
+
+import io.permazen.kv.KVDatabase;
+
+import java.util.Map;
+
+/**
+ * {@link KVDatabase} wrapper that gathers performance statistics for the operations performed by its transactions.
+ *
+ * <p>
+ * Instances wrap an inner {@link KVDatabase}, and all transactions are {@link MetricsKVTransaction}s wrapping the
+ * corresponding inner transactions. Statistics are collected into a {@link KVMetrics}, which may be shared among
+ * several instances and can be registered with JMX.
+ *
+ * <p>
+ * Invocations of {@link #start} and {@link #stop} are forwarded to the inner {@link KVDatabase}.
+ *
+ * @see KVMetrics
+ */
+public class MetricsKVDatabase implements KVDatabase {
+
+    private final KVDatabase db;
+    private final KVMetrics metrics;
+
+    /**
+     * Constructor.
+     *
+     * <p>
+     * Statistics are collected into a new {@link KVMetrics} instance.
+     *
+     * @param db the inner {@link KVDatabase}
+     * @throws IllegalArgumentException if {@code db} is null
+     */
+    public MetricsKVDatabase(KVDatabase db) {
+        this(db, new KVMetrics());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param db the inner {@link KVDatabase}
+     * @param metrics where to collect statistics
+     * @throws IllegalArgumentException if either parameter is null
+     */
+    public MetricsKVDatabase(KVDatabase db, KVMetrics metrics) {
+        Preconditions.checkArgument(db != null, "null db");
+        Preconditions.checkArgument(metrics != null, "null metrics");
+        this.db = db;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Get the inner {@link KVDatabase} associated with this instance.
+     *
+     * @return the inner {@link KVDatabase}
+     */
+    public KVDatabase getInnerKVDatabase() {
+        return this.db;
+    }
+
+    /**
+     * Get the {@link KVMetrics} into which this instance collects statistics.
+     *
+     * @return statistics
+     */
+    public KVMetrics getMetrics() {
+        return this.metrics;
+    }
+
+// KVDatabase
+
+    @Override
+    public void start() {
+        this.db.start();
+    }
+
+    @Override
+    public void stop() {
+        this.db.stop();
+    }
+
+    @Override
+    public MetricsKVTransaction createTransaction(Map<String, ?> options) {
+        final MetricsKVTransaction tx = new MetricsKVTransaction(this, this.db.createTransaction(options));
+        this.metrics.transactionCreated();
+        return tx;
+    }
+
+    @Override
+    public MetricsKVTransaction createTransaction() {
+        final MetricsKVTransaction tx = new MetricsKVTransaction(this, this.db.createTransaction());
+        this.metrics.transactionCreated();
+        return tx;
+    }
+}
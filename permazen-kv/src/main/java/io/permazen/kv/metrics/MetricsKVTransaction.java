@@ -0,0 +1,399 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.kv.metrics;
+
+import com.google.common.base.Preconditions;
+
+import io.permazen.kv.CloseableKVStore;
+import io.permazen.kv.KVCursor;
+import io.permazen.kv.KVPair;
+import io.permazen.kv.KVStore;
+import io.permazen.kv.KVTransaction;
+import io.permazen.kv.KeyRange;
+import io.permazen.kv.util.ForwardingKVStore;
+import io.permazen.util.ByteSlice;
+import io.permazen.util.CloseableIterator;
+
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * {@link KVTransaction} wrapper that gathers performance statistics into a {@link KVMetrics}.
+ *
+ * <p>
+ * Operation latencies are measured with {@link System#nanoTime}. For {@link #getRange getRange()} and
+ * {@link #getRangeView getRangeView()}, the measured latency covers only the creation of the iterator; the number
+ * of key/value pairs and bytes returned are recorded when the iterator is exhausted or closed.
+ *
+ * @see MetricsKVDatabase
+ */
+public class MetricsKVTransaction extends ForwardingKVStore implements KVTransaction {
+
+    private static final int COUNTER_SIZE = 8;
+
+    private final MetricsKVDatabase kvdb;
+    private final KVTransaction tx;
+    private final KVMetrics metrics;
+    private final AtomicBoolean finished = new AtomicBoolean();
+
+    /**
+     * Constructor.
+     *
+     * @param kvdb associated database
+     * @param tx inner transaction
+     * @throws IllegalArgumentException if either parameter is null
+     */
+    protected MetricsKVTransaction(MetricsKVDatabase kvdb, KVTransaction tx) {
+        Preconditions.checkArgument(kvdb != null, "null kvdb");
+        Preconditions.checkArgument(tx != null, "null tx");
+        this.kvdb = kvdb;
+        this.tx = tx;
+        this.metrics = kvdb.getMetrics();
+    }
+
+    /**
+     * Get the inner transaction associated with this instance.
+     *
+     * @return inner transaction
+     */
+    public KVTransaction getInnerTransaction() {
+        return this.tx;
+    }
+
+// ForwardingKVStore
+
+    @Override
+    protected KVStore delegate() {
+        return this.tx;
+    }
+
+// KVStore
+
+    @Override
+    public byte[] get(byte[] key) {
+        final long startTime = System.nanoTime();
+        final byte[] value;
+        try {
+            value = this.tx.get(key);
+        } catch (RuntimeException e) {
+            this.metrics.record(KVOperation.GET, startTime, 0, 0, e);
+            throw e;
+        }
+        this.metrics.record(KVOperation.GET, startTime, value != null ? value.length : 0, 0, null);
+        return value;
+    }
+
+    @Override
+    public List<byte[]> getMany(List<byte[]> keys) {
+        final long startTime = System.nanoTime();
+        final List<byte[]> values;
+        try {
+            values = this.tx.getMany(keys);
+        } catch (RuntimeException e) {
+            this.metrics.record(KVOperation.GET_MANY, startTime, 0, 0, e);
+            throw e;
+        }
+        long bytesRead = 0;
+        for (byte[] value : values) {
+            if (value != null)
+                bytesRead += value.length;
+        }
+        this.metrics.record(KVOperation.GET_MANY, startTime, bytesRead, 0, null);
+        return values;
+    }
+
+    @Override
+    public KVPair getAtLeast(byte[] minKey, byte[] maxKey) {
+        final long startTime = System.nanoTime();
+        final KVPair pair;
+        try {
+            pair = this.tx.getAtLeast(minKey, maxKey);
+        } catch (RuntimeException e) {
+            this.metrics.record(KVOperation.GET_AT_LEAST, startTime, 0, 0, e);
+            throw e;
+        }
+        this.metrics.record(KVOperation.GET_AT_LEAST, startTime, MetricsKVTransaction.size(pair), 0, null);
+        return pair;
+    }
+
+    @Override
+    public KVPair getAtMost(byte[] maxKey, byte[] minKey) {
+        final long startTime = System.nanoTime();
+        final KVPair pair;
+        try {
+            pair = this.tx.getAtMost(maxKey, minKey);
+        } catch (RuntimeException e) {
+            this.metrics.record(KVOperation.GET_AT_MOST, startTime, 0, 0, e);
+            throw e;
+        }
+        this.metrics.record(KVOperation.GET_AT_MOST, startTime, MetricsKVTransaction.size(pair), 0, null);
+        return pair;
+    }
+
+    @Override
+    public CloseableIterator<KVPair> getRange(byte[] minKey, byte[] maxKey, boolean reverse) {
+        final long startTime = System.nanoTime();
+        final CloseableIterator<KVPair> iterator;
+        try {
+            iterator = this.tx.getRange(minKey, maxKey, reverse);
+        } catch (RuntimeException e) {
+            this.metrics.record(KVOperation.GET_RANGE, startTime, 0, 0, e);
+            throw e;
+        }
+        this.metrics.record(KVOperation.GET_RANGE, startTime, 0, 0, null);
+        return new RangeIterator(iterator);
+    }
+
+    @Override
+    public KVCursor getRangeView(byte[] minKey, byte[] maxKey, boolean reverse) {
+        final long startTime = System.nanoTime();
+        final KVCursor cursor;
+        try {
+            cursor = this.tx.getRangeView(minKey, maxKey, reverse);
+        } catch (RuntimeException e) {
+            this.metrics.record(KVOperation.GET_RANGE, startTime, 0, 0, e);
+            throw e;
+        }
+        this.metrics.record(KVOperation.GET_RANGE, startTime, 0, 0, null);
+        return new RangeCursor(cursor);
+    }
+
+    @Override
+    public void put(byte[] key, byte[] value) {
+        final long startTime = System.nanoTime();
+        try {
+            this.tx.put(key, value);
+        } catch (RuntimeException e) {
+            this.metrics.record(KVOperation.PUT, startTime, 0, 0, e);
+            throw e;
+        }
+        this.metrics.record(KVOperation.PUT, startTime, 0, key.length + value.length, null);
+    }
+
+    @Override
+    public void remove(byte[] key) {
+        final long startTime = System.nanoTime();
+        try {
+            this.tx.remove(key);
+        } catch (RuntimeException e) {
+            this.metrics.record(KVOperation.REMOVE, startTime, 0, 0, e);
+            throw e;
+        }
+        this.metrics.record(KVOperation.REMOVE, startTime, 0, key.length, null);
+    }
+
+    @Override
+    public void removeRange(byte[] minKey, byte[] maxKey) {
+        final long startTime = System.nanoTime();
+        try {
+            this.tx.removeRange(minKey, maxKey);
+        } catch (RuntimeException e) {
+            this.metrics.record(KVOperation.REMOVE_RANGE, startTime, 0, 0, e);
+            throw e;
+        }
+        final long bytesWritten = (minKey != null ? minKey.length : 0) + (maxKey != null ? maxKey.length : 0);
+        this.metrics.record(KVOperation.REMOVE_RANGE, startTime, 0, bytesWritten, null);
+    }
+
+    @Override
+    public void adjustCounter(byte[] key, long amount) {
+        final long startTime = System.nanoTime();
+        try {
+            this.tx.adjustCounter(key, amount);
+        } catch (RuntimeException e) {
+            this.metrics.record(KVOperation.ADJUST_COUNTER, startTime, 0, 0, e);
+            throw e;
+        }
+        this.metrics.record(KVOperation.ADJUST_COUNTER, startTime, 0, key.length + COUNTER_SIZE, null);
+    }
+
+// KVTransaction
+
+    @Override
+    public MetricsKVDatabase getKVDatabase() {
+        return this.kvdb;
+    }
+
+    @Override
+    public void setTimeout(long timeout) {
+        this.tx.setTimeout(timeout);
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return this.tx.isReadOnly();
+    }
+
+    @Override
+    public void setReadOnly(boolean readOnly) {
+        this.tx.setReadOnly(readOnly);
+    }
+
+    @Override
+    public Future<Void> watchKey(byte[] key) {
+        return this.tx.watchKey(key);
+    }
+
+    @Override
+    public Future<Void> watchRange(KeyRange range) {
+        return this.tx.watchRange(range);
+    }
+
+    @Override
+    public void commit() {
+        final long startTime = System.nanoTime();
+        try {
+            this.tx.commit();
+        } catch (RuntimeException e) {
+            this.metrics.record(KVOperation.COMMIT, startTime, 0, 0, e);
+            if (this.finished.compareAndSet(false, true))
+                this.metrics.transactionRolledBack();
+            throw e;
+        }
+        this.metrics.record(KVOperation.COMMIT, startTime, 0, 0, null);
+        if (this.finished.compareAndSet(false, true))
+            this.metrics.transactionCommitted();
+    }
+
+    @Override
+    public void rollback() {
+        try {
+            this.tx.rollback();
+        } finally {
+            if (this.finished.compareAndSet(false, true))
+                this.metrics.transactionRolledBack();
+        }
+    }
+
+    @Override
+    public CloseableKVStore mutableSnapshot() {
+        return this.tx.mutableSnapshot();
+    }
+
+// Internal methods
+
+    private static long size(KVPair pair) {
+        return pair != null ? pair.getKey().length + pair.getValue().length : 0;
+    }
+
+// RangeIterator
+
+    private class RangeIterator implements CloseableIterator<KVPair> {
+
+        private final CloseableIterator<KVPair> iterator;
+
+        private long pairs;
+        private long bytesRead;
+        private boolean recorded;
+
+        RangeIterator(CloseableIterator<KVPair> iterator) {
+            this.iterator = iterator;
+        }
+
+        @Override
+        public boolean hasNext() {
+            final boolean result;
+            try {
+                result = this.iterator.hasNext();
+            } catch (RuntimeException e) {
+                MetricsKVTransaction.this.metrics.recordRangeError(e);
+                throw e;
+            }
+            if (!result)
+                this.recordRange();
+            return result;
+        }
+
+        @Override
+        public KVPair next() {
+            final KVPair pair;
+            try {
+                pair = this.iterator.next();
+            } catch (RuntimeException e) {
+                MetricsKVTransaction.this.metrics.recordRangeError(e);
+                throw e;
+            }
+            this.pairs++;
+            this.bytesRead += MetricsKVTransaction.size(pair);
+            return pair;
+        }
+
+        @Override
+        public void remove() {
+            this.iterator.remove();
+        }
+
+        @Override
+        public void close() {
+            this.recordRange();
+            this.iterator.close();
+        }
+
+        private void recordRange() {
+            if (this.recorded)
+                return;
+            this.recorded = true;
+            MetricsKVTransaction.this.metrics.recordRange(this.pairs, this.bytesRead);
+        }
+    }
+
+// RangeCursor
+
+    private class RangeCursor implements KVCursor {
+
+        private final KVCursor cursor;
+
+        private long pairs;
+        private long bytesRead;
+        private boolean recorded;
+
+        RangeCursor(KVCursor cursor) {
+            this.cursor = cursor;
+        }
+
+        @Override
+        public boolean next() {
+            final boolean result;
+            try {
+                result = this.cursor.next();
+            } catch (RuntimeException e) {
+                MetricsKVTransaction.this.metrics.recordRangeError(e);
+                throw e;
+            }
+            if (!result) {
+                this.recordRange();
+                return false;
+            }
+            this.pairs++;
+            this.bytesRead += this.cursor.getKey().getLength() + this.cursor.getValue().getLength();
+            return true;
+        }
+
+        @Override
+        public ByteSlice getKey() {
+            return this.cursor.getKey();
+        }
+
+        @Override
+        public ByteSlice getValue() {
+            return this.cursor.getValue();
+        }
+
+        @Override
+        public void close() {
+            this.recordRange();
+            this.cursor.close();
+        }
+
+        private void recordRange() {
+            if (this.recorded)
+                return;
+            this.recorded = true;
+            MetricsKVTransaction.this.metrics.recordRange(this.pairs, this.bytesRead);
+        }
+    }
+}
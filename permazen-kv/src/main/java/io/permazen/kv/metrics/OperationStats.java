@@ -0,0 +1,135 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.kv.metrics;
+
+/**
+ * A snapshot of the {@link KVMetrics} statistics for one {@link KVOperation}.
+ *
+ * <p>
+ * Instances are immutable.
+ */
+public class OperationStats {
+
+    private final String operation;
+    private final long count;
+    private final long errors;
+    private final long bytesRead;
+    private final long bytesWritten;
+    private final double meanNanos;
+    private final long medianNanos;
+    private final long percentile99Nanos;
+    private final long maxNanos;
+
+    OperationStats(KVOperation operation, Histogram latency, long errors, long bytesRead, long bytesWritten) {
+        this.operation = operation.name();
+        this.count = latency.getCount();
+        this.errors = errors;
+        this.bytesRead = bytesRead;
+        this.bytesWritten = bytesWritten;
+        this.meanNanos = latency.getMean();
+        this.medianNanos = latency.getPercentile(50.0);
+        this.percentile99Nanos = latency.getPercentile(99.0);
+        this.maxNanos = latency.getMax();
+    }
+
+    /**
+     * Get the name of the {@link KVOperation}.
+     *
+     * @return operation name
+     */
+    public String getOperation() {
+        return this.operation;
+    }
+
+    /**
+     * Get the number of times the operation was invoked, including those that failed.
+     *
+     * @return invocation count
+     */
+    public long getCount() {
+        return this.count;
+    }
+
+    /**
+     * Get the number of times the operation threw an exception.
+     *
+     * @return error count
+     */
+    public long getErrors() {
+        return this.errors;
+    }
+
+    /**
+     * Get the total number of key and value bytes returned by the operation.
+     *
+     * @return bytes read
+     */
+    public long getBytesRead() {
+        return this.bytesRead;
+    }
+
+    /**
+     * Get the total number of key and value bytes written by the operation.
+     *
+     * @return bytes written
+     */
+    public long getBytesWritten() {
+        return this.bytesWritten;
+    }
+
+    /**
+     * Get the mean latency.
+     *
+     * @return mean latency in nanoseconds
+     */
+    public double getMeanNanos() {
+        return this.meanNanos;
+    }
+
+    /**
+     * Get the (approximate) median latency.
+     *
+     * @return median latency in nanoseconds
+     */
+    public long getMedianNanos() {
+        return this.medianNanos;
+    }
+
+    /**
+     * Get the (approximate) 99th percentile latency.
+     *
+     * @return 99th percentile latency in nanoseconds
+     */
+    public long getPercentile99Nanos() {
+        return this.percentile99Nanos;
+    }
+
+    /**
+     * Get the maximum latency.
+     *
+     * @return maximum latency in nanoseconds
+     */
+    public long getMaxNanos() {
+        return this.maxNanos;
+    }
+
+// Object
+
+    @Override
+    public String toString() {
+        return this.getClass().getSimpleName()
+          + "[operation=" + this.operation
+          + ",count=" + this.count
+          + ",errors=" + this.errors
+          + ",bytesRead=" + this.bytesRead
+          + ",bytesWritten=" + this.bytesWritten
+          + ",meanNanos=" + (long)this.meanNanos
+          + ",medianNanos=" + this.medianNanos
+          + ",percentile99Nanos=" + this.percentile99Nanos
+          + ",maxNanos=" + this.maxNanos
+          + "]";
+    }
+}
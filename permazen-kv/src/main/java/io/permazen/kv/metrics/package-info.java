@@ -0,0 +1,11 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+/**
+ * Support for gathering performance metrics from {@link io.permazen.kv.KVDatabase}s.
+ *
+ * @see io.permazen.kv.metrics.MetricsKVDatabase
+ */
+package io.permazen.kv.metrics;
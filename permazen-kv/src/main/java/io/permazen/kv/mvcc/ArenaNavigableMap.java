@@ -0,0 +1,719 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.kv.mvcc;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.UnmodifiableIterator;
+
+import io.permazen.kv.util.KeyListEncoder;
+import io.permazen.util.AbstractNavigableMap;
+import io.permazen.util.AbstractNavigableSet;
+import io.permazen.util.Bounds;
+import io.permazen.util.ByteUtil;
+import io.permazen.util.ByteWriter;
+import io.permazen.util.LongEncoder;
+import io.permazen.util.UnsignedIntEncoder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Immutable {@link NavigableMap} with {@code byte[]} keys packed into a single contiguous "arena" array.
+ *
+ * <p>
+ * Key number {@code i} occupies {@code keyData[keyOffsets[i]]} up to (but not including) {@code keyData[keyOffsets[i + 1]]},
+ * and keys are stored in sorted order, so lookups are binary searches over the offset index. Compared to a
+ * {@link java.util.TreeMap}, there is no per-entry object overhead; the tradeoff is that each key (and, for
+ * {@link Puts}, each value) retrieved is a newly created copy.
+ *
+ * <p>
+ * Sub-map and descending views share the arena arrays with the original instance.
+ *
+ * @param <V> value type
+ * @see Writes#compactSnapshot
+ */
+abstract class ArenaNavigableMap<V> extends AbstractNavigableMap<byte[], V> {
+
+    private static final Comparator<byte[]> REVERSE_COMPARATOR = ByteUtil.COMPARATOR.reversed();
+
+    final byte[] keyData;
+    final int[] keyOffsets;
+    final int minIndex;
+    final int maxIndex;
+    final boolean reversed;
+
+    ArenaNavigableMap(Bounds<byte[]> bounds, byte[] keyData, int[] keyOffsets, int minIndex, int maxIndex, boolean reversed) {
+        super(bounds);
+        assert minIndex >= 0 && minIndex <= maxIndex && maxIndex < keyOffsets.length;
+        this.keyData = keyData;
+        this.keyOffsets = keyOffsets;
+        this.minIndex = minIndex;
+        this.maxIndex = maxIndex;
+        this.reversed = reversed;
+    }
+
+// Subclass methods
+
+    /**
+     * Get the value at the given index in the arena.
+     *
+     * @param index arena index
+     * @return corresponding value
+     */
+    abstract V getValue(int index);
+
+    /**
+     * Create a view of this instance sharing the same arena.
+     *
+     * @param bounds new bounds
+     * @param minIndex minimum arena index (inclusive)
+     * @param maxIndex maximum arena index (exclusive)
+     * @param reversed true for descending order
+     * @return new view
+     */
+    abstract ArenaNavigableMap<V> createView(Bounds<byte[]> bounds, int minIndex, int maxIndex, boolean reversed);
+
+// NavigableMap
+
+    @Override
+    public Comparator<? super byte[]> comparator() {
+        return this.reversed ? REVERSE_COMPARATOR : ByteUtil.COMPARATOR;
+    }
+
+    @Override
+    public int size() {
+        return this.maxIndex - this.minIndex;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.minIndex == this.maxIndex;
+    }
+
+    @Override
+    public boolean containsKey(Object obj) {
+        return this.find((byte[])obj) >= 0;
+    }
+
+    @Override
+    public V get(Object obj) {
+        final int index = this.find((byte[])obj);
+        return index >= 0 ? this.getValue(index) : null;
+    }
+
+    @Override
+    public byte[] firstKey() {
+        return this.getKey(this.checkIndex(this.firstIndex()));
+    }
+
+    @Override
+    public Map.Entry<byte[], V> firstEntry() {
+        return !this.isEmpty() ? this.createEntry(this.firstIndex()) : null;
+    }
+
+    @Override
+    public byte[] lastKey() {
+        return this.getKey(this.checkIndex(this.lastIndex()));
+    }
+
+    @Override
+    public Map.Entry<byte[], V> lastEntry() {
+        return !this.isEmpty() ? this.createEntry(this.lastIndex()) : null;
+    }
+
+    @Override
+    public byte[] lowerKey(byte[] maxKey) {
+        return this.keyOrNull(this.search(maxKey, this.reversed, false));
+    }
+
+    @Override
+    public byte[] floorKey(byte[] maxKey) {
+        return this.keyOrNull(this.search(maxKey, this.reversed, true));
+    }
+
+    @Override
+    public byte[] ceilingKey(byte[] minKey) {
+        return this.keyOrNull(this.search(minKey, !this.reversed, true));
+    }
+
+    @Override
+    public byte[] higherKey(byte[] minKey) {
+        return this.keyOrNull(this.search(minKey, !this.reversed, false));
+    }
+
+    @Override
+    public Map.Entry<byte[], V> pollFirstEntry() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Map.Entry<byte[], V> pollLastEntry() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public NavigableSet<byte[]> navigableKeySet() {
+        return new KeySet();
+    }
+
+    @Override
+    public Set<Map.Entry<byte[], V>> entrySet() {
+        return new AbstractSet<Map.Entry<byte[], V>>() {
+
+            @Override
+            public int size() {
+                return ArenaNavigableMap.this.size();
+            }
+
+            @Override
+            public Iterator<Map.Entry<byte[], V>> iterator() {
+                return new IndexIterator<Map.Entry<byte[], V>>() {
+                    @Override
+                    protected Map.Entry<byte[], V> get(int index) {
+                        return ArenaNavigableMap.this.createEntry(index);
+                    }
+                };
+            }
+        };
+    }
+
+    @Override
+    protected Map.Entry<byte[], V> searchBelow(byte[] maxKey, boolean inclusive) {
+        final int index = this.search(maxKey, this.reversed, inclusive);
+        return index != -1 ? this.createEntry(index) : null;
+    }
+
+    @Override
+    protected Map.Entry<byte[], V> searchAbove(byte[] minKey, boolean inclusive) {
+        final int index = this.search(minKey, !this.reversed, inclusive);
+        return index != -1 ? this.createEntry(index) : null;
+    }
+
+    @Override
+    protected NavigableMap<byte[], V> createSubMap(boolean reverse, Bounds<byte[]> newBounds) {
+
+        // Get lower and upper bounds in arena (i.e., ascending) order; note: "newBounds" are already in the new order
+        final boolean newReversed = this.reversed ^ reverse;
+        final Bounds<byte[]> arenaBounds = newReversed ? newBounds.reverse() : newBounds;
+
+        // Calculate the corresponding index range in the arena
+        int newMinIndex = this.minIndex;
+        switch (arenaBounds.getLowerBoundType()) {
+        case INCLUSIVE:
+            newMinIndex = this.insertionPoint(arenaBounds.getLowerBound(), false);
+            break;
+        case EXCLUSIVE:
+            newMinIndex = this.insertionPoint(arenaBounds.getLowerBound(), true);
+            break;
+        default:
+            break;
+        }
+        int newMaxIndex = this.maxIndex;
+        switch (arenaBounds.getUpperBoundType()) {
+        case INCLUSIVE:
+            newMaxIndex = this.insertionPoint(arenaBounds.getUpperBound(), true);
+            break;
+        case EXCLUSIVE:
+            newMaxIndex = this.insertionPoint(arenaBounds.getUpperBound(), false);
+            break;
+        default:
+            break;
+        }
+        newMaxIndex = Math.max(newMinIndex, newMaxIndex);
+
+        // Create view
+        return this.createView(newBounds, newMinIndex, newMaxIndex, newReversed);
+    }
+
+// Arena access
+
+    /**
+     * Get a copy of the key at the given arena index.
+     *
+     * @param index arena index
+     * @return key
+     */
+    byte[] getKey(int index) {
+        return Arrays.copyOfRange(this.keyData, this.keyOffsets[index], this.keyOffsets[index + 1]);
+    }
+
+    /**
+     * Write the key at the given arena index via {@link KeyListEncoder}, compressing its common prefix
+     * with the key at the previous arena index (if any).
+     *
+     * @param out output
+     * @param index arena index
+     * @throws IOException if an I/O error occurs
+     */
+    void writeKey(OutputStream out, int index) throws IOException {
+        final int off = this.keyOffsets[index];
+        final int len = this.keyOffsets[index + 1] - off;
+        if (index > this.minIndex) {
+            final int prevOff = this.keyOffsets[index - 1];
+            KeyListEncoder.write(out, this.keyData, off, len, this.keyData, prevOff, off - prevOff);
+        } else
+            KeyListEncoder.write(out, this.keyData, off, len, null, 0, 0);
+    }
+
+    /**
+     * Calculate the number of bytes that {@link #writeKey writeKey()} would write.
+     *
+     * @param index arena index
+     * @return encoded length
+     */
+    int writeKeyLength(int index) {
+        final int off = this.keyOffsets[index];
+        final int len = this.keyOffsets[index + 1] - off;
+        if (index > this.minIndex) {
+            final int prevOff = this.keyOffsets[index - 1];
+            return KeyListEncoder.writeLength(this.keyData, off, len, this.keyData, prevOff, off - prevOff);
+        } else
+            return KeyListEncoder.writeLength(this.keyData, off, len, null, 0, 0);
+    }
+
+    /**
+     * Determine whether this instance is an ascending view of the entire arena.
+     *
+     * @return true if this is not a sub-map or descending view
+     */
+    boolean isWholeArena() {
+        return this.minIndex == 0 && this.maxIndex == this.keyOffsets.length - 1 && !this.reversed;
+    }
+
+// Internal methods
+
+    private int firstIndex() {
+        return this.reversed ? this.maxIndex - 1 : this.minIndex;
+    }
+
+    private int lastIndex() {
+        return this.reversed ? this.minIndex : this.maxIndex - 1;
+    }
+
+    private int checkIndex(int index) {
+        if (index < this.minIndex || index >= this.maxIndex)
+            throw new NoSuchElementException();
+        return index;
+    }
+
+    private byte[] keyOrNull(int index) {
+        return index != -1 ? this.getKey(index) : null;
+    }
+
+    private Map.Entry<byte[], V> createEntry(int index) {
+        return new AbstractMap.SimpleImmutableEntry<>(this.getKey(index), this.getValue(index));
+    }
+
+    /**
+     * Find the nearest arena index above or below the given key.
+     *
+     * @param key search key
+     * @param above true to search for higher keys (in arena order), false for lower keys
+     * @param inclusive true if {@code key} itself is a candidate
+     * @return arena index, or -1 if none exists
+     */
+    private int search(byte[] key, boolean above, boolean inclusive) {
+        final int index = above ? this.insertionPoint(key, !inclusive) : this.insertionPoint(key, inclusive) - 1;
+        return index >= this.minIndex && index < this.maxIndex ? index : -1;
+    }
+
+    /**
+     * Get the index of the first key greater than (or equal to, if {@code after} is false) the given key.
+     *
+     * @param key search key
+     * @param after true to skip over {@code key} itself, if found
+     * @return arena index in the range {@code minIndex ... maxIndex} (inclusive)
+     */
+    private int insertionPoint(byte[] key, boolean after) {
+        final int index = this.find(key);
+        return index >= 0 ? (after ? index + 1 : index) : ~index;
+    }
+
+    /**
+     * Binary search for the given key within this instance's arena index range.
+     *
+     * @param key search key
+     * @return arena index of {@code key} if found, otherwise {@code -(insertion point) - 1}
+     * @throws NullPointerException if {@code key} is null
+     */
+    private int find(byte[] key) {
+        int lo = this.minIndex;
+        int hi = this.maxIndex - 1;
+        while (lo <= hi) {
+            final int mid = (lo + hi) >>> 1;
+            final int diff = this.compareKey(mid, key);
+            if (diff < 0)
+                lo = mid + 1;
+            else if (diff > 0)
+                hi = mid - 1;
+            else
+                return mid;
+        }
+        return ~lo;
+    }
+
+    // Compare the key at the given arena index to the given key
+    private int compareKey(int index, byte[] key) {
+        final int off = this.keyOffsets[index];
+        final int len = this.keyOffsets[index + 1] - off;
+        final int limit = Math.min(len, key.length);
+        for (int i = 0; i < limit; i++) {
+            final int diff = (this.keyData[off + i] & 0xff) - (key[i] & 0xff);
+            if (diff != 0)
+                return diff;
+        }
+        return len - key.length;
+    }
+
+// IndexIterator
+
+    private abstract class IndexIterator<E> extends UnmodifiableIterator<E> {
+
+        private final int step = ArenaNavigableMap.this.reversed ? -1 : 1;
+        private int next = ArenaNavigableMap.this.isEmpty() ? -1 : ArenaNavigableMap.this.firstIndex();
+
+        @Override
+        public boolean hasNext() {
+            return this.next >= ArenaNavigableMap.this.minIndex && this.next < ArenaNavigableMap.this.maxIndex;
+        }
+
+        @Override
+        public E next() {
+            if (!this.hasNext())
+                throw new NoSuchElementException();
+            final int index = this.next;
+            this.next += this.step;
+            return this.get(index);
+        }
+
+        protected abstract E get(int index);
+    }
+
+// KeySet
+
+    private class KeySet extends AbstractNavigableSet<byte[]> {
+
+        KeySet() {
+            super(ArenaNavigableMap.this.bounds);
+        }
+
+        @Override
+        public Comparator<? super byte[]> comparator() {
+            return ArenaNavigableMap.this.comparator();
+        }
+
+        @Override
+        public int size() {
+            return ArenaNavigableMap.this.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return ArenaNavigableMap.this.isEmpty();
+        }
+
+        @Override
+        public boolean contains(Object obj) {
+            return ArenaNavigableMap.this.containsKey(obj);
+        }
+
+        @Override
+        public byte[] first() {
+            return ArenaNavigableMap.this.firstKey();
+        }
+
+        @Override
+        public byte[] last() {
+            return ArenaNavigableMap.this.lastKey();
+        }
+
+        @Override
+        public Iterator<byte[]> iterator() {
+            return new IndexIterator<byte[]>() {
+                @Override
+                protected byte[] get(int index) {
+                    return ArenaNavigableMap.this.getKey(index);
+                }
+            };
+        }
+
+        @Override
+        protected byte[] searchBelow(byte[] elem, boolean inclusive) {
+            return ArenaNavigableMap.this.keyOrNull(
+              ArenaNavigableMap.this.search(elem, ArenaNavigableMap.this.reversed, inclusive));
+        }
+
+        @Override
+        protected byte[] searchAbove(byte[] elem, boolean inclusive) {
+            return ArenaNavigableMap.this.keyOrNull(
+              ArenaNavigableMap.this.search(elem, !ArenaNavigableMap.this.reversed, inclusive));
+        }
+
+        @Override
+        protected NavigableSet<byte[]> createSubSet(boolean reverse, Bounds<byte[]> newBounds) {
+            return ArenaNavigableMap.this.createSubMap(reverse, newBounds).navigableKeySet();
+        }
+    }
+
+// Packer
+
+    /**
+     * Packs a sequence of {@code byte[]} arrays into an arena.
+     */
+    static class Packer {
+
+        private final ByteWriter data;
+        private final int[] offsets;
+        private int count;
+
+        /**
+         * Constructor.
+         *
+         * @param count number of arrays that will be added
+         * @param capacity initial arena capacity
+         */
+        Packer(int count, int capacity) {
+            this.data = new ByteWriter(Math.max(capacity, 1));
+            this.offsets = new int[count + 1];
+        }
+
+        void add(byte[] bytes) {
+            this.data.write(bytes);
+            this.offsets[++this.count] = this.data.getLength();
+        }
+
+        int getCount() {
+            return this.count;
+        }
+
+        byte[] getData() {
+            assert this.count == this.offsets.length - 1;
+            return this.data.getBytes();
+        }
+
+        int[] getOffsets() {
+            return this.offsets;
+        }
+    }
+
+// Puts
+
+    /**
+     * Arena-backed map from key to value.
+     */
+    static final class Puts extends ArenaNavigableMap<byte[]> {
+
+        private final byte[] valData;
+        private final int[] valOffsets;
+
+        private Puts(Bounds<byte[]> bounds, byte[] keyData, int[] keyOffsets,
+          byte[] valData, int[] valOffsets, int minIndex, int maxIndex, boolean reversed) {
+            super(bounds, keyData, keyOffsets, minIndex, maxIndex, reversed);
+            this.valData = valData;
+            this.valOffsets = valOffsets;
+        }
+
+        /**
+         * Create an instance containing a copy of the given sorted map.
+         *
+         * @param map source map sorted by {@link ByteUtil#COMPARATOR}
+         * @return packed copy of {@code map}
+         */
+        static Puts copyOf(NavigableMap<byte[], byte[]> map) {
+            if (map instanceof Puts && ((Puts)map).isWholeArena())
+                return (Puts)map;
+            int keyLength = 0;
+            int valLength = 0;
+            for (Map.Entry<byte[], byte[]> entry : map.entrySet()) {
+                keyLength += entry.getKey().length;
+                valLength += entry.getValue().length;
+            }
+            final int count = map.size();
+            final Packer keys = new Packer(count, keyLength);
+            final Packer vals = new Packer(count, valLength);
+            for (Map.Entry<byte[], byte[]> entry : map.entrySet()) {
+                keys.add(entry.getKey());
+                vals.add(entry.getValue());
+            }
+            return new Puts(new Bounds<>(), keys.getData(), keys.getOffsets(), vals.getData(), vals.getOffsets(), 0, count, false);
+        }
+
+        /**
+         * Read an instance in the format written by {@link #serialize serialize()}.
+         *
+         * @param input input
+         * @return deserialized instance
+         * @throws IOException if an I/O error occurs
+         * @throws IllegalArgumentException if {@code input} is invalid
+         */
+        static Puts deserialize(InputStream input) throws IOException {
+            final int count = UnsignedIntEncoder.read(input);
+            final Packer keys = new Packer(count, 32);
+            final Packer vals = new Packer(count, 32);
+            byte[] prev = null;
+            for (int i = 0; i < count; i++) {
+                final byte[] key = KeyListEncoder.read(input, prev);
+                Preconditions.checkArgument(prev == null || ByteUtil.compare(prev, key) < 0, "keys are not sorted");
+                keys.add(key);
+                vals.add(KeyListEncoder.read(input, null));
+                prev = key;
+            }
+            return new Puts(new Bounds<>(), keys.getData(), keys.getOffsets(), vals.getData(), vals.getOffsets(), 0, count, false);
+        }
+
+        /**
+         * Serialize this instance in the format used by {@link Writes#serialize Writes.serialize()}.
+         *
+         * @param out output
+         * @throws IOException if an I/O error occurs
+         */
+        void serialize(OutputStream out) throws IOException {
+            assert this.isWholeArena();
+            UnsignedIntEncoder.write(out, this.size());
+            for (int i = this.minIndex; i < this.maxIndex; i++) {
+                this.writeKey(out, i);
+                final int off = this.valOffsets[i];
+                KeyListEncoder.write(out, this.valData, off, this.valOffsets[i + 1] - off, null, 0, 0);
+            }
+        }
+
+        /**
+         * Calculate the number of bytes that {@link #serialize serialize()} would write.
+         *
+         * @return encoded length
+         */
+        long serializedLength() {
+            assert this.isWholeArena();
+            long total = UnsignedIntEncoder.encodeLength(this.size());
+            for (int i = this.minIndex; i < this.maxIndex; i++) {
+                total += this.writeKeyLength(i);
+                final int off = this.valOffsets[i];
+                total += KeyListEncoder.writeLength(this.valData, off, this.valOffsets[i + 1] - off, null, 0, 0);
+            }
+            return total;
+        }
+
+        @Override
+        byte[] getValue(int index) {
+            return Arrays.copyOfRange(this.valData, this.valOffsets[index], this.valOffsets[index + 1]);
+        }
+
+        @Override
+        Puts createView(Bounds<byte[]> bounds, int minIndex, int maxIndex, boolean reversed) {
+            return new Puts(bounds, this.keyData, this.keyOffsets, this.valData, this.valOffsets, minIndex, maxIndex, reversed);
+        }
+    }
+
+// Adjusts
+
+    /**
+     * Arena-backed map from key to counter adjustment.
+     */
+    static final class Adjusts extends ArenaNavigableMap<Long> {
+
+        private final long[] values;
+
+        private Adjusts(Bounds<byte[]> bounds, byte[] keyData, int[] keyOffsets,
+          long[] values, int minIndex, int maxIndex, boolean reversed) {
+            super(bounds, keyData, keyOffsets, minIndex, maxIndex, reversed);
+            this.values = values;
+        }
+
+        /**
+         * Create an instance containing a copy of the given sorted map.
+         *
+         * @param map source map sorted by {@link ByteUtil#COMPARATOR}
+         * @return packed copy of {@code map}
+         */
+        static Adjusts copyOf(NavigableMap<byte[], Long> map) {
+            if (map instanceof Adjusts && ((Adjusts)map).isWholeArena())
+                return (Adjusts)map;
+            int keyLength = 0;
+            for (byte[] key : map.keySet())
+                keyLength += key.length;
+            final int count = map.size();
+            final Packer keys = new Packer(count, keyLength);
+            final long[] values = new long[count];
+            for (Map.Entry<byte[], Long> entry : map.entrySet()) {
+                values[keys.getCount()] = entry.getValue();
+                keys.add(entry.getKey());
+            }
+            return new Adjusts(new Bounds<>(), keys.getData(), keys.getOffsets(), values, 0, count, false);
+        }
+
+        /**
+         * Read an instance in the format written by {@link #serialize serialize()}.
+         *
+         * @param input input
+         * @return deserialized instance
+         * @throws IOException if an I/O error occurs
+         * @throws IllegalArgumentException if {@code input} is invalid
+         */
+        static Adjusts deserialize(InputStream input) throws IOException {
+            final int count = UnsignedIntEncoder.read(input);
+            final Packer keys = new Packer(count, 32);
+            final long[] values = new long[count];
+            byte[] prev = null;
+            for (int i = 0; i < count; i++) {
+                final byte[] key = KeyListEncoder.read(input, prev);
+                Preconditions.checkArgument(prev == null || ByteUtil.compare(prev, key) < 0, "keys are not sorted");
+                keys.add(key);
+                values[i] = LongEncoder.read(input);
+                prev = key;
+            }
+            return new Adjusts(new Bounds<>(), keys.getData(), keys.getOffsets(), values, 0, count, false);
+        }
+
+        /**
+         * Serialize this instance in the format used by {@link Writes#serialize Writes.serialize()}.
+         *
+         * @param out output
+         * @throws IOException if an I/O error occurs
+         */
+        void serialize(OutputStream out) throws IOException {
+            assert this.isWholeArena();
+            UnsignedIntEncoder.write(out, this.size());
+            for (int i = this.minIndex; i < this.maxIndex; i++) {
+                this.writeKey(out, i);
+                LongEncoder.write(out, this.values[i]);
+            }
+        }
+
+        /**
+         * Calculate the number of bytes that {@link #serialize serialize()} would write.
+         *
+         * @return encoded length
+         */
+        long serializedLength() {
+            assert this.isWholeArena();
+            long total = UnsignedIntEncoder.encodeLength(this.size());
+            for (int i = this.minIndex; i < this.maxIndex; i++)
+                total += this.writeKeyLength(i) + LongEncoder.encodeLength(this.values[i]);
+            return total;
+        }
+
+        @Override
+        Long getValue(int index) {
+            return this.values[index];
+        }
+
+        @Override
+        Adjusts createView(Bounds<byte[]> bounds, int minIndex, int maxIndex, boolean reversed) {
+            return new Adjusts(bounds, this.keyData, this.keyOffsets, this.values, minIndex, maxIndex, reversed);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.kv.mvcc;
+
+import io.permazen.util.ByteUtil;
+
+/**
+ * A key or key prefix reported by a {@link ConflictProfiler} as a source of transaction conflicts.
+ *
+ * <p>
+ * Instances are immutable.
+ */
+public class ConflictHotspot {
+
+    private final byte[] key;
+    private final boolean prefix;
+    private final int storageId;
+    private final double score;
+    private final double error;
+    private final long count;
+
+    ConflictHotspot(byte[] key, boolean prefix, int storageId, double score, double error, long count) {
+        this.key = key.clone();
+        this.prefix = prefix;
+        this.storageId = storageId;
+        this.score = score;
+        this.error = error;
+        this.count = count;
+    }
+
+    /**
+     * Get the conflicting key or key prefix in hexadecimal form.
+     *
+     * @return key or key prefix
+     */
+    public String getKey() {
+        return ByteUtil.toString(this.key);
+    }
+
+    /**
+     * Get the conflicting key or key prefix.
+     *
+     * @return key or key prefix
+     */
+    public byte[] getKeyBytes() {
+        return this.key.clone();
+    }
+
+    /**
+     * Determine whether this instance represents a key prefix rather than a single key.
+     *
+     * @return true for a key prefix, false for a key
+     */
+    public boolean isPrefix() {
+        return this.prefix;
+    }
+
+    /**
+     * Get the storage ID decoded from the start of the key, if any.
+     *
+     * @return leading storage ID, or -1 if the key does not start with a valid storage ID
+     */
+    public int getStorageId() {
+        return this.storageId;
+    }
+
+    /**
+     * Get the decayed conflict score.
+     *
+     * <p>
+     * Each conflict contributes 1.0 when it occurs, halving every {@linkplain ConflictProfiler#getHalfLife half-life}.
+     * Due to the Space-Saving algorithm, the score may overestimate the true value by up to {@link #getError}.
+     *
+     * @return conflict score
+     */
+    public double getScore() {
+        return this.score;
+    }
+
+    /**
+     * Get the maximum amount by which {@link #getScore} may overestimate the true score.
+     *
+     * @return maximum overestimation error
+     */
+    public double getError() {
+        return this.error;
+    }
+
+    /**
+     * Get the number of conflicts recorded since this key or key prefix was last (re)admitted into the top-K.
+     *
+     * @return conflict count
+     */
+    public long getCount() {
+        return this.count;
+    }
+
+// Object
+
+    @Override
+    public String toString() {
+        return this.getClass().getSimpleName()
+          + "[" + (this.prefix ? "prefix" : "key") + "=" + ByteUtil.toString(this.key)
+          + (this.storageId != -1 ? ",storageId=" + this.storageId : "")
+          + ",score=" + String.format("%.2f", this.score)
+          + ",count=" + this.count
+          + "]";
+    }
+}
@@ -0,0 +1,313 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.kv.mvcc;
+
+import com.google.common.base.Preconditions;
+
+import io.permazen.kv.KeyRange;
+import io.permazen.util.ByteReader;
+import io.permazen.util.ByteUtil;
+import io.permazen.util.UnsignedIntEncoder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Aggregates MVCC transaction {@link Conflict}s to find the keys and key prefixes that are causing the most retries.
+ *
+ * <p>
+ * Instances keep a bounded "top-K" of conflicting keys, and another of conflicting key prefixes, using the
+ * Space-Saving algorithm: at most {@linkplain #getCapacity capacity} entries are kept, and when a new entry is
+ * needed the entry with the lowest score is replaced. Scores decay exponentially with a configurable half-life,
+ * so the reported hotspots reflect recent load rather than all history.
+ *
+ * <p>
+ * The key prefixes tracked are the leading {@link UnsignedIntEncoder}-encoded storage IDs under which Permazen stores
+ * object types, fields, and indexes; these are reported in decoded form via {@link ConflictHotspot#getStorageId}.
+ * A {@link ReadRemoveConflict} is attributed to a prefix if its range lies within that prefix.
+ *
+ * <p>
+ * To use, configure an instance via {@link ConflictProfilingKVDatabase#setConflictProfiler setConflictProfiler()}.
+ * Instances implement {@link ConflictProfilerMXBean}, so they may also be registered with JMX.
+ *
+ * <p>
+ * Instances are thread safe.
+ */
+public class ConflictProfiler implements ConflictProfilerMXBean {
+
+    /**
+     * Default capacity ({@value #DEFAULT_CAPACITY}).
+     */
+    public static final int DEFAULT_CAPACITY = 64;
+
+    /**
+     * Default half-life in milliseconds ({@value #DEFAULT_HALF_LIFE}).
+     */
+    public static final long DEFAULT_HALF_LIFE = 60000;
+
+    private static final double MAX_EXPONENT = 64.0;
+
+    private final int capacity;
+    private final long halfLife;
+    private final TopK keys = new TopK(false);
+    private final TopK prefixes = new TopK(true);
+
+    private long landmark;                                          // System.nanoTime() at which weight is 1.0
+    private long readWriteConflicts;
+    private long readRemoveConflicts;
+    private long readAdjustConflicts;
+
+    /**
+     * Default constructor.
+     *
+     * <p>
+     * Uses {@link #DEFAULT_CAPACITY} and {@link #DEFAULT_HALF_LIFE}.
+     */
+    public ConflictProfiler() {
+        this(DEFAULT_CAPACITY, DEFAULT_HALF_LIFE);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param capacity maximum number of keys, and of key prefixes, to track
+     * @param halfLife half-life of conflict scores in milliseconds
+     * @throws IllegalArgumentException if either parameter is zero or negative
+     */
+    public ConflictProfiler(int capacity, long halfLife) {
+        Preconditions.checkArgument(capacity > 0, "capacity <= 0");
+        Preconditions.checkArgument(halfLife > 0, "halfLife <= 0");
+        this.capacity = capacity;
+        this.halfLife = halfLife;
+        this.landmark = System.nanoTime();
+    }
+
+    /**
+     * Get the maximum number of keys, and of key prefixes, tracked by this instance.
+     *
+     * @return capacity
+     */
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    /**
+     * Get the half-life of conflict scores.
+     *
+     * @return half-life in milliseconds
+     */
+    public long getHalfLife() {
+        return this.halfLife;
+    }
+
+    /**
+     * Record a conflict.
+     *
+     * @param conflict the conflict that caused a transaction to fail
+     * @throws IllegalArgumentException if {@code conflict} is null
+     */
+    public void record(Conflict conflict) {
+        this.record(conflict, System.nanoTime());
+    }
+
+    synchronized void record(Conflict conflict, long now) {
+        Preconditions.checkArgument(conflict != null, "null conflict");
+
+        // Get weight of a conflict occurring now
+        final double weight = this.weightAt(now);
+
+        // Update key and prefix scores
+        if (conflict instanceof SingleKeyConflict) {
+            if (conflict instanceof ReadAdjustConflict)
+                this.readAdjustConflicts++;
+            else
+                this.readWriteConflicts++;
+            final byte[] key = ((SingleKeyConflict)conflict).getKey();
+            this.keys.add(key, weight);
+            final byte[] prefix = ConflictProfiler.getStorageIdPrefix(key);
+            if (prefix != null)
+                this.prefixes.add(prefix, weight);
+        } else if (conflict instanceof ReadRemoveConflict) {
+            this.readRemoveConflicts++;
+            final KeyRange range = ((ReadRemoveConflict)conflict).getKeyRange();
+            final byte[] prefix = ConflictProfiler.getStorageIdPrefix(range.getMin());
+            if (prefix != null && KeyRange.forPrefix(prefix).contains(range))
+                this.prefixes.add(prefix, weight);
+        }
+    }
+
+    /**
+     * Get the keys with the highest conflict scores.
+     *
+     * @param max maximum number of keys to return
+     * @return conflicting keys sorted by decreasing score
+     * @throws IllegalArgumentException if {@code max} is negative
+     */
+    public synchronized List<ConflictHotspot> getTopKeys(int max) {
+        return this.keys.getTop(max, this.weightAt(System.nanoTime()));
+    }
+
+    /**
+     * Get the storage ID key prefixes with the highest conflict scores.
+     *
+     * @param max maximum number of key prefixes to return
+     * @return conflicting key prefixes sorted by decreasing score
+     * @throws IllegalArgumentException if {@code max} is negative
+     */
+    public synchronized List<ConflictHotspot> getTopPrefixes(int max) {
+        return this.prefixes.getTop(max, this.weightAt(System.nanoTime()));
+    }
+
+// ConflictProfilerMXBean
+
+    @Override
+    public List<ConflictHotspot> getTopKeys() {
+        return this.getTopKeys(this.capacity);
+    }
+
+    @Override
+    public List<ConflictHotspot> getTopPrefixes() {
+        return this.getTopPrefixes(this.capacity);
+    }
+
+    @Override
+    public synchronized long getReadWriteConflicts() {
+        return this.readWriteConflicts;
+    }
+
+    @Override
+    public synchronized long getReadRemoveConflicts() {
+        return this.readRemoveConflicts;
+    }
+
+    @Override
+    public synchronized long getReadAdjustConflicts() {
+        return this.readAdjustConflicts;
+    }
+
+    @Override
+    public synchronized void reset() {
+        this.keys.clear();
+        this.prefixes.clear();
+        this.landmark = System.nanoTime();
+        this.readWriteConflicts = 0;
+        this.readRemoveConflicts = 0;
+        this.readAdjustConflicts = 0;
+    }
+
+// Internal methods
+
+    /**
+     * Get the leading encoded storage ID of the given key, if any.
+     *
+     * @param key key
+     * @return storage ID prefix of {@code key}, or null if {@code key} does not start with a valid storage ID
+     */
+    static byte[] getStorageIdPrefix(byte[] key) {
+        if (key.length == 0 || key[0] == 0)                                 // zero byte prefixes Permazen meta-data
+            return null;
+        final ByteReader reader = new ByteReader(key);
+        try {
+            UnsignedIntEncoder.read(reader);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        return Arrays.copyOf(key, reader.getOffset());
+    }
+
+    // Get the (unnormalized) weight of an event occurring at the given time, rescaling existing scores if necessary
+    private double weightAt(long now) {
+        assert Thread.holdsLock(this);
+        double exponent = (double)(now - this.landmark) / (this.halfLife * 1000000L);
+        if (exponent > MAX_EXPONENT) {
+            final double scale = Math.pow(2.0, -exponent);
+            this.keys.rescale(scale);
+            this.prefixes.rescale(scale);
+            this.landmark = now;
+            exponent = 0.0;
+        }
+        return Math.pow(2.0, exponent);
+    }
+
+// TopK
+
+    private class TopK {
+
+        private final boolean prefixes;
+        private final HashMap<String, Slot> slots = new HashMap<>();
+
+        TopK(boolean prefixes) {
+            this.prefixes = prefixes;
+        }
+
+        void add(byte[] key, double weight) {
+            final String name = ByteUtil.toString(key);
+            Slot slot = this.slots.get(name);
+            if (slot == null) {
+                if (this.slots.size() < ConflictProfiler.this.capacity)
+                    slot = new Slot(key.clone(), 0.0);
+                else {
+                    final Slot min = this.slots.values().stream()
+                      .min((slot1, slot2) -> Double.compare(slot1.score, slot2.score))
+                      .get();
+                    this.slots.remove(ByteUtil.toString(min.key));
+                    slot = new Slot(key.clone(), min.score);
+                }
+                this.slots.put(name, slot);
+            }
+            slot.score += weight;
+            slot.count++;
+        }
+
+        List<ConflictHotspot> getTop(int max, double weight) {
+            Preconditions.checkArgument(max >= 0, "max < 0");
+            final ArrayList<Slot> list = new ArrayList<>(this.slots.values());
+            list.sort((slot1, slot2) -> Double.compare(slot2.score, slot1.score));
+            final ArrayList<ConflictHotspot> top = new ArrayList<>(Math.min(max, list.size()));
+            for (Slot slot : list.subList(0, Math.min(max, list.size())))
+                top.add(slot.toHotspot(this.prefixes, weight));
+            return top;
+        }
+
+        void rescale(double scale) {
+            for (Slot slot : this.slots.values()) {
+                slot.score *= scale;
+                slot.error *= scale;
+            }
+        }
+
+        void clear() {
+            this.slots.clear();
+        }
+    }
+
+// Slot
+
+    private static final class Slot {
+
+        final byte[] key;
+
+        double score;
+        double error;
+        long count;
+
+        Slot(byte[] key, double error) {
+            this.key = key;
+            this.score = error;
+            this.error = error;
+        }
+
+        ConflictHotspot toHotspot(boolean prefix, double weight) {
+            int storageId = -1;
+            final byte[] storageIdPrefix = ConflictProfiler.getStorageIdPrefix(this.key);
+            if (storageIdPrefix != null)
+                storageId = UnsignedIntEncoder.decode(storageIdPrefix);
+            return new ConflictHotspot(this.key, prefix, storageId, this.score / weight, this.error / weight, this.count);
+        }
+    }
+}
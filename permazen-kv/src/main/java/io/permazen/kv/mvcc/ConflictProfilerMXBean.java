@@ -0,0 +1,54 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.kv.mvcc;
+
+import java.util.List;
+
+/**
+ * JMX interface for {@link ConflictProfiler}.
+ */
+public interface ConflictProfilerMXBean {
+
+    /**
+     * Get the keys with the highest conflict scores.
+     *
+     * @return conflicting keys sorted by decreasing score
+     */
+    List<ConflictHotspot> getTopKeys();
+
+    /**
+     * Get the storage ID key prefixes with the highest conflict scores.
+     *
+     * @return conflicting key prefixes sorted by decreasing score
+     */
+    List<ConflictHotspot> getTopPrefixes();
+
+    /**
+     * Get the total number of {@link ReadWriteConflict}s recorded.
+     *
+     * @return read/write conflict count
+     */
+    long getReadWriteConflicts();
+
+    /**
+     * Get the total number of {@link ReadRemoveConflict}s recorded.
+     *
+     * @return read/remove conflict count
+     */
+    long getReadRemoveConflicts();
+
+    /**
+     * Get the total number of {@link ReadAdjustConflict}s recorded.
+     *
+     * @return read/adjust conflict count
+     */
+    long getReadAdjustConflicts();
+
+    /**
+     * Discard all recorded conflicts.
+     */
+    void reset();
+}
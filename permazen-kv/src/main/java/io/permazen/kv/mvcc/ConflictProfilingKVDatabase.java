@@ -0,0 +1,32 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.kv.mvcc;
+
+import io.permazen.kv.KVDatabase;
+
+/**
+ * Implemented by {@link KVDatabase}s that can report the {@link Conflict}s that cause transactions to fail
+ * to a {@link ConflictProfiler}.
+ */
+public interface ConflictProfilingKVDatabase extends KVDatabase {
+
+    /**
+     * Get the configured {@link ConflictProfiler}, if any.
+     *
+     * @return conflict profiler, or null if none is configured
+     */
+    ConflictProfiler getConflictProfiler();
+
+    /**
+     * Configure a {@link ConflictProfiler} to be notified of each {@link Conflict} that causes a transaction to fail.
+     *
+     * <p>
+     * Default is null.
+     *
+     * @param conflictProfiler conflict profiler, or null to disable conflict profiling
+     */
+    void setConflictProfiler(ConflictProfiler conflictProfiler);
+}
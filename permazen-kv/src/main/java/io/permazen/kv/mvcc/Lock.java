@@ -10,8 +10,6 @@ import com.google.common.base.Preconditions;
 import io.permazen.kv.KeyRange;
 import io.permazen.util.ByteUtil;
 
-import java.util.Comparator;
-
 /**
  * Read/write lock of a {@link KeyRange}.
  * Instances are immutable.
@@ -20,24 +18,6 @@ import java.util.Comparator;
  */
 class Lock extends KeyRange {
 
-    /**
-     * Sorts locks by min value, then read locks before write locks.
-     * Note: the comparison does not include the {@linkplain #getOwner owner} in the comparison.
-     */
-    public static final Comparator<Lock> MIN_COMPARATOR = Comparator
-      .comparing(Lock::getMin, KeyRange::compare)
-      .thenComparing(Lock::isWrite, Boolean::compare);
-
-    /**
-     * Sorts locks by max value, then read locks before write locks.
-     * Note: the comparison does not include the {@linkplain #getOwner owner} in the comparison.
-     */
-    public static final Comparator<Lock> MAX_COMPARATOR = Comparator
-      .comparing(Lock::getMax, KeyRange::compare)
-      .thenComparing(Lock::isWrite, Boolean::compare);
-
-    private static final LockOwner DUMMY_OWNER = new LockOwner();
-
     final boolean write;
     final LockOwner owner;
 
@@ -152,20 +132,12 @@ class Lock extends KeyRange {
           + ByteUtil.toString(this.max) + ",type=" + (this.write ? "write" : "read") + "]";
     }
 
-    /**
-     * Get a search key for use with instances sorted via {@link #MIN_COMPARATOR}.
-     */
-    public static Lock getMinKey(byte[] min, boolean write) {
-        Preconditions.checkArgument(min != null, "null min");
-        return new Lock(DUMMY_OWNER, min, min, write);
+    // Access the min and max keys without copying
+    byte[] minKey() {
+        return this.min;
     }
 
-    /**
-     * Get a search key for use with instances sorted via {@link #MAX_COMPARATOR}.
-     */
-    public static Lock getMaxKey(byte[] max, boolean write) {
-        Preconditions.checkArgument(max != null, "null max");
-        return new Lock(DUMMY_OWNER, max, max, write);
+    byte[] maxKey() {
+        return this.max;
     }
 }
-
@@ -7,18 +7,15 @@ package io.permazen.kv.mvcc;
 
 import com.google.common.base.Preconditions;
 
+import io.permazen.kv.KeyRangeTree;
 import io.permazen.kv.KeyRanges;
-import io.permazen.util.ByteUtil;
 
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.NavigableSet;
-import java.util.TreeSet;
-
-import org.dellroad.stuff.java.Predicate;
-import org.dellroad.stuff.java.TimedWait;
+import java.util.Set;
+import java.util.function.Supplier;
 
 /**
  * Manager of read/write locks on {@code byte[]} key ranges that ensures isolation and serialization while allowing concurrent
@@ -29,8 +26,16 @@ import org.dellroad.stuff.java.TimedWait;
  * by the same owner remain in force until all are {@linkplain #release released} at the same time.
  *
  * <p>
- * Instances are configured with a monitor object which is used for all internal locking and inter-thread wait/notify
- * handshaking (by default, this instance). A user-supplied monitor object may be provided via the constructor.
+ * Locks are kept in interval trees, so finding the locks that overlap a new lock request takes time proportional
+ * to the logarithm of the number of locks held plus the number of overlapping locks.
+ *
+ * <p>
+ * Instances may be configured with a single monitor object which is used for all internal locking and inter-thread
+ * wait/notify handshaking; this allows the caller to hold that monitor while invoking {@link #lock lock()}. Otherwise,
+ * the key space is divided into some number of stripes, each having its own monitor and interval tree, so lock requests
+ * in different parts of the key space do not contend with each other. Keys are assigned to stripes based on their
+ * first byte, modulo the number of stripes. A lock whose range includes keys in multiple stripes is recorded in each
+ * of them.
  *
  * <p>
  * Two timeout values are supported:
@@ -48,37 +53,72 @@ import org.dellroad.stuff.java.TimedWait;
  */
 public class LockManager {
 
+    /**
+     * Default number of key space stripes used by {@link #LockManager()}.
+     */
+    public static final int DEFAULT_NUM_STRIPES = 16;
+
     private static final long TEN_YEARS_MILLIS = 10L * 365L * 24L * 60L * 60L * 1000L;
+    private static final int[] SINGLE_STRIPE = new int[] { 0 };
 
-    private final Object lockObject;
+/*
 
-    // Contains each owner's lock time, or null if hold timeout has expired.
-    // Invariant: if owner has any locks, then owner is a key in this map and value is not null.
-    // In the case owner's hold timeout expired and another owner forced it to release all of its locks, the expired
-    // owner will own no locks but still exist in this map (with a null value), until its next lock() or release().
-    private final HashMap<LockOwner, Long> lockTimes = new HashMap<>();
+   Locking order: (1) stripe monitors in ascending order, (2) LockOwner monitors (at most one at a time)
+
+   Each stripe's interval tree contains every lock whose range includes keys in that stripe. Each owner's locks are
+   also recorded in LockOwner.locks, which along with the owner's hold timeout state is guarded by the LockOwner.
+   Waiting threads wait on the monitor of the stripe containing the conflicting lock, after releasing all stripe
+   monitors; each stripe's version is incremented whenever a lock is removed, so a thread that observes an unchanged
+   version before waiting knows that it has not missed the corresponding notification.
+
+*/
 
-    private final TreeSet<Lock> locksByMin = new TreeSet<>(Lock.MIN_COMPARATOR);            // locks ordered by minimum
-    private final TreeSet<Lock> locksByMax = new TreeSet<>(Lock.MAX_COMPARATOR);            // locks ordered by maximum
+    // Invariant: if an owner has any locks, then LockOwner.holding is true.
+    // In the case owner's hold timeout expired and another owner forced it to release all of its locks, the expired
+    // owner will own no locks but have LockOwner.expired set, until its next release().
+    private final Stripe[] stripes;
     private final long nanoBasis = System.nanoTime();
 
-    private long holdTimeout;
+    private volatile long holdTimeout;
+    private volatile boolean releaseOnWaitTimeout;
 
     /**
-     * Convenience constructor. Equivalent to <code>LockManager(null)</code>.
+     * Convenience constructor. Equivalent to <code>LockManager(DEFAULT_NUM_STRIPES)</code>.
      */
     public LockManager() {
-        this(null);
+        this(DEFAULT_NUM_STRIPES);
     }
 
     /**
-     * Primary constructor.
+     * Constructor for an instance that uses a single monitor object.
      *
      * @param lockObject Java object used to synchronize field access and inter-thread wait/notify handshake,
      *  or null to use this instance
      */
     public LockManager(Object lockObject) {
-        this.lockObject = lockObject != null ? lockObject : this;
+        this.stripes = new Stripe[] { new Stripe(lockObject != null ? lockObject : this) };
+    }
+
+    /**
+     * Constructor for an instance that divides the key space into stripes.
+     *
+     * @param numStripes number of stripes
+     * @throws IllegalArgumentException if {@code numStripes} is not in the range 1 to 256
+     */
+    public LockManager(int numStripes) {
+        Preconditions.checkArgument(numStripes >= 1 && numStripes <= 256, "invalid numStripes");
+        this.stripes = new Stripe[numStripes];
+        for (int i = 0; i < numStripes; i++)
+            this.stripes[i] = new Stripe(new Object());
+    }
+
+    /**
+     * Get the number of key space stripes used by this instance.
+     *
+     * @return number of stripes, or one if this instance uses a single monitor object
+     */
+    public int getNumStripes() {
+        return this.stripes.length;
     }
 
     /**
@@ -91,9 +131,7 @@ public class LockManager {
      * @return hold timeout in milliseconds
      */
     public long getHoldTimeout() {
-        synchronized (this.lockObject) {
-            return this.holdTimeout;
-        }
+        return this.holdTimeout;
     }
 
     /**
@@ -105,9 +143,35 @@ public class LockManager {
      */
     public void setHoldTimeout(long holdTimeout) {
         Preconditions.checkArgument(holdTimeout >= 0, "holdTimeout < 0");
-        synchronized (this.lockObject) {
-            this.holdTimeout = Math.min(holdTimeout, TEN_YEARS_MILLIS);             // limit to 10 years to avoid overflow
-        }
+        this.holdTimeout = Math.min(holdTimeout, TEN_YEARS_MILLIS);                 // limit to 10 years to avoid overflow
+    }
+
+    /**
+     * Determine whether all of an owner's locks are released when {@link #lock lock()} returns
+     * {@link LockResult#WAIT_TIMEOUT_EXPIRED}.
+     *
+     * @return true if locks are released on wait timeout
+     */
+    public boolean isReleaseOnWaitTimeout() {
+        return this.releaseOnWaitTimeout;
+    }
+
+    /**
+     * Configure whether all of an owner's locks are released when {@link #lock lock()} returns
+     * {@link LockResult#WAIT_TIMEOUT_EXPIRED}. Default is false.
+     *
+     * <p>
+     * When enabled, giving up on a lock is atomic with respect to other owners giving up: before returning
+     * {@link LockResult#WAIT_TIMEOUT_EXPIRED}, one final attempt to acquire the lock is made, and if that fails,
+     * the owner's locks are released, all while no other owner can be doing the same thing. So when two owners
+     * deadlock waiting for each other, only the first to time out fails. Without this, both could time out before
+     * either one releases its locks. This is mainly useful when callers do not hold a single monitor object while
+     * invoking {@link #lock lock()}, which would otherwise provide the same atomicity.
+     *
+     * @param releaseOnWaitTimeout true to release locks on wait timeout
+     */
+    public void setReleaseOnWaitTimeout(boolean releaseOnWaitTimeout) {
+        this.releaseOnWaitTimeout = releaseOnWaitTimeout;
     }
 
     /**
@@ -116,7 +180,7 @@ public class LockManager {
      * <p>
      * This method will block for up to {@code waitTimeout} milliseconds if the lock is held by
      * another thread, after which point {@link LockResult#WAIT_TIMEOUT_EXPIRED} is returned.
-     * The configured locking object will be used for inter-thread wait/notify handshaking.
+     * If this instance uses a single monitor object, it will be used for inter-thread wait/notify handshaking.
      *
      * <p>
      * If {@code owner} already holds one or more locks, but the {@linkplain #getHoldTimeout hold timeout} has expired,
@@ -124,7 +188,8 @@ public class LockManager {
      * automatically released.
      *
      * <p>
-     * Once a lock is successfully acquired, it stays acquired until all locks are released together via {@link #release release()}.
+     * Once a lock is successfully acquired, it stays acquired until all locks are released together via {@link #release release()},
+     * or until {@link LockResult#WAIT_TIMEOUT_EXPIRED} is returned if {@linkplain #setReleaseOnWaitTimeout so configured}.
      *
      * @param owner lock owner
      * @param minKey minimum key (inclusive); must not be null
@@ -140,63 +205,57 @@ public class LockManager {
      */
     public LockResult lock(LockOwner owner, byte[] minKey, byte[] maxKey, boolean write, long waitTimeout)
       throws InterruptedException {
-        synchronized (this.lockObject) {
 
-            // Sanity check
-            Preconditions.checkArgument(owner != null, "null owner");
-            Preconditions.checkArgument(waitTimeout >= 0, "waitTimeout < 0");
-            waitTimeout = Math.min(waitTimeout, TEN_YEARS_MILLIS);                  // limit to 10 years to avoid overflow
+        // Sanity check
+        Preconditions.checkArgument(owner != null, "null owner");
+        Preconditions.checkArgument(waitTimeout >= 0, "waitTimeout < 0");
+        waitTimeout = Math.min(waitTimeout, TEN_YEARS_MILLIS);                      // limit to 10 years to avoid overflow
+        final long waitDeadline = System.nanoTime() + waitTimeout * 1000000L;
+
+        // Create lock
+        final Lock lock = new Lock(owner, minKey, maxKey, write);
+        final int[] indexes = this.getStripes(lock);
+
+        // Wait for lockability, until the first one of:
+        //  - Wait timeout
+        //  - Locker's hold timeout
+        //  - Lock owner's hold timeout
+        while (true) {
 
             // Check hold timeout
             final long lockerRemaining = this.checkHoldTimeout(owner);
             if (lockerRemaining == -1)
                 return LockResult.HOLD_TIMEOUT_EXPIRED;
 
-            // Create lock
-            Lock lock = new Lock(owner, minKey, maxKey, write);
-
-            // Wait for lockability, until the first one of:
-            //  - Wait timeout
-            //  - Locker's hold timeout
-            //  - Lock owner's hold timeout
-            final LockChecker lockChecker = new LockChecker(lock);
-            if (!lockChecker.test()) {
-                long timeToWait = Math.min(waitTimeout, lockChecker.getTimeRemaining());
-                if (lockerRemaining != 0)
-                    timeToWait = Math.min(timeToWait, lockerRemaining);
-                if (!TimedWait.wait(this.lockObject, timeToWait, lockChecker))
-                    return LockResult.WAIT_TIMEOUT_EXPIRED;
-            }
+            // Try to acquire the lock
+            final Attempt attempt = this.withStripes(indexes, 0, () -> this.tryLock(lock, indexes));
+            if (attempt.result != null)
+                return attempt.result;
 
-            // Check hold timeout again
-            if (this.checkHoldTimeout(owner) == -1)
-                return LockResult.HOLD_TIMEOUT_EXPIRED;
-
-            // Merge the lock with other locks it can merge with, removing those locks in the process
-            for (Lock that : lockChecker.getMergers()) {
-                final Lock mergedLock = lock.mergeWith(that);
-                if (mergedLock != null) {
-                    this.locksByMin.remove(that);
-                    this.locksByMax.remove(that);
-                    owner.locks.remove(that);
-                    lock = mergedLock;
-                }
+            // Release the locks of an owner whose hold timeout has expired and try again
+            if (attempt.expiredLocks != null && !attempt.expiredLocks.isEmpty()) {
+                this.removeLocks(attempt.expiredLocks);
+                continue;
             }
 
-            // Add lock
-            this.locksByMin.add(lock);
-            this.locksByMax.add(lock);
-            owner.locks.add(lock);
+            // Determine how long to wait
+            long timeToWait = attempt.ownerRemaining;
+            if (lockerRemaining != 0)
+                timeToWait = timeToWait != 0 ? Math.min(timeToWait, lockerRemaining) : lockerRemaining;
+            if (waitTimeout != 0) {
+                final long waitRemaining = waitDeadline - System.nanoTime();
+                if (waitRemaining <= 0)
+                    return this.waitTimeoutExpired(lock, indexes);
+                final long waitRemainingMillis = (waitRemaining + 999999L) / 1000000L;
+                timeToWait = timeToWait != 0 ? Math.min(timeToWait, waitRemainingMillis) : waitRemainingMillis;
+            }
 
-            // Set hold timeout (if not already set)
-            if (!this.lockTimes.containsKey(owner)) {
-                final long currentTime = System.nanoTime() - this.nanoBasis;
-                this.lockTimes.put(owner, currentTime);
-            } else
-                assert this.lockTimes.get(owner) != null;
-
-            // Done
-            return LockResult.SUCCESS;
+            // Wait for some lock in the conflicting stripe to be released, unless that has already happened
+            final Stripe stripe = this.stripes[attempt.stripe];
+            synchronized (stripe.monitor) {
+                if (stripe.version == attempt.version)
+                    stripe.monitor.wait(timeToWait);
+            }
         }
     }
 
@@ -210,8 +269,8 @@ public class LockManager {
      * @return true if the range is locked for writes by {@code owner}
      */
     public boolean isLocked(LockOwner owner, byte[] minKey, byte[] maxKey, boolean write) {
-        synchronized (this.lockObject) {
-            Preconditions.checkArgument(owner != null, "null owner");
+        Preconditions.checkArgument(owner != null, "null owner");
+        synchronized (owner) {
             KeyRanges ranges = new KeyRanges(minKey, maxKey);
             for (Lock lock : owner.locks) {
                 if (write && !lock.write)
@@ -238,21 +297,25 @@ public class LockManager {
      */
     public boolean release(LockOwner owner) {
         Preconditions.checkArgument(owner != null, "null owner");
-        synchronized (this.lockObject) {
+        final List<Lock> locks;
+        synchronized (owner) {
 
-            // Check if hold timeout has already expired; in any case, remove lock time
-            if (this.lockTimes.containsKey(owner)) {
-                final Long lockTime = this.lockTimes.remove(owner);
-                if (lockTime == null)
-                    return false;
+            // Check if hold timeout has already expired; in any case, reset hold state
+            if (owner.expired) {
+                owner.expired = false;
+                return false;
             }
+            owner.holding = false;
 
-            // Release all locks
-            this.doRelease(owner);
-
-            // Done
-            return true;
+            // Detach all locks
+            locks = this.takeLocks(owner);
         }
+
+        // Release all locks
+        this.removeLocks(locks);
+
+        // Done
+        return true;
     }
 
     /**
@@ -269,99 +332,232 @@ public class LockManager {
      * @throws IllegalArgumentException if {@code owner} is null
      */
     public long checkHoldTimeout(LockOwner owner) {
-        synchronized (this.lockObject) {
-            if (this.holdTimeout == 0)
-                return 0;
-            if (!this.lockTimes.containsKey(owner))
-                return 0;
-            final Long lockTime = this.lockTimes.get(owner);
-            if (lockTime == null)
-                return -1;
-            final long currentTime = System.nanoTime() - this.nanoBasis;
-            final long holdDeadline = lockTime + this.holdTimeout * 1000000L;
-            final long remaining = holdDeadline - currentTime;
-            if (remaining <= 0) {
-                this.lockTimes.put(owner, null);
-                this.doRelease(owner);
-                return -1;
-            }
-            return (remaining + 999999L) / 1000000L;
+        final List<Lock> locks;
+        synchronized (owner) {
+            final long remaining = this.getHoldRemaining(owner);
+            if (remaining != -1)
+                return remaining;
+            locks = this.takeLocks(owner);
         }
+        this.removeLocks(locks);
+        return -1;
     }
 
-    // Release all locks held by owner. Assumes synchronized already on this.lockObject.
-    private void doRelease(LockOwner owner) {
-        for (Lock lock : owner.locks) {
-            this.locksByMin.remove(lock);
-            this.locksByMax.remove(lock);
-        }
-        owner.locks.clear();
-        this.lockObject.notifyAll();
-    }
+// Internal methods
 
-    // Check whether we can lock, and fill the list of mergers and return zero if so. If not, return time remaining.
-    // Assumes synchronized already on this.lockObject.
-    private long checkLock(Lock lock, List<Lock> mergers) {
+    // Try to acquire a lock. Assumes synchronized already on the monitors of the given stripes (which contain the lock).
+    private Attempt tryLock(Lock lock, int[] indexes) {
 
-        // Get lock's min & max
-        final byte[] lockMin = lock.getMin();
-        final byte[] lockMax = lock.getMax();
+        // Find overlapping locks and check for conflicts
+        final ArrayList<Lock> overlaps = new ArrayList<>();
+        final Set<Lock> mergers = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int index : indexes) {
+            final Stripe stripe = this.stripes[index];
+            overlaps.clear();
+            stripe.locks.findOverlaps(lock, overlaps);
+            for (Lock other : overlaps) {
 
-    startOver:
-        while (true) {
+                // Do this lock & other lock conflict?
+                if (lock.conflictsWith(other)) {
 
-            // Get locks whose min is < lockMax
-            final NavigableSet<Lock> lhs = lockMax == null ? this.locksByMin :
-              this.locksByMin.headSet(Lock.getMinKey(lockMax, false), false);
+                    // See if other lock's owner's hold timeout has expired (if other lock's owner is not holding,
+                    // it is in the process of releasing its locks, so we'll be notified shortly)
+                    synchronized (other.owner) {
+                        final long remaining = this.getHoldRemaining(other.owner);
+                        if (remaining == -1)
+                            return new Attempt(this.takeLocks(other.owner), index, stripe.version);
 
-            // Get locks whose max is > lockMin
-            final NavigableSet<Lock> rhs = this.locksByMax.tailSet(Lock.getMaxKey(ByteUtil.getNextKey(lockMin), false), true);
+                        // Return time remaining until conflicting owner's hold timeout
+                        return new Attempt(remaining, index, stripe.version);
+                    }
+                }
 
-            // Find overlapping locks and check for conflicts
-            final HashSet<Lock> overlaps = new HashSet<>();
-            for (Lock other : lhs) {
+                // Can we merge with this lock?
+                if (lock.mergeWith(other) != null)
+                    mergers.add(other);
+            }
+        }
 
-                // Does this lock overlap?
-                if (!rhs.contains(other))
-                    continue;
+        // Add the lock
+        final LockOwner owner = lock.owner;
+        synchronized (owner) {
 
-                // Do this lock & other lock conflict?
-                if (lock.conflictsWith(other)) {
+            // Check hold timeout again
+            if (owner.expired)
+                return new Attempt(LockResult.HOLD_TIMEOUT_EXPIRED);
+
+            // Merge the lock with other locks it can merge with, removing those locks in the process; we can only
+            // merge if the combined lock belongs to stripes we have locked
+            Lock newLock = lock;
+            for (Lock that : mergers) {
+                final Lock mergedLock = newLock.mergeWith(that);
+                if (mergedLock != null && this.containsAll(indexes, this.getStripes(mergedLock))) {
+                    for (int index : this.getStripes(that))
+                        this.stripes[index].locks.remove(that);
+                    owner.locks.remove(that);
+                    newLock = mergedLock;
+                }
+            }
 
-                    // See if other lock's owner's hold timeout has expired
-                    assert this.lockTimes.containsKey(other.owner);
-                    final long remaining = this.checkHoldTimeout(other.owner);
-                    if (remaining == -1)
-                        continue startOver;
+            // Add lock
+            for (int index : this.getStripes(newLock))
+                this.stripes[index].locks.add(newLock);
+            owner.locks.add(newLock);
 
-                    // Return time remaining until conflicting owner's hold timeout
-                    return Math.max(remaining, 1);
-                }
+            // Set hold timeout (if not already set)
+            if (!owner.holding) {
+                owner.lockTime = System.nanoTime() - this.nanoBasis;
+                owner.holding = true;
+            }
+        }
+
+        // Done
+        return new Attempt(LockResult.SUCCESS);
+    }
 
-                // Add overlap
-                overlaps.add(other);
+    // Give up waiting for a lock, first releasing the owner's locks if so configured. We synchronize on the first stripe's
+    // monitor (which is consistent with the locking order) so that no two owners can be giving up at the same time.
+    private LockResult waitTimeoutExpired(Lock lock, int[] indexes) {
+        if (!this.releaseOnWaitTimeout)
+            return LockResult.WAIT_TIMEOUT_EXPIRED;
+        synchronized (this.stripes[0].monitor) {
+
+            // Try one last time; the owner we were waiting on may have just given up
+            final Attempt attempt = this.withStripes(indexes, 0, () -> this.tryLock(lock, indexes));
+            if (attempt.result != null)
+                return attempt.result;
+
+            // Release all of the owner's locks
+            final List<Lock> locks;
+            synchronized (lock.owner) {
+                lock.owner.holding = false;
+                locks = this.takeLocks(lock.owner);
             }
+            this.removeLocks(locks);
+            if (attempt.expiredLocks != null)
+                this.removeLocks(attempt.expiredLocks);
+        }
+        return LockResult.WAIT_TIMEOUT_EXPIRED;
+    }
 
-            //System.out.println(Thread.currentThread().getName() + ": LockChecker: BEFORE: lock = " + lock + "\n"
-            //+ "  lockByMin = " + this.locksByMin + "\n"
-            //+ "  lockByMax = " + this.locksByMax + "\n"
-            //+ "   overlaps = " + overlaps + "\n");
+    // Get the owner's remaining hold time, marking the owner as expired if needed (but not releasing its locks).
+    // Assumes synchronized already on owner.
+    private long getHoldRemaining(LockOwner owner) {
+        final long timeout = this.holdTimeout;
+        if (timeout == 0)
+            return 0;
+        if (owner.expired)
+            return -1;
+        if (!owner.holding)
+            return 0;
+        final long currentTime = System.nanoTime() - this.nanoBasis;
+        final long holdDeadline = owner.lockTime + timeout * 1000000L;
+        final long remaining = holdDeadline - currentTime;
+        if (remaining <= 0) {
+            owner.holding = false;
+            owner.expired = true;
+            return -1;
+        }
+        return (remaining + 999999L) / 1000000L;
+    }
 
-            // Find overlaps we can merge with
-            overlaps.stream()
-              .filter(other -> lock.mergeWith(other) != null)
-              .forEach(mergers::add);
+    // Detach all locks held by owner. Assumes synchronized already on owner.
+    private List<Lock> takeLocks(LockOwner owner) {
+        final ArrayList<Lock> locks = new ArrayList<>(owner.locks);
+        owner.locks.clear();
+        return locks;
+    }
 
-            //System.out.println(Thread.currentThread().getName() + ": LockChecker: AFTER: lock = " + lock + "\n"
-            //+ "  lockByMin = " + this.locksByMin + "\n"
-            //+ "  lockByMax = " + this.locksByMax + "\n"
-            //+ "    mergers = " + mergers + "\n");
+    // Remove the given (detached) locks and wake up any waiters
+    private void removeLocks(List<Lock> locks) {
+        if (locks.isEmpty())
+            return;
+        if (this.stripes.length == 1) {
+            this.withStripes(SINGLE_STRIPE, 0, () -> {
+                locks.forEach(this.stripes[0].locks::remove);
+                this.stripes[0].removed();
+                return null;
+            });
+            return;
+        }
+        for (Lock lock : locks) {
+            final int[] indexes = this.getStripes(lock);
+            this.withStripes(indexes, 0, () -> {
+                for (int index : indexes) {
+                    this.stripes[index].locks.remove(lock);
+                    this.stripes[index].removed();
+                }
+                return null;
+            });
+        }
+    }
 
-            // Done
-            return 0;
+    // Perform some action while synchronized on the monitors of the given stripes (in ascending order)
+    private <T> T withStripes(int[] indexes, int pos, Supplier<T> action) {
+        if (pos == indexes.length)
+            return action.get();
+        synchronized (this.stripes[indexes[pos]].monitor) {
+            return this.withStripes(indexes, pos + 1, action);
         }
     }
 
+    // Get the (ascending) indexes of the stripes that contain keys in the given lock's range
+    private int[] getStripes(Lock lock) {
+        final int numStripes = this.stripes.length;
+        if (numStripes == 1)
+            return SINGLE_STRIPE;
+
+        // Get the range of possible first bytes (the empty key is treated like 0x00)
+        final byte[] min = lock.minKey();
+        final byte[] max = lock.maxKey();
+        final int first = min.length > 0 ? min[0] & 0xff : 0;
+        int last;
+        if (max == null)
+            last = 0xff;
+        else if (max.length == 0)
+            last = 0;
+        else if (max.length == 1)
+            last = (max[0] & 0xff) - 1;                     // max itself is excluded
+        else
+            last = max[0] & 0xff;
+        last = Math.max(last, first);
+
+        // Map to stripes
+        if (last - first + 1 >= numStripes) {
+            final int[] indexes = new int[numStripes];
+            for (int i = 0; i < numStripes; i++)
+                indexes[i] = i;
+            return indexes;
+        }
+        final int firstIndex = first % numStripes;
+        final int lastIndex = last % numStripes;
+        if (firstIndex <= lastIndex) {
+            final int[] indexes = new int[lastIndex - firstIndex + 1];
+            for (int i = 0; i < indexes.length; i++)
+                indexes[i] = firstIndex + i;
+            return indexes;
+        }
+        final int[] indexes = new int[lastIndex + 1 + numStripes - firstIndex];           // range wraps around
+        int pos = 0;
+        for (int i = 0; i <= lastIndex; i++)
+            indexes[pos++] = i;
+        for (int i = firstIndex; i < numStripes; i++)
+            indexes[pos++] = i;
+        return indexes;
+    }
+
+    // Determine whether sorted array "indexes" contains all of sorted array "subset"
+    private boolean containsAll(int[] indexes, int[] subset) {
+        int pos = 0;
+        for (int index : subset) {
+            while (pos < indexes.length && indexes[pos] < index)
+                pos++;
+            if (pos == indexes.length || indexes[pos] != index)
+                return false;
+        }
+        return true;
+    }
+
 // LockResult
 
     /**
@@ -385,37 +581,55 @@ public class LockManager {
         HOLD_TIMEOUT_EXPIRED;
     }
 
-// LockChecker predicate
+// Stripe
 
-    private class LockChecker implements Predicate {
+    private static final class Stripe {
 
-        private final Lock lock;
-        private final ArrayList<Lock> mergers = new ArrayList<>();
+        final Object monitor;
+        final KeyRangeTree<Lock> locks = new KeyRangeTree<>();            // guarded by monitor
 
-        private long timeRemaining;
+        long version;                                       // guarded by monitor; incremented when any lock is removed
 
-        LockChecker(Lock lock) {
-            this.lock = lock;
+        Stripe(Object monitor) {
+            this.monitor = monitor;
         }
 
-        public List<Lock> getMergers() {
-            return this.mergers;
+        // Invoked after removing locks. Assumes synchronized already on this.monitor.
+        void removed() {
+            this.version++;
+            this.monitor.notifyAll();
         }
+    }
 
-        public long getTimeRemaining() {
-            return this.timeRemaining;
+// Attempt
+
+    // The result of one attempt to acquire a lock
+    private static final class Attempt {
+
+        final LockResult result;                            // final result, or null if we need to wait
+        final List<Lock> expiredLocks;                      // locks of conflicting owner whose hold timeout has expired
+        final long ownerRemaining;                          // hold time remaining for conflicting owner, or zero if unlimited
+        final int stripe;                                   // stripe containing conflicting lock
+        final long version;                                 // version of stripe when the conflict was seen
+
+        Attempt(LockResult result) {
+            this(result, null, 0, -1, 0);
         }
 
-        @Override
-        public boolean test() {
+        Attempt(List<Lock> expiredLocks, int stripe, long version) {
+            this(null, expiredLocks, expiredLocks.isEmpty() ? 1 : 0, stripe, version);
+        }
 
-            // Reset state
-            this.mergers.clear();
+        Attempt(long ownerRemaining, int stripe, long version) {
+            this(null, null, ownerRemaining, stripe, version);
+        }
 
-            // See if we can lock
-            this.timeRemaining = LockManager.this.checkLock(this.lock, this.mergers);
-            return this.timeRemaining == 0;
+        private Attempt(LockResult result, List<Lock> expiredLocks, long ownerRemaining, int stripe, long version) {
+            this.result = result;
+            this.expiredLocks = expiredLocks;
+            this.ownerRemaining = ownerRemaining;
+            this.stripe = stripe;
+            this.version = version;
         }
     }
 }
-
@@ -17,7 +17,11 @@ import java.util.HashSet;
  */
 public final class LockOwner {
 
+    // The following fields are managed by LockManager and guarded by this instance
     final HashSet<Lock> locks = new HashSet<>();
+    boolean holding;                        // true if we have acquired locks and not yet released them
+    long lockTime;                          // when first lock was acquired, relative to LockManager nano basis
+    boolean expired;                        // true if hold timeout expired and our locks were forcibly released
 
     /**
      * Constructor.
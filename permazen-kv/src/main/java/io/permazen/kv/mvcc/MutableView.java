@@ -15,7 +15,9 @@ import io.permazen.kv.KeyRanges;
 import io.permazen.util.ByteUtil;
 import io.permazen.util.CloseableIterator;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -211,6 +213,57 @@ public class MutableView extends AbstractKVStore implements ReadTracking, Clonea
         return value;
     }
 
+    @Override
+    public synchronized List<byte[]> getMany(List<byte[]> keys) {
+        Preconditions.checkArgument(keys != null, "null keys");
+
+        // Resolve what we can from local writes; gather the rest
+        final int numKeys = keys.size();
+        final ArrayList<byte[]> values = new ArrayList<>(numKeys);
+        final ArrayList<byte[]> missKeys = new ArrayList<>(numKeys);
+        final int[] missIndexes = new int[numKeys];
+        for (int i = 0; i < numKeys; i++) {
+            final byte[] key = keys.get(i);
+
+            // Check puts
+            final byte[] value = this.writes.getPuts().get(key);
+            if (value != null) {
+                values.add(this.applyCounterAdjustment(key, value).clone());
+                continue;
+            }
+
+            // Check removes
+            values.add(null);
+            if (this.writes.getRemoves().contains(key))
+                continue;
+
+            // Read from underlying k/v store
+            missIndexes[missKeys.size()] = i;
+            missKeys.add(key);
+        }
+        if (missKeys.isEmpty())
+            return values;
+
+        // Read misses from underlying k/v store in one batch
+        final List<byte[]> missValues = this.kv.getMany(missKeys);
+        assert missValues.size() == missKeys.size();
+        for (int i = 0; i < missKeys.size(); i++) {
+            final byte[] key = missKeys.get(i);
+            byte[] value = missValues.get(i);
+
+            // Record the read
+            this.recordReads(key, ByteUtil.getNextKey(key));
+
+            // Apply counter adjustments
+            if (value != null)                                      // we can ignore adjustments of missing values
+                value = this.applyCounterAdjustment(key, value).clone();
+            values.set(missIndexes[i], value);
+        }
+
+        // Done
+        return values;
+    }
+
     @Override
     public synchronized CloseableIterator<KVPair> getRange(byte[] minKey, byte[] maxKey, boolean reverse) {
         return new RangeIterator(minKey, maxKey, reverse);
@@ -9,12 +9,16 @@ import com.google.common.base.Preconditions;
 
 import io.permazen.kv.KeyRange;
 import io.permazen.kv.KeyRanges;
+import io.permazen.util.ByteUtil;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
 
 /**
  * Holds a set of reads from a {@link io.permazen.kv.KVStore}.
@@ -23,10 +27,26 @@ import java.util.Map;
  * Only the (ranges of) keys read are retained, not the values.
  *
  * <p>
+ * Conflict checks against {@link Mutations} are performed as a single forward merge of the (sorted) mutated keys
+ * against the (sorted) key ranges in this instance, falling back to a direct lookup only when the mutations skip
+ * far ahead or are not in order. When the mutations are a {@link Writes} instance, a coarse pre-filter first compares
+ * the overall key span and the set of initial key bytes on each side, so that transactions touching disjoint areas
+ * of the key space are found not to conflict without examining individual keys.
+ *
+ * <p>
  * Instances are not thread safe.
  */
 public class Reads extends KeyRanges {
 
+    private static final byte[][] FIRST_BYTE_KEYS = new byte[0x100][];
+
+    static {
+        for (int i = 0; i < FIRST_BYTE_KEYS.length; i++)
+            FIRST_BYTE_KEYS[i] = new byte[] { (byte)i };
+    }
+
+    private transient long[] firstBytes;                                    // cached first byte summary; null if invalid
+
 // Constructors
 
     /**
@@ -58,6 +78,20 @@ public class Reads extends KeyRanges {
         super(input);
     }
 
+    /**
+     * Constructor to deserialize an instance created by {@link #serialize serialize()}.
+     *
+     * @param input input stream containing data from {@link #serialize serialize()}
+     * @param immutable whether this new instance should be immutable
+     * @throws IOException if an I/O error occurs
+     * @throws java.io.EOFException if the input ends unexpectedly
+     * @throws IllegalArgumentException if {@code input} is null
+     * @throws IllegalArgumentException if {@code input} is invalid
+     */
+    public Reads(InputStream input, boolean immutable) throws IOException {
+        super(input, immutable);
+    }
+
 // MVCC
 
     /**
@@ -79,21 +113,29 @@ public class Reads extends KeyRanges {
     public boolean isConflict(Mutations mutations) {
         Preconditions.checkArgument(mutations != null, "null mutations");
 
+        // Check for trivially disjoint mutations
+        if (this.isDisjoint(mutations))
+            return false;
+
         // Check for read/remove conflicts
+        final Writes writes = mutations instanceof Writes ? (Writes)mutations : null;
+        Cursor cursor = new Cursor(writes != null ? writes.getRemoves().size() : -1);
         for (KeyRange remove : mutations.getRemoveRanges()) {
-            if (this.intersects(remove))
+            if (cursor.intersects(remove))
                 return true;
         }
 
         // Check for read/write conflicts
+        cursor = new Cursor(writes != null ? writes.getPuts().size() : -1);
         for (Map.Entry<byte[], byte[]> entry : mutations.getPutPairs()) {
-            if (this.contains(entry.getKey()))
+            if (cursor.contains(entry.getKey()))
                 return true;
         }
 
         // Check for read/adjust conflicts
+        cursor = new Cursor(writes != null ? writes.getAdjusts().size() : -1);
         for (Map.Entry<byte[], Long> entry : mutations.getAdjustPairs()) {
-            if (this.contains(entry.getKey()))
+            if (cursor.contains(entry.getKey()))
                 return true;                    // read/adjust conflict
         }
 
@@ -173,12 +215,23 @@ public class Reads extends KeyRanges {
         // Prepare list
         final ArrayList<Conflict> conflictList = new ArrayList<>();
 
+        // Check for trivially disjoint mutations
+        if (this.isDisjoint(mutations))
+            return conflictList;
+
         // Check for read/remove conflicts
+        final Writes writes = mutations instanceof Writes ? (Writes)mutations : null;
+        Cursor cursor = new Cursor(writes != null ? writes.getRemoves().size() : -1);
         for (KeyRange remove : mutations.getRemoveRanges()) {
-            if (this.intersects(remove)) {
-                final KeyRanges intersection = new KeyRanges(remove);
-                intersection.intersect(this);
-                for (KeyRange range : intersection) {
+            if (cursor.intersects(remove)) {
+                for (KeyRange read : this.asSet().tailSet(cursor.range, true)) {
+                    if (KeyRange.compare(read.getMin(), remove.getMax()) >= 0)
+                        break;
+                    final byte[] min = ByteUtil.max(read.getMin(), remove.getMin());
+                    final byte[] max = KeyRange.compare(read.getMax(), remove.getMax()) < 0 ? read.getMax() : remove.getMax();
+                    final KeyRange range = new KeyRange(min, max);
+                    if (range.isEmpty())
+                        continue;
                     conflictList.add(new ReadRemoveConflict(range));
                     if (returnFirst)
                         return conflictList;
@@ -187,9 +240,10 @@ public class Reads extends KeyRanges {
         }
 
         // Check for read/write conflicts
+        cursor = new Cursor(writes != null ? writes.getPuts().size() : -1);
         for (Map.Entry<byte[], byte[]> entry : mutations.getPutPairs()) {
             final byte[] key = entry.getKey();
-            if (this.contains(key)) {
+            if (cursor.contains(key)) {
                 conflictList.add(new ReadWriteConflict(key));
                 if (returnFirst)
                     return conflictList;
@@ -197,9 +251,10 @@ public class Reads extends KeyRanges {
         }
 
         // Check for read/adjust conflicts
+        cursor = new Cursor(writes != null ? writes.getAdjusts().size() : -1);
         for (Map.Entry<byte[], Long> entry : mutations.getAdjustPairs()) {
             final byte[] key = entry.getKey();
-            if (this.contains(key)) {
+            if (cursor.contains(key)) {
                 conflictList.add(new ReadAdjustConflict(key));
                 if (returnFirst)
                     return conflictList;
@@ -210,6 +265,157 @@ public class Reads extends KeyRanges {
         return conflictList;
     }
 
+    /**
+     * Quickly determine whether the given mutations are known not to conflict with this instance
+     * without examining each mutated key.
+     *
+     * <p>
+     * This checks whether the overall key spans are disjoint, and if not, whether the sets of first key bytes are disjoint.
+     * The cost is independent of the number of reads or mutations. Only {@link Writes} instances are examined, because
+     * other {@link Mutations} (e.g., from {@link Writes#deserializeOnline Writes.deserializeOnline()}) can only be
+     * traversed once.
+     *
+     * @param mutations mutations to check
+     * @return true if there can be no conflict, false if there might be
+     */
+    private boolean isDisjoint(Mutations mutations) {
+
+        // Check mutations type
+        if (!(mutations instanceof Writes))
+            return false;
+        final Writes writes = (Writes)mutations;
+        final KeyRanges removes = writes.getRemoves();
+        final NavigableMap<byte[], byte[]> puts = writes.getPuts();
+        final NavigableMap<byte[], Long> adjusts = writes.getAdjusts();
+
+        // Handle trivial cases
+        if (this.isEmpty() || writes.isEmpty())
+            return true;
+
+        // Compare overall key spans
+        byte[] writeMin = null;
+        byte[] writeMax = ByteUtil.EMPTY;
+        if (!removes.isEmpty()) {
+            writeMin = removes.getMin();
+            writeMax = removes.getMax();
+        }
+        if (!puts.isEmpty()) {
+            writeMin = writeMin == null ? puts.firstKey() : ByteUtil.min(writeMin, puts.firstKey());
+            writeMax = KeyRange.compare(writeMax, puts.lastKey()) > 0 ? writeMax : ByteUtil.getNextKey(puts.lastKey());
+        }
+        if (!adjusts.isEmpty()) {
+            writeMin = writeMin == null ? adjusts.firstKey() : ByteUtil.min(writeMin, adjusts.firstKey());
+            writeMax = KeyRange.compare(writeMax, adjusts.lastKey()) > 0 ? writeMax : ByteUtil.getNextKey(adjusts.lastKey());
+        }
+        if (KeyRange.compare(writeMax, this.getMin()) <= 0 || KeyRange.compare(this.getMax(), writeMin) <= 0)
+            return true;
+
+        // Compare first byte summaries
+        final long[] readFirstBytes = this.getFirstBytes();
+        return !Reads.scanFirstBytes(removes.asSet(), readFirstBytes, true)
+          && !Reads.scanFirstBytes(puts, readFirstBytes, true)
+          && !Reads.scanFirstBytes(adjusts, readFirstBytes, true);
+    }
+
+    // Get the set of first key bytes contained by this instance, as a 256 bit bitmap
+    private long[] getFirstBytes() {
+        if (this.firstBytes == null) {
+            final long[] bits = new long[4];
+            Reads.scanFirstBytes(this.asSet(), bits, false);
+            this.firstBytes = bits;
+        }
+        return this.firstBytes;
+    }
+
+    /**
+     * Scan the first key bytes covered by the given key ranges, jumping over ranges sharing the same first byte.
+     *
+     * <p>
+     * The number of steps is bounded by the number of distinct first bytes, not the number of ranges.
+     * The empty key is treated as having first byte zero.
+     *
+     * @param ranges sorted, non-overlapping key ranges
+     * @param bits first byte bitmap
+     * @param test true to test whether any covered first byte is in {@code bits}, false to add them all to {@code bits}
+     * @return true if {@code test} and an intersection was found, otherwise false
+     */
+    private static boolean scanFirstBytes(NavigableSet<KeyRange> ranges, long[] bits, boolean test) {
+        KeyRange range = !ranges.isEmpty() ? ranges.first() : null;
+        while (range != null) {
+
+            // Find the last range that starts with the same first byte; it has the highest maximum among them
+            final int lo = Reads.firstByte(range.getMin());
+            if (lo < 0xff) {
+                final byte[] next = FIRST_BYTE_KEYS[lo + 1];
+                range = ranges.lower(new KeyRange(next, next));
+            } else
+                range = ranges.last();
+
+            // Determine the highest first byte of any key in that range
+            final byte[] max = range.getMax();
+            final int hi = max == null ? 0xff : max.length == 1 ? Math.max(Reads.firstByte(max) - 1, lo) : Reads.firstByte(max);
+
+            // Scan first bytes
+            for (int b = lo; b <= hi; b++) {
+                if (test) {
+                    if ((bits[b >> 6] & (1L << b)) != 0)
+                        return true;
+                } else
+                    bits[b >> 6] |= 1L << b;
+            }
+
+            // Advance to the next range
+            range = ranges.higher(range);
+        }
+        return false;
+    }
+
+    /**
+     * Scan the first key bytes of the keys in the given map, jumping over keys sharing the same first byte.
+     *
+     * @param map sorted key map
+     * @param bits first byte bitmap
+     * @param test true to test whether any first byte is in {@code bits}, false to add them all to {@code bits}
+     * @return true if {@code test} and an intersection was found, otherwise false
+     */
+    private static boolean scanFirstBytes(NavigableMap<byte[], ?> map, long[] bits, boolean test) {
+        byte[] key = !map.isEmpty() ? map.firstKey() : null;
+        while (key != null) {
+            final int b = Reads.firstByte(key);
+            if (test) {
+                if ((bits[b >> 6] & (1L << b)) != 0)
+                    return true;
+            } else
+                bits[b >> 6] |= 1L << b;
+            key = b < 0xff ? map.ceilingKey(FIRST_BYTE_KEYS[b + 1]) : null;
+        }
+        return false;
+    }
+
+    private static int firstByte(byte[] key) {
+        return key.length > 0 ? key[0] & 0xff : 0;
+    }
+
+// KeyRanges
+
+    @Override
+    public void add(KeyRange range) {
+        this.firstBytes = null;
+        super.add(range);
+    }
+
+    @Override
+    public void remove(KeyRange range) {
+        this.firstBytes = null;
+        super.remove(range);
+    }
+
+    @Override
+    public void clear() {
+        this.firstBytes = null;
+        super.clear();
+    }
+
 // Cloneable
 
     @Override
@@ -221,5 +427,83 @@ public class Reads extends KeyRanges {
     public Reads immutableSnapshot() {
         return (Reads)super.immutableSnapshot();
     }
-}
 
+// Cursor
+
+    /**
+     * Merges a sequence of keys against the ranges in this instance.
+     *
+     * <p>
+     * When search keys are presented in sorted order, the cursor steps forward through the ranges, so checking
+     * {@code m} keys against {@code n} ranges costs {@code O(m + n)}. When a key is more than about {@code log(n)}
+     * ranges ahead of the cursor, or out of order, the cursor jumps directly to it, so the cost is never much more than
+     * that of individual lookups. If the number of keys is known to be small relative to {@code n}, the cursor always jumps.
+     */
+    private final class Cursor {
+
+        private final NavigableSet<KeyRange> ranges = Reads.this.asSet();
+        private final int maxSteps;
+
+        private Iterator<KeyRange> iterator;        // iterates ranges after this.range; created lazily
+        private KeyRange range;                     // first range whose max is greater than this.prev, or null if none
+        private byte[] prev;                        // previous search key, or null if none
+
+        /**
+         * Constructor.
+         *
+         * @param count number of keys that will be searched for, or -1 if unknown
+         */
+        Cursor(int count) {
+            final int size = this.ranges.size();
+            final int lookupCost = 2 * (Integer.SIZE - Integer.numberOfLeadingZeros(size));
+            this.maxSteps = count > 0 && size / count > lookupCost ? 0 : lookupCost;
+        }
+
+        /**
+         * Determine whether any range contains the given key.
+         */
+        boolean contains(byte[] key) {
+            final KeyRange next = this.seek(key);
+            return next != null && next.compareTo(key) == 0;
+        }
+
+        /**
+         * Determine whether any range intersects the given range.
+         */
+        boolean intersects(KeyRange other) {
+            final KeyRange next = this.seek(other.getMin());
+            return next != null && next.overlaps(other);
+        }
+
+        // Position this cursor on the first range whose maximum is greater than the given key
+        private KeyRange seek(byte[] key) {
+            if (this.prev == null || ByteUtil.compare(key, this.prev) < 0)
+                this.jump(key);
+            else {
+                for (int steps = 0; this.range != null && this.range.compareTo(key) < 0; steps++) {
+                    if (steps == this.maxSteps) {
+                        this.jump(key);
+                        break;
+                    }
+                    if (this.iterator == null)
+                        this.iterator = this.ranges.tailSet(this.range, false).iterator();
+                    this.range = this.iterator.hasNext() ? this.iterator.next() : null;
+                }
+            }
+            this.prev = key;
+            return this.range;
+        }
+
+        private void jump(byte[] key) {
+            final KeyRange searchKey = new KeyRange(key, key);
+            final KeyRange lower = this.ranges.lower(searchKey);
+            if (lower != null && lower.compareTo(key) == 0) {
+                this.range = lower;
+                this.iterator = null;
+                return;
+            }
+            this.iterator = this.ranges.tailSet(searchKey, false).iterator();
+            this.range = this.iterator.hasNext() ? this.iterator.next() : null;
+        }
+    }
+}
@@ -11,6 +11,7 @@ import com.google.common.util.concurrent.ListenableFuture;
 import io.permazen.kv.CloseableKVStore;
 import io.permazen.kv.KVDatabase;
 import io.permazen.kv.KVTransactionException;
+import io.permazen.kv.KeyRange;
 import io.permazen.kv.RetryTransactionException;
 import io.permazen.kv.StaleTransactionException;
 import io.permazen.kv.util.CloseableForwardingKVStore;
@@ -18,7 +19,6 @@ import io.permazen.kv.util.KeyWatchTracker;
 
 import java.util.ArrayList;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.Map;
 
 import javax.annotation.PostConstruct;
@@ -39,38 +39,77 @@ import org.slf4j.LoggerFactory;
  * do not contend for any locks until commit time. During each transaction, reads are noted and derive from the snapshot,
  * while writes are batched up. At commit time, if any other transaction has committed writes since the transaction's
  * snapshot was created, and any of those writes {@linkplain Reads#isConflict conflict} with any of the committing
- * transaction's reads, a {@link RetryTransactionException} is thrown. Otherwise, the transaction is committed and its
+ * transaction's reads, a {@link TransactionConflictException} is thrown. Otherwise, the transaction is committed and its
  * writes are applied.
  *
  * <p>
+ * Conflicts are detected by comparing each transaction's reads against a history of the writes committed since the
+ * transaction's base version, mostly without holding any database-wide lock, so the cost of a commit does not depend on
+ * the number of other open transactions. Open transactions are rebased onto the latest version lazily, i.e., the next
+ * time they are accessed after some other transaction commits; a transaction that is found to conflict at that point
+ * fails immediately with a {@link TransactionConflictException}. The conflicts causing failures may be aggregated by
+ * configuring a {@link ConflictProfiler}.
+ *
+ * <p>
+ * Until it is rebased, an idle open transaction retains its original snapshot as well as the writes of every commit
+ * made since then. To bound this retention, a transaction that falls more than {@linkplain #setMaxCommitLag a maximum
+ * number} of commits behind is failed with a {@link RetryTransactionException}.
+ *
+ * <p>
  * Each outstanding transaction's mutations are batched up in memory using a {@link Writes} instance. Therefore,
  * the transaction load supported by this class is limited to what can fit in memory.
  *
  * <p>
  * {@linkplain SnapshotKVTransaction#watchKey Key watches} are supported.
  *
+ * <p>
+ * Normally each transaction's mutations are durably written to the underlying {@link AtomicKVStore} separately.
+ * When {@linkplain #setGroupCommit group commit} is enabled, transactions that commit while a durable write is
+ * in progress are conflict checked and committed as usual, but their mutations are merged into a single batch
+ * that is durably written in one {@link AtomicKVStore#mutate AtomicKVStore.mutate()} operation once the previous
+ * write completes. Each committing thread returns only after the batch containing its mutations is durable. In the
+ * meantime, other transactions see those mutations via an overlay on top of the underlying key/value store.
+ *
  * @see AtomicKVDatabase
  */
 @ThreadSafe
-public abstract class SnapshotKVDatabase implements KVDatabase {
+public abstract class SnapshotKVDatabase implements ConflictProfilingKVDatabase {
 
 // Locking order: (1) SnapshotKVTransaction, (2) SnapshotKVDatabase, (3) MutableView
 
+    /**
+     * Default maximum number of commits an open transaction may fall behind ({@value #DEFAULT_MAX_COMMIT_LAG}).
+     *
+     * @see #setMaxCommitLag
+     */
+    public static final long DEFAULT_MAX_COMMIT_LAG = 10000;
+
     protected final Logger log = LoggerFactory.getLogger(this.getClass());
 
 /*
 
-   Open transactions (only) are contained in this.transactions; this.snapshot is the read-only view
-   of the underlying key/value store on which all of these open transactions are based. Each transaction has its
-   own MutableView of this.snapshot.
+   Open transactions (only) are contained in this.transactions; this.snapshot is the read-only view of the underlying
+   key/value store for the current version. Each transaction has its own MutableView based on the snapshot for the
+   version it was created in or last rebased to (tx.snapshotRefs), which may be older than this.snapshot.
 
-   this.snapshot has one reference for being non-null; this reference is shared by all open transactions (if any).
-   It also has one reference for each mutableSnapshot() based on it (see createMutableSnapshot()); these references are
-   the responsibility of whoever called mutableSnapshot().
+   this.snapshot has one reference for being non-null. Each open transaction has one reference to its own snapshot, and
+   there is one reference for each mutableSnapshot() (see createMutableSnapshot()); these latter references are the
+   responsibility of whoever called mutableSnapshot().
 
-   When a transaction is committed, the mutations are applied to the key/value store and this.snapshot is discarded
-   and replaced with a new snapshot of the key/value store, and the MutableView's associated with all other open
-   (and non-conflicting) transactions are updated with the new snapshot.
+   Committed writes are recorded in a singly linked list of CommitRecord's, from oldest to newest, with this.lastCommit
+   being the most recent. Each transaction points to the CommitRecord for its base version; the records after it contain
+   exactly the writes that the transaction must be checked against. Records no longer referenced by any transaction
+   are simply garbage collected. Because CommitRecord's are immutable (except for being appended to), conflict checks
+   against them can be done without holding the database lock.
+
+   When a transaction is committed, its reads are checked against the commits since its base version, the mutations are
+   applied to the key/value store, a new CommitRecord is appended, and this.snapshot is discarded. Other open transactions
+   are not touched; instead, they check for conflicts and rebase onto the new snapshot the next time they are accessed.
+
+   An idle transaction pins its snapshot and every CommitRecord after its base, so transactions that fall more than
+   this.maxCommitLag commits behind are invalidated. To avoid scanning all open transactions on every commit, each scan
+   computes this.nextLagCheck, the earliest version at which any transaction could exceed the limit; this is conservative
+   because transactions' base versions only increase and new transactions start at the current version.
 
 */
 
@@ -78,6 +117,7 @@ public abstract class SnapshotKVDatabase implements KVDatabase {
     private final HashSet<SnapshotKVTransaction> transactions = new HashSet<>();
     @GuardedBy("this")
     private SnapshotRefs snapshot;                                          // created on-demand for each new version
+    private volatile CommitRecord lastCommit = new CommitRecord(0, null);   // most recent commit; only modified while locked
 
     @GuardedBy("this")
     private AtomicKVStore kvstore;
@@ -89,6 +129,23 @@ public abstract class SnapshotKVDatabase implements KVDatabase {
     private boolean started;
     @GuardedBy("this")
     private boolean stopping;
+    @GuardedBy("this")
+    private boolean groupCommit;
+    @GuardedBy("this")
+    private long maxCommitLag = DEFAULT_MAX_COMMIT_LAG;
+    @GuardedBy("this")
+    private long nextLagCheck;                                              // no transaction can exceed lag before this
+    private volatile ConflictProfiler conflictProfiler;
+
+    // Group commit state
+    @GuardedBy("this")
+    private SnapshotRefs groupBase;                                         // snapshot on which non-durable writes are based
+    @GuardedBy("this")
+    private MutableView groupView;                                          // all committed but non-durable writes
+    @GuardedBy("this")
+    private CommitGroup queuedGroup;                                        // writes not yet part of any durable write
+    @GuardedBy("this")
+    private boolean writingGroup;                                           // a durable group write is in progress
 
 // Constructors
 
@@ -144,6 +201,82 @@ public abstract class SnapshotKVDatabase implements KVDatabase {
         return this.currentVersion;
     }
 
+    /**
+     * Determine whether group commit is enabled.
+     *
+     * @return true if group commit is enabled
+     */
+    public synchronized boolean isGroupCommit() {
+        return this.groupCommit;
+    }
+
+    /**
+     * Configure whether to enable group commit.
+     *
+     * <p>
+     * When enabled, mutations from transactions that commit while a previous durable write is in progress are merged
+     * into a single batch and written with one durable {@link AtomicKVStore#mutate AtomicKVStore.mutate()} operation.
+     * This can greatly increase write throughput when many small transactions commit concurrently and each durable
+     * write requires an expensive disk sync, at the cost of some additional commit latency for individual transactions.
+     *
+     * <p>
+     * Mutations are visible to other transactions as soon as they are committed, even before they are durable.
+     * If a durable write fails, the transactions in that batch fail with a {@link KVTransactionException}, and all
+     * other transactions that committed or were opened after them fail with a {@link RetryTransactionException}.
+     *
+     * <p>
+     * Default is false.
+     *
+     * @param groupCommit true to enable group commit
+     * @throws IllegalStateException if this instance is already started
+     */
+    public synchronized void setGroupCommit(boolean groupCommit) {
+        Preconditions.checkState(!this.started, "already started");
+        this.groupCommit = groupCommit;
+    }
+
+    /**
+     * Get the maximum number of commits an open transaction may fall behind before it is failed.
+     *
+     * @return maximum commit lag
+     */
+    public synchronized long getMaxCommitLag() {
+        return this.maxCommitLag;
+    }
+
+    /**
+     * Configure the maximum number of commits an open transaction may fall behind before it is failed.
+     *
+     * <p>
+     * Open transactions are rebased onto newer versions lazily, so an idle transaction retains its original snapshot
+     * and the writes of every later commit until it is next accessed. Once more than {@code maxCommitLag} commits
+     * have occurred since a transaction's base version, the transaction is failed with a {@link RetryTransactionException},
+     * which releases that history. This bounds the memory retained by transactions that are left open.
+     *
+     * <p>
+     * Default is {@value #DEFAULT_MAX_COMMIT_LAG}.
+     *
+     * @param maxCommitLag maximum commit lag
+     * @throws IllegalArgumentException if {@code maxCommitLag} is zero or negative
+     */
+    public synchronized void setMaxCommitLag(long maxCommitLag) {
+        Preconditions.checkArgument(maxCommitLag > 0, "maxCommitLag <= 0");
+        this.maxCommitLag = maxCommitLag;
+        this.nextLagCheck = 0;
+    }
+
+// ConflictProfilingKVDatabase
+
+    @Override
+    public ConflictProfiler getConflictProfiler() {
+        return this.conflictProfiler;
+    }
+
+    @Override
+    public void setConflictProfiler(ConflictProfiler conflictProfiler) {
+        this.conflictProfiler = conflictProfiler;
+    }
+
 // KVDatabase
 
     @Override
@@ -174,6 +307,8 @@ public abstract class SnapshotKVDatabase implements KVDatabase {
         // Finish up
         synchronized (this) {
             assert this.started;
+            this.awaitGroupWrites();
+            assert this.groupBase == null;
             if (this.snapshot != null) {
                 this.snapshot.unref();
                 this.snapshot = null;
@@ -206,8 +341,13 @@ public abstract class SnapshotKVDatabase implements KVDatabase {
         Preconditions.checkState(!this.stopping, "stopping");
 
         // Create new transaction
-        final MutableView view = new MutableView(this.getCurrentSnapshot().getKVStore());
+        final SnapshotRefs snapshotRefs = this.getCurrentSnapshot();
+        final MutableView view = new MutableView(snapshotRefs.getKVStore());
         final SnapshotKVTransaction tx = this.createSnapshotKVTransaction(view, this.currentVersion);
+        snapshotRefs.ref();
+        tx.snapshotRefs = snapshotRefs;
+        tx.baseRecord = this.lastCommit;
+        assert tx.baseRecord.version == this.currentVersion;
         assert !this.transactions.contains(tx);
         this.transactions.add(tx);
         if (this.log.isTraceEnabled())
@@ -226,6 +366,13 @@ public abstract class SnapshotKVDatabase implements KVDatabase {
         return this.keyWatchTracker.register(key);
     }
 
+    synchronized ListenableFuture<Void> watchRange(KeyRange range) {
+        Preconditions.checkState(this.started, "not started");
+        if (this.keyWatchTracker == null)
+            this.keyWatchTracker = new KeyWatchTracker();
+        return this.keyWatchTracker.register(range);
+    }
+
 // Object
 
     @Override
@@ -300,14 +447,21 @@ public abstract class SnapshotKVDatabase implements KVDatabase {
     /**
      * Commit a transaction.
      */
-    synchronized void commit(SnapshotKVTransaction tx, boolean readOnly) {
+    void commit(SnapshotKVTransaction tx, boolean readOnly) {
         assert Thread.holdsLock(tx);
+        final CommitGroup group;
         try {
-            this.doCommit(tx, readOnly);
+            group = this.doCommit(tx, readOnly);
         } finally {
-            tx.error = null;                                // from this point on, throw a StaleTransactionException if accessed
-            this.cleanupTransaction(tx);
+            synchronized (this) {
+                tx.error = null;                            // from this point on, throw a StaleTransactionException if accessed
+                this.cleanupTransaction(tx);
+            }
         }
+
+        // If using group commit, wait for our mutations to become durable
+        if (group != null)
+            this.awaitDurable(tx, group);
     }
 
     /**
@@ -323,105 +477,231 @@ public abstract class SnapshotKVDatabase implements KVDatabase {
 
 // SnapshotKVTransaction Methods
 
-    synchronized CloseableKVStore createMutableSnapshot(Writes writes) {
-        final SnapshotRefs snapshotRefs = this.getCurrentSnapshot();
+    synchronized CloseableKVStore createMutableSnapshot(SnapshotKVTransaction tx, Writes writes) {
+        assert Thread.holdsLock(tx);
+        final SnapshotRefs snapshotRefs = tx.snapshotRefs;
+        if (snapshotRefs == null) {
+            tx.throwErrorIfAny();
+            throw this.logException(new StaleTransactionException(tx));
+        }
         snapshotRefs.ref();
         final MutableView view = new MutableView(snapshotRefs.getKVStore(), null, writes);
         return new CloseableForwardingKVStore(view, snapshotRefs.getUnrefCloseable());
     }
 
+    /**
+     * Rebase a transaction onto the current database version, if necessary.
+     *
+     * @throws RetryTransactionException if the transaction conflicts with a newer commit
+     */
+    void rebase(SnapshotKVTransaction tx) {
+        assert Thread.holdsLock(tx);
+
+        // Any newer commits?
+        final CommitRecord base = tx.baseRecord;
+        if (base.next == null)
+            return;
+
+        // Get the snapshot for the current version
+        final SnapshotRefs snapshotRefs;
+        final CommitRecord last;
+        synchronized (this) {
+            if (!this.transactions.contains(tx)) {
+                tx.throwErrorIfAny();
+                throw this.logException(new StaleTransactionException(tx));
+            }
+            snapshotRefs = this.getCurrentSnapshot();
+            snapshotRefs.ref();
+            last = this.lastCommit;
+        }
+
+        // Check for conflicts with the newer commits and, if none, switch to the new snapshot, all without holding
+        // the database lock; the view is locked so no reads can be recorded in between those two steps
+        final TransactionConflictException conflict;
+        synchronized (tx.view) {
+            conflict = this.findConflict(tx, tx.view.getReads(), base, last);
+            if (conflict == null)
+                tx.view.setKVStore(snapshotRefs.getKVStore());
+        }
+
+        // Update bookkeeping
+        synchronized (this) {
+
+            // Were we invalidated in the meantime?
+            if (!this.transactions.contains(tx)) {
+                synchronized (tx.view) {
+                    tx.view.setKVStore(tx);                 // fail fast, see invalidate()
+                }
+                snapshotRefs.unref();
+                tx.throwErrorIfAny();
+                throw this.logException(new StaleTransactionException(tx));
+            }
+
+            // If there was a conflict, fail the transaction
+            if (conflict != null) {
+                snapshotRefs.unref();
+                this.invalidate(tx, conflict);
+                tx.throwErrorIfAny();
+            }
+
+            // Update transaction
+            if (this.log.isTraceEnabled())
+                this.log.trace("rebasing " + tx + " from version " + tx.baseVersion + " -> " + last.version);
+            this.releaseSnapshot(tx);
+            tx.snapshotRefs = snapshotRefs;
+            tx.baseRecord = last;
+            tx.baseVersion = last.version;
+        }
+    }
+
 // Internal methods
 
-    private synchronized void doCommit(SnapshotKVTransaction tx, boolean readOnly) {
+    // Returns the CommitGroup containing the transaction's mutations if using group commit, otherwise null
+    private CommitGroup doCommit(SnapshotKVTransaction tx, boolean readOnly) {
 
         // Sanity checks
         assert Thread.holdsLock(tx);
-        assert Thread.holdsLock(this);
 
         // Debug
-        if (this.log.isTraceEnabled()) {
-            this.log.trace("committing transaction " + tx + " based on version "
-              + tx.baseVersion + " (current version is " + this.currentVersion + ")");
-        }
-
-        // Remove transaction; if not there, it's already been invalidated
-        if (!this.transactions.remove(tx)) {
-            tx.throwErrorIfAny();
-            throw this.logException(new StaleTransactionException(tx));
-        }
-        assert tx.error == null;
-        assert this.snapshot != null;
+        if (this.log.isTraceEnabled())
+            this.log.trace("committing transaction " + tx + " based on version " + tx.baseVersion);
 
         // Grab transaction reads & writes, set to immutable
+        final Reads txReads;
         final Writes txWrites;
         synchronized (tx.view) {
-            txWrites = tx.getMutableView().getWrites();
+            txReads = tx.view.getReads();
+            txWrites = tx.view.getWrites();
             tx.view.disableReadTracking();
             tx.view.setReadOnly();
         }
 
-        // If transaction is (effectively) read-only, no need to create a new version
-        if (readOnly || txWrites.isEmpty()) {
-            if (this.log.isTraceEnabled())
-                this.log.trace("no mutations in " + tx + ", staying at version " + this.currentVersion);
-            return;
-        }
+        // Check for conflicts with transactions committed since our base version, without holding the lock
+        final CommitRecord checked = this.lastCommit;
+        this.checkConflicts(tx, txReads, tx.baseRecord, checked);
+
+        // Now lock the database
+        synchronized (this) {
+
+            // Remove transaction; if not there, it's already been invalidated
+            if (!this.transactions.remove(tx)) {
+                tx.throwErrorIfAny();
+                throw this.logException(new StaleTransactionException(tx));
+            }
+            assert tx.error == null;
+
+            // Check for conflicts with any transactions that committed while we were checking
+            this.checkConflicts(tx, txReads, checked, this.lastCommit);
+
+            // If transaction is (effectively) read-only, no need to create a new version
+            if (readOnly || txWrites.isEmpty()) {
+                if (this.log.isTraceEnabled())
+                    this.log.trace("no mutations in " + tx + ", staying at version " + this.currentVersion);
+                return null;
+            }
+
+            // Apply the transaction's mutations
+            if (this.log.isTraceEnabled()) {
+                this.log.trace("applying " + tx + " mutations and advancing version from "
+                  + this.currentVersion + " -> " + (this.currentVersion + 1));
+            }
+            final CommitGroup group;
+            if (this.groupCommit)
+                group = this.addToCommitGroup(txWrites);
+            else {
+                this.kvstore.mutate(txWrites, true);
+                group = null;
+            }
+
+            // Advance the database version and record the writes for conflict checks by other transactions
+            final CommitRecord record = new CommitRecord(++this.currentVersion, txWrites);
+            this.lastCommit.next = record;
+            this.lastCommit = record;
+            tx.setCommitVersion(this.currentVersion);
+
+            // Discard the obsolete snapshot; other transactions will be rebased lazily (see rebase())
+            if (this.snapshot != null) {
+                this.snapshot.unref();
+                this.snapshot = null;
+            }
+
+            // Fail any transactions that have fallen too far behind
+            if (this.currentVersion >= this.nextLagCheck)
+                this.invalidateLaggingTransactions();
 
-        // Apply the transaction's mutations
-        if (this.log.isTraceEnabled()) {
-            this.log.trace("applying " + tx + " mutations and advancing version from "
-              + this.currentVersion + " -> " + (this.currentVersion + 1));
+            // Notify watches
+            if (this.keyWatchTracker != null)
+                this.keyWatchTracker.trigger(txWrites);
+
+            // Done
+            return group;
         }
-        this.kvstore.mutate(txWrites, true);
-
-        // Discard the obsolete snapshot and advance the database version
-        final SnapshotRefs oldSnapshot = this.snapshot;
-        this.snapshot = null;
-        tx.setCommitVersion(++this.currentVersion);
-
-        // Check concurrent transactions and invalidate any that have conflicts, or rebase them on the new version
-        int numTx = this.transactions.size();                                                       // only used for logging
-        for (Iterator<SnapshotKVTransaction> i = this.transactions.iterator(); i.hasNext(); ) {
-            final SnapshotKVTransaction victim = i.next();
-            assert victim.error == null;
-            synchronized (victim.view) {
-
-                // Check for conflict
-                final Conflict conflict = victim.view.getReads().findConflict(txWrites);
-                if (this.log.isTraceEnabled()) {
-                    this.log.trace("ordering " + victim + " after " + tx + " writes in version " + this.currentVersion
-                      + " results in " + (conflict != null ? conflict : "no conflict"));
-//                    if (conflict != null)
-//                        this.log.trace("conflicts: {}", victim.view.getReads().getConflicts(txWrites));
-                }
-                if (conflict != null) {
-
-                    // Mark transaction for failure
-                    i.remove();
-                    victim.error = new RetryTransactionException(victim, "transaction is based on version "
-                      + victim.baseVersion + " but the transaction committed at version "
-                      + this.currentVersion + " contains conflicting writes");
-                    if (this.log.isTraceEnabled())
-                        this.log.trace("removed conflicting transaction " + victim + " (new total " + --numTx + ")");
-
-                    // This looks weird. What it's really doing is ensuring that any subsequent attempt to access the
-                    // data in the transaction via iterators that have already been created will "fail fast" and throw the
-                    // RetryTransactionException created above. This happens because those accesses go through victim.delegate().
-                    victim.view.setKVStore(victim);
-                    continue;
-                }
+    }
 
-                // There was no conflict, so we can safely "rebase" this transaction on the new snapshot
-                victim.view.setKVStore(this.getCurrentSnapshot().getKVStore());
+    // Throw a TransactionConflictException if any commit after "base" up through "last" conflicts with the given reads
+    private void checkConflicts(SnapshotKVTransaction tx, Reads reads, CommitRecord base, CommitRecord last) {
+        final TransactionConflictException conflict = this.findConflict(tx, reads, base, last);
+        if (conflict != null)
+            throw this.logException(conflict);
+    }
+
+    // Find the first commit after "base" up through "last" whose writes conflict with the given reads, if any,
+    // and return an exception describing the conflict
+    private TransactionConflictException findConflict(SnapshotKVTransaction tx,
+      Reads reads, CommitRecord base, CommitRecord last) {
+        if (reads == null)
+            return null;
+        for (CommitRecord record = base; record != last; ) {
+            record = record.next;
+            final Conflict conflict = reads.findConflict(record.writes);
+            if (this.log.isTraceEnabled()) {
+                this.log.trace("ordering " + tx + " after writes in version " + record.version
+                  + " results in " + (conflict != null ? conflict : "no conflict"));
+            }
+            if (conflict != null) {
+                final ConflictProfiler profiler = this.conflictProfiler;
+                if (profiler != null)
+                    profiler.record(conflict);
+                return new TransactionConflictException(tx, conflict, "transaction is based on version " + tx.baseVersion
+                  + " but the transaction committed at version " + record.version + " contains conflicting writes: " + conflict);
             }
         }
+        return null;
+    }
 
-        // Close the old snapshot (but only after rebasing remaining transactions)
-        oldSnapshot.unref();
+    // Fail transactions more than maxCommitLag commits behind, so they don't pin an unbounded history of commits
+    private void invalidateLaggingTransactions() {
+        assert Thread.holdsLock(this);
+        final long minBaseVersion = this.currentVersion - this.maxCommitLag;
+        long oldestBaseVersion = this.currentVersion;
+        for (SnapshotKVTransaction tx : new ArrayList<>(this.transactions)) {
+            final long baseVersion = tx.baseVersion;
+            if (baseVersion < minBaseVersion) {
+                this.invalidate(tx, this.logException(new RetryTransactionException(tx, "transaction is based on version "
+                  + baseVersion + " but the database is now at version " + this.currentVersion
+                  + ", which exceeds the maximum lag of " + this.maxCommitLag + " commits")));
+            } else
+                oldestBaseVersion = Math.min(oldestBaseVersion, baseVersion);
+        }
+        this.nextLagCheck = oldestBaseVersion + this.maxCommitLag + 1;
+    }
 
-        // Notify watches
-        if (this.keyWatchTracker != null)
-            this.keyWatchTracker.trigger(txWrites);
+    // Forcibly fail an open transaction
+    private void invalidate(SnapshotKVTransaction victim, KVTransactionException error) {
+        assert Thread.holdsLock(this);
+        assert victim.error == null;
+        this.transactions.remove(victim);
+        victim.error = error;
+        if (this.log.isTraceEnabled())
+            this.log.trace("invalidated transaction " + victim + " (new total " + this.transactions.size() + "): " + error);
+
+        // This looks weird. What it's really doing is ensuring that any subsequent attempt to access the
+        // data in the transaction via iterators that have already been created will "fail fast" and throw the
+        // exception created above. This happens because those accesses go through victim.delegate().
+        synchronized (victim.view) {
+            victim.view.setKVStore(victim);
+        }
+        this.releaseSnapshot(victim);
     }
 
     private void cleanupTransaction(SnapshotKVTransaction tx) {
@@ -434,17 +714,209 @@ public abstract class SnapshotKVDatabase implements KVDatabase {
         // Remove open transaction from version
         if (this.transactions.remove(tx) && this.log.isTraceEnabled())
             this.log.trace("removed transaction " + tx + " (new total " + this.transactions.size() + ")");
+
+        // Release its snapshot
+        this.releaseSnapshot(tx);
+    }
+
+    private void releaseSnapshot(SnapshotKVTransaction tx) {
+        assert Thread.holdsLock(this);
+        if (tx.snapshotRefs != null) {
+            tx.snapshotRefs.unref();
+            tx.snapshotRefs = null;
+        }
     }
 
     // Get current k/v snapshot, creating on demand if necessary
     private SnapshotRefs getCurrentSnapshot() {
         assert Thread.holdsLock(this);
         if (this.snapshot == null) {
-            this.snapshot = new SnapshotRefs(this.kvstore.snapshot());
+            if (this.groupView != null) {
+
+                // Overlay the committed but non-durable writes on top of the snapshot they are based on
+                this.groupBase.ref();
+                final MutableView overlay = new MutableView(this.groupBase.getKVStore(), null, this.groupView.getWrites().clone());
+                overlay.setReadOnly();
+                this.snapshot = new SnapshotRefs(new CloseableForwardingKVStore(overlay, this.groupBase.getUnrefCloseable()));
+            } else
+                this.snapshot = new SnapshotRefs(this.kvstore.snapshot());
             if (this.log.isTraceEnabled())
                 this.log.trace("created new snapshot for version " + this.currentVersion);
         }
         return this.snapshot;
     }
+
+// Group commit
+
+    // Add committed writes to the queued commit group
+    private CommitGroup addToCommitGroup(Writes writes) {
+        assert Thread.holdsLock(this);
+
+        // If there are no non-durable writes yet, start a new overlay based on the current state of the k/v store
+        if (this.groupView == null) {
+            assert !this.writingGroup && this.queuedGroup == null;
+            this.groupBase = new SnapshotRefs(this.kvstore.snapshot());
+            this.groupView = new MutableView(this.kvstore, null, new Writes());
+        }
+
+        // Merge writes into the overlay and the queued group (the MutableView's are used only to accumulate writes)
+        if (this.queuedGroup == null)
+            this.queuedGroup = new CommitGroup(new MutableView(this.kvstore, null, new Writes()));
+        this.groupView.apply(writes);
+        this.queuedGroup.view.apply(writes);
+        this.queuedGroup.size++;
+        return this.queuedGroup;
+    }
+
+    // Wait for the given group to be durably written, writing it ourselves if no other write is in progress
+    private void awaitDurable(SnapshotKVTransaction tx, CommitGroup group) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                final AtomicKVStore kv;
+                synchronized (this) {
+                    while (!group.done && this.writingGroup) {
+                        try {
+                            this.wait();
+                        } catch (InterruptedException e) {
+                            interrupted = true;
+                        }
+                    }
+                    if (group.done)
+                        break;
+
+                    // No write is in progress, so our group must be the queued group; write it ourselves
+                    assert group == this.queuedGroup;
+                    this.queuedGroup = null;
+                    this.writingGroup = true;
+                    kv = this.kvstore;
+                }
+                this.writeGroup(kv, group);
+            }
+        } finally {
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+
+        // Check result
+        if (group.error != null) {
+            throw this.logException(group.retry ?
+              new RetryTransactionException(tx, "an earlier group commit failed: " + group.error, group.error) :
+              new KVTransactionException(tx, "group commit failed: " + group.error, group.error));
+        }
+    }
+
+    // Durably write the given group, while not holding the lock
+    private void writeGroup(AtomicKVStore kv, CommitGroup group) {
+        if (this.log.isTraceEnabled())
+            this.log.trace("writing commit group containing " + group.size + " transaction(s)");
+        Throwable error = null;
+        try {
+            kv.mutate(group.view.getWrites(), true);
+        } catch (RuntimeException | Error e) {
+            error = e;
+        }
+        synchronized (this) {
+            assert this.writingGroup;
+            this.writingGroup = false;
+            group.done = true;
+            group.error = error;
+            if (error == null)
+                this.groupWritten();
+            else
+                this.groupFailed(error);
+            this.notifyAll();
+        }
+    }
+
+    private void groupWritten() {
+        assert Thread.holdsLock(this);
+        final SnapshotRefs oldBase = this.groupBase;
+        if (this.queuedGroup == null) {
+
+            // Everything is durable now, so the overlay is no longer needed
+            this.groupBase = null;
+            this.groupView = null;
+        } else {
+
+            // Rebase the remaining non-durable writes on the k/v store, which now contains the written group
+            this.groupBase = new SnapshotRefs(this.kvstore.snapshot());
+            this.groupView = new MutableView(this.kvstore, null, this.queuedGroup.view.getWrites().clone());
+        }
+        oldBase.unref();
+    }
+
+    private void groupFailed(Throwable error) {
+        assert Thread.holdsLock(this);
+        this.log.error("group commit failed", error);
+
+        // The queued group depends on the failed writes, so it must fail too
+        if (this.queuedGroup != null) {
+            this.queuedGroup.done = true;
+            this.queuedGroup.error = error;
+            this.queuedGroup.retry = true;
+            this.queuedGroup = null;
+        }
+
+        // Discard all non-durable state
+        this.groupBase.unref();
+        this.groupBase = null;
+        this.groupView = null;
+        if (this.snapshot != null) {
+            this.snapshot.unref();
+            this.snapshot = null;
+        }
+
+        // Open transactions may have read the failed writes, so they must be retried
+        for (SnapshotKVTransaction victim : new ArrayList<>(this.transactions))
+            this.invalidate(victim, new RetryTransactionException(victim, "an earlier group commit failed: " + error, error));
+        assert this.transactions.isEmpty();
+    }
+
+    // Wait for any outstanding group writes to complete
+    private void awaitGroupWrites() {
+        assert Thread.holdsLock(this);
+        boolean interrupted = false;
+        while (this.writingGroup || this.queuedGroup != null) {
+            try {
+                this.wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+// CommitRecord
+
+    // The writes committed in some version; instances form a linked list from oldest to newest
+    static final class CommitRecord {
+
+        final long version;
+        final Writes writes;                                // null for the initial record
+        volatile CommitRecord next;                         // set once, while synchronized on the database
+
+        CommitRecord(long version, Writes writes) {
+            this.version = version;
+            this.writes = writes;
+        }
+    }
+
+// CommitGroup
+
+    private static class CommitGroup {
+
+        final MutableView view;                             // accumulates the group's writes
+
+        int size;                                           // number of transactions in the group
+        boolean done;
+        Throwable error;
+        boolean retry;
+
+        CommitGroup(MutableView view) {
+            this.view = view;
+        }
+    }
 }
 
@@ -12,6 +12,7 @@ import io.permazen.kv.CloseableKVStore;
 import io.permazen.kv.KVStore;
 import io.permazen.kv.KVTransaction;
 import io.permazen.kv.KVTransactionException;
+import io.permazen.kv.KeyRange;
 import io.permazen.kv.StaleTransactionException;
 import io.permazen.kv.TransactionTimeoutException;
 import io.permazen.kv.util.ForwardingKVStore;
@@ -40,12 +41,18 @@ public class SnapshotKVTransaction extends ForwardingKVStore implements KVTransa
     final long startTime;
     final SnapshotKVDatabase kvdb;
     final MutableView view;
-    final long baseVersion;
 
     // Invariant: if error != null, then !db.transactions.contains(this)
     @GuardedBy("kvdb")
     volatile KVTransactionException error;
 
+    // The snapshot on which this.view is currently based, and the most recent commit it reflects; these are
+    // advanced when this transaction is lazily rebased (see SnapshotKVDatabase.rebase())
+    @GuardedBy("kvdb")
+    SnapshotRefs snapshotRefs;
+    volatile SnapshotKVDatabase.CommitRecord baseRecord;
+    volatile long baseVersion;
+
     private final Logger log = LoggerFactory.getLogger(this.getClass());
     private final AtomicBoolean closed = new AtomicBoolean();   // used to detect whether commit() or rollback() has been invoked
     private final Throwable allocation;
@@ -79,6 +86,10 @@ public class SnapshotKVTransaction extends ForwardingKVStore implements KVTransa
     /**
      * Get the MVCC database version number on which this instance is (or was originally) based.
      *
+     * <p>
+     * Transactions are rebased onto the current database version on demand, so the returned value
+     * may increase while this transaction remains open.
+     *
      * @return transaction base version number
      */
     public long getBaseVersion() {
@@ -121,7 +132,9 @@ public class SnapshotKVTransaction extends ForwardingKVStore implements KVTransa
      * Get the underlying {@link KVStore}.
      *
      * <p>
-     * The implementation in {@link SnapshotKVTransaction} returns the {@link MutableView} associated with this instance.
+     * The implementation in {@link SnapshotKVTransaction} returns the {@link MutableView} associated with this instance,
+     * after first rebasing it onto the current database version if any other transactions have committed since
+     * this transaction was last accessed.
      *
      * @return the underlying {@link KVStore}
      * @throws StaleTransactionException if this transaction is no longer valid
@@ -130,6 +143,7 @@ public class SnapshotKVTransaction extends ForwardingKVStore implements KVTransa
     @Override
     protected synchronized KVStore delegate() {
         this.checkAlive();
+        this.kvdb.rebase(this);
         return this.view;
     }
 
@@ -163,6 +177,13 @@ public class SnapshotKVTransaction extends ForwardingKVStore implements KVTransa
         return this.kvdb.watchKey(key);
     }
 
+    @Override
+    public synchronized ListenableFuture<Void> watchRange(KeyRange range) {
+        Preconditions.checkArgument(range != null, "null range");
+        this.checkAlive();
+        return this.kvdb.watchRange(range);
+    }
+
     @Override
     public synchronized boolean isReadOnly() {
         return this.readOnly;
@@ -193,15 +214,13 @@ public class SnapshotKVTransaction extends ForwardingKVStore implements KVTransa
     }
 
     @Override
-    public CloseableKVStore mutableSnapshot() {
+    public synchronized CloseableKVStore mutableSnapshot() {
+        this.checkAlive();
         final Writes writes;
-        synchronized (this) {
-            this.checkAlive();
-            synchronized (this.view) {
-                writes = this.view.getWrites().clone();
-            }
+        synchronized (this.view) {
+            writes = this.view.getWrites().clone();
         }
-        return this.kvdb.createMutableSnapshot(writes);
+        return this.kvdb.createMutableSnapshot(this, writes);
     }
 
 // Closeable
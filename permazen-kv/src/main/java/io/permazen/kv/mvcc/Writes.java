@@ -38,6 +38,12 @@ import java.util.TreeMap;
  * or a counter adjustment.
  *
  * <p>
+ * Instances are normally backed by {@link TreeMap}s. Immutable instances created by {@link #compactSnapshot}
+ * or {@link #deserialize(InputStream, boolean) deserialize()} instead pack all keys and values into a few contiguous
+ * arrays with a sorted offset index, which uses much less memory for large instances and can be serialized directly.
+ * The tradeoff is that each key and value retrieved from such an instance is a new copy.
+ *
+ * <p>
  * Instances are not thread safe.
  */
 public class Writes implements Cloneable, Mutations {
@@ -176,25 +182,33 @@ public class Writes implements Cloneable, Mutations {
         this.removes.serialize(out);
 
         // Puts
-        UnsignedIntEncoder.write(out, this.puts.size());
-        byte[] prev = null;
-        for (Map.Entry<byte[], byte[]> entry : this.puts.entrySet()) {
-            final byte[] key = entry.getKey();
-            final byte[] value = entry.getValue();
-            KeyListEncoder.write(out, key, prev);
-            KeyListEncoder.write(out, value, null);
-            prev = key;
+        if (this.puts instanceof ArenaNavigableMap.Puts)
+            ((ArenaNavigableMap.Puts)this.puts).serialize(out);
+        else {
+            UnsignedIntEncoder.write(out, this.puts.size());
+            byte[] prev = null;
+            for (Map.Entry<byte[], byte[]> entry : this.puts.entrySet()) {
+                final byte[] key = entry.getKey();
+                final byte[] value = entry.getValue();
+                KeyListEncoder.write(out, key, prev);
+                KeyListEncoder.write(out, value, null);
+                prev = key;
+            }
         }
 
         // Adjusts
-        UnsignedIntEncoder.write(out, this.adjusts.size());
-        prev = null;
-        for (Map.Entry<byte[], Long> entry : this.adjusts.entrySet()) {
-            final byte[] key = entry.getKey();
-            final long value = entry.getValue();
-            KeyListEncoder.write(out, key, prev);
-            LongEncoder.write(out, value);
-            prev = key;
+        if (this.adjusts instanceof ArenaNavigableMap.Adjusts)
+            ((ArenaNavigableMap.Adjusts)this.adjusts).serialize(out);
+        else {
+            UnsignedIntEncoder.write(out, this.adjusts.size());
+            byte[] prev = null;
+            for (Map.Entry<byte[], Long> entry : this.adjusts.entrySet()) {
+                final byte[] key = entry.getKey();
+                final long value = entry.getValue();
+                KeyListEncoder.write(out, key, prev);
+                LongEncoder.write(out, value);
+                prev = key;
+            }
         }
     }
 
@@ -209,25 +223,33 @@ public class Writes implements Cloneable, Mutations {
         long total = this.removes.serializedLength();
 
         // Puts
-        total += UnsignedIntEncoder.encodeLength(this.puts.size());
-        byte[] prev = null;
-        for (Map.Entry<byte[], byte[]> entry : this.puts.entrySet()) {
-            final byte[] key = entry.getKey();
-            final byte[] value = entry.getValue();
-            total += KeyListEncoder.writeLength(key, prev);
-            total += KeyListEncoder.writeLength(value, null);
-            prev = key;
+        if (this.puts instanceof ArenaNavigableMap.Puts)
+            total += ((ArenaNavigableMap.Puts)this.puts).serializedLength();
+        else {
+            total += UnsignedIntEncoder.encodeLength(this.puts.size());
+            byte[] prev = null;
+            for (Map.Entry<byte[], byte[]> entry : this.puts.entrySet()) {
+                final byte[] key = entry.getKey();
+                final byte[] value = entry.getValue();
+                total += KeyListEncoder.writeLength(key, prev);
+                total += KeyListEncoder.writeLength(value, null);
+                prev = key;
+            }
         }
 
         // Adjusts
-        total += UnsignedIntEncoder.encodeLength(this.adjusts.size());
-        prev = null;
-        for (Map.Entry<byte[], Long> entry : this.adjusts.entrySet()) {
-            final byte[] key = entry.getKey();
-            final long value = entry.getValue();
-            total += KeyListEncoder.writeLength(key, prev);
-            total += LongEncoder.encodeLength(value);
-            prev = key;
+        if (this.adjusts instanceof ArenaNavigableMap.Adjusts)
+            total += ((ArenaNavigableMap.Adjusts)this.adjusts).serializedLength();
+        else {
+            total += UnsignedIntEncoder.encodeLength(this.adjusts.size());
+            byte[] prev = null;
+            for (Map.Entry<byte[], Long> entry : this.adjusts.entrySet()) {
+                final byte[] key = entry.getKey();
+                final long value = entry.getValue();
+                total += KeyListEncoder.writeLength(key, prev);
+                total += LongEncoder.encodeLength(value);
+                prev = key;
+            }
         }
 
         // Done
@@ -253,6 +275,9 @@ public class Writes implements Cloneable, Mutations {
     /**
      * Deserialize an instance created by {@link #serialize serialize()}.
      *
+     * <p>
+     * Immutable instances are read directly into the same compact form used by {@link #compactSnapshot}.
+     *
      * @param input input stream containing data from {@link #serialize serialize()}
      * @param immutable true for an immutable instance, otherwise false
      * @return deserialized instance
@@ -266,42 +291,31 @@ public class Writes implements Cloneable, Mutations {
         // Get removes
         final KeyRanges removes = new KeyRanges(input, immutable);
 
+        // Immutable instances are read directly into compact form
+        if (immutable) {
+            final ArenaNavigableMap.Puts puts = ArenaNavigableMap.Puts.deserialize(input);
+            final ArenaNavigableMap.Adjusts adjusts = ArenaNavigableMap.Adjusts.deserialize(input);
+            return new Writes(removes, puts, adjusts, true);
+        }
+
         // Get puts
+        final NavigableMap<byte[], byte[]> puts = new TreeMap<>(ByteUtil.COMPARATOR);
         final int putCount = UnsignedIntEncoder.read(input);
-        final byte[][] putKeys = new byte[putCount][];
-        final byte[][] putVals = new byte[putCount][];
         byte[] prev = null;
         for (int i = 0; i < putCount; i++) {
-            putKeys[i] = KeyListEncoder.read(input, prev);
-            putVals[i] = KeyListEncoder.read(input, null);
-            prev = putKeys[i];
-        }
-        final NavigableMap<byte[], byte[]> puts;
-        if (immutable)
-            puts = new ImmutableNavigableMap<>(putKeys, putVals, ByteUtil.COMPARATOR);
-        else {
-            puts = new TreeMap<>(ByteUtil.COMPARATOR);
-            for (int i = 0; i < putCount; i++)
-                puts.put(putKeys[i], putVals[i]);
+            final byte[] key = KeyListEncoder.read(input, prev);
+            puts.put(key, KeyListEncoder.read(input, null));
+            prev = key;
         }
 
         // Get adjusts
+        final NavigableMap<byte[], Long> adjusts = new TreeMap<>(ByteUtil.COMPARATOR);
         final int adjCount = UnsignedIntEncoder.read(input);
-        final byte[][] adjKeys = new byte[adjCount][];
-        final Long[] adjVals = new Long[adjCount];
         prev = null;
         for (int i = 0; i < adjCount; i++) {
-            adjKeys[i] = KeyListEncoder.read(input, prev);
-            adjVals[i] = LongEncoder.read(input);
-            prev = adjKeys[i];
-        }
-        final NavigableMap<byte[], Long> adjusts;
-        if (immutable)
-            adjusts = new ImmutableNavigableMap<>(adjKeys, adjVals, ByteUtil.COMPARATOR);
-        else {
-            adjusts = new TreeMap<>(ByteUtil.COMPARATOR);
-            for (int i = 0; i < adjCount; i++)
-                adjusts.put(adjKeys[i], adjVals[i]);
+            final byte[] key = KeyListEncoder.read(input, prev);
+            adjusts.put(key, LongEncoder.read(input));
+            prev = key;
         }
 
         // Done
@@ -369,6 +383,24 @@ public class Writes implements Cloneable, Mutations {
           new ImmutableNavigableMap<>(this.puts), new ImmutableNavigableMap<>(this.adjusts), true);
     }
 
+    /**
+     * Return an immutable snapshot of this instance in compact form.
+     *
+     * <p>
+     * The returned instance copies all keys and values into contiguous arrays with a sorted offset index,
+     * eliminating per-entry object overhead. This is appropriate for large instances that will be retained
+     * in memory for a while. Unlike {@link #immutableSnapshot}, each key and value retrieved from the
+     * returned instance is a new copy, so read-intensive use may be slower.
+     *
+     * @return compact immutable snapshot
+     */
+    public Writes compactSnapshot() {
+        if (this.puts instanceof ArenaNavigableMap.Puts && this.adjusts instanceof ArenaNavigableMap.Adjusts)
+            return this;
+        return new Writes(this.removes.immutableSnapshot(),
+          ArenaNavigableMap.Puts.copyOf(this.puts), ArenaNavigableMap.Adjusts.copyOf(this.adjusts), true);
+    }
+
 // Object
 
     @Override
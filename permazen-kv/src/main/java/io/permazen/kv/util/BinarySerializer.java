@@ -0,0 +1,480 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.kv.util;
+
+import com.google.common.base.Preconditions;
+
+import io.permazen.kv.KVCursor;
+import io.permazen.kv.KVStore;
+import io.permazen.util.ByteSlice;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Serializes and deserializes the contents of a {@link KVStore} to/from a compact binary format.
+ *
+ * <p>
+ * Compared to {@link XMLSerializer}, this format is much faster to read and write and much smaller, so it is
+ * more suitable for backing up large databases and for migrating data between different {@link KVStore} implementations.
+ *
+ * <p>
+ * The format consists of a header followed by a sequence of blocks, each containing a batch of key/value pairs.
+ * Within each block, keys are prefix-compressed using {@link KeyListEncoder}; each block is independently
+ * (and optionally) compressed using {@link Deflater} and protected by a CRC-32 checksum covering the block
+ * header fields and the stored data. The final block records the total number of key/value pairs, so truncated
+ * input is detected.
+ *  <pre>
+ *  header:   magic(4) version(1)
+ *  block:    pair-count(4) flags(1) raw-length(4) stored-length(4) crc32(4) data(stored-length)
+ *  trailer:  zero(4) total-pairs(8)
+ *  </pre>
+ *
+ * <p>
+ * Block lengths are limited to {@value #MAX_BLOCK_LENGTH} bytes. When reading, block lengths from the input are
+ * not trusted: they are checked before any allocation, and block data buffers only grow as data actually arrives.
+ *
+ * <p>
+ * Instances are not thread safe.
+ */
+public class BinarySerializer {
+
+    /**
+     * The format version written by this class.
+     */
+    public static final int FORMAT_VERSION = 1;
+
+    /**
+     * Default target uncompressed block size in bytes ({@value #DEFAULT_BLOCK_SIZE}).
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+
+    /**
+     * Maximum raw or stored length of a single block in bytes ({@value #MAX_BLOCK_LENGTH}).
+     */
+    public static final int MAX_BLOCK_LENGTH = 1 << 30;
+
+    private static final byte[] MAGIC = new byte[] { (byte)'P', (byte)'z', (byte)'K', (byte)'V' };
+
+    private static final int BLOCK_FLAG_DEFLATED = 0x01;
+    private static final int MAX_DEFLATE_RATIO = 1032;                     // deflate can't do better than this
+    private static final int READ_CHUNK_SIZE = 64 * 1024;
+
+    private final KVStore kv;
+
+    private int blockSize = DEFAULT_BLOCK_SIZE;
+    private int compressionLevel = Deflater.NO_COMPRESSION;
+
+    /**
+     * Constructor.
+     *
+     * @param kv key/value store on which to operate
+     * @throws IllegalArgumentException if {@code kv} is null
+     */
+    public BinarySerializer(KVStore kv) {
+        Preconditions.checkArgument(kv != null, "null kv");
+        this.kv = kv;
+    }
+
+    /**
+     * Get the target uncompressed block size.
+     *
+     * @return block size in bytes
+     */
+    public int getBlockSize() {
+        return this.blockSize;
+    }
+
+    /**
+     * Set the target uncompressed block size.
+     *
+     * <p>
+     * Blocks are ended as soon as they reach this size, so a block containing a large key or value may be larger.
+     *
+     * <p>
+     * Default is {@value #DEFAULT_BLOCK_SIZE}.
+     *
+     * @param blockSize block size in bytes
+     * @throws IllegalArgumentException if {@code blockSize} is zero or negative
+     */
+    public void setBlockSize(int blockSize) {
+        Preconditions.checkArgument(blockSize > 0, "blockSize <= 0");
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Get the {@link Deflater} compression level used when writing.
+     *
+     * @return compression level, where {@link Deflater#NO_COMPRESSION} means compression is disabled
+     */
+    public int getCompressionLevel() {
+        return this.compressionLevel;
+    }
+
+    /**
+     * Set the {@link Deflater} compression level used when writing.
+     *
+     * <p>
+     * Blocks that do not get smaller when compressed are stored uncompressed.
+     *
+     * <p>
+     * Default is {@link Deflater#NO_COMPRESSION}.
+     *
+     * @param compressionLevel compression level from {@link Deflater#NO_COMPRESSION} to {@link Deflater#BEST_COMPRESSION},
+     *  or {@link Deflater#DEFAULT_COMPRESSION}
+     * @throws IllegalArgumentException if {@code compressionLevel} is invalid
+     */
+    public void setCompressionLevel(int compressionLevel) {
+        Preconditions.checkArgument(compressionLevel == Deflater.DEFAULT_COMPRESSION
+          || (compressionLevel >= Deflater.NO_COMPRESSION && compressionLevel <= Deflater.BEST_COMPRESSION),
+          "invalid compressionLevel");
+        this.compressionLevel = compressionLevel;
+    }
+
+    /**
+     * Determine whether the given input starts with the binary format magic bytes.
+     *
+     * <p>
+     * The {@code input} must {@linkplain InputStream#markSupported support marking}; it is reset back to its
+     * original position before this method returns.
+     *
+     * @param input input stream
+     * @return true if {@code input} appears to contain binary format data
+     * @throws IOException if an I/O error occurs
+     * @throws IllegalArgumentException if {@code input} is null or does not support marking
+     */
+    public static boolean isBinaryFormat(InputStream input) throws IOException {
+        Preconditions.checkArgument(input != null, "null input");
+        Preconditions.checkArgument(input.markSupported(), "input does not support marking");
+        final byte[] buf = new byte[MAGIC.length];
+        input.mark(buf.length);
+        try {
+            int len = 0;
+            for (int r; len < buf.length && (r = input.read(buf, len, buf.length - len)) != -1; )
+                len += r;
+            return len == buf.length && Arrays.equals(buf, MAGIC);
+        } finally {
+            input.reset();
+        }
+    }
+
+    /**
+     * Import key/value pairs into the {@link KVStore} associated with this instance from the given binary input.
+     *
+     * <p>
+     * The {@code input} is not closed by this method.
+     *
+     * @param input binary input
+     * @return the number of key/value pairs read
+     * @throws IOException if an I/O error occurs, or the input is truncated, corrupted, or not in the binary format
+     * @throws IllegalArgumentException if {@code input} is null
+     */
+    public long read(InputStream input) throws IOException {
+        Preconditions.checkArgument(input != null, "null input");
+        final DataInputStream data = new DataInputStream(input);
+
+        // Read header
+        final byte[] magic = new byte[MAGIC.length];
+        data.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC))
+            throw new IOException("input is not in binary key/value format");
+        final int version = data.readUnsignedByte();
+        if (version != FORMAT_VERSION)
+            throw new IOException("unsupported binary key/value format version " + version);
+
+        // Read blocks
+        final Inflater inflater = new Inflater();
+        final CRC32 crc = new CRC32();
+        long count = 0;
+        try {
+            for (int blockNum = 0; true; blockNum++) {
+
+                // Read block header
+                final int pairs = data.readInt();
+                if (pairs == 0)
+                    break;
+                final int flags = data.readUnsignedByte();
+                final int rawLength = data.readInt();
+                final int storedLength = data.readInt();
+                final int checksum = data.readInt();
+                final boolean deflated = (flags & BLOCK_FLAG_DEFLATED) != 0;
+                if (pairs < 0
+                  || rawLength < 0 || rawLength > MAX_BLOCK_LENGTH
+                  || storedLength < 0 || storedLength > MAX_BLOCK_LENGTH
+                  || (flags & ~BLOCK_FLAG_DEFLATED) != 0
+                  || (deflated ? rawLength > (long)storedLength * MAX_DEFLATE_RATIO : storedLength != rawLength))
+                    throw new IOException("invalid header for block #" + blockNum);
+
+                // Read block data
+                final byte[] stored = BinarySerializer.readBlockData(data, storedLength, blockNum);
+
+                // Verify checksum
+                crc.reset();
+                BinarySerializer.updateHeader(crc, pairs, flags, rawLength, storedLength);
+                crc.update(stored, 0, stored.length);
+                if ((int)crc.getValue() != checksum)
+                    throw new IOException("checksum mismatch in block #" + blockNum);
+
+                // Decompress block data
+                final byte[] raw;
+                if (deflated) {
+                    raw = new byte[rawLength];
+                    inflater.reset();
+                    inflater.setInput(stored);
+                    try {
+                        if (inflater.inflate(raw) != rawLength || !inflater.finished())
+                            throw new IOException("invalid compressed data in block #" + blockNum);
+                    } catch (DataFormatException e) {
+                        throw new IOException("invalid compressed data in block #" + blockNum, e);
+                    }
+                } else
+                    raw = stored;
+
+                // Decode key/value pairs
+                final ByteArrayInputStream pairInput = new ByteArrayInputStream(raw);
+                byte[] prev = null;
+                try {
+                    for (int i = 0; i < pairs; i++) {
+                        final byte[] key = KeyListEncoder.read(pairInput, prev);
+                        final byte[] value = KeyListEncoder.read(pairInput, null);
+                        this.put(key, value);
+                        prev = key;
+                    }
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("invalid data in block #" + blockNum, e);
+                }
+                if (pairInput.available() != 0)
+                    throw new IOException("trailing garbage in block #" + blockNum);
+                count += pairs;
+            }
+        } finally {
+            inflater.end();
+        }
+
+        // Read trailer
+        final long total = data.readLong();
+        if (total != count)
+            throw new IOException("trailer indicates " + total + " key/value pairs but " + count + " were read");
+        return count;
+    }
+
+    /**
+     * Export all key/value pairs from the {@link KVStore} associated with this instance to the given output.
+     *
+     * <p>
+     * The {@code output} is not closed by this method.
+     *
+     * @param output binary output
+     * @return the number of key/value pairs written
+     * @throws IOException if an I/O error occurs
+     * @throws IllegalArgumentException if {@code output} is null
+     */
+    public long write(OutputStream output) throws IOException {
+        return this.write(output, null, null);
+    }
+
+    /**
+     * Export a range of key/value pairs from the {@link KVStore} associated with this instance to the given output.
+     *
+     * <p>
+     * The {@code output} is not closed by this method.
+     *
+     * @param output binary output
+     * @param minKey minimum key (inclusive), or null for none
+     * @param maxKey maximum key (exclusive), or null for none
+     * @return the number of key/value pairs written
+     * @throws IOException if an I/O error occurs
+     * @throws IllegalArgumentException if {@code output} is null
+     */
+    public long write(OutputStream output, byte[] minKey, byte[] maxKey) throws IOException {
+        Preconditions.checkArgument(output != null, "null output");
+        final DataOutputStream data = new DataOutputStream(output);
+
+        // Write header
+        data.write(MAGIC);
+        data.writeByte(FORMAT_VERSION);
+
+        // Write blocks
+        final Block block = new Block(this.compressionLevel);
+        long count = 0;
+        try (KVCursor cursor = this.kv.getRangeView(minKey, maxKey, false)) {
+            while (cursor.next()) {
+                block.add(cursor.getKey(), cursor.getValue());
+                if (block.size() >= this.blockSize)
+                    count += block.flush(data);
+            }
+            count += block.flush(data);
+        } finally {
+            block.close();
+        }
+
+        // Write trailer
+        data.writeInt(0);
+        data.writeLong(count);
+        data.flush();
+        return count;
+    }
+
+// Subclass hooks
+
+    /**
+     * Store a key/value pair decoded by {@link #read read()}.
+     *
+     * <p>
+     * The implementation in {@link BinarySerializer} invokes {@link KVStore#put put()} on the associated {@link KVStore}.
+     * Subclasses may override to batch or redirect writes.
+     *
+     * @param key key
+     * @param value value
+     */
+    protected void put(byte[] key, byte[] value) {
+        this.kv.put(key, value);
+    }
+
+// Block
+
+    // Read block data without trusting its length: the buffer only grows as data actually arrives
+    private static byte[] readBlockData(InputStream input, int length, int blockNum) throws IOException {
+        byte[] buf = new byte[Math.min(length, READ_CHUNK_SIZE)];
+        int off = 0;
+        while (off < length) {
+            if (off == buf.length)
+                buf = Arrays.copyOf(buf, (int)Math.min(length, (long)buf.length * 2));
+            final int r = input.read(buf, off, buf.length - off);
+            if (r == -1)
+                throw new EOFException("truncated data in block #" + blockNum);
+            off += r;
+        }
+        return buf;
+    }
+
+    private static void updateHeader(CRC32 crc, int pairs, int flags, int rawLength, int storedLength) {
+        crc.update(new byte[] {
+            (byte)(pairs >> 24), (byte)(pairs >> 16), (byte)(pairs >> 8), (byte)pairs,
+            (byte)flags,
+            (byte)(rawLength >> 24), (byte)(rawLength >> 16), (byte)(rawLength >> 8), (byte)rawLength,
+            (byte)(storedLength >> 24), (byte)(storedLength >> 16), (byte)(storedLength >> 8), (byte)storedLength,
+        });
+    }
+
+    private static final class Block extends OutputStream {
+
+        private final CRC32 crc = new CRC32();
+        private final Deflater deflater;
+
+        private byte[] buf = new byte[1024];
+        private int len;
+        private byte[] prev = new byte[64];
+        private int prevLen = -1;                                   // -1 means no previous key in this block
+        private int pairs;
+        private byte[] compressed;
+
+        Block(int compressionLevel) {
+            this.deflater = compressionLevel != Deflater.NO_COMPRESSION ? new Deflater(compressionLevel) : null;
+        }
+
+        int size() {
+            return this.len;
+        }
+
+        void add(ByteSlice key, ByteSlice value) throws IOException {
+
+            // Encode key and value
+            final byte[] keyArray = key.getArray();
+            final int keyOff = key.getOffset();
+            final int keyLen = key.getLength();
+            KeyListEncoder.write(this, keyArray, keyOff, keyLen, this.prevLen != -1 ? this.prev : null, 0, this.prevLen);
+            KeyListEncoder.write(this, value.getArray(), value.getOffset(), value.getLength(), null, 0, 0);
+            this.pairs++;
+
+            // Remember key, which is only valid until the cursor advances
+            if (this.prev.length < keyLen)
+                this.prev = new byte[Math.max(keyLen, this.prev.length * 2)];
+            System.arraycopy(keyArray, keyOff, this.prev, 0, keyLen);
+            this.prevLen = keyLen;
+        }
+
+        // Write block (if not empty) and reset; returns number of key/value pairs written
+        int flush(DataOutputStream output) throws IOException {
+            if (this.pairs == 0)
+                return 0;
+            if (this.len > MAX_BLOCK_LENGTH)
+                throw new IOException("block length " + this.len + " exceeds maximum " + MAX_BLOCK_LENGTH);
+
+            // Compress
+            int flags = 0;
+            byte[] stored = this.buf;
+            int storedLength = this.len;
+            if (this.deflater != null) {
+                if (this.compressed == null || this.compressed.length < this.len)
+                    this.compressed = new byte[this.buf.length];
+                this.deflater.reset();
+                this.deflater.setInput(this.buf, 0, this.len);
+                this.deflater.finish();
+                final int clen = this.deflater.deflate(this.compressed, 0, this.len);
+                if (this.deflater.finished() && clen < this.len) {
+                    flags |= BLOCK_FLAG_DEFLATED;
+                    stored = this.compressed;
+                    storedLength = clen;
+                }
+            }
+
+            // Checksum
+            final int numPairs = this.pairs;
+            this.crc.reset();
+            BinarySerializer.updateHeader(this.crc, numPairs, flags, this.len, storedLength);
+            this.crc.update(stored, 0, storedLength);
+
+            // Write
+            output.writeInt(numPairs);
+            output.writeByte(flags);
+            output.writeInt(this.len);
+            output.writeInt(storedLength);
+            output.writeInt((int)this.crc.getValue());
+            output.write(stored, 0, storedLength);
+
+            // Reset
+            this.len = 0;
+            this.prevLen = -1;
+            this.pairs = 0;
+            return numPairs;
+        }
+
+        @Override
+        public void write(int b) {
+            this.ensure(1);
+            this.buf[this.len++] = (byte)b;
+        }
+
+        @Override
+        public void write(byte[] data, int off, int dlen) {
+            this.ensure(dlen);
+            System.arraycopy(data, off, this.buf, this.len, dlen);
+            this.len += dlen;
+        }
+
+        @Override
+        public void close() {
+            if (this.deflater != null)
+                this.deflater.end();
+        }
+
+        private void ensure(int extra) {
+            if (this.len + extra > this.buf.length)
+                this.buf = Arrays.copyOf(this.buf, Math.max(this.len + extra, this.buf.length * 2));
+        }
+    }
+}
@@ -0,0 +1,172 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.kv.util;
+
+import com.google.common.base.Preconditions;
+
+import io.permazen.kv.AsyncKVPairIterator;
+import io.permazen.kv.AsyncKVStore;
+import io.permazen.kv.KVPair;
+import io.permazen.kv.KVStore;
+import io.permazen.util.ByteUtil;
+import io.permazen.util.CloseableIterator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Adapts any {@link KVStore} to the {@link AsyncKVStore} interface by performing synchronous reads
+ * using an {@link Executor}.
+ *
+ * <p>
+ * Each asynchronous read is performed as a separate task, so the number of reads that may be outstanding at
+ * the same time is limited only by the {@link Executor}. {@link #getManyAsync getManyAsync()} is performed as a
+ * single task that invokes {@link KVStore#getMany KVStore.getMany()}.
+ *
+ * <p>
+ * Iterators returned by {@link #getRangeAsync getRangeAsync()} create the underlying {@link KVStore#getRange getRange()}
+ * iterator when the first batch is requested, and read each batch in a separate task. Because at most one batch
+ * may be outstanding, the underlying iterator is never accessed by more than one thread at a time.
+ *
+ * <p>
+ * All other {@link KVStore} methods are forwarded to the underlying {@link KVStore}.
+ */
+@ThreadSafe
+public class ExecutorAsyncKVStore extends ForwardingKVStore implements AsyncKVStore {
+
+    private final KVStore kvstore;
+    private final Executor executor;
+
+    /**
+     * Constructor.
+     *
+     * @param kvstore the underlying {@link KVStore}
+     * @param executor executor for performing reads
+     * @throws IllegalArgumentException if either parameter is null
+     */
+    public ExecutorAsyncKVStore(KVStore kvstore, Executor executor) {
+        Preconditions.checkArgument(kvstore != null, "null kvstore");
+        Preconditions.checkArgument(executor != null, "null executor");
+        this.kvstore = kvstore;
+        this.executor = executor;
+    }
+
+    /**
+     * Get the {@link Executor} used by this instance.
+     *
+     * @return executor for reads
+     */
+    public Executor getExecutor() {
+        return this.executor;
+    }
+
+    @Override
+    protected KVStore delegate() {
+        return this.kvstore;
+    }
+
+// AsyncKVStore
+
+    @Override
+    public CompletableFuture<byte[]> getAsync(byte[] key) {
+        key.getClass();
+        return CompletableFuture.supplyAsync(() -> this.kvstore.get(key), this.executor);
+    }
+
+    @Override
+    public CompletableFuture<List<byte[]>> getManyAsync(List<byte[]> keys) {
+        Preconditions.checkArgument(keys != null, "null keys");
+        return CompletableFuture.supplyAsync(() -> this.kvstore.getMany(keys), this.executor);
+    }
+
+    @Override
+    public CompletableFuture<KVPair> getAtLeastAsync(byte[] minKey, byte[] maxKey) {
+        return CompletableFuture.supplyAsync(() -> this.kvstore.getAtLeast(minKey, maxKey), this.executor);
+    }
+
+    @Override
+    public CompletableFuture<KVPair> getAtMostAsync(byte[] maxKey, byte[] minKey) {
+        return CompletableFuture.supplyAsync(() -> this.kvstore.getAtMost(maxKey, minKey), this.executor);
+    }
+
+    @Override
+    public AsyncKVPairIterator getRangeAsync(byte[] minKey, byte[] maxKey, boolean reverse) {
+        Preconditions.checkArgument(minKey == null || maxKey == null || ByteUtil.compare(minKey, maxKey) <= 0, "minKey > maxKey");
+        return new Iter(minKey, maxKey, reverse);
+    }
+
+// Iter
+
+    private class Iter implements AsyncKVPairIterator {
+
+        private final byte[] minKey;
+        private final byte[] maxKey;
+        private final boolean reverse;
+
+        @GuardedBy("this")
+        private CompletableFuture<List<KVPair>> pending;
+        @GuardedBy("this")
+        private boolean closed;
+
+        // Only accessed by one batch task at a time, or after the last one completes
+        private volatile CloseableIterator<KVPair> iterator;
+        private volatile boolean exhausted;
+
+        Iter(byte[] minKey, byte[] maxKey, boolean reverse) {
+            this.minKey = minKey != null ? minKey.clone() : null;
+            this.maxKey = maxKey != null ? maxKey.clone() : null;
+            this.reverse = reverse;
+        }
+
+        @Override
+        public synchronized CompletableFuture<List<KVPair>> nextBatch(int maxPairs) {
+            Preconditions.checkArgument(maxPairs > 0, "maxPairs <= 0");
+            Preconditions.checkState(!this.closed, "closed");
+            Preconditions.checkState(this.pending == null || this.pending.isDone(), "previous batch still pending");
+            this.pending = CompletableFuture.supplyAsync(() -> this.readBatch(maxPairs), ExecutorAsyncKVStore.this.executor);
+            return this.pending;
+        }
+
+        private List<KVPair> readBatch(int maxPairs) {
+            final ArrayList<KVPair> batch = new ArrayList<>(Math.min(maxPairs, 1000));
+            if (this.exhausted)
+                return batch;
+            if (this.iterator == null)
+                this.iterator = ExecutorAsyncKVStore.this.kvstore.getRange(this.minKey, this.maxKey, this.reverse);
+            while (batch.size() < maxPairs && this.iterator.hasNext())
+                batch.add(this.iterator.next());
+            if (batch.isEmpty()) {
+                this.exhausted = true;
+                this.iterator.close();
+            }
+            return batch;
+        }
+
+        @Override
+        public void close() {
+            final CompletableFuture<List<KVPair>> lastBatch;
+            synchronized (this) {
+                if (this.closed)
+                    return;
+                this.closed = true;
+                lastBatch = this.pending;
+            }
+            if (lastBatch != null)
+                lastBatch.whenComplete((batch, error) -> this.closeIterator());
+        }
+
+        private void closeIterator() {
+            final CloseableIterator<KVPair> i = this.iterator;
+            if (i != null && !this.exhausted)
+                i.close();
+        }
+    }
+}
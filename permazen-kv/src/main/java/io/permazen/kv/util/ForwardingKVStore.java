@@ -5,11 +5,14 @@
 
 package io.permazen.kv.util;
 
+import io.permazen.kv.KVCursor;
 import io.permazen.kv.KVPair;
 import io.permazen.kv.KVStore;
 import io.permazen.kv.mvcc.Mutations;
 import io.permazen.util.CloseableIterator;
 
+import java.util.List;
+
 /**
  * Forwards all {@link KVStore} operations to another underlying {@link KVStore}.
  */
@@ -29,6 +32,11 @@ public abstract class ForwardingKVStore implements KVStore {
         return this.delegate().get(key);
     }
 
+    @Override
+    public List<byte[]> getMany(List<byte[]> keys) {
+        return this.delegate().getMany(keys);
+    }
+
     @Override
     public KVPair getAtLeast(byte[] minKey, byte[] maxKey) {
         return this.delegate().getAtLeast(minKey, maxKey);
@@ -44,6 +52,11 @@ public abstract class ForwardingKVStore implements KVStore {
         return this.delegate().getRange(minKey, maxKey, reverse);
     }
 
+    @Override
+    public KVCursor getRangeView(byte[] minKey, byte[] maxKey, boolean reverse) {
+        return this.delegate().getRangeView(minKey, maxKey, reverse);
+    }
+
     @Override
     public void put(byte[] key, byte[] value) {
         this.delegate().put(key, value);
@@ -0,0 +1,76 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.kv.util;
+
+import com.google.common.base.Preconditions;
+
+import io.permazen.kv.KVCursor;
+import io.permazen.kv.KVPair;
+import io.permazen.util.ByteSlice;
+import io.permazen.util.CloseableIterator;
+
+/**
+ * {@link KVCursor} implementation that wraps a {@link CloseableIterator}.
+ *
+ * <p>
+ * The key and value slices simply point to the {@code byte[]} arrays of each {@link KVPair}, so no further copying is done.
+ * This is the default implementation of {@link io.permazen.kv.KVStore#getRangeView KVStore.getRangeView()}.
+ */
+public class IteratorKVCursor implements KVCursor {
+
+    private final CloseableIterator<KVPair> iterator;
+    private final ByteSlice key = new ByteSlice();
+    private final ByteSlice value = new ByteSlice();
+
+    private boolean positioned;
+    private boolean closed;
+
+    /**
+     * Constructor.
+     *
+     * @param iterator underlying iterator
+     * @throws IllegalArgumentException if {@code iterator} is null
+     */
+    public IteratorKVCursor(CloseableIterator<KVPair> iterator) {
+        Preconditions.checkArgument(iterator != null, "null iterator");
+        this.iterator = iterator;
+    }
+
+    @Override
+    public boolean next() {
+        Preconditions.checkState(!this.closed, "closed");
+        if (!this.iterator.hasNext()) {
+            this.positioned = false;
+            return false;
+        }
+        final KVPair pair = this.iterator.next();
+        this.key.set(pair.getKey());
+        this.value.set(pair.getValue());
+        this.positioned = true;
+        return true;
+    }
+
+    @Override
+    public ByteSlice getKey() {
+        Preconditions.checkState(this.positioned, "not positioned on a key/value pair");
+        return this.key;
+    }
+
+    @Override
+    public ByteSlice getValue() {
+        Preconditions.checkState(this.positioned, "not positioned on a key/value pair");
+        return this.value;
+    }
+
+    @Override
+    public void close() {
+        if (this.closed)
+            return;
+        this.closed = true;
+        this.positioned = false;
+        this.iterator.close();
+    }
+}
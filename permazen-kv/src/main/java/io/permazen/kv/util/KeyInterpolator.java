@@ -0,0 +1,218 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.kv.util;
+
+import com.google.common.base.Preconditions;
+
+import io.permazen.kv.KVPair;
+import io.permazen.kv.KVStore;
+import io.permazen.kv.KeyRange;
+import io.permazen.util.ByteSlice;
+import io.permazen.util.ByteUtil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+/**
+ * Maps the keys in a {@link KeyRange} to and from fractional positions in the range.
+ *
+ * <p>
+ * After removing the prefix shared by all keys in the range, the next several bytes of a key are interpreted as a
+ * base-256 fraction, and the result is scaled so that the range's minimum key is at position 0.0 and its maximum
+ * key is at position 1.0. This mapping preserves order (but not necessarily strict order) and allows size estimators
+ * to probe a key range at evenly spaced points without knowing anything about the keys it contains.
+ *
+ * <p>
+ * Instances are immutable.
+ *
+ * @see io.permazen.kv.SizeEstimatingKVStore
+ */
+public class KeyInterpolator {
+
+    private static final int DIGITS = 7;                            // 56 bits, which fits in a double's mantissa
+    private static final int BISECT_ITERATIONS = 24;
+
+    private final KeyRange range;
+    private final byte[] prefix;
+    private final double min;
+    private final double width;
+
+    /**
+     * Constructor.
+     *
+     * @param range key range
+     * @throws IllegalArgumentException if {@code range} is null
+     */
+    public KeyInterpolator(KeyRange range) {
+        Preconditions.checkArgument(range != null, "null range");
+        this.range = range;
+        final byte[] minKey = range.getMin();
+        final byte[] maxKey = range.getMax();
+
+        // Find the prefix shared by every key in the range
+        int prefixLen = 0;
+        if (maxKey == null) {
+            while (prefixLen < minKey.length && minKey[prefixLen] == (byte)0xff)
+                prefixLen++;
+        } else {
+            while (prefixLen < minKey.length && prefixLen < maxKey.length && minKey[prefixLen] == maxKey[prefixLen])
+                prefixLen++;
+        }
+        this.prefix = prefixLen == 0 ? ByteUtil.EMPTY : Arrays.copyOf(minKey, prefixLen);
+
+        // Compute scaling
+        this.min = this.fraction(minKey, 0, minKey.length);
+        final double max = maxKey != null ? this.fraction(maxKey, 0, maxKey.length) : 1.0;
+        this.width = max - this.min;
+    }
+
+    /**
+     * Get the key range associated with this instance.
+     *
+     * @return key range
+     */
+    public KeyRange getKeyRange() {
+        return this.range;
+    }
+
+    /**
+     * Get the position of the given key in the key range.
+     *
+     * @param key key
+     * @return position of {@code key} from 0.0 to 1.0, clamped if {@code key} is outside the range
+     * @throws IllegalArgumentException if {@code key} is null
+     */
+    public double getPosition(byte[] key) {
+        Preconditions.checkArgument(key != null, "null key");
+        return this.position(key, 0, key.length);
+    }
+
+    /**
+     * Get the position of the given key in the key range.
+     *
+     * @param key key
+     * @return position of {@code key} from 0.0 to 1.0, clamped if {@code key} is outside the range
+     * @throws IllegalArgumentException if {@code key} is null
+     */
+    public double getPosition(ByteSlice key) {
+        Preconditions.checkArgument(key != null, "null key");
+        return this.position(key.getArray(), key.getOffset(), key.getLength());
+    }
+
+    /**
+     * Get a key at approximately the given position in the key range.
+     *
+     * <p>
+     * The returned key is always contained in the key range. It is not necessarily an actual key in any {@link KVStore}.
+     *
+     * @param position position from 0.0 to 1.0; values outside of this range are clamped
+     * @return key at {@code position}
+     */
+    public byte[] getKey(double position) {
+        if (!(position > 0.0) || this.width <= 0.0)
+            return this.range.getMin();
+        double value = this.min + Math.min(position, 1.0) * this.width;
+        final byte[] key = Arrays.copyOf(this.prefix, this.prefix.length + DIGITS);
+        int len = this.prefix.length;
+        for (int i = 0; i < DIGITS; i++) {
+            value *= 256.0;
+            final int digit = Math.min((int)value, 0xff);
+            value -= digit;
+            key[this.prefix.length + i] = (byte)digit;
+            if (digit != 0)
+                len = this.prefix.length + i + 1;
+        }
+        final byte[] result = Arrays.copyOf(key, len);
+        if (ByteUtil.compare(result, this.range.getMin()) < 0)
+            return this.range.getMin();
+        if (this.range.getMax() != null && ByteUtil.compare(result, this.range.getMax()) >= 0)
+            return this.range.getMin();
+        return result;
+    }
+
+    /**
+     * Find keys that split a range into pieces of roughly equal size, given a function that estimates range sizes.
+     *
+     * <p>
+     * This is a helper for {@link io.permazen.kv.SizeEstimatingKVStore} implementations whose native size estimation
+     * works on arbitrary key ranges but that have no native way to find split points. Each split point is found by
+     * bisecting the range's {@linkplain KeyInterpolator positions}, and then moved forward to the next actual key
+     * in {@code kv}. The {@code sizer} must be monotonic, i.e., a range's size must not be smaller than the size
+     * of any range it contains.
+     *
+     * @param kv key/value store containing the keys
+     * @param range key range to split
+     * @param count desired number of split keys
+     * @param sizer estimates the size of a key range
+     * @return sorted split keys, all strictly inside {@code range}; there may be fewer than {@code count}
+     * @throws IllegalArgumentException if any parameter is null
+     * @throws IllegalArgumentException if {@code count} is negative
+     */
+    public static List<byte[]> bisectSplitKeys(KVStore kv, KeyRange range, int count, ToLongFunction<? super KeyRange> sizer) {
+        Preconditions.checkArgument(kv != null, "null kv");
+        Preconditions.checkArgument(range != null, "null range");
+        Preconditions.checkArgument(count >= 0, "count < 0");
+        Preconditions.checkArgument(sizer != null, "null sizer");
+        final long total = count > 0 ? sizer.applyAsLong(range) : 0;
+        if (total <= 0)
+            return Collections.emptyList();
+        final KeyInterpolator interpolator = new KeyInterpolator(range);
+        final byte[] minKey = range.getMin();
+        final ArrayList<byte[]> splitKeys = new ArrayList<>(count);
+        double lowerBound = 0.0;
+        for (int i = 1; i <= count; i++) {
+            final double target = (double)total * i / (count + 1);
+            double lo = lowerBound;
+            double hi = 1.0;
+            for (int j = 0; j < BISECT_ITERATIONS; j++) {
+                final double mid = (lo + hi) / 2;
+                if (sizer.applyAsLong(new KeyRange(minKey, interpolator.getKey(mid))) < target)
+                    lo = mid;
+                else
+                    hi = mid;
+            }
+            lowerBound = hi;
+            final KVPair pair = kv.getAtLeast(interpolator.getKey(hi), range.getMax());
+            if (pair == null)
+                break;
+            final byte[] key = pair.getKey();
+            if (ByteUtil.compare(key, minKey) <= 0
+              || (!splitKeys.isEmpty() && ByteUtil.compare(key, splitKeys.get(splitKeys.size() - 1)) <= 0))
+                continue;
+            splitKeys.add(key);
+        }
+        return splitKeys;
+    }
+
+// Internal methods
+
+    private double position(byte[] key, int off, int len) {
+        if (this.width <= 0.0)
+            return 0.0;
+        final double position = (this.fraction(key, off, len) - this.min) / this.width;
+        return Math.max(0.0, Math.min(position, 1.0));
+    }
+
+    // Interpret the bytes following the common prefix as a base-256 fraction
+    private double fraction(byte[] key, int off, int len) {
+        final int prefixLen = this.prefix.length;
+        int cmp = 0;
+        for (int i = 0; i < prefixLen && cmp == 0; i++)
+            cmp = i < len ? (key[off + i] & 0xff) - (this.prefix[i] & 0xff) : -1;
+        if (cmp != 0)
+            return cmp < 0 ? 0.0 : 1.0;
+        double value = 0.0;
+        double scale = 1.0;
+        for (int i = 0; i < DIGITS && prefixLen + i < len; i++) {
+            scale /= 256.0;
+            value += (key[off + prefixLen + i] & 0xff) * scale;
+        }
+        return value;
+    }
+}
@@ -50,21 +50,41 @@ public final class KeyListEncoder {
      * @throws IllegalArgumentException if {@code out} or {@code key} is null
      */
     public static void write(OutputStream out, byte[] key, byte[] prev) throws IOException {
+        Preconditions.checkArgument(key != null, "null key");
+        KeyListEncoder.write(out, key, 0, key.length, prev, 0, prev != null ? prev.length : 0);
+    }
+
+    /**
+     * Write the next key, compressing its common prefix with the previous key (if any), where
+     * the keys are given as regions of larger arrays.
+     *
+     * <p>
+     * This method produces the same output as {@link #write(OutputStream, byte[], byte[])}, but it allows keys stored
+     * in packed form to be written without first being copied into separate arrays.
+     *
+     * @param out output stream
+     * @param key array containing key to write
+     * @param keyOff offset of key in {@code key}
+     * @param keyLen length of key
+     * @param prev array containing previous key, or null for none
+     * @param prevOff offset of previous key in {@code prev}
+     * @param prevLen length of previous key
+     * @throws IOException if an I/O error occurs
+     * @throws IllegalArgumentException if {@code out} or {@code key} is null
+     */
+    public static void write(OutputStream out, byte[] key, int keyOff, int keyLen, byte[] prev, int prevOff, int prevLen)
+      throws IOException {
         Preconditions.checkArgument(out != null, "null out");
         Preconditions.checkArgument(key != null, "null key");
-        int prefixLength = 0;
-        if (prev != null) {
-            while (prefixLength < key.length && prefixLength < prev.length && key[prefixLength] == prev[prefixLength])
-                prefixLength++;
-        }
+        final int prefixLength = KeyListEncoder.prefixLength(key, keyOff, keyLen, prev, prevOff, prevLen);
         if (prefixLength > 1) {
-            final int suffixLength = key.length - prefixLength;
+            final int suffixLength = keyLen - prefixLength;
             LongEncoder.write(out, ~(prefixLength - 2));
             UnsignedIntEncoder.write(out, suffixLength);
-            out.write(key, prefixLength, suffixLength);
+            out.write(key, keyOff + prefixLength, suffixLength);
         } else {
-            LongEncoder.write(out, key.length);
-            out.write(key);
+            LongEncoder.write(out, keyLen);
+            out.write(key, keyOff, keyLen);
         }
     }
 
@@ -78,16 +98,30 @@ public final class KeyListEncoder {
      */
     public static int writeLength(byte[] key, byte[] prev) {
         Preconditions.checkArgument(key != null, "null key");
-        int prefixLength = 0;
-        if (prev != null) {
-            while (prefixLength < key.length && prefixLength < prev.length && key[prefixLength] == prev[prefixLength])
-                prefixLength++;
-        }
+        return KeyListEncoder.writeLength(key, 0, key.length, prev, 0, prev != null ? prev.length : 0);
+    }
+
+    /**
+     * Calculate the number of bytes that would be required to write the next key via
+     * {@link #write(OutputStream, byte[], int, int, byte[], int, int) write()}.
+     *
+     * @param key array containing key to write
+     * @param keyOff offset of key in {@code key}
+     * @param keyLen length of key
+     * @param prev array containing previous key, or null for none
+     * @param prevOff offset of previous key in {@code prev}
+     * @param prevLen length of previous key
+     * @return number of bytes to be written
+     * @throws IllegalArgumentException if {@code key} is null
+     */
+    public static int writeLength(byte[] key, int keyOff, int keyLen, byte[] prev, int prevOff, int prevLen) {
+        Preconditions.checkArgument(key != null, "null key");
+        final int prefixLength = KeyListEncoder.prefixLength(key, keyOff, keyLen, prev, prevOff, prevLen);
         if (prefixLength > 1) {
-            final int suffixLength = key.length - prefixLength;
+            final int suffixLength = keyLen - prefixLength;
             return LongEncoder.encodeLength(~(prefixLength - 2)) + UnsignedIntEncoder.encodeLength(suffixLength) + suffixLength;
         } else
-            return LongEncoder.encodeLength(key.length) + key.length;
+            return LongEncoder.encodeLength(keyLen) + keyLen;
     }
 
     /**
@@ -245,5 +279,15 @@ public final class KeyListEncoder {
         Preconditions.checkArgument(intValue == (int)longValue, "read out-of-range encoded int value %s", longValue);
         return intValue;
     }
+
+    private static int prefixLength(byte[] key, int keyOff, int keyLen, byte[] prev, int prevOff, int prevLen) {
+        if (prev == null)
+            return 0;
+        final int limit = Math.min(keyLen, prevLen);
+        int prefixLength = 0;
+        while (prefixLength < limit && key[keyOff + prefixLength] == prev[prevOff + prefixLength])
+            prefixLength++;
+        return prefixLength;
+    }
 }
 
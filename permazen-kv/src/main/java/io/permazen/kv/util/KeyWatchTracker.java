@@ -15,13 +15,15 @@ import com.google.common.util.concurrent.AbstractFuture;
 import com.google.common.util.concurrent.ListenableFuture;
 
 import io.permazen.kv.KeyRange;
+import io.permazen.kv.KeyRangeTree;
 import io.permazen.kv.mvcc.Mutations;
 import io.permazen.util.ByteUtil;
 
 import java.io.Closeable;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
 import java.util.TreeMap;
@@ -38,6 +40,13 @@ import org.slf4j.LoggerFactory;
  * Utility class used to track key watches.
  *
  * <p>
+ * In addition to watches on individual keys, watches on entire key ranges are supported; a range watch fires
+ * when any key in the range is modified, and counts as a single watch for the purposes of the limits below.
+ * Range watches are indexed in an interval tree, so the cost of triggering is logarithmic in the number of range
+ * watches. Note that because each watch fires only once, a batch of mutations that affects several keys in the
+ * same watched range results in a single notification.
+ *
+ * <p>
  * To limit memory consumption, instances are configured with a maximum maximum number of key watches supported,
  * as well as a maximum lifetime for each key watch. When these limits are exceeded, one or more key watches
  * is evicted and a corresponding spurious notification occurs.
@@ -65,7 +74,7 @@ import org.slf4j.LoggerFactory;
 @ThreadSafe
 public class KeyWatchTracker implements Closeable {
 
-    // Note locking order: KeyInfo, then KeyWatchTracker
+    // Note locking order: WatchInfo, then KeyWatchTracker
 
     /**
      * Default capacity ({@value #DEFAULT_CAPACITY}).
@@ -84,7 +93,11 @@ public class KeyWatchTracker implements Closeable {
 
     @GuardedBy("this")
     private final TreeMap<byte[], KeyInfo> keyInfos = new TreeMap<>(ByteUtil.COMPARATOR);
-    private final Cache<KeyFuture, KeyInfo> futureMap;
+    @GuardedBy("this")
+    private final HashMap<KeyRange, RangeInfo> rangeInfos = new HashMap<>();
+    @GuardedBy("this")
+    private final KeyRangeTree<KeyRange> rangeTree = new KeyRangeTree<>();          // contains the keys of this.rangeInfos
+    private final Cache<KeyFuture, WatchInfo> futureMap;
     private final ExecutorService notifyExecutor;
 
     /**
@@ -113,12 +126,12 @@ public class KeyWatchTracker implements Closeable {
         Preconditions.checkArgument(maxLifetime > 0, "maxLifetime <= 0");
 
         // Initialize
-        CacheBuilder<KeyFuture, KeyInfo> cacheBuilder = CacheBuilder.newBuilder()
+        CacheBuilder<KeyFuture, WatchInfo> cacheBuilder = CacheBuilder.newBuilder()
           .maximumSize(capacity)
           .expireAfterWrite(maxLifetime, TimeUnit.SECONDS)
-          .<KeyFuture, KeyInfo>removalListener(new RemovalListener<KeyFuture, KeyInfo>() {
+          .<KeyFuture, WatchInfo>removalListener(new RemovalListener<KeyFuture, WatchInfo>() {
             @Override
-            public void onRemoval(RemovalNotification<KeyFuture, KeyInfo> notification) {
+            public void onRemoval(RemovalNotification<KeyFuture, WatchInfo> notification) {
                 notification.getValue().handleRemoval(notification.getKey());
             }
           });
@@ -149,19 +162,42 @@ public class KeyWatchTracker implements Closeable {
         Preconditions.checkArgument(key != null, "null key");
 
         // Get/create KeyInfo object for this key
-        KeyInfo keyInfo;
+        final KeyInfo keyInfo;
         synchronized (this) {
-            if ((keyInfo = this.keyInfos.get(key)) == null) {
-                key = key.clone();                              // avoid external mutation of key contents
-                keyInfo = new KeyInfo(key);
-                this.keyInfos.put(key, keyInfo);
-            }
+            keyInfo = this.getKeyInfo(key);
         }
 
         // Create new future for this key
         return keyInfo.createFuture();
     }
 
+    /**
+     * Register a new watch on a range of keys.
+     *
+     * <p>
+     * The returned {@link ListenableFuture} fires when any key in {@code range} is modified.
+     * If the returned {@link java.util.concurrent.Future} is {@link java.util.concurrent.Future#cancel cancel()}'ed,
+     * the watch is automatically unregistered.
+     *
+     * @param range the range of keys to watch
+     * @return a {@link ListenableFuture} that returns when the value associated with any key in {@code range} is modified
+     * @throws IllegalArgumentException if {@code range} is null
+     */
+    public ListenableFuture<Void> register(KeyRange range) {
+
+        // Sanity check
+        Preconditions.checkArgument(range != null, "null range");
+
+        // Get/create RangeInfo object for this range
+        final RangeInfo rangeInfo;
+        synchronized (this) {
+            rangeInfo = this.getRangeInfo(range);
+        }
+
+        // Create new future for this range
+        return rangeInfo.createFuture();
+    }
+
     /**
      * Count the number of keys being watched.
      *
@@ -175,7 +211,28 @@ public class KeyWatchTracker implements Closeable {
     }
 
     /**
-     * Trigger all watches associated with the given key.
+     * Count the number of key ranges being watched.
+     *
+     * <p>
+     * Note that the same range can be watched more than once, so this only counts ranges being watched, not total watches.
+     *
+     * @return number of key ranges being watched
+     */
+    public synchronized int getNumRangesWatched() {
+        return this.rangeInfos.size();
+    }
+
+    /**
+     * Determine whether there are any key or key range watches.
+     *
+     * @return true if no keys or key ranges are being watched
+     */
+    public synchronized boolean isEmpty() {
+        return this.keyInfos.isEmpty() && this.rangeInfos.isEmpty();
+    }
+
+    /**
+     * Trigger all watches associated with the given key, including watches on ranges containing the key.
      *
      * @param key the key that has been modified
      * @return true if any watches were triggered, otherwise false
@@ -186,20 +243,18 @@ public class KeyWatchTracker implements Closeable {
         // Sanity check
         Preconditions.checkArgument(key != null, "null key");
 
-        // Extract KeyInfo object for this key
-        final KeyInfo keyInfo;
+        // Extract WatchInfo objects for this key
+        final ArrayList<WatchInfo> triggerList = new ArrayList<>();
         synchronized (this) {
-            if ((keyInfo = this.keyInfos.remove(key)) == null)
-                return false;
+            this.extract(key, triggerList);
         }
 
         // Trigger all associated futures
-        keyInfo.triggerAll();
-        return true;
+        return this.triggerAll(triggerList);
     }
 
     /**
-     * Trigger all watches associated with the given keys.
+     * Trigger all watches associated with the given keys, including watches on ranges containing any of the keys.
      *
      * @param keys keys that have been modified
      * @return true if any watches were triggered, otherwise false
@@ -210,25 +265,19 @@ public class KeyWatchTracker implements Closeable {
         // Sanity check
         Preconditions.checkArgument(keys != null, "null keys");
 
-        // Extract KeyInfo objects for all keys
-        final ArrayList<KeyInfo> triggerList = new ArrayList<>();
+        // Extract WatchInfo objects for all keys
+        final ArrayList<WatchInfo> triggerList = new ArrayList<>();
         synchronized (this) {
-            for (byte[] key : keys) {
-                final KeyInfo keyInfo = this.keyInfos.remove(key);
-                if (keyInfo != null)
-                    triggerList.add(keyInfo);
-            }
+            for (byte[] key : keys)
+                this.extract(key, triggerList);
         }
-        if (triggerList.isEmpty())
-            return false;
 
         // Trigger all associated futures
-        triggerList.forEach(KeyInfo::triggerAll);
-        return true;
+        return this.triggerAll(triggerList);
     }
 
     /**
-     * Trigger all watches associated with keys in the given range.
+     * Trigger all watches associated with keys in the given range, including watches on overlapping ranges.
      *
      * @param range range of keys that have been modified
      * @return true if any watches were triggered, otherwise false
@@ -239,26 +288,22 @@ public class KeyWatchTracker implements Closeable {
         // Sanity check
         Preconditions.checkArgument(range != null, "null range");
 
-        // Extract KeyInfo objects for all keys in the range
-        final ArrayList<KeyInfo> triggerList = new ArrayList<>();
+        // Extract WatchInfo objects for all keys in the range
+        final ArrayList<WatchInfo> triggerList = new ArrayList<>();
         synchronized (this) {
-            final NavigableMap<byte[], KeyInfo> subMap = range.getMax() != null ?
-              this.keyInfos.subMap(range.getMin(), true, range.getMax(), false) :
-              this.keyInfos.tailMap(range.getMin(), true);
-            triggerList.addAll(subMap.values());
-            subMap.clear();
+            this.extract(range, triggerList);
         }
-        if (triggerList.isEmpty())
-            return false;
 
         // Trigger all associated futures
-        triggerList.forEach(KeyInfo::triggerAll);
-        return true;
+        return this.triggerAll(triggerList);
     }
 
     /**
      * Trigger all watches associated with the given mutations.
      *
+     * <p>
+     * Each watch affected by any of the mutations is triggered once.
+     *
      * @param mutations mutations
      * @return true if any watches were triggered, otherwise false
      * @throws IllegalArgumentException if {@code mutations} is null
@@ -269,15 +314,19 @@ public class KeyWatchTracker implements Closeable {
         // Sanity check
         Preconditions.checkArgument(mutations != null, "null mutations");
 
-        // Trigger all keys affected by any mutation
-        boolean result = false;
-        for (KeyRange range : mutations.getRemoveRanges())
-            result |= this.trigger(range);
-        result |= this.trigger(Iterables.transform(mutations.getPutPairs(), Map.Entry::getKey));
-        result |= this.trigger(Iterables.transform(mutations.getAdjustPairs(), Map.Entry::getKey));
+        // Extract WatchInfo objects for all keys affected by any mutation
+        final ArrayList<WatchInfo> triggerList = new ArrayList<>();
+        synchronized (this) {
+            for (KeyRange range : mutations.getRemoveRanges())
+                this.extract(range, triggerList);
+            for (byte[] key : Iterables.transform(mutations.getPutPairs(), Map.Entry::getKey))
+                this.extract(key, triggerList);
+            for (byte[] key : Iterables.transform(mutations.getAdjustPairs(), Map.Entry::getKey))
+                this.extract(key, triggerList);
+        }
 
-        // Done
-        return result;
+        // Trigger all associated futures
+        return this.triggerAll(triggerList);
     }
 
     /**
@@ -300,9 +349,9 @@ public class KeyWatchTracker implements Closeable {
         // Sanity check
         Preconditions.checkArgument(e != null, "null e");
 
-        // Extract KeyInfo objects for all keys and fail all associated futures
-        for (KeyInfo keyInfo : this.removeAllKeyInfos())
-            keyInfo.failAll(e);
+        // Extract WatchInfo objects for all keys and ranges and fail all associated futures
+        for (WatchInfo watchInfo : this.removeAllWatchInfos())
+            watchInfo.failAll(e);
     }
 
     /**
@@ -313,21 +362,19 @@ public class KeyWatchTracker implements Closeable {
      */
     public void absorb(KeyWatchTracker that) {
 
-        // Grab all KeyInfo objects from 'that'
-        final KeyInfo[] thatKeyInfos = that.removeAllKeyInfos();
+        // Grab all WatchInfo objects from 'that'
+        final List<WatchInfo> thatWatchInfos = that.removeAllWatchInfos();
 
         // Add all of their futures to this instance
-        for (KeyInfo thatKeyInfo : thatKeyInfos) {
-            final byte[] key = thatKeyInfo.getKey();
-            KeyInfo thisKeyInfo;
+        for (WatchInfo thatWatchInfo : thatWatchInfos) {
+            final WatchInfo thisWatchInfo;
             synchronized (this) {
-                if ((thisKeyInfo = this.keyInfos.get(key)) == null) {
-                    thisKeyInfo = new KeyInfo(key);
-                    this.keyInfos.put(key, thisKeyInfo);
-                }
+                thisWatchInfo = thatWatchInfo instanceof KeyInfo ?
+                  this.getKeyInfo(((KeyInfo)thatWatchInfo).getKey()) :
+                  this.getRangeInfo(((RangeInfo)thatWatchInfo).getRange());
             }
-            for (KeyFuture future : thatKeyInfo.removeAllFutures()) {
-                thisKeyInfo.addFuture(future);
+            for (KeyFuture future : thatWatchInfo.removeAllFutures()) {
+                thisWatchInfo.addFuture(future);
                 future.setOwner(this.futureMap);
                 if (future.isDone())
                     this.futureMap.invalidate(future);          // handle race with future's owner vs. future completion
@@ -338,13 +385,79 @@ public class KeyWatchTracker implements Closeable {
         that.futureMap.invalidateAll();
     }
 
-    private synchronized KeyInfo[] removeAllKeyInfos() {
-        final Collection<KeyInfo> allKeyInfos = this.keyInfos.values();
-        final KeyInfo[] result = allKeyInfos.toArray(new KeyInfo[allKeyInfos.size()]);
+    private synchronized List<WatchInfo> removeAllWatchInfos() {
+        final ArrayList<WatchInfo> result = new ArrayList<>(this.keyInfos.size() + this.rangeInfos.size());
+        result.addAll(this.keyInfos.values());
+        result.addAll(this.rangeInfos.values());
         this.keyInfos.clear();
+        this.rangeInfos.clear();
+        this.rangeTree.clear();
         return result;
     }
 
+    // Get/create the KeyInfo for the given key. Assumes synchronized already on this instance.
+    private KeyInfo getKeyInfo(byte[] key) {
+        KeyInfo keyInfo = this.keyInfos.get(key);
+        if (keyInfo == null) {
+            key = key.clone();                                  // avoid external mutation of key contents
+            keyInfo = new KeyInfo(key);
+            this.keyInfos.put(key, keyInfo);
+        }
+        return keyInfo;
+    }
+
+    // Get/create the RangeInfo for the given range. Assumes synchronized already on this instance.
+    private RangeInfo getRangeInfo(KeyRange range) {
+        RangeInfo rangeInfo = this.rangeInfos.get(range);
+        if (rangeInfo == null) {
+            rangeInfo = new RangeInfo(range);
+            this.rangeInfos.put(range, rangeInfo);
+            this.rangeTree.add(range);
+        }
+        return rangeInfo;
+    }
+
+    // Remove the watches affected by a change to the given key. Assumes synchronized already on this instance.
+    private void extract(byte[] key, List<WatchInfo> triggerList) {
+        final KeyInfo keyInfo = this.keyInfos.remove(key);
+        if (keyInfo != null)
+            triggerList.add(keyInfo);
+        if (!this.rangeTree.isEmpty()) {
+            final ArrayList<KeyRange> ranges = new ArrayList<>();
+            this.rangeTree.findContaining(key, ranges);
+            this.extractRanges(ranges, triggerList);
+        }
+    }
+
+    // Remove the watches affected by a change to the given key range. Assumes synchronized already on this instance.
+    private void extract(KeyRange range, List<WatchInfo> triggerList) {
+        final byte[] min = range.getMin();
+        final byte[] max = range.getMax();
+        final NavigableMap<byte[], KeyInfo> subMap = max != null ?
+          this.keyInfos.subMap(min, true, max, false) : this.keyInfos.tailMap(min, true);
+        triggerList.addAll(subMap.values());
+        subMap.clear();
+        if (!this.rangeTree.isEmpty()) {
+            final ArrayList<KeyRange> ranges = new ArrayList<>();
+            this.rangeTree.findOverlaps(range, ranges);
+            this.extractRanges(ranges, triggerList);
+        }
+    }
+
+    private void extractRanges(List<KeyRange> ranges, List<WatchInfo> triggerList) {
+        for (KeyRange range : ranges) {
+            this.rangeTree.remove(range);
+            triggerList.add(this.rangeInfos.remove(range));
+        }
+    }
+
+    private boolean triggerAll(List<WatchInfo> triggerList) {
+        if (triggerList.isEmpty())
+            return false;
+        triggerList.forEach(WatchInfo::triggerAll);
+        return true;
+    }
+
 // Closeable
 
     /**
@@ -364,24 +477,14 @@ public class KeyWatchTracker implements Closeable {
         }
     }
 
-// KeyInfo
+// WatchInfo
 
-    // Note locking order: KeyInfo, then KeyWatchTracker
-    private class KeyInfo {
+    // Note locking order: WatchInfo, then KeyWatchTracker
+    private abstract class WatchInfo {
 
-        private final byte[] key;
         @GuardedBy("this")
         private final HashSet<KeyFuture> futures = new HashSet<>(1);
 
-        KeyInfo(byte[] key) {
-            assert key != null;
-            this.key = key;
-        }
-
-        public byte[] getKey() {
-            return this.key;
-        }
-
         KeyFuture createFuture() {
             final KeyFuture future = new KeyFuture(KeyWatchTracker.this.futureMap);
             this.addFuture(future);
@@ -400,19 +503,22 @@ public class KeyWatchTracker implements Closeable {
                 this.notifyFuture(future, null);            // if future has not completed yet, trigger a spurious notification
         }
 
-        // This assumes this instance is already removed from KeyWatchTracker.this.keyInfos
+        // This assumes this instance is already removed from KeyWatchTracker.this
         void triggerAll() {
             for (KeyFuture future : this.removeAllFutures())
                 this.notifyFuture(future, null);
         }
 
-        // This assumes this instance is already removed from KeyWatchTracker.this.keyInfos
+        // This assumes this instance is already removed from KeyWatchTracker.this
         void failAll(Exception e) {
             assert e != null;
             for (KeyFuture future : this.removeAllFutures())
                 this.notifyFuture(future, e);
         }
 
+        // Remove this instance from KeyWatchTracker.this. Assumes synchronized already on KeyWatchTracker.this.
+        abstract void unregister();
+
         /**
          * The given {@link KeyFuture} has completed, was canceled, or has failed, so stop tracking it.
          *
@@ -424,7 +530,7 @@ public class KeyWatchTracker implements Closeable {
                 removed = this.futures.remove(future);
                 if (this.futures.isEmpty()) {                           // discard this instance if there are no futures left
                     synchronized (KeyWatchTracker.this) {
-                        KeyWatchTracker.this.keyInfos.remove(this.key);
+                        this.unregister();
                     }
                 }
             }
@@ -451,7 +557,7 @@ public class KeyWatchTracker implements Closeable {
         /**
          * Stop tracking all {@link KeyFuture}s.
          *
-         * We assume this instance is already removed from {@code KeyWatchTracker.this.keyInfos}.
+         * We assume this instance is already removed from {@code KeyWatchTracker.this}.
          */
         ArrayList<KeyFuture> removeAllFutures() {
             final ArrayList<KeyFuture> futureList;
@@ -464,13 +570,56 @@ public class KeyWatchTracker implements Closeable {
         }
     }
 
+// KeyInfo
+
+    private class KeyInfo extends WatchInfo {
+
+        private final byte[] key;
+
+        KeyInfo(byte[] key) {
+            assert key != null;
+            this.key = key;
+        }
+
+        public byte[] getKey() {
+            return this.key;
+        }
+
+        @Override
+        void unregister() {
+            KeyWatchTracker.this.keyInfos.remove(this.key, this);
+        }
+    }
+
+// RangeInfo
+
+    private class RangeInfo extends WatchInfo {
+
+        private final KeyRange range;
+
+        RangeInfo(KeyRange range) {
+            assert range != null;
+            this.range = range;
+        }
+
+        public KeyRange getRange() {
+            return this.range;
+        }
+
+        @Override
+        void unregister() {
+            if (KeyWatchTracker.this.rangeInfos.remove(this.range, this))
+                KeyWatchTracker.this.rangeTree.remove(this.range);
+        }
+    }
+
 // KeyFuture
 
     private static class KeyFuture extends AbstractFuture<Void> {
 
-        private volatile Cache<KeyFuture, KeyInfo> futureMap;
+        private volatile Cache<KeyFuture, WatchInfo> futureMap;
 
-        KeyFuture(Cache<KeyFuture, KeyInfo> futureMap) {
+        KeyFuture(Cache<KeyFuture, WatchInfo> futureMap) {
             this.futureMap = futureMap;
         }
 
@@ -492,10 +641,10 @@ public class KeyWatchTracker implements Closeable {
             return super.cancel(mayInterruptIfRunning);
         }
 
-        Cache<KeyFuture, KeyInfo> getOwner() {
+        Cache<KeyFuture, WatchInfo> getOwner() {
             return this.futureMap;
         }
-        void setOwner(Cache<KeyFuture, KeyInfo> futureMap) {
+        void setOwner(Cache<KeyFuture, WatchInfo> futureMap) {
             this.futureMap = futureMap;
         }
     }
@@ -0,0 +1,550 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.kv.util;
+
+import com.google.common.base.Preconditions;
+
+import io.permazen.kv.CloseableKVStore;
+import io.permazen.kv.KVPair;
+import io.permazen.kv.KVStore;
+import io.permazen.kv.KVTransaction;
+import io.permazen.kv.KeyRange;
+import io.permazen.kv.SizeEstimatingKVStore;
+import io.permazen.kv.mvcc.AtomicKVStore;
+import io.permazen.kv.mvcc.Writes;
+import io.permazen.util.ByteUtil;
+import io.permazen.util.UnsignedIntEncoder;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+import java.util.zip.Deflater;
+
+/**
+ * Exports and imports the contents of a {@link KVStore} in parallel, using a directory of {@link BinarySerializer}
+ * chunk files.
+ *
+ * <p>
+ * On export, the key space is split into {@link KeyRange}s, each range is scanned by a separate thread, and each
+ * range is written to its own chunk file. By default, the key space is split at the boundaries of the leading
+ * storage ID under which Permazen stores object types, fields, and indexes, and large ranges are split further
+ * at balanced split keys (see {@link #getSplitRanges getSplitRanges()}); alternately, any set of non-overlapping
+ * ranges may be given.
+ *
+ * <p>
+ * Each range may be scanned from its own view of the data, such as a transaction
+ * {@linkplain KVTransaction#mutableSnapshot snapshot} or a read-only transaction, by configuring a
+ * {@linkplain #setViewSupplier view supplier}. Otherwise, if the {@link KVStore} is an {@link AtomicKVStore},
+ * all ranges are scanned from one {@linkplain AtomicKVStore#snapshot snapshot} taken at the start of the export;
+ * if not, all ranges are scanned directly from the {@link KVStore}, each using its own cursor (this relies on the
+ * {@link KVStore} contract, which requires instances, but not their iterators or cursors, to be thread safe).
+ *
+ * <p>
+ * On import, chunk files are read by separate threads. If the target {@link KVStore} is an {@link AtomicKVStore},
+ * key/value pairs are applied in batches via {@link AtomicKVStore#mutate AtomicKVStore.mutate()}; otherwise, they are
+ * written individually via {@link KVStore#put KVStore.put()}. Chunk files contain disjoint key ranges, so the
+ * order in which they are applied does not matter.
+ *
+ * <p>
+ * Each chunk file is an ordinary {@link BinarySerializer} file and may also be read individually.
+ *
+ * <p>
+ * Instances are not thread safe.
+ */
+public class ParallelSerializer {
+
+    /**
+     * The file name prefix of chunk files.
+     */
+    public static final String CHUNK_FILE_PREFIX = "chunk-";
+
+    /**
+     * The file name suffix of chunk files.
+     */
+    public static final String CHUNK_FILE_SUFFIX = ".kvbin";
+
+    /**
+     * Default import batch size in bytes ({@value #DEFAULT_BATCH_SIZE}).
+     */
+    public static final int DEFAULT_BATCH_SIZE = 4 * 1024 * 1024;
+
+    private static final Pattern CHUNK_FILE_PATTERN = Pattern.compile(
+      Pattern.quote(CHUNK_FILE_PREFIX) + "[0-9]+" + Pattern.quote(CHUNK_FILE_SUFFIX));
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+    private static final int RANGES_PER_THREAD = 4;
+
+    private final KVStore kv;
+
+    private Supplier<? extends CloseableKVStore> viewSupplier;
+
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private int blockSize = BinarySerializer.DEFAULT_BLOCK_SIZE;
+    private int compressionLevel = Deflater.NO_COMPRESSION;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    /**
+     * Constructor.
+     *
+     * @param kv key/value store on which to operate
+     * @throws IllegalArgumentException if {@code kv} is null
+     */
+    public ParallelSerializer(KVStore kv) {
+        Preconditions.checkArgument(kv != null, "null kv");
+        this.kv = kv;
+    }
+
+    /**
+     * Get the maximum number of threads used to read or write chunk files.
+     *
+     * @return number of threads
+     */
+    public int getParallelism() {
+        return this.parallelism;
+    }
+
+    /**
+     * Set the maximum number of threads used to read or write chunk files.
+     *
+     * <p>
+     * Default is the number of available processors.
+     *
+     * @param parallelism number of threads
+     * @throws IllegalArgumentException if {@code parallelism} is zero or negative
+     */
+    public void setParallelism(int parallelism) {
+        Preconditions.checkArgument(parallelism > 0, "parallelism <= 0");
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Get the target uncompressed block size used when writing chunk files.
+     *
+     * @return block size in bytes
+     * @see BinarySerializer#setBlockSize
+     */
+    public int getBlockSize() {
+        return this.blockSize;
+    }
+
+    /**
+     * Set the target uncompressed block size used when writing chunk files.
+     *
+     * <p>
+     * Default is {@link BinarySerializer#DEFAULT_BLOCK_SIZE}.
+     *
+     * @param blockSize block size in bytes
+     * @throws IllegalArgumentException if {@code blockSize} is zero or negative
+     * @see BinarySerializer#setBlockSize
+     */
+    public void setBlockSize(int blockSize) {
+        Preconditions.checkArgument(blockSize > 0, "blockSize <= 0");
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Get the {@link Deflater} compression level used when writing chunk files.
+     *
+     * @return compression level
+     * @see BinarySerializer#setCompressionLevel
+     */
+    public int getCompressionLevel() {
+        return this.compressionLevel;
+    }
+
+    /**
+     * Set the {@link Deflater} compression level used when writing chunk files.
+     *
+     * <p>
+     * Default is {@link Deflater#NO_COMPRESSION}.
+     *
+     * @param compressionLevel compression level
+     * @throws IllegalArgumentException if {@code compressionLevel} is invalid
+     * @see BinarySerializer#setCompressionLevel
+     */
+    public void setCompressionLevel(int compressionLevel) {
+        Preconditions.checkArgument(compressionLevel == Deflater.DEFAULT_COMPRESSION
+          || (compressionLevel >= Deflater.NO_COMPRESSION && compressionLevel <= Deflater.BEST_COMPRESSION),
+          "invalid compressionLevel");
+        this.compressionLevel = compressionLevel;
+    }
+
+    /**
+     * Get the source of the views from which ranges are scanned when exporting.
+     *
+     * @return view supplier, or null if none is configured
+     */
+    public Supplier<? extends CloseableKVStore> getViewSupplier() {
+        return this.viewSupplier;
+    }
+
+    /**
+     * Configure a source of views from which ranges are scanned when exporting.
+     *
+     * <p>
+     * If configured, each range is scanned from its own view, obtained from {@code viewSupplier} by the thread that
+     * exports the range and closed when that range is done; for example, a {@linkplain KVTransaction#mutableSnapshot
+     * snapshot} of a transaction, or a new read-only transaction. The views should contain the same data as the
+     * {@link KVStore} associated with this instance, which is still used to split the key space.
+     *
+     * <p>
+     * If not configured (the default), ranges are scanned as described in the {@linkplain ParallelSerializer overview}.
+     *
+     * @param viewSupplier view supplier, or null for none
+     */
+    public void setViewSupplier(Supplier<? extends CloseableKVStore> viewSupplier) {
+        this.viewSupplier = viewSupplier;
+    }
+
+    /**
+     * Get the approximate size of each batch of mutations applied when importing into an {@link AtomicKVStore}.
+     *
+     * @return batch size in bytes
+     */
+    public int getBatchSize() {
+        return this.batchSize;
+    }
+
+    /**
+     * Set the approximate size of each batch of mutations applied when importing into an {@link AtomicKVStore}.
+     *
+     * <p>
+     * Default is {@value #DEFAULT_BATCH_SIZE}.
+     *
+     * @param batchSize batch size in bytes
+     * @throws IllegalArgumentException if {@code batchSize} is zero or negative
+     */
+    public void setBatchSize(int batchSize) {
+        Preconditions.checkArgument(batchSize > 0, "batchSize <= 0");
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Split the keys in the given {@link KVStore} into ranges based on their leading storage ID.
+     *
+     * <p>
+     * Permazen stores each object type, field, and index under a key prefix consisting of an
+     * {@link UnsignedIntEncoder}-encoded storage ID. This method returns one {@link KeyRange} for each such prefix
+     * that actually contains keys, found by skipping from prefix to prefix. Keys that do not start with a valid
+     * storage ID (e.g., the {@code 0x00} meta-data prefix) are grouped by their first byte.
+     *
+     * @param kv key/value store
+     * @return sorted, non-overlapping ranges that together contain all of the keys in {@code kv}
+     * @throws IllegalArgumentException if {@code kv} is null
+     */
+    public static List<KeyRange> getStorageIdRanges(KVStore kv) {
+        Preconditions.checkArgument(kv != null, "null kv");
+        final ArrayList<KeyRange> ranges = new ArrayList<>();
+        for (byte[] next = ByteUtil.EMPTY; next != null; ) {
+            final KVPair pair = kv.getAtLeast(next, null);
+            if (pair == null)
+                break;
+            final byte[] key = pair.getKey();
+            final KeyRange range;
+            if (key.length == 0)
+                range = new KeyRange(key, ByteUtil.getNextKey(key));
+            else {
+                final int first = key[0] & 0xff;
+                final int length = first != 0xff ? Math.min(UnsignedIntEncoder.decodeLength(first), key.length) : 1;
+                range = KeyRange.forPrefix(Arrays.copyOf(key, length));
+            }
+            ranges.add(range);
+            next = range.getMax();
+        }
+        return ranges;
+    }
+
+    /**
+     * Split the keys in the given {@link KVStore} into ranges of roughly similar size for parallel export.
+     *
+     * <p>
+     * The key space is first split by leading storage ID using {@link #getStorageIdRanges getStorageIdRanges()}.
+     * Then, so that a database dominated by a few storage IDs can still be exported in parallel, any range whose
+     * estimated size exceeds {@code 1/count} of the total is split further at balanced
+     * {@linkplain SizeEstimatingKVStore#getSplitKeys split keys}. Sizes are estimated using
+     * {@link SizeEstimatingKVStore#of SizeEstimatingKVStore.of()}, i.e., natively if supported, otherwise by sampling.
+     *
+     * @param kv key/value store
+     * @param count approximate number of pieces the total size should be split into
+     * @return sorted, non-overlapping ranges that together contain all of the keys in {@code kv}
+     * @throws IllegalArgumentException if {@code kv} is null
+     * @throws IllegalArgumentException if {@code count} is zero or negative
+     */
+    public static List<KeyRange> getSplitRanges(KVStore kv, int count) {
+        Preconditions.checkArgument(kv != null, "null kv");
+        Preconditions.checkArgument(count > 0, "count <= 0");
+
+        // Estimate the size of each storage ID range
+        final List<KeyRange> ranges = ParallelSerializer.getStorageIdRanges(kv);
+        final SizeEstimatingKVStore estimator = SizeEstimatingKVStore.of(kv);
+        final long[] sizes = new long[ranges.size()];
+        long total = 0;
+        for (int i = 0; i < sizes.length; i++) {
+            sizes[i] = estimator.estimateSize(ranges.get(i)).getBytes();
+            total += sizes[i];
+        }
+
+        // Split the ranges that are too big
+        final long target = Math.max(total / count, 1);
+        final ArrayList<KeyRange> result = new ArrayList<>(ranges.size());
+        for (int i = 0; i < sizes.length; i++) {
+            final KeyRange range = ranges.get(i);
+            final long pieces = Math.min((sizes[i] + target - 1) / target, count);
+            if (pieces <= 1) {
+                result.add(range);
+                continue;
+            }
+            byte[] minKey = range.getMin();
+            for (byte[] splitKey : estimator.getSplitKeys(range, (int)pieces - 1)) {
+                result.add(new KeyRange(minKey, splitKey));
+                minKey = splitKey;
+            }
+            result.add(new KeyRange(minKey, range.getMax()));
+        }
+        return result;
+    }
+
+    /**
+     * Get the chunk files in the given directory, in order.
+     *
+     * @param dir chunk file directory
+     * @return chunk files in {@code dir}
+     * @throws IOException if {@code dir} is not a readable directory
+     * @throws IllegalArgumentException if {@code dir} is null
+     */
+    public static List<File> getChunkFiles(File dir) throws IOException {
+        Preconditions.checkArgument(dir != null, "null dir");
+        final File[] files = dir.listFiles((d, name) -> CHUNK_FILE_PATTERN.matcher(name).matches());
+        if (files == null)
+            throw new IOException("error reading directory `" + dir + "'");
+        Arrays.sort(files);
+        return Arrays.asList(files);
+    }
+
+    /**
+     * Import key/value pairs into the {@link KVStore} associated with this instance from the chunk files
+     * in the given directory.
+     *
+     * @param dir chunk file directory
+     * @return the number of key/value pairs read
+     * @throws IOException if an I/O error occurs, or any chunk file is invalid
+     * @throws IllegalArgumentException if {@code dir} is null
+     */
+    public long read(File dir) throws IOException {
+        final List<File> files = ParallelSerializer.getChunkFiles(dir);
+        final ArrayList<Callable<Long>> tasks = new ArrayList<>(files.size());
+        for (File file : files)
+            tasks.add(() -> this.readChunk(file));
+        return this.execute(tasks);
+    }
+
+    /**
+     * Export all key/value pairs from the {@link KVStore} associated with this instance into chunk files
+     * in the given directory, splitting the key space using {@link #getSplitRanges getSplitRanges()}.
+     *
+     * <p>
+     * The key space is split into several ranges per thread, so that threads finishing early can pick up more work.
+     * If an error occurs, any chunk files already written are deleted.
+     *
+     * @param dir chunk file directory; will be created if necessary
+     * @return the number of key/value pairs written
+     * @throws IOException if an I/O error occurs, or {@code dir} already contains chunk files
+     * @throws IllegalArgumentException if {@code dir} is null
+     */
+    public long write(File dir) throws IOException {
+        return this.doWrite(dir, null);
+    }
+
+    /**
+     * Export the key/value pairs in the given ranges from the {@link KVStore} associated with this instance into chunk
+     * files in the given directory, one chunk file per range.
+     *
+     * <p>
+     * The {@code ranges} should not overlap. If an error occurs, any chunk files already written are deleted.
+     *
+     * @param dir chunk file directory; will be created if necessary
+     * @param ranges key ranges to export
+     * @return the number of key/value pairs written
+     * @throws IOException if an I/O error occurs, or {@code dir} already contains chunk files
+     * @throws IllegalArgumentException if either parameter is null
+     */
+    public long write(File dir, List<KeyRange> ranges) throws IOException {
+        Preconditions.checkArgument(ranges != null, "null ranges");
+        return this.doWrite(dir, ranges);
+    }
+
+// Internal methods
+
+    // Export the given ranges, or if null, the ranges from getSplitRanges()
+    private long doWrite(File dir, List<KeyRange> ranges) throws IOException {
+        Preconditions.checkArgument(dir != null, "null dir");
+
+        // Prepare directory
+        if (!dir.isDirectory() && !dir.mkdirs())
+            throw new IOException("error creating directory `" + dir + "'");
+        if (!ParallelSerializer.getChunkFiles(dir).isEmpty())
+            throw new IOException("directory `" + dir + "' already contains chunk files");
+
+        // Without configured views, export an AtomicKVStore from a single consistent snapshot
+        final CloseableKVStore snapshot = this.viewSupplier == null && this.kv instanceof AtomicKVStore ?
+          ((AtomicKVStore)this.kv).snapshot() : null;
+        try {
+            final KVStore source = snapshot != null ? snapshot : this.kv;
+            final List<KeyRange> exportRanges = ranges != null ?
+              ranges : ParallelSerializer.getSplitRanges(source, this.parallelism * RANGES_PER_THREAD);
+
+            // Write chunks
+            final ArrayList<File> files = new ArrayList<>(exportRanges.size());
+            final ArrayList<Callable<Long>> tasks = new ArrayList<>(exportRanges.size());
+            for (KeyRange range : exportRanges) {
+                final File file = new File(dir, String.format("%s%05d%s", CHUNK_FILE_PREFIX, files.size(), CHUNK_FILE_SUFFIX));
+                files.add(file);
+                tasks.add(() -> this.exportRange(file, range, source));
+            }
+            boolean success = false;
+            try {
+                final long count = this.execute(tasks);
+                success = true;
+                return count;
+            } finally {
+                if (!success)
+                    files.forEach(File::delete);
+            }
+        } finally {
+            if (snapshot != null)
+                snapshot.close();
+        }
+    }
+
+    // Export one range, from its own view if so configured
+    private long exportRange(File file, KeyRange range, KVStore source) throws IOException {
+        if (this.viewSupplier == null)
+            return this.writeChunk(file, range, source);
+        try (CloseableKVStore view = this.viewSupplier.get()) {
+            return this.writeChunk(file, range, view);
+        }
+    }
+
+    private long readChunk(File file) throws IOException {
+        try (InputStream input = new BufferedInputStream(new FileInputStream(file))) {
+            if (!(this.kv instanceof AtomicKVStore))
+                return new BinarySerializer(this.kv).read(input);
+            final BatchReader reader = new BatchReader((AtomicKVStore)this.kv);
+            final long count = reader.read(input);
+            reader.flush(true);
+            return count;
+        } catch (IOException e) {
+            throw new IOException("error reading `" + file + "': " + e.getMessage(), e);
+        }
+    }
+
+    private long writeChunk(File file, KeyRange range, KVStore source) throws IOException {
+        final BinarySerializer serializer = new BinarySerializer(source);
+        serializer.setBlockSize(this.blockSize);
+        serializer.setCompressionLevel(this.compressionLevel);
+        try (OutputStream output = new BufferedOutputStream(new FileOutputStream(file))) {
+            return serializer.write(output, range.getMin(), range.getMax());
+        }
+    }
+
+    // Run tasks in parallel and sum their results; on the first failure, remaining tasks are cancelled.
+    // In all cases, no task is still running when this method returns.
+    private long execute(List<Callable<Long>> tasks) throws IOException {
+        if (tasks.isEmpty())
+            return 0;
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(this.parallelism, tasks.size()), r -> {
+            final Thread thread = new Thread(r);
+            thread.setName(this.getClass().getSimpleName() + "-" + THREAD_COUNTER.incrementAndGet());
+            return thread;
+        });
+        try {
+            final ExecutorCompletionService<Long> completionService = new ExecutorCompletionService<>(executor);
+            tasks.forEach(completionService::submit);
+            long total = 0;
+            for (int i = 0; i < tasks.size(); i++)
+                total += completionService.take().get();
+            return total;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted");
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException)cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException)cause;
+            if (cause instanceof Error)
+                throw (Error)cause;
+            throw new IOException(cause);
+        } finally {
+            executor.shutdownNow();
+            ParallelSerializer.awaitTermination(executor);
+        }
+    }
+
+    // Wait for cancelled tasks to actually stop, so they are no longer writing chunk files or reading from the KVStore
+    private static void awaitTermination(ExecutorService executor) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (executor.awaitTermination(1000, TimeUnit.MILLISECONDS))
+                    break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+// BatchReader
+
+    private class BatchReader extends BinarySerializer {
+
+        private final AtomicKVStore target;
+
+        private Writes writes = new Writes();
+        private long size;
+
+        BatchReader(AtomicKVStore target) {
+            super(target);
+            this.target = target;
+        }
+
+        @Override
+        protected void put(byte[] key, byte[] value) {
+            this.writes.getPuts().put(key, value);
+            this.size += key.length + value.length;
+            if (this.size >= ParallelSerializer.this.batchSize)
+                this.flush(false);
+        }
+
+        void flush(boolean sync) {
+            if (this.writes.isEmpty())
+                return;
+            this.target.mutate(this.writes, sync);
+            this.writes = new Writes();
+            this.size = 0;
+        }
+    }
+}
@@ -9,11 +9,16 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.Iterators;
 import com.google.common.primitives.Bytes;
 
+import io.permazen.kv.KVCursor;
 import io.permazen.kv.KVPair;
 import io.permazen.kv.KVStore;
+import io.permazen.util.ByteSlice;
 import io.permazen.util.ByteUtil;
 import io.permazen.util.CloseableIterator;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * A {@link io.permazen.kv.KVStore} view of all keys having a common {@code byte[]} prefix
  * in an outer, containing {@link io.permazen.kv.KVStore}.
@@ -68,6 +73,15 @@ public abstract class PrefixKVStore extends ForwardingKVStore {
         return this.delegate().get(this.addPrefix(key));
     }
 
+    @Override
+    public List<byte[]> getMany(List<byte[]> keys) {
+        Preconditions.checkArgument(keys != null, "null keys");
+        final ArrayList<byte[]> prefixedKeys = new ArrayList<>(keys.size());
+        for (byte[] key : keys)
+            prefixedKeys.add(this.addPrefix(key));
+        return this.delegate().getMany(prefixedKeys);
+    }
+
     @Override
     public KVPair getAtLeast(byte[] minKey, byte[] maxKey) {
         final KVPair pair = this.delegate().getAtLeast(this.addMinPrefix(minKey), this.addMaxPrefix(maxKey));
@@ -93,6 +107,12 @@ public abstract class PrefixKVStore extends ForwardingKVStore {
           Iterators.transform(i, pair -> new KVPair(this.removePrefix(pair.getKey()), pair.getValue())), i);
     }
 
+    @Override
+    public KVCursor getRangeView(byte[] minKey, byte[] maxKey, boolean reverse) {
+        final KVCursor cursor = this.delegate().getRangeView(this.addMinPrefix(minKey), this.addMaxPrefix(maxKey), reverse);
+        return new PrefixCursor(cursor);
+    }
+
     @Override
     public void put(byte[] key, byte[] value) {
         this.delegate().put(this.addPrefix(key), value);
@@ -142,5 +162,48 @@ public abstract class PrefixKVStore extends ForwardingKVStore {
         System.arraycopy(key, this.keyPrefix.length, suffix, 0, suffix.length);
         return suffix;
     }
-}
 
+// PrefixCursor
+
+    private class PrefixCursor implements KVCursor {
+
+        private final KVCursor cursor;
+        private final ByteSlice key = new ByteSlice();
+
+        PrefixCursor(KVCursor cursor) {
+            this.cursor = cursor;
+        }
+
+        @Override
+        public boolean next() {
+            if (!this.cursor.next())
+                return false;
+            final ByteSlice prefixedKey = this.cursor.getKey();
+            if (!prefixedKey.startsWith(PrefixKVStore.this.keyPrefix)) {
+                throw new IllegalArgumentException("read key " + prefixedKey + " not having "
+                  + ByteUtil.toString(PrefixKVStore.this.keyPrefix) + " as a prefix");
+            }
+
+            // Strip the prefix by adjusting the slice bounds; no copy is needed
+            final int prefixLength = PrefixKVStore.this.keyPrefix.length;
+            this.key.set(prefixedKey.getArray(), prefixedKey.getOffset() + prefixLength, prefixedKey.getLength() - prefixLength);
+            return true;
+        }
+
+        @Override
+        public ByteSlice getKey() {
+            this.cursor.getKey();                                   // check state
+            return this.key;
+        }
+
+        @Override
+        public ByteSlice getValue() {
+            return this.cursor.getValue();
+        }
+
+        @Override
+        public void close() {
+            this.cursor.close();
+        }
+    }
+}
@@ -10,6 +10,7 @@ import com.google.common.primitives.Bytes;
 
 import io.permazen.kv.CloseableKVStore;
 import io.permazen.kv.KVTransaction;
+import io.permazen.kv.KeyRange;
 
 import java.util.concurrent.Future;
 
@@ -89,6 +90,12 @@ public class PrefixKVTransaction extends PrefixKVStore implements KVTransaction
         return this.delegate().watchKey(Bytes.concat(this.db.getKeyPrefix(), key));
     }
 
+    @Override
+    public Future<Void> watchRange(KeyRange range) {
+        Preconditions.checkArgument(range != null, "null range");
+        return this.delegate().watchRange(range.prefixedBy(this.db.getKeyPrefix()));
+    }
+
     @Override
     public boolean isReadOnly() {
         return this.delegate().isReadOnly();
@@ -0,0 +1,263 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.kv.util;
+
+import com.google.common.base.Preconditions;
+
+import io.permazen.kv.KVCursor;
+import io.permazen.kv.KVPair;
+import io.permazen.kv.KVStore;
+import io.permazen.kv.KeyRange;
+import io.permazen.kv.SizeEstimate;
+import io.permazen.kv.SizeEstimatingKVStore;
+import io.permazen.util.ByteUtil;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Adapts any {@link KVStore} to the {@link SizeEstimatingKVStore} interface by sampling.
+ *
+ * <p>
+ * To estimate a key range, a few key/value pairs are read from the start of the range. If that exhausts the range,
+ * its size is known exactly. Otherwise, the remainder of the range is trimmed to the keys that actually exist,
+ * divided into several subranges at evenly spaced {@linkplain KeyInterpolator positions}, and each non-empty
+ * subrange is sampled the same way, recursively, sharing a fixed {@linkplain #getMaxSamples budget} of key/value
+ * pairs. Once the budget is used up, the size of any remaining subrange is extrapolated from the portion of it
+ * spanned by its samples. So small ranges are measured exactly, sampling concentrates on the parts of the key space
+ * that actually contain data, and the cost of estimating a large range is bounded regardless of its size.
+ *
+ * <p>
+ * Estimates are most accurate when keys are spread evenly within clusters (after any common prefix), e.g.,
+ * Permazen object IDs. They can be off by a large factor when many keys share a long prefix.
+ *
+ * <p>
+ * All other {@link KVStore} methods are forwarded to the underlying {@link KVStore}.
+ */
+public class SamplingSizeEstimator extends ForwardingKVStore implements SizeEstimatingKVStore {
+
+    /**
+     * Default number of key/value pairs read from each subrange ({@value #DEFAULT_SAMPLES_PER_PROBE}).
+     */
+    public static final int DEFAULT_SAMPLES_PER_PROBE = 32;
+
+    /**
+     * Default maximum number of key/value pairs read for each estimate ({@value #DEFAULT_MAX_SAMPLES}).
+     */
+    public static final int DEFAULT_MAX_SAMPLES = 4096;
+
+    private static final int FANOUT = 4;
+    private static final double MIN_COVERAGE = 1.0 / 1024;         // limits extrapolation from clustered samples
+
+    private final KVStore kvstore;
+    private final int samplesPerProbe;
+    private final int maxSamples;
+
+    /**
+     * Constructor.
+     *
+     * <p>
+     * Uses {@link #DEFAULT_SAMPLES_PER_PROBE} and {@link #DEFAULT_MAX_SAMPLES}.
+     *
+     * @param kvstore the underlying {@link KVStore}
+     * @throws IllegalArgumentException if {@code kvstore} is null
+     */
+    public SamplingSizeEstimator(KVStore kvstore) {
+        this(kvstore, DEFAULT_SAMPLES_PER_PROBE, DEFAULT_MAX_SAMPLES);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param kvstore the underlying {@link KVStore}
+     * @param samplesPerProbe maximum number of key/value pairs to read from each subrange
+     * @param maxSamples maximum number of key/value pairs to read for each estimate
+     * @throws IllegalArgumentException if {@code kvstore} is null
+     * @throws IllegalArgumentException if {@code samplesPerProbe} or {@code maxSamples} is zero or negative
+     */
+    public SamplingSizeEstimator(KVStore kvstore, int samplesPerProbe, int maxSamples) {
+        Preconditions.checkArgument(kvstore != null, "null kvstore");
+        Preconditions.checkArgument(samplesPerProbe > 0, "samplesPerProbe <= 0");
+        Preconditions.checkArgument(maxSamples > 0, "maxSamples <= 0");
+        this.kvstore = kvstore;
+        this.samplesPerProbe = samplesPerProbe;
+        this.maxSamples = maxSamples;
+    }
+
+    /**
+     * Get the maximum number of key/value pairs read from each subrange.
+     *
+     * @return samples per probe
+     */
+    public int getSamplesPerProbe() {
+        return this.samplesPerProbe;
+    }
+
+    /**
+     * Get the maximum number of key/value pairs read for each estimate.
+     *
+     * @return sample budget
+     */
+    public int getMaxSamples() {
+        return this.maxSamples;
+    }
+
+    @Override
+    protected KVStore delegate() {
+        return this.kvstore;
+    }
+
+// SizeEstimatingKVStore
+
+    @Override
+    public SizeEstimate estimateSize(KeyRange range) {
+        Preconditions.checkArgument(range != null, "null range");
+        double keys = 0;
+        double bytes = 0;
+        for (Segment segment : this.sample(range)) {
+            keys += segment.keys;
+            bytes += segment.bytes;
+        }
+        return new SizeEstimate(Math.round(keys), Math.round(bytes));
+    }
+
+    @Override
+    public List<byte[]> getSplitKeys(KeyRange range, int count) {
+        Preconditions.checkArgument(range != null, "null range");
+        Preconditions.checkArgument(count >= 0, "count < 0");
+        if (count == 0)
+            return Collections.emptyList();
+
+        // Sample range
+        final List<Segment> segments = this.sample(range);
+        double total = 0;
+        for (Segment segment : segments)
+            total += segment.bytes;
+        if (total <= 0)
+            return Collections.emptyList();
+
+        // Find the position of each split point, interpolating within segments, then move it to the next actual key
+        final ArrayList<byte[]> splitKeys = new ArrayList<>(count);
+        final byte[] minKey = range.getMin();
+        int index = 0;
+        double before = 0;
+        for (int i = 1; i <= count; i++) {
+            final double target = total * i / (count + 1);
+            while (index < segments.size() - 1 && before + segments.get(index).bytes < target)
+                before += segments.get(index++).bytes;
+            final Segment segment = segments.get(index);
+            final double position = segment.bytes > 0 ? Math.min((target - before) / segment.bytes, 1.0) : 0.0;
+            final byte[] splitKey = new KeyInterpolator(new KeyRange(segment.min, segment.max)).getKey(position);
+            final KVPair pair = this.kvstore.getAtLeast(splitKey, range.getMax());
+            if (pair == null)
+                break;
+            final byte[] key = pair.getKey();
+            if (ByteUtil.compare(key, minKey) <= 0
+              || (!splitKeys.isEmpty() && ByteUtil.compare(key, splitKeys.get(splitKeys.size() - 1)) <= 0))
+                continue;
+            splitKeys.add(key);
+        }
+        return splitKeys;
+    }
+
+// Internal methods
+
+    // Sample the given range, returning non-empty segments in key order
+    private List<Segment> sample(KeyRange range) {
+        final ArrayList<Segment> segments = new ArrayList<>();
+        this.sample(range.getMin(), range.getMax(), this.maxSamples, segments);
+        return segments;
+    }
+
+    // Sample the given range using the given budget; returns the number of key/value pairs actually read
+    private int sample(byte[] minKey, byte[] maxKey, int budget, List<Segment> segments) {
+
+        // Read some key/value pairs from the start of the range; if the budget is too small to divide, use all of it
+        final boolean leaf = budget < this.samplesPerProbe * (FANOUT + 1);
+        final int probe = leaf ? Math.max(budget, 3) : this.samplesPerProbe;
+        int keys = 0;
+        long bytes = 0;
+        byte[] lastKey = null;
+        try (KVCursor cursor = this.kvstore.getRangeView(minKey, maxKey, false)) {
+            while (true) {
+                if (!cursor.next()) {
+                    if (keys > 0)
+                        segments.add(new Segment(minKey, maxKey, keys, bytes));
+                    return keys;
+                }
+                if (keys == probe)
+                    break;
+                keys++;
+                bytes += cursor.getKey().getLength() + cursor.getValue().getLength();
+                lastKey = cursor.getKey().toByteArray();
+            }
+        }
+
+        // Range not exhausted; record what we read, then trim the remainder to the keys that actually exist
+        final byte[] nextKey = ByteUtil.getNextKey(lastKey);
+        segments.add(new Segment(minKey, nextKey, keys, bytes));
+        final byte[] remainderMax = ByteUtil.getNextKey(this.kvstore.getAtMost(maxKey, nextKey).getKey());
+
+        // If the budget is used up, extrapolate from the portion of the range spanned by the samples. The range starts
+        // at an actual key and ends just after one, so if the last of k samples is at position x, then (k - 2) / x is
+        // an unbiased estimate of the number of gaps between keys, which is one less than the number of keys.
+        if (leaf) {
+            final KeyInterpolator interpolator = new KeyInterpolator(new KeyRange(minKey, remainderMax));
+            final double coverage = Math.max(interpolator.getPosition(lastKey), MIN_COVERAGE);
+            final double moreKeys = Math.max(1 + (keys - 2) / coverage - keys, 1.0);
+            segments.add(new Segment(nextKey, remainderMax, moreKeys, moreKeys * bytes / keys));
+            return keys;
+        }
+
+        // Divide the remainder into subranges and find the non-empty ones, trimming each to its first actual key
+        final KeyInterpolator interpolator = new KeyInterpolator(new KeyRange(nextKey, remainderMax));
+        final ArrayList<byte[]> bounds = new ArrayList<>(FANOUT + 1);
+        bounds.add(nextKey);
+        for (int i = 1; i < FANOUT; i++) {
+            final byte[] bound = interpolator.getKey((double)i / FANOUT);
+            if (ByteUtil.compare(bound, bounds.get(bounds.size() - 1)) > 0)
+                bounds.add(bound);
+        }
+        bounds.add(remainderMax);
+        final ArrayList<byte[]> childMins = new ArrayList<>(FANOUT);
+        final ArrayList<byte[]> childMaxs = new ArrayList<>(FANOUT);
+        for (int i = 0; i < bounds.size() - 1; i++) {
+            final KVPair first = this.kvstore.getAtLeast(bounds.get(i), bounds.get(i + 1));
+            if (first != null) {
+                childMins.add(first.getKey());
+                childMaxs.add(bounds.get(i + 1));
+            }
+        }
+
+        // Sample each non-empty subrange, passing along any unused budget
+        int remaining = budget - keys;
+        int total = keys;
+        for (int i = 0; i < childMins.size(); i++) {
+            final int used = this.sample(childMins.get(i), childMaxs.get(i), remaining / (childMins.size() - i), segments);
+            remaining -= used;
+            total += used;
+        }
+        return total;
+    }
+
+// Segment
+
+    private static final class Segment {
+
+        final byte[] min;
+        final byte[] max;
+        final double keys;
+        final double bytes;
+
+        Segment(byte[] min, byte[] max, double keys, double bytes) {
+            this.min = min;
+            this.max = max;
+            this.keys = keys;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.kv;
+
+import io.permazen.test.TestSupport;
+import io.permazen.util.ByteUtil;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class KeyRangeTreeTest extends TestSupport {
+
+    @Test
+    public void testKeyRangeTree() {
+        final KeyRangeTree<KeyRange> tree = new KeyRangeTree<>();
+        final ArrayList<KeyRange> reference = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+
+            // Add or remove a random range
+            if (reference.isEmpty() || this.random.nextInt(3) != 0) {
+                final KeyRange range = this.randomRange();
+                Assert.assertTrue(tree.add(range));
+                Assert.assertFalse(tree.add(range));
+                reference.add(range);
+            } else {
+                final KeyRange range = reference.remove(this.random.nextInt(reference.size()));
+                Assert.assertTrue(tree.remove(range));
+                Assert.assertFalse(tree.remove(range));
+            }
+            Assert.assertEquals(tree.size(), reference.size());
+
+            // Compare overlap search with brute force
+            final KeyRange query = this.randomRange();
+            final ArrayList<KeyRange> actual = new ArrayList<>();
+            tree.findOverlaps(query, actual);
+            final Set<KeyRange> expected = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (KeyRange range : reference) {
+                if (range.overlaps(query))
+                    expected.add(range);
+            }
+            Assert.assertEquals(actual.size(), expected.size(), "query " + query);
+            Assert.assertTrue(expected.containsAll(actual), "query " + query);
+
+            // Compare key search with brute force
+            final byte[] key = this.randomKey();
+            actual.clear();
+            tree.findContaining(key, actual);
+            expected.clear();
+            for (KeyRange range : reference) {
+                if (range.contains(key))
+                    expected.add(range);
+            }
+            Assert.assertEquals(actual.size(), expected.size(), "key " + ByteUtil.toString(key));
+            Assert.assertTrue(expected.containsAll(actual), "key " + ByteUtil.toString(key));
+        }
+        tree.clear();
+        Assert.assertTrue(tree.isEmpty());
+    }
+
+    private KeyRange randomRange() {
+        final byte[] min = this.randomKey();
+        final byte[] max = this.random.nextInt(10) == 0 ? null : this.randomKey();
+        if (max != null && ByteUtil.compare(min, max) > 0)
+            return new KeyRange(max, min);
+        return new KeyRange(min, max);
+    }
+
+    private byte[] randomKey() {
+        final byte[] key = new byte[this.random.nextInt(3)];
+        for (int i = 0; i < key.length; i++)
+            key[i] = (byte)(this.random.nextInt(8) << 5);
+        return key;
+    }
+}
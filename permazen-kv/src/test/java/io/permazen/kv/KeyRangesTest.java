@@ -7,6 +7,8 @@ package io.permazen.kv;
 
 import io.permazen.util.ByteUtil;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
@@ -299,6 +301,65 @@ public class KeyRangesTest extends KeyRangeTestSupport {
         return paramsList.toArray(new Object[paramsList.size()][]);
     }
 
+///////////// Frozen
+
+    @Test
+    public void testFrozen() throws Exception {
+        for (int i = 0; i < 500; i++) {
+
+            // Build mutable and frozen instances
+            final ArrayList<KeyRange> list = new ArrayList<>();
+            final int numRanges = this.random.nextInt(i % 5 == 0 ? 300 : 10);
+            for (int j = 0; j < numRanges; j++)
+                list.add(this.randomKeyRange());
+            final KeyRanges ranges = new KeyRanges(list);
+            final ByteArrayOutputStream output = new ByteArrayOutputStream();
+            ranges.serialize(output);
+            final KeyRanges frozen1 = ranges.immutableSnapshot();
+            final KeyRanges frozen2 = new KeyRanges(new ByteArrayInputStream(output.toByteArray()), true);
+
+            // Gather test keys, including range boundaries
+            final ArrayList<byte[]> keys = new ArrayList<>();
+            keys.add(ByteUtil.EMPTY);
+            for (KeyRange range : ranges) {
+                keys.add(range.getMin());
+                keys.add(ByteUtil.getNextKey(range.getMin()));
+                if (range.getMax() != null) {
+                    keys.add(range.getMax());
+                    keys.add(ByteUtil.getNextKey(range.getMax()));
+                }
+            }
+            for (int j = 0; j < 50; j++)
+                keys.add(this.randomBytes(false));
+
+            // Compare
+            for (KeyRanges frozen : new KeyRanges[] { frozen1, frozen2 }) {
+                Assert.assertEquals(frozen, ranges);
+                Assert.assertEquals(frozen.serializedLength(), (long)output.size());
+                final ByteArrayOutputStream output2 = new ByteArrayOutputStream();
+                frozen.serialize(output2);
+                Assert.assertEquals(output2.toByteArray(), output.toByteArray());
+                for (byte[] key : keys) {
+                    Assert.assertEquals(frozen.contains(key), ranges.contains(key), "key " + s(key) + " in " + ranges);
+                    Assert.assertEquals(frozen.seekHigher(key), ranges.seekHigher(key), "key " + s(key) + " in " + ranges);
+                    Assert.assertEquals(frozen.seekLower(key), ranges.seekLower(key), "key " + s(key) + " in " + ranges);
+                    Assert.assertEquals(Arrays.asList(frozen.findKey(key)), Arrays.asList(ranges.findKey(key)));
+                }
+                for (int j = 0; j < 50; j++) {
+                    final KeyRange range = this.randomKeyRange();
+                    Assert.assertEquals(frozen.intersects(range), ranges.intersects(range), "range " + range + " in " + ranges);
+                    Assert.assertEquals(frozen.contains(range), ranges.contains(range), "range " + range + " in " + ranges);
+                }
+
+                // Clones are mutable
+                final KeyRanges clone = frozen.clone();
+                clone.add(KeyRange.FULL);
+                Assert.assertTrue(clone.isFull());
+                Assert.assertEquals(frozen, ranges);
+            }
+        }
+    }
+
 ///////////// Empty
 
     @Test(dataProvider = "empty")
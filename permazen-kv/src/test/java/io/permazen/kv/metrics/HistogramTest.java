@@ -0,0 +1,64 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.kv.metrics;
+
+import io.permazen.test.TestSupport;
+
+import java.util.Arrays;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class HistogramTest extends TestSupport {
+
+    @Test
+    public void testBuckets() {
+        int prevBucket = -1;
+        for (long value = 0; value < 100000; value++) {
+            final int bucket = Histogram.bucketFor(value);
+            Assert.assertTrue(bucket == prevBucket || bucket == prevBucket + 1, "value " + value);
+            Assert.assertTrue(value <= Histogram.bucketLimit(bucket), "value " + value);
+            if (bucket != prevBucket && prevBucket >= 0)
+                Assert.assertEquals(Histogram.bucketLimit(prevBucket), value - 1);
+            prevBucket = bucket;
+        }
+        for (int shift = 0; shift < 63; shift++) {
+            final long value = 1L << shift;
+            Assert.assertEquals(Histogram.bucketFor(Histogram.bucketLimit(Histogram.bucketFor(value))),
+              Histogram.bucketFor(value));
+        }
+        Assert.assertEquals(Histogram.bucketLimit(Histogram.bucketFor(Long.MAX_VALUE)), Long.MAX_VALUE);
+    }
+
+    @Test
+    public void testPercentiles() {
+        final Histogram histogram = new Histogram();
+        Assert.assertEquals(histogram.getCount(), 0);
+        Assert.assertEquals(histogram.getPercentile(50.0), 0);
+        Assert.assertEquals(histogram.getMean(), 0.0);
+
+        final long[] values = new long[10000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long)Math.exp(this.random.nextDouble() * 30);
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+        Assert.assertEquals(histogram.getCount(), values.length);
+        Assert.assertEquals(histogram.getMax(), values[values.length - 1]);
+        Assert.assertEquals(histogram.getSum(), Arrays.stream(values).sum());
+        for (double percentile : new double[] { 0.0, 1.0, 25.0, 50.0, 90.0, 99.0, 99.9, 100.0 }) {
+            final long actual = values[Math.max((int)Math.ceil(values.length * percentile / 100.0), 1) - 1];
+            final long estimate = histogram.getPercentile(percentile);
+            Assert.assertTrue(estimate >= actual && estimate <= actual + actual / Histogram.SUB_BUCKETS,
+              "percentile " + percentile + ": actual " + actual + " estimate " + estimate);
+        }
+
+        histogram.reset();
+        Assert.assertEquals(histogram.getCount(), 0);
+        Assert.assertEquals(histogram.getMax(), 0);
+        Assert.assertEquals(histogram.getPercentile(99.0), 0);
+    }
+}
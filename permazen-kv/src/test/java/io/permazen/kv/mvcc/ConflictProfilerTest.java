@@ -0,0 +1,98 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.kv.mvcc;
+
+import io.permazen.kv.KeyRange;
+import io.permazen.test.TestSupport;
+
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class ConflictProfilerTest extends TestSupport {
+
+    private static final long MILLIS = 1000000L;
+
+    @Test
+    public void testTopKeys() {
+        final ConflictProfiler profiler = new ConflictProfiler(4, 1000);
+        final long now = System.nanoTime();
+
+        // One hot key and a bunch of rare ones, all under storage ID 0x10 except the last
+        for (int i = 0; i < 100; i++) {
+            profiler.record(new ReadWriteConflict(b("1001")), now);
+            profiler.record(new ReadWriteConflict(new byte[] { (byte)0x10, (byte)(0x20 + i) }), now);
+        }
+        profiler.record(new ReadAdjustConflict(b("fb0101")), now);
+        profiler.record(new ReadRemoveConflict(new KeyRange(b("1030"), b("1040"))), now);
+        profiler.record(new ReadRemoveConflict(new KeyRange(b("1030"), b("2040"))), now);
+        profiler.record(new ReadWriteConflict(b("0001")), now);
+
+        Assert.assertEquals(profiler.getReadWriteConflicts(), 201);
+        Assert.assertEquals(profiler.getReadAdjustConflicts(), 1);
+        Assert.assertEquals(profiler.getReadRemoveConflicts(), 2);
+
+        // Hot key is on top with an exact score
+        final List<ConflictHotspot> keys = profiler.getTopKeys(10);
+        Assert.assertEquals(keys.size(), 4);
+        Assert.assertEquals(keys.get(0).getKeyBytes(), b("1001"));
+        Assert.assertEquals(keys.get(0).getCount(), 100);
+        Assert.assertEquals(keys.get(0).getStorageId(), 0x10);
+        Assert.assertFalse(keys.get(0).isPrefix());
+        Assert.assertTrue(keys.get(0).getScore() >= 99.0 && keys.get(0).getScore() <= 101.0);
+        Assert.assertEquals(keys.get(0).getError(), 0.0);
+
+        // Most recently added key replaced some rare key; meta-data keys have no storage ID
+        final ConflictHotspot metaData = keys.stream()
+          .filter(hotspot -> hotspot.getKey().equals("0001"))
+          .findAny()
+          .get();
+        Assert.assertEquals(metaData.getStorageId(), -1);
+        Assert.assertEquals(metaData.getCount(), 1);
+        Assert.assertTrue(metaData.getError() > 0.0);
+
+        // Prefixes are decoded into storage IDs
+        final List<ConflictHotspot> prefixes = profiler.getTopPrefixes(10);
+        Assert.assertEquals(prefixes.size(), 2);
+        Assert.assertEquals(prefixes.get(0).getKeyBytes(), b("10"));
+        Assert.assertEquals(prefixes.get(0).getCount(), 201);
+        Assert.assertTrue(prefixes.get(0).isPrefix());
+        Assert.assertEquals(prefixes.get(1).getKeyBytes(), b("fb01"));
+        Assert.assertEquals(prefixes.get(1).getStorageId(), 0xfb + 0x01);
+
+        profiler.reset();
+        Assert.assertTrue(profiler.getTopKeys().isEmpty());
+        Assert.assertTrue(profiler.getTopPrefixes().isEmpty());
+        Assert.assertEquals(profiler.getReadWriteConflicts(), 0);
+    }
+
+    @Test
+    public void testDecay() {
+        final ConflictProfiler profiler = new ConflictProfiler(2, 1000);
+        final long start = System.nanoTime() - 10000 * MILLIS;
+
+        // Old conflicts at one key, then fewer recent conflicts at another
+        for (int i = 0; i < 100; i++)
+            profiler.record(new ReadWriteConflict(b("20")), start);
+        for (int i = 0; i < 10; i++)
+            profiler.record(new ReadWriteConflict(b("30")), start + 9000 * MILLIS);
+
+        // Recent conflicts now outrank the old ones, which have decayed by a factor of 2^10
+        final List<ConflictHotspot> keys = profiler.getTopKeys(2);
+        Assert.assertEquals(keys.get(0).getKeyBytes(), b("30"));
+        Assert.assertEquals(keys.get(1).getKeyBytes(), b("20"));
+        Assert.assertTrue(keys.get(0).getScore() > 4.0 && keys.get(0).getScore() < 6.0, "score " + keys.get(0).getScore());
+        Assert.assertTrue(keys.get(1).getScore() < 0.2, "score " + keys.get(1).getScore());
+
+        // Scores survive rescaling after a long time
+        profiler.record(new ReadWriteConflict(b("40")), start + 100000 * MILLIS);
+        Assert.assertEquals(profiler.getTopKeys(1).get(0).getKeyBytes(), b("40"));
+
+        // Evicted entries are replaced
+        Assert.assertEquals(profiler.getTopKeys(10).size(), 2);
+    }
+}
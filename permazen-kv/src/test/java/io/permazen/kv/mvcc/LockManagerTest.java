@@ -0,0 +1,172 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.kv.mvcc;
+
+import io.permazen.test.TestSupport;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+public class LockManagerTest extends TestSupport {
+
+    @Test(dataProvider = "lockManagers")
+    public void testLocking(LockManager manager) throws Exception {
+        final LockOwner owner1 = new LockOwner();
+        final LockOwner owner2 = new LockOwner();
+
+        // Write lock blocks overlapping locks of other owners
+        Assert.assertEquals(manager.lock(owner1, b("10"), b("20"), true, 0), LockManager.LockResult.SUCCESS);
+        Assert.assertEquals(manager.lock(owner2, b("1f"), b("30"), false, 10), LockManager.LockResult.WAIT_TIMEOUT_EXPIRED);
+        Assert.assertEquals(manager.lock(owner2, b(""), null, false, 10), LockManager.LockResult.WAIT_TIMEOUT_EXPIRED);
+        Assert.assertEquals(manager.lock(owner2, b("20"), b("30"), true, 10), LockManager.LockResult.SUCCESS);
+        Assert.assertEquals(manager.lock(owner2, b("05"), b("10"), false, 10), LockManager.LockResult.SUCCESS);
+
+        // Same owner can re-lock and upgrade; locks merge
+        Assert.assertEquals(manager.lock(owner1, b("1000"), b("1001"), false, 0), LockManager.LockResult.SUCCESS);
+        Assert.assertEquals(manager.lock(owner1, b("18"), b("20"), true, 0), LockManager.LockResult.SUCCESS);
+        Assert.assertTrue(manager.isLocked(owner1, b("10"), b("20"), true));
+        Assert.assertFalse(manager.isLocked(owner1, b("0e"), b("20"), false));
+
+        // Read locks may overlap
+        Assert.assertEquals(manager.lock(owner1, b("00"), b("0a"), false, 0), LockManager.LockResult.SUCCESS);
+        Assert.assertEquals(manager.lock(owner2, b("08"), b("0b"), true, 10), LockManager.LockResult.WAIT_TIMEOUT_EXPIRED);
+
+        // Releasing wakes up waiters
+        final AtomicReference<LockManager.LockResult> result = new AtomicReference<>();
+        final Thread thread = new Thread(() -> {
+            try {
+                result.set(manager.lock(owner2, b("00"), b("20"), true, 5000));
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        thread.start();
+        Thread.sleep(100);
+        Assert.assertNull(result.get());
+        Assert.assertTrue(manager.release(owner1));
+        thread.join();
+        Assert.assertEquals(result.get(), LockManager.LockResult.SUCCESS);
+        Assert.assertTrue(manager.isLocked(owner2, b("00"), b("30"), true));
+        Assert.assertTrue(manager.release(owner2));
+        Assert.assertEquals(manager.lock(owner1, b(""), null, true, 0), LockManager.LockResult.SUCCESS);
+        Assert.assertTrue(manager.release(owner1));
+    }
+
+    @Test(dataProvider = "lockManagers")
+    public void testHoldTimeout(LockManager manager) throws Exception {
+        final LockOwner owner1 = new LockOwner();
+        final LockOwner owner2 = new LockOwner();
+        manager.setHoldTimeout(200);
+        Assert.assertEquals(manager.lock(owner1, b("10"), b("20"), true, 0), LockManager.LockResult.SUCCESS);
+
+        // Waiting owner gets the lock after the holder's hold timeout expires
+        final long start = System.nanoTime();
+        Assert.assertEquals(manager.lock(owner2, b("18"), b("28"), true, 5000), LockManager.LockResult.SUCCESS);
+        final long elapsed = (System.nanoTime() - start) / 1000000L;
+        Assert.assertTrue(elapsed >= 100 && elapsed < 4000, "elapsed " + elapsed);
+
+        // Expired owner finds out
+        Assert.assertEquals(manager.checkHoldTimeout(owner1), -1);
+        Assert.assertEquals(manager.lock(owner1, b("40"), b("50"), true, 0), LockManager.LockResult.HOLD_TIMEOUT_EXPIRED);
+        Assert.assertFalse(manager.release(owner1));
+        Assert.assertTrue(manager.release(owner2));
+    }
+
+    @Test(dataProvider = "lockManagers")
+    public void testReleaseOnWaitTimeout(LockManager manager) throws Exception {
+        final LockOwner owner1 = new LockOwner();
+        final LockOwner owner2 = new LockOwner();
+        manager.setReleaseOnWaitTimeout(true);
+
+        // Both owners read the same key, then both try to write it: deadlock
+        Assert.assertEquals(manager.lock(owner1, b("10"), b("11"), false, 0), LockManager.LockResult.SUCCESS);
+        Assert.assertEquals(manager.lock(owner2, b("10"), b("11"), false, 0), LockManager.LockResult.SUCCESS);
+        final AtomicReference<LockManager.LockResult> result = new AtomicReference<>();
+        final Thread thread = new Thread(() -> {
+            try {
+                result.set(manager.lock(owner2, b("10"), b("11"), true, 100));
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        thread.start();
+        final LockManager.LockResult result1 = manager.lock(owner1, b("10"), b("11"), true, 100);
+        thread.join();
+        final LockManager.LockResult result2 = result.get();
+
+        // Exactly one owner should have given up and released its locks
+        Assert.assertTrue(result1 == LockManager.LockResult.SUCCESS ^ result2 == LockManager.LockResult.SUCCESS,
+          "result1=" + result1 + " result2=" + result2);
+        final LockOwner winner = result1 == LockManager.LockResult.SUCCESS ? owner1 : owner2;
+        final LockOwner loser = winner == owner1 ? owner2 : owner1;
+        Assert.assertTrue(manager.isLocked(winner, b("10"), b("11"), true));
+        Assert.assertFalse(manager.isLocked(loser, b("10"), b("11"), false));
+        Assert.assertTrue(manager.release(winner));
+        Assert.assertTrue(manager.release(loser));
+    }
+
+    @Test(dataProvider = "lockManagers")
+    public void testConcurrent(LockManager manager) throws Exception {
+        final AtomicInteger[] holders = new AtomicInteger[16];
+        for (int i = 0; i < holders.length; i++)
+            holders[i] = new AtomicInteger();
+        final AtomicInteger errors = new AtomicInteger();
+        final ArrayList<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            final long seed = this.random.nextLong();
+            threads.add(new Thread(() -> {
+                final Random random = new Random(seed);
+                try {
+                    for (int j = 0; j < 500; j++) {
+
+                        // Write lock a range of "slots" with keys 0x00, 0x10, 0x20, ... 0xf0
+                        final LockOwner owner = new LockOwner();
+                        final int min = random.nextInt(holders.length);
+                        final int max = min + 1 + random.nextInt(Math.min(3, holders.length - min));
+                        final byte[] minKey = new byte[] { (byte)(min << 4) };
+                        final byte[] maxKey = max < holders.length ? new byte[] { (byte)(max << 4) } : null;
+                        if (manager.lock(owner, minKey, maxKey, true, 0) != LockManager.LockResult.SUCCESS)
+                            throw new RuntimeException("lock failed");
+
+                        // Verify exclusivity
+                        for (int slot = min; slot < max; slot++) {
+                            if (holders[slot].incrementAndGet() != 1)
+                                throw new RuntimeException("slot " + slot + " not exclusive");
+                        }
+                        Thread.yield();
+                        for (int slot = min; slot < max; slot++)
+                            holders[slot].decrementAndGet();
+                        Assert.assertTrue(manager.release(owner));
+                    }
+                } catch (Throwable t) {
+                    LockManagerTest.this.log.error("thread failed", t);
+                    errors.incrementAndGet();
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads)
+            thread.join();
+        Assert.assertEquals(errors.get(), 0);
+    }
+
+    @DataProvider(name = "lockManagers")
+    public Object[][] genLockManagers() {
+        return new Object[][] {
+            { new LockManager(new Object()) },
+            { new LockManager(1) },
+            { new LockManager(3) },
+            { new LockManager() },
+            { new LockManager(256) },
+        };
+    }
+}
@@ -11,6 +11,10 @@ import io.permazen.test.TestSupport;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
 import org.testng.Assert;
 import org.testng.annotations.DataProvider;
@@ -31,6 +35,98 @@ public class ReadsTest extends TestSupport {
         Assert.assertEquals(output2.toByteArray(), output.toByteArray());
     }
 
+    @Test
+    public void testConflicts() throws Exception {
+        for (int i = 0; i < 2000; i++) {
+
+            // Generate random reads
+            final Reads reads = new Reads();
+            final int numReads = this.random.nextInt(i % 10 == 0 ? 200 : 8);
+            for (int j = 0; j < numReads; j++)
+                reads.add(this.randomRange());
+            final KeyRanges ranges = new KeyRanges(reads);
+
+            // Generate random writes
+            final Writes writes = new Writes();
+            final int numWrites = this.random.nextInt(i % 10 == 0 ? 200 : 8);
+            for (int j = 0; j < numWrites; j++) {
+                switch (this.random.nextInt(4)) {
+                case 0:
+                    writes.getRemoves().add(this.randomRange());
+                    break;
+                case 1:
+                    writes.getAdjusts().put(this.randomKey(), 1L);
+                    break;
+                default:
+                    writes.getPuts().put(this.randomKey(), b("01"));
+                    break;
+                }
+            }
+
+            // Compute expected conflicts by individual lookups
+            final List<String> expected = new ArrayList<>();
+            for (KeyRange remove : writes.getRemoves()) {
+                final KeyRanges intersection = new KeyRanges(remove);
+                intersection.intersect(ranges);
+                for (KeyRange range : intersection)
+                    expected.add(new ReadRemoveConflict(range).toString());
+            }
+            for (byte[] key : writes.getPuts().keySet()) {
+                if (ranges.contains(key))
+                    expected.add(new ReadWriteConflict(key).toString());
+            }
+            for (byte[] key : writes.getAdjusts().keySet()) {
+                if (ranges.contains(key))
+                    expected.add(new ReadAdjustConflict(key).toString());
+            }
+
+            // Check various forms of mutations
+            final ByteArrayOutputStream output = new ByteArrayOutputStream();
+            writes.serialize(output);
+            final Mutations[] mutationsList = new Mutations[] {
+                writes,
+                writes.compactSnapshot(),
+                Writes.deserializeOnline(new ByteArrayInputStream(output.toByteArray()))
+            };
+            for (Mutations mutations : mutationsList)
+                Assert.assertEquals(reads.getConflicts(mutations), expected, "reads=" + reads + " writes=" + writes);
+
+            // Check unsorted mutations
+            final List<String> actual = reads.getConflicts(new ShuffledMutations(writes));
+            final List<String> sortedExpected = new ArrayList<>(expected);
+            Collections.sort(actual);
+            Collections.sort(sortedExpected);
+            Assert.assertEquals(actual, sortedExpected, "reads=" + reads + " writes=" + writes);
+            Assert.assertEquals(reads.isConflict(writes), !expected.isEmpty());
+            Assert.assertEquals(reads.immutableSnapshot().isConflict(writes.compactSnapshot()), !expected.isEmpty());
+            final Conflict conflict = reads.findConflict(writes);
+            Assert.assertEquals(conflict != null ? conflict.toString() : null, !expected.isEmpty() ? expected.get(0) : null);
+
+            // Verify cached first byte summary is invalidated
+            if (!expected.isEmpty()) {
+                reads.clear();
+                Assert.assertFalse(reads.isConflict(writes));
+                reads.add(KeyRange.FULL);
+                Assert.assertTrue(reads.isConflict(writes));
+            }
+        }
+    }
+
+    private KeyRange randomRange() {
+        final byte[] key1 = this.randomKey();
+        final byte[] key2 = this.random.nextInt(10) == 0 ? null : this.randomKey();
+        return KeyRange.compare(key1, key2) <= 0 ? new KeyRange(key1, key2) : new KeyRange(key2, key1);
+    }
+
+    private byte[] randomKey() {
+        final byte[] key = new byte[this.random.nextInt(4)];
+        for (int i = 0; i < key.length; i++) {
+            final int r = this.random.nextInt(8);
+            key[i] = r < 4 ? (byte)(r * 0x55) : (byte)this.random.nextInt(0x100);
+        }
+        return key;
+    }
+
     @DataProvider(name = "ranges")
     private KeyRanges[][] genReads() throws Exception {
         return new KeyRanges[][] {
@@ -58,5 +154,37 @@ public class ReadsTest extends TestSupport {
             { new KeyRanges(b("01234567890a"), b("ffffffffffff")) },
         };
     };
-}
 
+// ShuffledMutations
+
+    private class ShuffledMutations implements Mutations {
+
+        private final List<KeyRange> removes;
+        private final List<Map.Entry<byte[], byte[]>> puts;
+        private final List<Map.Entry<byte[], Long>> adjusts;
+
+        ShuffledMutations(Writes writes) {
+            this.removes = new ArrayList<>(writes.getRemoves().asList());
+            this.puts = new ArrayList<>(writes.getPuts().entrySet());
+            this.adjusts = new ArrayList<>(writes.getAdjusts().entrySet());
+            Collections.shuffle(this.removes, ReadsTest.this.random);
+            Collections.shuffle(this.puts, ReadsTest.this.random);
+            Collections.shuffle(this.adjusts, ReadsTest.this.random);
+        }
+
+        @Override
+        public List<KeyRange> getRemoveRanges() {
+            return this.removes;
+        }
+
+        @Override
+        public List<Map.Entry<byte[], byte[]>> getPutPairs() {
+            return this.puts;
+        }
+
+        @Override
+        public List<Map.Entry<byte[], Long>> getAdjustPairs() {
+            return this.adjusts;
+        }
+    }
+}
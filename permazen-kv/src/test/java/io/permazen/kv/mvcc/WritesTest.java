@@ -17,8 +17,11 @@ import io.permazen.util.ConvertedNavigableMap;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
+import java.util.NavigableSet;
 
 import org.testng.Assert;
 import org.testng.annotations.DataProvider;
@@ -38,6 +41,135 @@ public class WritesTest extends TestSupport {
         final ByteArrayOutputStream output2 = new ByteArrayOutputStream();
         writes2.serialize(output2);
         Assert.assertEquals(output2.toByteArray(), output.toByteArray());
+
+        // Repeat with compact instances
+        final Writes writes3 = Writes.deserialize(new ByteArrayInputStream(output.toByteArray()), true);
+        final Writes writes4 = writes.compactSnapshot();
+        for (Writes compact : new Writes[] { writes3, writes4 }) {
+            Assert.assertEquals(compact.getRemoves(), writes.getRemoves());
+            Assert.assertEquals(this.stringView(compact.getPuts()), this.stringView(writes.getPuts()));
+            Assert.assertEquals(this.stringView2(compact.getAdjusts()), this.stringView2(writes.getAdjusts()));
+            Assert.assertEquals(compact.serializedLength(), (long)output.size());
+            final ByteArrayOutputStream output3 = new ByteArrayOutputStream();
+            compact.serialize(output3);
+            Assert.assertEquals(output3.toByteArray(), output.toByteArray());
+        }
+    }
+
+    @Test
+    public void testCompactSnapshot() throws Exception {
+        for (int count = 0; count < 50; count++) {
+
+            // Build random writes
+            final Writes writes = new Writes();
+            final int numPuts = this.random.nextInt(30);
+            for (int i = 0; i < numPuts; i++)
+                writes.getPuts().put(this.randomBytes(), this.randomBytes());
+            final int numAdjusts = this.random.nextInt(30);
+            for (int i = 0; i < numAdjusts; i++)
+                writes.getAdjusts().put(this.randomBytes(), this.random.nextLong());
+            final Writes compact = writes.compactSnapshot();
+            Assert.assertSame(compact.compactSnapshot(), compact);
+
+            // Compare maps and random views thereof
+            final NavigableMap<byte[], byte[]> expectedPuts = writes.getPuts();
+            final NavigableMap<byte[], byte[]> actualPuts = compact.getPuts();
+            this.compareMaps(actualPuts, expectedPuts);
+            this.compareMaps(actualPuts.descendingMap(), expectedPuts.descendingMap());
+            this.compareMaps(actualPuts.navigableKeySet(), expectedPuts.navigableKeySet());
+            this.compareMaps(actualPuts.descendingKeySet(), expectedPuts.descendingKeySet());
+            this.compareMaps(compact.getAdjusts(), writes.getAdjusts());
+            for (int i = 0; i < 20; i++) {
+                byte[] min = this.randomBytes();
+                byte[] max = this.randomBytes();
+                final int diff = ByteUtil.compare(min, max);
+                if (diff == 0)
+                    continue;
+                if (diff > 0) {
+                    final byte[] temp = min;
+                    min = max;
+                    max = temp;
+                }
+                final boolean minInclusive = this.random.nextBoolean();
+                final boolean maxInclusive = this.random.nextBoolean();
+                this.compareMaps(actualPuts.subMap(min, minInclusive, max, maxInclusive),
+                  expectedPuts.subMap(min, minInclusive, max, maxInclusive));
+                this.compareMaps(actualPuts.descendingMap().subMap(max, maxInclusive, min, minInclusive),
+                  expectedPuts.descendingMap().subMap(max, maxInclusive, min, minInclusive));
+                this.compareMaps(actualPuts.headMap(max, maxInclusive).descendingMap().headMap(min, minInclusive),
+                  expectedPuts.headMap(max, maxInclusive).descendingMap().headMap(min, minInclusive));
+                this.compareMaps(compact.getAdjusts().tailMap(min, minInclusive),
+                  writes.getAdjusts().tailMap(min, minInclusive));
+            }
+
+            // Verify immutable
+            try {
+                actualPuts.put(b("01"), b("23"));
+                assert false;
+            } catch (UnsupportedOperationException e) {
+                // expected
+            }
+        }
+    }
+
+    private <V> void compareMaps(NavigableMap<byte[], V> actual, NavigableMap<byte[], V> expected) {
+        Assert.assertEquals(actual.size(), expected.size());
+        Assert.assertEquals(actual.isEmpty(), expected.isEmpty());
+        Assert.assertEquals(this.toStrings(actual.keySet()), this.toStrings(expected.keySet()));
+        Assert.assertEquals(this.toStrings(actual.values()), this.toStrings(expected.values()));
+        if (!expected.isEmpty()) {
+            Assert.assertEquals(actual.firstKey(), expected.firstKey());
+            Assert.assertEquals(actual.lastKey(), expected.lastKey());
+            Assert.assertEquals(actual.firstEntry().getKey(), expected.firstEntry().getKey());
+            Assert.assertEquals(actual.lastEntry().getKey(), expected.lastEntry().getKey());
+        } else {
+            Assert.assertNull(actual.firstEntry());
+            Assert.assertNull(actual.lastEntry());
+        }
+        for (int i = 0; i < 20; i++) {
+            final byte[] key = this.random.nextInt(3) == 0 && !expected.isEmpty() ?
+              expected.keySet().toArray(new byte[0][])[this.random.nextInt(expected.size())] : this.randomBytes();
+            Assert.assertEquals(actual.containsKey(key), expected.containsKey(key));
+            Assert.assertEquals(this.toString(actual.get(key)), this.toString(expected.get(key)));
+            Assert.assertEquals(actual.lowerKey(key), expected.lowerKey(key));
+            Assert.assertEquals(actual.floorKey(key), expected.floorKey(key));
+            Assert.assertEquals(actual.ceilingKey(key), expected.ceilingKey(key));
+            Assert.assertEquals(actual.higherKey(key), expected.higherKey(key));
+            final Map.Entry<byte[], V> actualEntry = actual.higherEntry(key);
+            final Map.Entry<byte[], V> expectedEntry = expected.higherEntry(key);
+            Assert.assertEquals(actualEntry != null ? actualEntry.getKey() : null,
+              expectedEntry != null ? expectedEntry.getKey() : null);
+        }
+    }
+
+    private void compareMaps(NavigableSet<byte[]> actual, NavigableSet<byte[]> expected) {
+        Assert.assertEquals(this.toStrings(actual), this.toStrings(expected));
+        for (int i = 0; i < 20; i++) {
+            final byte[] key = this.randomBytes();
+            Assert.assertEquals(actual.contains(key), expected.contains(key));
+            Assert.assertEquals(actual.lower(key), expected.lower(key));
+            Assert.assertEquals(actual.floor(key), expected.floor(key));
+            Assert.assertEquals(actual.ceiling(key), expected.ceiling(key));
+            Assert.assertEquals(actual.higher(key), expected.higher(key));
+        }
+    }
+
+    private List<String> toStrings(Collection<?> items) {
+        final ArrayList<String> list = new ArrayList<>(items.size());
+        for (Object item : items)
+            list.add(this.toString(item));
+        return list;
+    }
+
+    private String toString(Object obj) {
+        return obj instanceof byte[] ? ByteUtil.toString((byte[])obj) : String.valueOf(obj);
+    }
+
+    private byte[] randomBytes() {
+        final byte[] bytes = new byte[this.random.nextInt(4)];
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = (byte)(0x30 + this.random.nextInt(4));
+        return bytes;
     }
 
     @DataProvider(name = "writes")
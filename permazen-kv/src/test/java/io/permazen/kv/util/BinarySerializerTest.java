@@ -0,0 +1,148 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.kv.util;
+
+import com.google.common.base.Converter;
+
+import io.permazen.test.TestSupport;
+import io.permazen.util.ByteUtil;
+import io.permazen.util.ConvertedNavigableMap;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.zip.Deflater;
+
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+public class BinarySerializerTest extends TestSupport {
+
+    @Test(dataProvider = "configs")
+    public void testBinarySerializer(int blockSize, int compressionLevel) throws Exception {
+
+        // Create random data with lots of shared prefixes
+        final ConcurrentSkipListMap<byte[], byte[]> data1 = new NavigableMapKVStore().getNavigableMap();
+        for (int i = 0; i < 2000; i++) {
+            final byte[] key = new byte[1 + this.random.nextInt(12)];
+            for (int j = 0; j < key.length; j++)
+                key[j] = (byte)(j < 4 ? this.random.nextInt(4) : this.random.nextInt(256));
+            final byte[] value = new byte[this.random.nextInt(3) == 0 ? 0 : this.random.nextInt(100)];
+            Arrays.fill(value, (byte)this.random.nextInt(3));
+            data1.put(key, value);
+        }
+        data1.put(ByteUtil.EMPTY, b("1234"));
+
+        // Write
+        final BinarySerializer writer = new BinarySerializer(new NavigableMapKVStore(data1));
+        writer.setBlockSize(blockSize);
+        writer.setCompressionLevel(compressionLevel);
+        final ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        Assert.assertEquals(writer.write(buf), data1.size());
+        final byte[] encoded = buf.toByteArray();
+        Assert.assertTrue(BinarySerializer.isBinaryFormat(new BufferedInputStream(new ByteArrayInputStream(encoded))));
+
+        // Read back
+        final ConcurrentSkipListMap<byte[], byte[]> data2 = new NavigableMapKVStore().getNavigableMap();
+        Assert.assertEquals(new BinarySerializer(new NavigableMapKVStore(data2)).read(new ByteArrayInputStream(encoded)),
+          data1.size());
+        Assert.assertEquals(s(data2), s(data1));
+
+        // Write and read back a range
+        buf.reset();
+        final long count = writer.write(buf, b("01"), b("02"));
+        Assert.assertEquals(count, data1.subMap(b("01"), b("02")).size());
+        data2.clear();
+        new BinarySerializer(new NavigableMapKVStore(data2)).read(new ByteArrayInputStream(buf.toByteArray()));
+        Assert.assertEquals(s(data2), s(data1.subMap(b("01"), b("02"))));
+
+        // Detect truncation
+        data2.clear();
+        try {
+            new BinarySerializer(new NavigableMapKVStore(data2))
+              .read(new ByteArrayInputStream(Arrays.copyOf(encoded, encoded.length - 1)));
+            assert false : "expected exception";
+        } catch (IOException e) {
+            this.log.debug("got expected {}", e.toString());
+        }
+
+        // Detect corruption
+        final byte[] corrupt = encoded.clone();
+        corrupt[encoded.length / 2] ^= 0x01;
+        data2.clear();
+        try {
+            new BinarySerializer(new NavigableMapKVStore(data2)).read(new ByteArrayInputStream(corrupt));
+            assert false : "expected exception";
+        } catch (IOException e) {
+            this.log.debug("got expected {}", e.toString());
+        }
+    }
+
+    @Test
+    public void testNotBinary() throws Exception {
+        final byte[] xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?><entries/>".getBytes("UTF-8");
+        Assert.assertFalse(BinarySerializer.isBinaryFormat(new BufferedInputStream(new ByteArrayInputStream(xml))));
+        Assert.assertFalse(BinarySerializer.isBinaryFormat(new BufferedInputStream(new ByteArrayInputStream(b("50")))));
+        try {
+            new BinarySerializer(new NavigableMapKVStore()).read(new ByteArrayInputStream(xml));
+            assert false : "expected exception";
+        } catch (IOException e) {
+            this.log.debug("got expected {}", e.toString());
+        }
+    }
+
+    @Test
+    public void testBogusBlockLengths() throws Exception {
+        final int max = BinarySerializer.MAX_BLOCK_LENGTH;
+        final int[][] headers = new int[][] {
+        //    flags   raw-length      stored-length
+            { 0x00,   max,            max             },          // truncated, but must not allocate up front
+            { 0x00,   max + 1,        max + 1         },          // too long
+            { 0x01,   max,            10              },          // impossible compression ratio
+            { 0x00,   -1,             -1              },          // negative
+        };
+        for (int[] header : headers) {
+            final ByteArrayOutputStream buf = new ByteArrayOutputStream();
+            final DataOutputStream output = new DataOutputStream(buf);
+            output.write("PzKV".getBytes("US-ASCII"));
+            output.writeByte(BinarySerializer.FORMAT_VERSION);
+            output.writeInt(1);
+            output.writeByte(header[0]);
+            output.writeInt(header[1]);
+            output.writeInt(header[2]);
+            output.writeInt(0);
+            output.write(new byte[100]);
+            try {
+                new BinarySerializer(new NavigableMapKVStore()).read(new ByteArrayInputStream(buf.toByteArray()));
+                assert false : "expected exception";
+            } catch (IOException e) {
+                this.log.debug("got expected {}", e.toString());
+            }
+        }
+    }
+
+    @DataProvider(name = "configs")
+    public Object[][] genConfigs() {
+        return new Object[][] {
+            { BinarySerializer.DEFAULT_BLOCK_SIZE, Deflater.NO_COMPRESSION },
+            { BinarySerializer.DEFAULT_BLOCK_SIZE, Deflater.BEST_SPEED },
+            { 100, Deflater.NO_COMPRESSION },
+            { 100, Deflater.DEFAULT_COMPRESSION },
+            { 1, Deflater.BEST_COMPRESSION },
+        };
+    }
+
+    private static NavigableMap<String, String> s(NavigableMap<byte[], byte[]> map) {
+        final Converter<String, byte[]> converter = ByteUtil.STRING_CONVERTER.reverse();
+        return new ConvertedNavigableMap<>(map, converter, converter);
+    }
+}
@@ -0,0 +1,199 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.kv.util;
+
+import io.permazen.kv.AsyncKVPairIterator;
+import io.permazen.kv.AsyncKVStore;
+import io.permazen.kv.KVPair;
+import io.permazen.test.TestSupport;
+import io.permazen.util.ByteUtil;
+import io.permazen.util.CloseableIterator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class ExecutorAsyncKVStoreTest extends TestSupport {
+
+    private ExecutorService executor;
+
+    @BeforeClass
+    public void setupExecutor() {
+        this.executor = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterClass
+    public void teardownExecutor() throws Exception {
+        this.executor.shutdown();
+        this.executor.awaitTermination(3, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testReads() throws Exception {
+        final NavigableMapKVStore kv = this.populate(200);
+        final AsyncKVStore async = AsyncKVStore.of(kv, this.executor);
+        Assert.assertTrue(async instanceof ExecutorAsyncKVStore);
+        Assert.assertSame(AsyncKVStore.of(async, this.executor), async);
+        for (int i = 0; i < 200; i++) {
+            final byte[] key1 = this.randomKey();
+            final byte[] key2 = this.randomKey();
+            Assert.assertEquals(async.getAsync(key1).get(), kv.get(key1));
+            Assert.assertEquals(this.toString(async.getAtLeastAsync(key1, key2).get()), this.toString(kv.getAtLeast(key1, key2)));
+            Assert.assertEquals(this.toString(async.getAtMostAsync(key2, key1).get()), this.toString(kv.getAtMost(key2, key1)));
+        }
+        final List<byte[]> keys = new ArrayList<>();
+        for (int i = 0; i < 50; i++)
+            keys.add(this.randomKey());
+        this.checkValues(async.getManyAsync(keys).get(), kv.getMany(keys));
+    }
+
+    @Test
+    public void testRange() throws Exception {
+        final NavigableMapKVStore kv = this.populate(1000);
+        for (int count = 0; count < 50; count++) {
+            byte[] minKey = this.random.nextInt(8) != 0 ? this.randomKey() : null;
+            byte[] maxKey = this.random.nextInt(8) != 0 ? this.randomKey() : null;
+            if (minKey != null && maxKey != null && ByteUtil.compare(minKey, maxKey) > 0) {
+                final byte[] temp = minKey;
+                minKey = maxKey;
+                maxKey = temp;
+            }
+            final boolean reverse = this.random.nextBoolean();
+            final int batchSize = 1 + this.random.nextInt(100);
+
+            // Get expected result
+            final List<String> expected = new ArrayList<>();
+            try (CloseableIterator<KVPair> i = kv.getRange(minKey, maxKey, reverse)) {
+                while (i.hasNext())
+                    expected.add(this.toString(i.next()));
+            }
+
+            // Check nextBatch()
+            final AsyncKVStore async = new ExecutorAsyncKVStore(kv, this.executor);
+            final List<String> actual = new ArrayList<>();
+            try (AsyncKVPairIterator i = async.getRangeAsync(minKey, maxKey, reverse)) {
+                while (true) {
+                    final List<KVPair> batch = i.nextBatch(batchSize).get();
+                    Assert.assertTrue(batch.size() <= batchSize);
+                    if (batch.isEmpty())
+                        break;
+                    batch.forEach(pair -> actual.add(this.toString(pair)));
+                }
+                Assert.assertTrue(i.nextBatch(batchSize).get().isEmpty());
+            }
+            Assert.assertEquals(actual, expected);
+
+            // Check forEachRemaining(), both with an asynchronous and a synchronous executor
+            for (AsyncKVStore async2 : new AsyncKVStore[] { async, new ExecutorAsyncKVStore(kv, Runnable::run) }) {
+                actual.clear();
+                try (AsyncKVPairIterator i = async2.getRangeAsync(minKey, maxKey, reverse)) {
+                    i.forEachRemaining(batchSize, pair -> actual.add(this.toString(pair))).get();
+                }
+                Assert.assertEquals(actual, expected);
+            }
+        }
+    }
+
+    @Test
+    public void testManySmallBatches() throws Exception {
+        final NavigableMapKVStore kv = this.populate(20000);
+        final int[] count = new int[1];
+        try (AsyncKVPairIterator i = new ExecutorAsyncKVStore(kv, Runnable::run).getRangeAsync(null, null, false)) {
+            i.forEachRemaining(1, pair -> count[0]++).get();
+        }
+        Assert.assertEquals(count[0], kv.getNavigableMap().size());
+    }
+
+    @Test
+    public void testPendingAndErrors() throws Exception {
+        final NavigableMapKVStore kv = this.populate(100);
+
+        // Hold tasks until we release them
+        final List<Runnable> tasks = new ArrayList<>();
+        final AsyncKVStore async = new ExecutorAsyncKVStore(kv, tasks::add);
+        final AsyncKVPairIterator i = async.getRangeAsync(null, null, false);
+        final CompletableFuture<List<KVPair>> future = i.nextBatch(10);
+        try {
+            i.nextBatch(10);
+            assert false : "expected exception";
+        } catch (IllegalStateException e) {
+            this.log.debug("got expected {}", e.toString());
+        }
+        Assert.assertFalse(future.isDone());
+        tasks.remove(0).run();
+        Assert.assertEquals(future.get().size(), 10);
+        i.close();
+        try {
+            i.nextBatch(10);
+            assert false : "expected exception";
+        } catch (IllegalStateException e) {
+            this.log.debug("got expected {}", e.toString());
+        }
+        Assert.assertTrue(tasks.isEmpty());
+
+        // Exceptions thrown by the action are reported
+        try (AsyncKVPairIterator i2 = new ExecutorAsyncKVStore(kv, this.executor).getRangeAsync(null, null, false)) {
+            final RuntimeException error = new RuntimeException("test");
+            i2.forEachRemaining(7, pair -> {
+                throw error;
+            }).get();
+            assert false : "expected exception";
+        } catch (ExecutionException e) {
+            Assert.assertEquals(e.getCause().getMessage(), "test");
+        }
+
+        // Exceptions thrown by the underlying store are reported
+        final CompletableFuture<byte[]> badGet = new ExecutorAsyncKVStore(new NavigableMapKVStore() {
+
+            private static final long serialVersionUID = -1L;
+
+            @Override
+            public byte[] get(byte[] key) {
+                throw new IllegalArgumentException("bogus");
+            }
+        }, this.executor).getAsync(ByteUtil.EMPTY);
+        try {
+            badGet.get();
+            assert false : "expected exception";
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+    }
+
+    private NavigableMapKVStore populate(int count) {
+        final NavigableMapKVStore kv = new NavigableMapKVStore();
+        for (int i = 0; i < count; i++)
+            kv.put(this.randomKey(), this.randomKey());
+        return kv;
+    }
+
+    private byte[] randomKey() {
+        final byte[] key = new byte[1 + this.random.nextInt(3)];
+        this.random.nextBytes(key);
+        key[0] &= 0x7f;
+        return key;
+    }
+
+    private void checkValues(List<byte[]> actual, List<byte[]> expected) {
+        Assert.assertEquals(actual.size(), expected.size());
+        for (int i = 0; i < actual.size(); i++)
+            Assert.assertTrue(Arrays.equals(actual.get(i), expected.get(i)));
+    }
+
+    private String toString(KVPair pair) {
+        return pair != null ? ByteUtil.toString(pair.getKey()) + "=" + ByteUtil.toString(pair.getValue()) : "null";
+    }
+}
@@ -8,11 +8,15 @@ package io.permazen.kv.util;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.MoreExecutors;
 
+import io.permazen.kv.KeyRange;
+import io.permazen.kv.mvcc.Writes;
 import io.permazen.test.TestSupport;
 
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.testng.Assert;
 import org.testng.annotations.Test;
@@ -148,6 +152,100 @@ public class KeyWatchTrackerTest extends TestSupport {
         this.verifyComplete(f3b);
     }
 
+    @Test
+    private void testRangeTrigger() throws Exception {
+        final KeyWatchTracker tracker = new KeyWatchTracker();
+
+        final ListenableFuture<?> f1 = tracker.register(new KeyRange(B1, B2));
+        final ListenableFuture<?> f2 = tracker.register(KeyRange.forPrefix(B2));
+        final ListenableFuture<?> f3 = tracker.register(new KeyRange(B2, null));
+        final ListenableFuture<?> f4 = tracker.register(B3);
+        Assert.assertEquals(tracker.getNumKeysWatched(), 1);
+        Assert.assertEquals(tracker.getNumRangesWatched(), 3);
+
+        // Keys outside of all ranges
+        tracker.trigger(new byte[] { (byte)11 });
+        tracker.trigger(new byte[] { (byte)5 });
+        this.verifyNotComplete(f1);
+        this.verifyNotComplete(f2);
+        this.verifyNotComplete(f3);
+
+        // Key within prefix range and unbounded range
+        tracker.trigger(new byte[] { (byte)34, (byte)99 });
+        this.verifyNotComplete(f1);
+        this.verifyComplete(f2);
+        this.verifyComplete(f3);
+        this.verifyNotComplete(f4);
+        Assert.assertEquals(tracker.getNumRangesWatched(), 1);
+
+        // Removed range overlapping watched range
+        tracker.trigger(new KeyRange(new byte[] { (byte)20 }, new byte[] { (byte)21 }));
+        this.verifyComplete(f1);
+        this.verifyNotComplete(f4);
+        Assert.assertEquals(tracker.getNumRangesWatched(), 0);
+
+        // Cancel unregisters
+        final ListenableFuture<?> f5 = tracker.register(new KeyRange(B1, B3));
+        Assert.assertEquals(tracker.getNumRangesWatched(), 1);
+        f5.cancel(false);
+        Assert.assertEquals(tracker.getNumRangesWatched(), 0);
+        Assert.assertFalse(tracker.trigger(B2));
+
+        // Done
+        tracker.close();
+    }
+
+    @Test
+    private void testRangeTriggerMutations() throws Exception {
+        final KeyWatchTracker tracker = new KeyWatchTracker();
+
+        final ListenableFuture<?> f1 = tracker.register(KeyRange.forPrefix(B1));
+        final AtomicInteger count = new AtomicInteger();
+        f1.addListener(count::incrementAndGet, MoreExecutors.directExecutor());
+
+        // Many mutations affecting the same range produce one notification
+        final Writes writes = new Writes();
+        for (int i = 0; i < 100; i++)
+            writes.getPuts().put(new byte[] { B1[0], (byte)i }, B2);
+        writes.getRemoves().add(new KeyRange(B1, B2));
+        Assert.assertTrue(tracker.trigger(writes));
+        this.verifyComplete(f1);
+        Thread.sleep(100);
+        Assert.assertEquals(count.get(), 1);
+        Assert.assertFalse(tracker.trigger(writes));
+
+        // Done
+        tracker.close();
+    }
+
+    @Test
+    private void testRangeAbsorb() throws Exception {
+        final KeyWatchTracker tracker1 = new KeyWatchTracker();
+        final ListenableFuture<?> f1 = tracker1.register(new KeyRange(B1, B2));
+
+        final KeyWatchTracker tracker2 = new KeyWatchTracker();
+        final ListenableFuture<?> f2 = tracker2.register(new KeyRange(B1, B2));
+        final ListenableFuture<?> f3 = tracker2.register(new KeyRange(B2, B3));
+
+        tracker1.absorb(tracker2);
+        Assert.assertEquals(tracker1.getNumRangesWatched(), 2);
+        Assert.assertEquals(tracker2.getNumRangesWatched(), 0);
+
+        tracker1.trigger(B1);
+        this.verifyComplete(f1);
+        this.verifyComplete(f2);
+        this.verifyNotComplete(f3);
+
+        tracker1.failAll(new Exception("test"));
+        try {
+            f3.get(100, TimeUnit.MILLISECONDS);
+            assert false;
+        } catch (ExecutionException e) {
+            // expected
+        }
+        Assert.assertTrue(tracker1.isEmpty());
+    }
+
     void verifyComplete(ListenableFuture<?> future) throws Exception {
         future.get(100, TimeUnit.MILLISECONDS);
     }
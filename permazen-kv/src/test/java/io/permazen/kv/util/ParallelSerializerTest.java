@@ -0,0 +1,243 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.kv.util;
+
+import com.google.common.base.Converter;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import io.permazen.kv.CloseableKVStore;
+import io.permazen.kv.KVCursor;
+import io.permazen.kv.KeyRange;
+import io.permazen.kv.mvcc.AtomicKVStore;
+import io.permazen.kv.mvcc.Mutations;
+import io.permazen.test.TestSupport;
+import io.permazen.util.ByteUtil;
+import io.permazen.util.ConvertedNavigableMap;
+import io.permazen.util.UnsignedIntEncoder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class ParallelSerializerTest extends TestSupport {
+
+    @Test
+    public void testParallelSerializer() throws Exception {
+
+        // Create random data under various storage ID prefixes
+        final ConcurrentSkipListMap<byte[], byte[]> data1 = new NavigableMapKVStore().getNavigableMap();
+        final TreeSet<byte[]> prefixes = new TreeSet<>(ByteUtil.COMPARATOR);
+        for (int i = 0; i < 5000; i++) {
+            final byte[] prefix = UnsignedIntEncoder.encode(1 + this.random.nextInt(this.random.nextBoolean() ? 20 : 100000));
+            final byte[] key = Arrays.copyOf(prefix, prefix.length + this.random.nextInt(10));
+            for (int j = prefix.length; j < key.length; j++)
+                key[j] = (byte)this.random.nextInt(256);
+            data1.put(key, this.randomBytes(0, 50, false));
+            prefixes.add(prefix);
+        }
+        data1.put(ByteUtil.EMPTY, b("1234"));
+        data1.put(b("00"), b("5678"));
+        data1.put(b("0001"), b(""));
+        data1.put(b("ff"), b("9abc"));
+        data1.put(b("ff0102"), b(""));
+        final NavigableMapKVStore kv1 = new NavigableMapKVStore(data1);
+
+        // Check storage ID ranges
+        final List<KeyRange> ranges = ParallelSerializer.getStorageIdRanges(kv1);
+        Assert.assertEquals(ranges.size(), prefixes.size() + 3);
+        Assert.assertEquals(ranges.get(0), new KeyRange(b(""), b("00")));
+        Assert.assertEquals(ranges.get(1), KeyRange.forPrefix(b("00")));
+        Assert.assertEquals(ranges.get(ranges.size() - 1), KeyRange.forPrefix(b("ff")));
+        int count = 0;
+        for (int i = 0; i < ranges.size(); i++) {
+            final KeyRange range = ranges.get(i);
+            if (i > 0)
+                Assert.assertTrue(ByteUtil.compare(ranges.get(i - 1).getMax(), range.getMin()) <= 0);
+            count += data1.subMap(range.getMin(), true, range.getMax() != null ? range.getMax() : b("ffff"), false).size();
+        }
+        Assert.assertEquals(count, data1.size());
+
+        // Write chunks
+        final File dir = new File(this.createTempDirectory(), "chunks");
+        try {
+            final ParallelSerializer writer = new ParallelSerializer(kv1);
+            writer.setParallelism(4);
+            writer.setCompressionLevel(Deflater.BEST_SPEED);
+            Assert.assertEquals(writer.write(dir), data1.size());
+            Assert.assertTrue(ParallelSerializer.getChunkFiles(dir).size() >= ranges.size());
+
+            // Refuse to overwrite
+            try {
+                writer.write(dir);
+                assert false : "expected exception";
+            } catch (IOException e) {
+                this.log.debug("got expected {}", e.toString());
+            }
+
+            // Read back into plain KVStore
+            final ConcurrentSkipListMap<byte[], byte[]> data2 = new NavigableMapKVStore().getNavigableMap();
+            Assert.assertEquals(new ParallelSerializer(new NavigableMapKVStore(data2)).read(dir), data1.size());
+            Assert.assertEquals(s(data2), s(data1));
+
+            // Read back into AtomicKVStore
+            final TestAtomicKVStore kv3 = new TestAtomicKVStore();
+            final ParallelSerializer reader = new ParallelSerializer(kv3);
+            reader.setParallelism(3);
+            reader.setBatchSize(1000);
+            Assert.assertEquals(reader.read(dir), data1.size());
+            Assert.assertEquals(s(kv3.getNavigableMap()), s(data1));
+            Assert.assertTrue(kv3.mutations.get() > ranges.size());
+        } finally {
+            this.deleteDirectoryHierarchy(dir.getParentFile());
+        }
+    }
+
+    @Test
+    public void testWriteFailure() throws Exception {
+
+        // Create a store with one range that fails immediately and others that are slow to scan and ignore interrupts
+        final SlowKVStore kv = new SlowKVStore(b("01"));
+        for (int i = 1; i <= 8; i++)
+            kv.put(new byte[] { (byte)i }, b("1234"));
+
+        // Write chunks; on failure, no scan may still be running and no chunk files may remain
+        final File dir = new File(this.createTempDirectory(), "chunks");
+        try {
+            final ParallelSerializer writer = new ParallelSerializer(kv);
+            writer.setParallelism(8);
+            try {
+                writer.write(dir, ParallelSerializer.getStorageIdRanges(kv));
+                assert false : "expected exception";
+            } catch (RuntimeException e) {
+                this.log.debug("got expected {}", e.toString());
+            }
+            Assert.assertEquals(kv.scanning.get(), 0);
+            Assert.assertEquals(ParallelSerializer.getChunkFiles(dir), Collections.emptyList());
+        } finally {
+            this.deleteDirectoryHierarchy(dir.getParentFile());
+        }
+    }
+
+    @Test
+    public void testSplitLargeRange() throws Exception {
+
+        // Create data dominated by a single storage ID
+        final NavigableMapKVStore kv1 = new NavigableMapKVStore();
+        final byte[] prefix = UnsignedIntEncoder.encode(17);
+        for (int i = 0; i < 2000; i++) {
+            final byte[] key = Arrays.copyOf(prefix, prefix.length + 2);
+            key[prefix.length] = (byte)(i >> 8);
+            key[prefix.length + 1] = (byte)i;
+            kv1.put(key, this.randomBytes(0, 50, false));
+        }
+        kv1.put(UnsignedIntEncoder.encode(18), b("1234"));
+        Assert.assertEquals(ParallelSerializer.getStorageIdRanges(kv1).size(), 2);
+
+        // Check split ranges
+        final List<KeyRange> ranges = ParallelSerializer.getSplitRanges(kv1, 8);
+        Assert.assertTrue(ranges.size() > 2, "ranges: " + ranges);
+        for (int i = 1; i < ranges.size(); i++)
+            Assert.assertEquals(ranges.get(i).getMin(), ranges.get(i - 1).getMax());
+
+        // Write chunks, each range from its own view
+        final File dir = new File(this.createTempDirectory(), "chunks");
+        try {
+            final AtomicInteger opened = new AtomicInteger();
+            final AtomicInteger closed = new AtomicInteger();
+            final ParallelSerializer writer = new ParallelSerializer(kv1);
+            writer.setParallelism(2);
+            writer.setViewSupplier(() -> {
+                opened.incrementAndGet();
+                return new CloseableForwardingKVStore(kv1, closed::incrementAndGet);
+            });
+            Assert.assertEquals(writer.write(dir), kv1.getNavigableMap().size());
+            final int numChunks = ParallelSerializer.getChunkFiles(dir).size();
+            Assert.assertTrue(numChunks > 2, "chunks: " + numChunks);
+            Assert.assertEquals(opened.get(), numChunks);
+            Assert.assertEquals(closed.get(), numChunks);
+
+            // Read back
+            final NavigableMapKVStore kv2 = new NavigableMapKVStore();
+            Assert.assertEquals(new ParallelSerializer(kv2).read(dir), kv1.getNavigableMap().size());
+            Assert.assertEquals(s(kv2.getNavigableMap()), s(kv1.getNavigableMap()));
+        } finally {
+            this.deleteDirectoryHierarchy(dir.getParentFile());
+        }
+    }
+
+    private static NavigableMap<String, String> s(NavigableMap<byte[], byte[]> map) {
+        final Converter<String, byte[]> converter = ByteUtil.STRING_CONVERTER.reverse();
+        return new ConvertedNavigableMap<>(map, converter, converter);
+    }
+
+// SlowKVStore
+
+    // Range scans are slow and ignore interrupts, except scans starting at "failKey", which fail immediately
+    private static class SlowKVStore extends NavigableMapKVStore {
+
+        private static final long serialVersionUID = 1L;
+
+        final AtomicInteger scanning = new AtomicInteger();
+
+        private final byte[] failKey;
+
+        SlowKVStore(byte[] failKey) {
+            this.failKey = failKey;
+        }
+
+        @Override
+        public KVCursor getRangeView(byte[] minKey, byte[] maxKey, boolean reverse) {
+            if (Arrays.equals(minKey, this.failKey))
+                throw new RuntimeException("simulated failure");
+            this.scanning.incrementAndGet();
+            try {
+                Uninterruptibles.sleepUninterruptibly(200, TimeUnit.MILLISECONDS);
+                return super.getRangeView(minKey, maxKey, reverse);
+            } finally {
+                this.scanning.decrementAndGet();
+            }
+        }
+    }
+
+// TestAtomicKVStore
+
+    private static class TestAtomicKVStore extends NavigableMapKVStore implements AtomicKVStore {
+
+        private static final long serialVersionUID = 1L;
+
+        final AtomicInteger mutations = new AtomicInteger();
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public void stop() {
+        }
+
+        @Override
+        public CloseableKVStore snapshot() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public synchronized void mutate(Mutations mutations, boolean sync) {
+            this.apply(mutations);
+            this.mutations.incrementAndGet();
+        }
+    }
+}
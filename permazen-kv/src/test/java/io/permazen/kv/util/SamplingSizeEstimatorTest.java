@@ -0,0 +1,123 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.kv.util;
+
+import io.permazen.kv.KeyRange;
+import io.permazen.kv.SizeEstimate;
+import io.permazen.kv.SizeEstimatingKVStore;
+import io.permazen.test.TestSupport;
+import io.permazen.util.ByteUtil;
+
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class SamplingSizeEstimatorTest extends TestSupport {
+
+    @Test
+    public void testKeyInterpolator() throws Exception {
+        final KeyInterpolator full = new KeyInterpolator(KeyRange.FULL);
+        Assert.assertEquals(full.getPosition(b("")), 0.0);
+        Assert.assertEquals(full.getPosition(b("80")), 0.5);
+        Assert.assertEquals(full.getPosition(b("c0")), 0.75);
+        Assert.assertEquals(full.getKey(0.0), b(""));
+        Assert.assertEquals(full.getKey(0.5), b("80"));
+        Assert.assertEquals(full.getKey(0.25), b("40"));
+
+        final KeyInterpolator prefix = new KeyInterpolator(KeyRange.forPrefix(b("1234")));
+        Assert.assertEquals(prefix.getPosition(b("1234")), 0.0);
+        Assert.assertEquals(prefix.getPosition(b("123480")), 0.5);
+        Assert.assertEquals(prefix.getPosition(b("1233ff")), 0.0);
+        Assert.assertEquals(prefix.getPosition(b("1235")), 1.0);
+        Assert.assertEquals(prefix.getKey(0.5), b("123480"));
+
+        final KeyInterpolator ff = new KeyInterpolator(KeyRange.forPrefix(b("ff")));
+        Assert.assertEquals(ff.getPosition(b("ff80")), 0.5);
+        Assert.assertEquals(ff.getKey(0.5), b("ff80"));
+
+        final KeyRange range = new KeyRange(b("20"), b("60"));
+        final KeyInterpolator interpolator = new KeyInterpolator(range);
+        for (int i = 0; i < 1000; i++) {
+            final double position = this.random.nextDouble();
+            final byte[] key = interpolator.getKey(position);
+            Assert.assertTrue(range.contains(key), "bad key " + ByteUtil.toString(key));
+            Assert.assertEquals(interpolator.getPosition(key), position, 1e-9);
+        }
+    }
+
+    @Test
+    public void testSamplingSizeEstimator() throws Exception {
+
+        // Create uniformly distributed data under a few prefixes
+        final ConcurrentSkipListMap<byte[], byte[]> data = new NavigableMapKVStore().getNavigableMap();
+        for (int i = 0; i < 50000; i++) {
+            final byte[] key = new byte[9];
+            this.random.nextBytes(key);
+            key[0] = (byte)(1 + this.random.nextInt(3));
+            data.put(key, new byte[key[0] * 10]);
+        }
+        final NavigableMapKVStore kv = new NavigableMapKVStore(data);
+        final SizeEstimatingKVStore estimator = SizeEstimatingKVStore.of(kv);
+        Assert.assertTrue(estimator instanceof SamplingSizeEstimator);
+        Assert.assertSame(SizeEstimatingKVStore.of(estimator), estimator);
+
+        // Check estimates
+        this.checkEstimate(estimator, KeyRange.FULL, data);
+        this.checkEstimate(estimator, KeyRange.forPrefix(b("02")), data);
+        this.checkEstimate(estimator, new KeyRange(b("0180"), b("0340")), data);
+
+        // Small ranges are exact
+        final KeyRange small = new KeyRange(b("0200"), b("0201"));
+        final NavigableMap<byte[], byte[]> smallMap = data.subMap(small.getMin(), small.getMax());
+        Assert.assertEquals(estimator.estimateSize(small), new SizeEstimate(smallMap.size(), this.bytes(smallMap)));
+        Assert.assertEquals(estimator.estimateSize(new KeyRange(b("05"), null)), SizeEstimate.EMPTY);
+
+        // Check split keys
+        this.checkSplitKeys(estimator.getSplitKeys(KeyRange.FULL, 7), KeyRange.FULL, data, 7);
+        final KeyRange range = KeyRange.forPrefix(b("03"));
+        this.checkSplitKeys(estimator.getSplitKeys(range, 3), range, data, 3);
+        Assert.assertTrue(estimator.getSplitKeys(KeyRange.FULL, 0).isEmpty());
+        Assert.assertTrue(estimator.getSplitKeys(new KeyRange(b("05"), null), 5).isEmpty());
+
+        // Check bisection using exact sizes
+        final List<byte[]> splitKeys = KeyInterpolator.bisectSplitKeys(kv, KeyRange.FULL, 7,
+          r -> this.bytes(data.subMap(r.getMin(), r.getMax() != null ? r.getMax() : b("ff"))));
+        this.checkSplitKeys(splitKeys, KeyRange.FULL, data, 7);
+    }
+
+    private void checkEstimate(SizeEstimatingKVStore estimator, KeyRange range, ConcurrentSkipListMap<byte[], byte[]> data) {
+        final NavigableMap<byte[], byte[]> map = data.subMap(range.getMin(), range.getMax() != null ? range.getMax() : b("ff"));
+        final SizeEstimate estimate = estimator.estimateSize(range);
+        this.log.debug("range {}: actual {} keys, estimate {}", range, map.size(), estimate);
+        Assert.assertEquals(estimate.getKeys(), map.size(), map.size() * 0.2);
+        Assert.assertEquals(estimate.getBytes(), this.bytes(map), this.bytes(map) * 0.2);
+    }
+
+    private void checkSplitKeys(List<byte[]> splitKeys, KeyRange range,
+      ConcurrentSkipListMap<byte[], byte[]> data, int count) {
+        Assert.assertEquals(splitKeys.size(), count);
+        final NavigableMap<byte[], byte[]> map = data.subMap(range.getMin(), range.getMax() != null ? range.getMax() : b("ff"));
+        final double expected = (double)this.bytes(map) / (count + 1);
+        byte[] prev = range.getMin();
+        for (int i = 0; i <= count; i++) {
+            final byte[] next = i < count ? splitKeys.get(i) : range.getMax() != null ? range.getMax() : b("ff");
+            Assert.assertTrue(ByteUtil.compare(prev, next) < 0);
+            Assert.assertTrue(range.contains(next) || i == count);
+            Assert.assertEquals((double)this.bytes(data.subMap(prev, next)), expected, expected * 0.3);
+            prev = next;
+        }
+    }
+
+    private long bytes(NavigableMap<byte[], byte[]> map) {
+        long total = 0;
+        for (NavigableMap.Entry<byte[], byte[]> entry : map.entrySet())
+            total += entry.getKey().length + entry.getValue().length;
+        return total;
+    }
+}
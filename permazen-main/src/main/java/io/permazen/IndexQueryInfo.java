@@ -316,7 +316,7 @@ class IndexQueryInfo {
                 filter.add(NULL_RANGE);
 
             // Done
-            return filter;
+            return filter.immutableSnapshot();
         }
 
         @Override
@@ -567,7 +567,7 @@ public class ReferencePath {
                 final ArrayList<KeyRange> ranges = new ArrayList<>(jclasses.size());
                 for (JClass<?> jclass : jclasses)
                     ranges.add(ObjId.getKeyRange(jclass.storageId));
-                array[i] = new KeyRanges(ranges);
+                array[i] = new KeyRanges(ranges).immutableSnapshot();
             }
             this.pathKeyRanges = array;
         }
@@ -13,6 +13,7 @@ import com.google.common.base.Preconditions;
 public class ByteReader {
 
     final byte[] buf;
+    final int min;
     final int max;
     int off;
 
@@ -24,6 +25,7 @@ public class ByteReader {
      */
     public ByteReader(byte[] buf) {
         this.buf = buf;
+        this.min = 0;
         this.max = buf.length;
         this.off = 0;
     }
@@ -53,10 +55,29 @@ public class ByteReader {
         if (off < 0 || len < 0 || off > buf.length || off + len < 0 || off + len > buf.length)
             throw new IndexOutOfBoundsException("buf.length = " + buf.length + ", off = " + off + ", len = " + len);
         this.buf = buf;
+        this.min = 0;
         this.max = off + len;
         this.off = off;
     }
 
+    /**
+     * Constructor. Reads the bytes in the given slice directly from its underlying array; no copy is made.
+     *
+     * <p>
+     * Unlike {@link #ByteReader(byte[], int, int)}, the bytes preceding the slice in the underlying array
+     * are not considered part of the buffer, so they cannot be {@linkplain #unread unread} or
+     * {@linkplain #getBytes() copied}. Offsets are still relative to the start of the underlying array.
+     *
+     * @param slice slice to read from
+     * @throws NullPointerException if {@code slice} is null
+     */
+    public ByteReader(ByteSlice slice) {
+        this.buf = slice.getArray();
+        this.min = slice.getOffset();
+        this.max = this.min + slice.getLength();
+        this.off = this.min;
+    }
+
     /**
      * Constructor. Takes a snapshot of the given writer's entire content.
      *
@@ -109,7 +130,7 @@ public class ByteReader {
      * @throws IndexOutOfBoundsException if there are no more bytes to unread
      */
     public void unread() {
-        if (this.off == 0)
+        if (this.off == this.min)
             throw new IndexOutOfBoundsException();
         this.off--;
     }
@@ -121,7 +142,7 @@ public class ByteReader {
      * @throws IndexOutOfBoundsException if there are no more bytes to unread
      */
     public void unread(int len) {
-        if (this.off - len < 0)
+        if (this.off - len < this.min)
             throw new IndexOutOfBoundsException();
         this.off -= len;
     }
@@ -193,7 +214,7 @@ public class ByteReader {
      * @throws IndexOutOfBoundsException if {@code off} and/or {@code len} is out of bounds
      */
     public byte[] getBytes(int off, int len) {
-        if (off < 0 || len < 0 || off + len > this.max)
+        if (off < this.min || len < 0 || off + len > this.max)
             throw new IndexOutOfBoundsException();
         final byte[] data = new byte[len];
         System.arraycopy(this.buf, off, data, 0, len);
@@ -217,7 +238,7 @@ public class ByteReader {
      * @return copy of the entire buffer
      */
     public byte[] getBytes() {
-        return this.max == this.buf.length ? this.buf.clone() : this.getBytes(0);
+        return this.min == 0 && this.max == this.buf.length ? this.buf.clone() : this.getBytes(this.min);
     }
 
     /**
@@ -236,7 +257,7 @@ public class ByteReader {
      * @throws IndexOutOfBoundsException if {@code mark} is out of bounds
      */
     public void reset(int mark) {
-        if (mark < 0 || mark > this.max)
+        if (mark < this.min || mark > this.max)
             throw new IndexOutOfBoundsException();
         this.off = mark;
     }
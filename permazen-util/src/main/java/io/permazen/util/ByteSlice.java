@@ -0,0 +1,202 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.util;
+
+import java.util.Arrays;
+
+/**
+ * A view of a contiguous range of bytes within a {@code byte[]} array.
+ *
+ * <p>
+ * Instances allow byte data to be inspected and decoded without first being copied into a separate array.
+ * The underlying array is accessed directly; no copy is made. Use {@link #newReader} to decode the data
+ * via a {@link ByteReader}, and {@link #toByteArray} to obtain a copy.
+ *
+ * <p>
+ * Instances are mutable: the owner of an instance may repoint it at different data via {@link #set set()}.
+ * This allows a single instance to be reused, for example, by an iteration that visits many keys
+ * without allocating per-key objects. Recipients of an instance owned by someone else should not retain it
+ * beyond its documented lifetime, and must not modify the underlying array.
+ *
+ * <p>
+ * Instances are not thread safe.
+ */
+public final class ByteSlice {
+
+    private byte[] buf;
+    private int off;
+    private int len;
+
+    /**
+     * Default constructor. Creates an empty slice.
+     */
+    public ByteSlice() {
+        this.buf = ByteUtil.EMPTY;
+    }
+
+    /**
+     * Constructor. Creates a slice covering the entire given array.
+     *
+     * @param buf underlying array
+     * @throws NullPointerException if {@code buf} is null
+     */
+    public ByteSlice(byte[] buf) {
+        this(buf, 0, buf.length);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param buf underlying array
+     * @param off offset of the first byte in {@code buf}
+     * @param len number of bytes
+     * @throws IndexOutOfBoundsException if {@code off} or {@code len} are out of bounds
+     * @throws NullPointerException if {@code buf} is null
+     */
+    public ByteSlice(byte[] buf, int off, int len) {
+        this.set(buf, off, len);
+    }
+
+    /**
+     * Repoint this instance at the given data.
+     *
+     * @param buf underlying array
+     * @param off offset of the first byte in {@code buf}
+     * @param len number of bytes
+     * @return this instance
+     * @throws IndexOutOfBoundsException if {@code off} or {@code len} are out of bounds
+     * @throws NullPointerException if {@code buf} is null
+     */
+    public ByteSlice set(byte[] buf, int off, int len) {
+        if (off < 0 || len < 0 || off > buf.length || off + len < 0 || off + len > buf.length)
+            throw new IndexOutOfBoundsException("buf.length = " + buf.length + ", off = " + off + ", len = " + len);
+        this.buf = buf;
+        this.off = off;
+        this.len = len;
+        return this;
+    }
+
+    /**
+     * Repoint this instance at the entire given array.
+     *
+     * @param buf underlying array
+     * @return this instance
+     * @throws NullPointerException if {@code buf} is null
+     */
+    public ByteSlice set(byte[] buf) {
+        return this.set(buf, 0, buf.length);
+    }
+
+    /**
+     * Get the underlying array. The array must not be modified.
+     *
+     * @return underlying array
+     */
+    public byte[] getArray() {
+        return this.buf;
+    }
+
+    /**
+     * Get the offset of the first byte in the {@linkplain #getArray underlying array}.
+     *
+     * @return starting offset
+     */
+    public int getOffset() {
+        return this.off;
+    }
+
+    /**
+     * Get the number of bytes in this slice.
+     *
+     * @return slice length
+     */
+    public int getLength() {
+        return this.len;
+    }
+
+    /**
+     * Get the byte at the given index.
+     *
+     * @param index index into this slice
+     * @return byte value (0-255)
+     * @throws IndexOutOfBoundsException if {@code index} is out of bounds
+     */
+    public int byteAt(int index) {
+        if (index < 0 || index >= this.len)
+            throw new IndexOutOfBoundsException("index = " + index + ", length = " + this.len);
+        return this.buf[this.off + index] & 0xff;
+    }
+
+    /**
+     * Create a {@link ByteReader} that reads the bytes in this slice directly from the underlying array.
+     *
+     * <p>
+     * Note that {@linkplain ByteReader#getOffset offsets} reported by the returned reader are offsets into the
+     * underlying array, not this slice. Subsequently {@linkplain #set repointing} this instance does not affect
+     * the returned reader.
+     *
+     * @return reader for this slice's data
+     */
+    public ByteReader newReader() {
+        return new ByteReader(this);
+    }
+
+    /**
+     * Copy the bytes in this slice into a new array.
+     *
+     * @return copy of this slice's data
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOfRange(this.buf, this.off, this.off + this.len);
+    }
+
+    /**
+     * Compare this slice to the given byte array lexicographically using unsigned values.
+     *
+     * @param data byte array to compare to
+     * @return negative, zero, or positive if this slice is less than, equal to, or greater than {@code data}
+     * @throws NullPointerException if {@code data} is null
+     * @see ByteUtil#compare ByteUtil.compare()
+     */
+    public int compareTo(byte[] data) {
+        final int sharedLength = Math.min(this.len, data.length);
+        for (int i = 0; i < sharedLength; i++) {
+            final int v1 = this.buf[this.off + i] & 0xff;
+            final int v2 = data[i] & 0xff;
+            if (v1 != v2)
+                return v1 < v2 ? -1 : 1;
+        }
+        return Integer.compare(this.len, data.length);
+    }
+
+    /**
+     * Determine if this slice starts with the given prefix.
+     *
+     * @param prefix prefix to check
+     * @return true if {@code prefix} is a prefix of this slice
+     * @throws NullPointerException if {@code prefix} is null
+     * @see ByteUtil#isPrefixOf ByteUtil.isPrefixOf()
+     */
+    public boolean startsWith(byte[] prefix) {
+        if (prefix.length > this.len)
+            return false;
+        for (int i = 0; i < prefix.length; i++) {
+            if (this.buf[this.off + i] != prefix[i])
+                return false;
+        }
+        return true;
+    }
+
+// Object
+
+    /**
+     * Returns the {@linkplain ByteUtil#toString hexadecimal encoding} of the bytes in this slice.
+     */
+    @Override
+    public String toString() {
+        return ByteUtil.toString(this.toByteArray());
+    }
+}
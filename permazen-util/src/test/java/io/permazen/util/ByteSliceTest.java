@@ -0,0 +1,73 @@
+
+/*
+ * Copyright (C) 2015 Archie L. Cobbs. All rights reserved.
+ */
+
+package io.permazen.util;
+
+import io.permazen.test.TestSupport;
+
+import java.util.Arrays;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class ByteSliceTest extends TestSupport {
+
+    @Test
+    public void testCompare() {
+        for (int i = 0; i < 1000; i++) {
+            final byte[] data = new byte[this.random.nextInt(8)];
+            final byte[] other = new byte[this.random.nextInt(8)];
+            this.random.nextBytes(data);
+            this.random.nextBytes(other);
+            if (this.random.nextBoolean())
+                System.arraycopy(data, 0, other, 0, Math.min(data.length, other.length));
+
+            // Embed data in a larger array
+            final int off = this.random.nextInt(4);
+            final byte[] buf = new byte[off + data.length + this.random.nextInt(4)];
+            this.random.nextBytes(buf);
+            System.arraycopy(data, 0, buf, off, data.length);
+            final ByteSlice slice = new ByteSlice(buf, off, data.length);
+
+            Assert.assertEquals(slice.toByteArray(), data);
+            Assert.assertEquals(Integer.signum(slice.compareTo(other)), Integer.signum(ByteUtil.compare(data, other)));
+            Assert.assertEquals(slice.startsWith(other), ByteUtil.isPrefixOf(other, data));
+            if (data.length > 0)
+                Assert.assertEquals(slice.byteAt(data.length - 1), data[data.length - 1] & 0xff);
+        }
+    }
+
+    @Test
+    public void testReader() {
+        final byte[] buf = new byte[] { 1, 2, 3, 4, 5, 6 };
+        final ByteSlice slice = new ByteSlice(buf, 2, 3);
+        final ByteReader reader = slice.newReader();
+        Assert.assertEquals(reader.getOffset(), 2);
+        Assert.assertEquals(reader.remain(), 3);
+        Assert.assertEquals(reader.getBytes(), new byte[] { 3, 4, 5 });
+        try {
+            reader.unread();
+            assert false : "expected exception";
+        } catch (IndexOutOfBoundsException e) {
+            // expected
+        }
+        Assert.assertEquals(reader.readByte(), 3);
+        reader.unread();
+        Assert.assertEquals(reader.readBytes(3), new byte[] { 3, 4, 5 });
+        try {
+            reader.readByte();
+            assert false : "expected exception";
+        } catch (IndexOutOfBoundsException e) {
+            // expected
+        }
+
+        // Repointing the slice does not affect the reader
+        slice.set(buf);
+        Assert.assertEquals(reader.getBytes(), new byte[] { 3, 4, 5 });
+        Assert.assertEquals(slice.newReader().getBytes(), buf);
+        Assert.assertNotSame(slice.newReader().getBytes(), buf);
+        Assert.assertTrue(Arrays.equals(slice.toByteArray(), buf));
+    }
+}